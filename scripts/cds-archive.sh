@@ -0,0 +1,42 @@
+#!/usr/bin/env bash
+# Build a class-data-sharing archive of the classes loaded by the service up to its first request, so that the JVM
+# maps them instead of loading and verifying them again at each start. Java 11 or later is required to run the archive.
+# The archive only applies to plain jars, the application is run from target/exploded instead of the executable jar.
+# Usage: scripts/cds-archive.sh [profiles]
+set -euo pipefail
+
+PROFILES=${1:-embedded,fast-startup}
+BASE_URL=http://localhost:8080/locationexplorer
+EXPLODED=target/exploded
+CLASS_LIST=target/location-explorer.classlist
+ARCHIVE=target/location-explorer.jsa
+
+cd "$(dirname "$0")/.."
+mvn -B -q -DskipTests package
+
+rm -rf "$EXPLODED"
+mkdir -p "$EXPLODED"
+(cd "$EXPLODED" && jar -xf ../location-explorer-*.jar)
+# directories are not accepted on the class path of an archive
+jar -cf "$EXPLODED/application.jar" -C "$EXPLODED/BOOT-INF/classes" .
+echo "$EXPLODED/application.jar:$(ls "$EXPLODED"/BOOT-INF/lib/*.jar | tr '\n' ':')" > "$EXPLODED/classpath.txt"
+CLASSPATH=$(cat "$EXPLODED/classpath.txt")
+
+java -XX:DumpLoadedClassList="$CLASS_LIST" -cp "$CLASSPATH" ga.elirey.locationexplorer.LocationExplorerApplication \
+    --spring.profiles.active="$PROFILES" --location-explorer.synthetic-fleet.units=1 &
+SERVICE_PID=$!
+trap 'kill $SERVICE_PID 2>/dev/null || true' EXIT
+
+echo "Recording the classes loaded up to the first request..."
+until curl -sf "$BASE_URL/locations?user=unit-00000&context=synthetic" > /dev/null; do
+    kill -0 $SERVICE_PID || exit 1
+    sleep 1
+done
+kill $SERVICE_PID
+wait $SERVICE_PID || true
+
+java -Xshare:dump -XX:SharedClassListFile="$CLASS_LIST" -XX:SharedArchiveFile="$ARCHIVE" -cp "$CLASSPATH"
+
+echo "Start the service with the archive:"
+echo "  java -XX:SharedArchiveFile=$ARCHIVE -cp \$(cat $EXPLODED/classpath.txt) ga.elirey.locationexplorer.LocationExplorerApplication"
+echo "or measure it with: LAUNCH=exploded JAVA_OPTS=-XX:SharedArchiveFile=$ARCHIVE scripts/startup-benchmark.sh"
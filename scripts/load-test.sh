@@ -0,0 +1,28 @@
+#!/usr/bin/env bash
+# Start the service on an embedded database filled with a synthetic fleet, then load it with the load driver.
+# Usage: scripts/load-test.sh [units] [days] [rate-per-second] [duration-seconds]
+set -euo pipefail
+
+UNITS=${1:-20}
+DAYS=${2:-1}
+RATE=${3:-50}
+DURATION=${4:-60}
+BASE_URL=http://localhost:8080/locationexplorer
+
+cd "$(dirname "$0")/.."
+mvn -B -q -DskipTests package test-compile dependency:build-classpath -Dmdep.outputFile=target/test-classpath.txt
+
+java ${JAVA_OPTS:-} -jar target/location-explorer-*.jar --spring.profiles.active=embedded \
+    --location-explorer.synthetic-fleet.units="$UNITS" --location-explorer.synthetic-fleet.days="$DAYS" &
+SERVICE_PID=$!
+trap 'kill $SERVICE_PID 2>/dev/null || true' EXIT
+
+echo "Waiting for the service and its synthetic fleet..."
+until curl -sf "$BASE_URL/actuator/health" > /dev/null; do
+    kill -0 $SERVICE_PID || exit 1
+    sleep 2
+done
+
+java -cp "target/test-classes:target/classes:$(cat target/test-classpath.txt)" \
+    -DbaseUrl="$BASE_URL" -Dunits="$UNITS" -Drate="$RATE" -DdurationSeconds="$DURATION" \
+    ga.elirey.locationexplorer.load.LoadDriver
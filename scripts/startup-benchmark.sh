@@ -0,0 +1,42 @@
+#!/usr/bin/env bash
+# Measure the time from the launch of the service to its first successful request, over several starts.
+# The service runs from the executable jar, or from target/exploded with LAUNCH=exploded (see scripts/cds-archive.sh).
+# JAVA_OPTS are passed to the JVM, e.g. JAVA_OPTS=-XX:SharedArchiveFile=target/location-explorer.jsa
+# Usage: scripts/startup-benchmark.sh [runs] [profiles] [request-path]
+set -euo pipefail
+
+RUNS=${1:-5}
+PROFILES=${2:-embedded,fast-startup}
+REQUEST_PATH=${3:-/locations?user=unit-00000&context=synthetic}
+BASE_URL=http://localhost:8080/locationexplorer
+LAUNCH=${LAUNCH:-jar}
+
+cd "$(dirname "$0")/.."
+if [ "$LAUNCH" = exploded ]; then
+    APPLICATION=(-cp "$(cat target/exploded/classpath.txt)" ga.elirey.locationexplorer.LocationExplorerApplication)
+else
+    mvn -B -q -DskipTests package
+    APPLICATION=(-jar "$(ls target/location-explorer-*.jar | head -1)")
+fi
+
+SAMPLES=()
+for run in $(seq "$RUNS"); do
+    START=$(date +%s%N)
+    # a single unit in the synthetic fleet, so that its ingestion does not weigh in the measure
+    java ${JAVA_OPTS:-} "${APPLICATION[@]}" --spring.profiles.active="$PROFILES" \
+        --location-explorer.synthetic-fleet.units=1 > target/startup-benchmark.log 2>&1 &
+    SERVICE_PID=$!
+    trap 'kill $SERVICE_PID 2>/dev/null || true' EXIT
+    until curl -sf -o /dev/null "$BASE_URL$REQUEST_PATH"; do
+        kill -0 $SERVICE_PID 2>/dev/null || { cat target/startup-benchmark.log; exit 1; }
+        sleep 0.05
+    done
+    ELAPSED=$(( ($(date +%s%N) - START) / 1000000 ))
+    SAMPLES+=("$ELAPSED")
+    echo "run $run: first successful request after ${ELAPSED} ms ($(grep -o 'Started LocationExplorerApplication in [0-9.]* seconds' target/startup-benchmark.log || echo 'not started'))"
+    kill $SERVICE_PID
+    wait $SERVICE_PID 2>/dev/null || true
+done
+
+SORTED=($(printf '%s\n' "${SAMPLES[@]}" | sort -n))
+echo "profiles=$PROFILES launch=$LAUNCH java_opts='${JAVA_OPTS:-}' runs=$RUNS min=${SORTED[0]} ms median=${SORTED[$(( RUNS / 2 ))]} ms max=${SORTED[$(( RUNS - 1 ))]} ms"
@@ -0,0 +1,43 @@
+package ga.elirey.locationexplorer.config;
+
+import ga.elirey.locationexplorer.utils.BoundedExecutor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Bounded thread pools used by the location pipelines, so that heavy requests never run on the shared common pool.
+ * Database reads and CPU-bound filtering are kept apart so that one cannot starve the other.
+ */
+@Configuration
+public class ExecutorConfiguration {
+
+    @Value("${location-explorer.executors.retry-after-seconds:5}")
+    private long retryAfterSeconds;
+
+    @Bean(destroyMethod = "shutdown")
+    public BoundedExecutor databaseExecutor(@Value("${location-explorer.executors.database.pool-size:8}") final int poolSize,
+                                            @Value("${location-explorer.executors.database.queue-capacity:50}") final int queueCapacity,
+                                            @Value("${location-explorer.executors.database.timeout-millis:30000}") final long timeoutMillis) {
+        return new BoundedExecutor("database-io", poolSize, queueCapacity, timeoutMillis, retryAfterSeconds);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public BoundedExecutor trackFilteringExecutor(@Value("${location-explorer.executors.filtering.pool-size:4}") final int poolSize,
+                                                  @Value("${location-explorer.executors.filtering.queue-capacity:100}") final int queueCapacity,
+                                                  @Value("${location-explorer.executors.filtering.timeout-millis:30000}") final long timeoutMillis) {
+        return new BoundedExecutor("track-filtering", poolSize, queueCapacity, timeoutMillis, retryAfterSeconds);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public BoundedExecutor liveStreamingExecutor(@Value("${location-explorer.executors.live.pool-size:4}") final int poolSize,
+                                                 @Value("${location-explorer.executors.live.queue-capacity:10000}") final int queueCapacity) {
+        return new BoundedExecutor("live-streaming", poolSize, queueCapacity, 0, retryAfterSeconds);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public BoundedExecutor exportExecutor(@Value("${location-explorer.executors.export.pool-size:4}") final int poolSize,
+                                          @Value("${location-explorer.executors.export.queue-capacity:16}") final int queueCapacity) {
+        return new BoundedExecutor("export", poolSize, queueCapacity, 0, retryAfterSeconds);
+    }
+}
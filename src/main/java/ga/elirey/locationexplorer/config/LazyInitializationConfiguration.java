@@ -0,0 +1,55 @@
+package ga.elirey.locationexplorer.config;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.context.Lifecycle;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+
+/**
+ * Application services and controllers created on first use instead of at startup in the fast-startup profile, apart
+ * from the ones that have to run on their own: scheduled tasks, lifecycles and startup callbacks
+ */
+@Configuration
+@Profile("fast-startup")
+public class LazyInitializationConfiguration {
+
+    private static final String APPLICATION_PACKAGE = "ga.elirey.locationexplorer.";
+
+    @Bean
+    public static BeanFactoryPostProcessor lazyApplicationBeans() {
+        return beanFactory -> {
+            for (final String name : beanFactory.getBeanDefinitionNames()) {
+                final BeanDefinition definition = beanFactory.getBeanDefinition(name);
+                final String className = definition.getBeanClassName();
+                if (className != null && className.startsWith(APPLICATION_PACKAGE)
+                        && definition.getRole() == BeanDefinition.ROLE_APPLICATION
+                        && isDeferrable(ClassUtils.resolveClassName(className, beanFactory.getBeanClassLoader()))) {
+                    definition.setLazyInit(true);
+                }
+            }
+        };
+    }
+
+    private static boolean isDeferrable(final Class<?> beanClass) {
+        if (AnnotatedElementUtils.hasAnnotation(beanClass, Configuration.class)
+                || SmartInitializingSingleton.class.isAssignableFrom(beanClass)
+                || Lifecycle.class.isAssignableFrom(beanClass)) {
+            return false;
+        }
+        for (final Method method : ReflectionUtils.getUniqueDeclaredMethods(beanClass)) {
+            if (AnnotatedElementUtils.hasAnnotation(method, Scheduled.class)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,94 @@
+package ga.elirey.locationexplorer.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import ga.elirey.locationexplorer.utils.ReadReplicaRoutingDataSource;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read-only transactions served by a pool of read replicas, so that heavy reads do not slow down the ingest on the
+ * primary. The primary pool is sized by the usual spring.datasource.hikari properties, each replica pool by its own.
+ */
+@Configuration
+@ConditionalOnProperty(value = "location-explorer.replicas.enabled", havingValue = "true")
+public class ReadReplicaConfiguration {
+
+    private static final String REPLICA_PREFIX = "replica-";
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(final DataSourceProperties properties) {
+        final HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName(ReadReplicaRoutingDataSource.PRIMARY);
+        return dataSource;
+    }
+
+    @Bean(destroyMethod = "close")
+    public ReadReplicaRoutingDataSource replicaRoutingDataSource(final HikariDataSource primaryDataSource,
+                                                                 final DataSourceProperties properties,
+                                                                 @Value("${location-explorer.replicas.urls}") final String[] urls,
+                                                                 @Value("${location-explorer.replicas.username:}") final String username,
+                                                                 @Value("${location-explorer.replicas.password:}") final String password,
+                                                                 @Value("${location-explorer.replicas.pool-size:8}") final int poolSize,
+                                                                 @Value("${location-explorer.replicas.max-lag-millis:5000}") final long maxLagMillis,
+                                                                 @Value("${location-explorer.replicas.lag-query:}") final String lagQuery,
+                                                                 final MeterRegistry registry) {
+        final Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < urls.length; i++) {
+            final HikariConfig config = new HikariConfig();
+            config.setPoolName(REPLICA_PREFIX + i);
+            config.setJdbcUrl(urls[i].trim());
+            config.setDriverClassName(properties.determineDriverClassName());
+            config.setUsername(username.isEmpty() ? properties.determineUsername() : username);
+            config.setPassword(username.isEmpty() ? properties.determinePassword() : password);
+            config.setMaximumPoolSize(poolSize);
+            config.setMinimumIdle(Math.min(poolSize, 2));
+            config.setReadOnly(true);
+            config.setInitializationFailTimeout(-1); // a replica down at startup is only skipped
+            config.setMetricRegistry(registry);
+            replicas.put(config.getPoolName(), new HikariDataSource(config));
+        }
+
+        final ReadReplicaRoutingDataSource dataSource = new ReadReplicaRoutingDataSource(primaryDataSource, replicas,
+                maxLagMillis, lagQuery);
+        dataSource.checkReplicas();
+        dataSource.getReplicas().forEach(replica -> {
+            Gauge.builder("location.explorer.replica.lag", replica, ReadReplicaRoutingDataSource.Replica::getLagMillis)
+                    .description("Replication lag of a read replica when last checked").tag("replica", replica.getName())
+                    .baseUnit("milliseconds").register(registry);
+            Gauge.builder("location.explorer.replica.usable", replica, r -> r.isUsable() ? 1 : 0)
+                    .description("Whether read-only transactions are routed to a read replica").tag("replica", replica.getName())
+                    .register(registry);
+            FunctionCounter.builder("location.explorer.replica.connections", replica, ReadReplicaRoutingDataSource.Replica::getRoutedConnections)
+                    .description("Read-only connections routed to a read replica").tag("replica", replica.getName())
+                    .register(registry);
+        });
+        FunctionCounter.builder("location.explorer.replica.fallbacks", dataSource, ReadReplicaRoutingDataSource::getPrimaryFallbacks)
+                .description("Read-only connections served by the primary because no read replica was usable")
+                .register(registry);
+        return dataSource;
+    }
+
+    /**
+     * The connection is only fetched on the first statement, once the transaction is flagged read-only
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(final ReadReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+}
@@ -0,0 +1,20 @@
+package ga.elirey.locationexplorer.config;
+
+import ga.elirey.locationexplorer.controller.ServerTimingInterceptor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Report the time spent in each processing stage to the clients, enabled by location-explorer.metrics.server-timing
+ */
+@Configuration
+@ConditionalOnProperty(value = "location-explorer.metrics.server-timing", havingValue = "true")
+public class ServerTimingConfiguration implements WebMvcConfigurer {
+
+    @Override
+    public void addInterceptors(final InterceptorRegistry registry) {
+        registry.addInterceptor(new ServerTimingInterceptor()).addPathPatterns("/locations/**");
+    }
+}
@@ -0,0 +1,14 @@
+package ga.elirey.locationexplorer.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import springfox.documentation.swagger2.annotations.EnableSwagger2;
+
+/**
+ * API documentation, left out of the fast-startup profile as scanning the handlers is a large part of the startup
+ */
+@Configuration
+@EnableSwagger2
+@Profile("!fast-startup")
+public class SwaggerConfiguration {
+}
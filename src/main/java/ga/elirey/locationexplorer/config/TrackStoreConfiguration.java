@@ -0,0 +1,46 @@
+package ga.elirey.locationexplorer.config;
+
+import ga.elirey.locationexplorer.utils.OffHeapTrackStore;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Off-heap store of the recent fixes of the active units, with its footprint reported on the actuator endpoints
+ */
+@Configuration
+public class TrackStoreConfiguration {
+
+    private static final String STORE_MEMORY = "location.explorer.hot.tracks.memory";
+
+    @Bean
+    public OffHeapTrackStore hotTrackStore(@Value("${location-explorer.hot-tracks.capacity-bytes:268435456}") final long capacityBytes,
+                                           @Value("${location-explorer.hot-tracks.slab-bytes:4194304}") final int slabBytes,
+                                           @Value("${location-explorer.hot-tracks.chunk-fixes:256}") final int chunkFixes,
+                                           @Value("${location-explorer.hot-tracks.retention-millis:86400000}") final long retentionMillis,
+                                           final MeterRegistry registry) {
+        final OffHeapTrackStore store = new OffHeapTrackStore(capacityBytes, slabBytes, chunkFixes, retentionMillis);
+        Gauge.builder(STORE_MEMORY, store, OffHeapTrackStore::getCapacityBytes)
+                .description("Off-heap memory of the hot tracks store").tag("area", "capacity").baseUnit("bytes")
+                .register(registry);
+        Gauge.builder(STORE_MEMORY, store, OffHeapTrackStore::getAllocatedBytes)
+                .description("Off-heap memory of the hot tracks store").tag("area", "allocated").baseUnit("bytes")
+                .register(registry);
+        Gauge.builder(STORE_MEMORY, store, OffHeapTrackStore::getUsedBytes)
+                .description("Off-heap memory of the hot tracks store").tag("area", "used").baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("location.explorer.hot.tracks", store, OffHeapTrackStore::getTrackCount)
+                .description("Tracks held by the hot tracks store")
+                .register(registry);
+        FunctionCounter.builder("location.explorer.hot.tracks.evicted.chunks", store, OffHeapTrackStore::getEvictedChunks)
+                .description("Chunks of fixes evicted from the hot tracks store to stay within its capacity")
+                .register(registry);
+        FunctionCounter.builder("location.explorer.hot.tracks.dropped.fixes", store, OffHeapTrackStore::getDroppedFixes)
+                .description("Fixes received too late to be put in place in the hot tracks store")
+                .register(registry);
+        return store;
+    }
+}
@@ -0,0 +1,58 @@
+package ga.elirey.locationexplorer.controller;
+
+import ga.elirey.locationexplorer.data.ExportFormat;
+import ga.elirey.locationexplorer.data.ExportJobSpec;
+import ga.elirey.locationexplorer.data.ExportJobStatus;
+import ga.elirey.locationexplorer.data.FilterOptions;
+import ga.elirey.locationexplorer.service.ExportJobService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Optional;
+
+@RestController
+@RequestMapping(value = "/exports")
+@RequiredArgsConstructor
+public class ExportController {
+
+    private final ExportJobService exportJobService;
+
+    @PostMapping(params = {"context"}, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public ExportJobStatus startExport(@RequestParam(value = "context") final String context,
+                                       @RequestParam(value = "formats", required = false, defaultValue = "GPX,GEOJSON") final List<ExportFormat> formats,
+                                       @RequestParam(value = "zip", required = false, defaultValue = "false") final boolean zip,
+                                       @RequestParam(value = "startDate", required = false, defaultValue = "0") final Long startDate,
+                                       @RequestParam(value = "endDate", required = false, defaultValue = "0") final Long endDate,
+                                       @RequestBody(required = false) FilterOptions filterOptions) {
+
+        return exportJobService.start(new ExportJobSpec(context, formats, zip, startDate, endDate,
+                Optional.ofNullable(filterOptions).orElse(FilterOptions.useDefault())));
+    }
+
+    @GetMapping(value = "/{jobId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ExportJobStatus getExportStatus(@PathVariable("jobId") final String jobId) {
+        return exportJobService.getStatus(jobId);
+    }
+
+    @PostMapping(value = "/{jobId}/resume", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public ExportJobStatus resumeExport(@PathVariable("jobId") final String jobId) {
+        return exportJobService.resume(jobId);
+    }
+
+    @GetMapping(value = "/{jobId}/archive", produces = "application/zip")
+    public ResponseEntity<Resource> getExportArchive(@PathVariable("jobId") final String jobId) {
+        final Resource archive = new FileSystemResource(exportJobService.getArchive(jobId));
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, String.format("attachment; filename=\"%s.zip\"", jobId))
+                .body(archive);
+    }
+}
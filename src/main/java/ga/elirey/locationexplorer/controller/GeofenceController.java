@@ -0,0 +1,35 @@
+package ga.elirey.locationexplorer.controller;
+
+import ga.elirey.locationexplorer.model.Geofence;
+import ga.elirey.locationexplorer.service.GeofenceEngine;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping(value = "/geofences")
+@RequiredArgsConstructor
+public class GeofenceController {
+
+    private final GeofenceEngine geofenceEngine;
+
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<Geofence> getGeofences() {
+        return geofenceEngine.getGeofences();
+    }
+
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.CREATED)
+    public void registerGeofences(@RequestBody final List<Geofence> geofences) {
+        geofences.forEach(geofenceEngine::register);
+    }
+
+    @DeleteMapping(value = "/{id}")
+    public ResponseEntity<Void> removeGeofence(@PathVariable("id") final String id) {
+        return geofenceEngine.remove(id) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+}
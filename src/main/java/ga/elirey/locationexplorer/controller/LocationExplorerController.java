@@ -1,13 +1,44 @@
 package ga.elirey.locationexplorer.controller;
 
+import ga.elirey.locationexplorer.data.Encounter;
 import ga.elirey.locationexplorer.data.FilterOptions;
+import ga.elirey.locationexplorer.data.Heatmap;
+import ga.elirey.locationexplorer.data.Interpolation;
+import ga.elirey.locationexplorer.data.LocationDelta;
+import ga.elirey.locationexplorer.data.SimilarTrack;
+import ga.elirey.locationexplorer.data.SimilarityMetric;
+import ga.elirey.locationexplorer.data.SlowSubscriberPolicy;
+import ga.elirey.locationexplorer.data.TrackSummary;
+import ga.elirey.locationexplorer.data.UnitPosition;
+import ga.elirey.locationexplorer.exception.InvalidQueryParameterException;
+import ga.elirey.locationexplorer.format.BatchOutputFormat;
+import ga.elirey.locationexplorer.service.AreaSearchService;
+import ga.elirey.locationexplorer.service.CoLocationService;
+import ga.elirey.locationexplorer.service.DailyRollupService;
+import ga.elirey.locationexplorer.service.HeatmapService;
+import ga.elirey.locationexplorer.service.LatestPositionIndex;
+import ga.elirey.locationexplorer.service.LiveTrackingService;
+import ga.elirey.locationexplorer.service.LocationBatchService;
+import ga.elirey.locationexplorer.service.LocationDeltaService;
 import ga.elirey.locationexplorer.service.LocationExplorerService;
+import ga.elirey.locationexplorer.service.LocationInterpolationService;
+import ga.elirey.locationexplorer.service.SimilaritySearchService;
+import ga.elirey.locationexplorer.service.TrackResponseService;
+import ga.elirey.locationexplorer.utils.HttpCaching;
 import lombok.RequiredArgsConstructor;
+import org.geojson.FeatureCollection;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping(value = "/locations")
@@ -15,17 +46,188 @@ import java.util.Optional;
 public class LocationExplorerController {
 
     private final LocationExplorerService service;
+    private final LocationBatchService batchService;
+    private final LiveTrackingService liveTrackingService;
+    private final LocationDeltaService deltaService;
+    private final LatestPositionIndex latestPositionIndex;
+    private final AreaSearchService areaSearchService;
+    private final DailyRollupService dailyRollupService;
+    private final HeatmapService heatmapService;
+    private final CoLocationService coLocationService;
+    private final LocationInterpolationService interpolationService;
+    private final SimilaritySearchService similaritySearchService;
+    private final TrackResponseService trackResponseService;
 
+    /**
+     * Track of a user, answered with 304 when the If-None-Match header holds its current ETag, and sent gzip
+     * compressed to the clients accepting it
+     */
     @GetMapping(params = {"user", "context"}, produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_ATOM_XML_VALUE})
-    @ResponseStatus(HttpStatus.OK)
-    public String getGeojsonObjectFromGpx(@RequestParam(value = "user") final String user,
-                                          @RequestParam(value = "context") final String context,
-                                          @RequestParam(value = "format", required = false, defaultValue = "GEOJSON") final String format,
-                                          @RequestParam(value = "startDate", required = false, defaultValue = "0") final Long startDate,
-                                          @RequestParam(value = "endDate", required = false, defaultValue = "0") final Long endDate,
-                                          @RequestBody FilterOptions filterOptions) throws Exception {
-
-        return service.convert(user, context, format, startDate, endDate, Optional.ofNullable(filterOptions)
+    public CompletableFuture<ResponseEntity<byte[]>> getGeojsonObjectFromGpx(@RequestParam(value = "user") final String user,
+                                                                            @RequestParam(value = "context") final String context,
+                                                                            @RequestParam(value = "format", required = false, defaultValue = "GEOJSON") final String format,
+                                                                            @RequestParam(value = "startDate", required = false, defaultValue = "0") final Long startDate,
+                                                                            @RequestParam(value = "endDate", required = false, defaultValue = "0") final Long endDate,
+                                                                            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) final String ifNoneMatch,
+                                                                            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) final String acceptEncoding,
+                                                                            @RequestBody(required = false) FilterOptions filterOptions) {
+
+        final FilterOptions options = Optional.ofNullable(filterOptions).orElse(FilterOptions.useDefault());
+        final boolean gzip = HttpCaching.acceptsGzip(acceptEncoding);
+        return trackResponseService.computeETag(user, context, format, startDate, endDate, options).thenCompose(etag -> {
+            final HttpHeaders headers = new HttpHeaders();
+            if (gzip) {
+                headers.setETag(HttpCaching.gzipETag(etag));
+                headers.setVary(Collections.singletonList(HttpHeaders.ACCEPT_ENCODING)); // added by the server compression otherwise
+            } else {
+                headers.setETag(etag);
+            }
+            if (HttpCaching.isNotModified(ifNoneMatch, etag)) {
+                trackResponseService.countNotModified();
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).<byte[]>build());
+            }
+            return trackResponseService.getBody(etag, user, context, format, startDate, endDate, options)
+                    .thenApply(body -> gzip
+                            ? ResponseEntity.ok().headers(headers).header(HttpHeaders.CONTENT_ENCODING, HttpCaching.GZIP).body(body.getGzipBytes())
+                            : ResponseEntity.ok().headers(headers).body(body.getBytes()));
+        });
+    }
+
+    @GetMapping(value = "/batch", params = {"users", "context"}, produces = {MediaType.APPLICATION_JSON_VALUE, "application/x-ndjson"})
+    public ResponseEntity<StreamingResponseBody> getBatchGeojsonObjects(@RequestParam(value = "users") final List<String> users,
+                                                                        @RequestParam(value = "context") final String context,
+                                                                        @RequestParam(value = "format", required = false, defaultValue = "GEOJSON") final BatchOutputFormat format,
+                                                                        @RequestParam(value = "startDate", required = false, defaultValue = "0") final Long startDate,
+                                                                        @RequestParam(value = "endDate", required = false, defaultValue = "0") final Long endDate,
+                                                                        @RequestBody(required = false) FilterOptions filterOptions) {
+
+        if (users.isEmpty()) {
+            throw new InvalidQueryParameterException("At least one user is required");
+        }
+        final FilterOptions options = Optional.ofNullable(filterOptions).orElse(FilterOptions.useDefault());
+        final StreamingResponseBody body = outputStream -> batchService.convertBatch(users, context, format,
+                startDate, endDate, options, outputStream);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(format.getMediaType()))
+                .body(body);
+    }
+
+    @GetMapping(value = "/live", params = {"users", "context"}, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter followLocations(@RequestParam(value = "users") final List<String> users,
+                                      @RequestParam(value = "context") final String context,
+                                      @RequestParam(value = "policy", required = false, defaultValue = "CONFLATE") final SlowSubscriberPolicy policy,
+                                      @RequestParam(value = "bufferSize", required = false, defaultValue = "256") final int bufferSize) {
+
+        return liveTrackingService.subscribe(users, context, policy, bufferSize);
+    }
+
+    @GetMapping(value = "/delta", params = {"user", "context"}, produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<LocationDelta> getLocationsSince(@RequestParam(value = "user") final String user,
+                                                              @RequestParam(value = "context") final String context,
+                                                              @RequestParam(value = "since", required = false) final String since,
+                                                              @RequestBody(required = false) FilterOptions filterOptions) {
+
+        return deltaService.getDeltaAsync(user, context, since, Optional.ofNullable(filterOptions)
                 .orElse(FilterOptions.useDefault()));
     }
-}
\ No newline at end of file
+
+    @GetMapping(value = "/latest", params = {"lat1", "lon1", "lat2", "lon2"}, produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<UnitPosition> getLatestPositionsInBounds(@RequestParam(value = "lat1") final double lat1,
+                                                         @RequestParam(value = "lon1") final double lon1,
+                                                         @RequestParam(value = "lat2") final double lat2,
+                                                         @RequestParam(value = "lon2") final double lon2,
+                                                         @RequestParam(value = "context", required = false) final String context) {
+
+        return latestPositionIndex.findInBoundingBox(Math.min(lat1, lat2), Math.min(lon1, lon2),
+                Math.max(lat1, lat2), Math.max(lon1, lon2), context);
+    }
+
+    @GetMapping(value = "/latest/nearest", params = {"lat", "lon"}, produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<UnitPosition> getNearestLatestPositions(@RequestParam(value = "lat") final double lat,
+                                                        @RequestParam(value = "lon") final double lon,
+                                                        @RequestParam(value = "k", required = false, defaultValue = "10") final int k,
+                                                        @RequestParam(value = "context", required = false) final String context) {
+
+        if (k <= 0) {
+            throw new InvalidQueryParameterException(String.format("The number of units k must be positive, got %d", k));
+        }
+        return latestPositionIndex.findNearest(lat, lon, k, context);
+    }
+
+    @GetMapping(value = "/area", params = {"lat1", "lon1", "lat2", "lon2"}, produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<FeatureCollection> getLocationsInArea(@RequestParam(value = "lat1") final double lat1,
+                                                                   @RequestParam(value = "lon1") final double lon1,
+                                                                   @RequestParam(value = "lat2") final double lat2,
+                                                                   @RequestParam(value = "lon2") final double lon2,
+                                                                   @RequestParam(value = "startDate", required = false, defaultValue = "0") final Long startDate,
+                                                                   @RequestParam(value = "endDate", required = false, defaultValue = "0") final Long endDate) {
+
+        return areaSearchService.findInBoundingBoxAsync(Math.min(lat1, lat2), Math.min(lon1, lon2),
+                Math.max(lat1, lat2), Math.max(lon1, lon2), startDate, endDate);
+    }
+
+    @GetMapping(value = "/summary", params = {"context"}, produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<TrackSummary> getTrackSummaries(@RequestParam(value = "user", required = false) final String user,
+                                                @RequestParam(value = "context") final String context,
+                                                @RequestParam(value = "startDate", required = false, defaultValue = "0") final Long startDate,
+                                                @RequestParam(value = "endDate", required = false, defaultValue = "0") final Long endDate) {
+
+        return dailyRollupService.summarize(user, context, startDate, endDate);
+    }
+
+    @GetMapping(value = "/heatmap", params = {"context"}, produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<Heatmap> getHeatmap(@RequestParam(value = "context") final String context,
+                                                 @RequestParam(value = "zoom", required = false, defaultValue = "12") final int zoom,
+                                                 @RequestParam(value = "startDate", required = false, defaultValue = "0") final Long startDate,
+                                                 @RequestParam(value = "endDate", required = false, defaultValue = "0") final Long endDate) {
+
+        return heatmapService.getHeatmapAsync(context, zoom, startDate, endDate);
+    }
+
+    @GetMapping(value = "/encounters", params = {"context", "distance"}, produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<List<Encounter>> getEncounters(@RequestParam(value = "context") final String context,
+                                                            @RequestParam(value = "distance") final double distance,
+                                                            @RequestParam(value = "bucketSeconds", required = false, defaultValue = "60") final long bucketSeconds,
+                                                            @RequestParam(value = "startDate", required = false, defaultValue = "0") final Long startDate,
+                                                            @RequestParam(value = "endDate", required = false, defaultValue = "0") final Long endDate) {
+
+        return coLocationService.findEncountersAsync(context, distance, bucketSeconds, startDate, endDate);
+    }
+
+    @GetMapping(value = "/position", params = {"user", "context", "time"}, produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<UnitPosition>> getPositionAt(@RequestParam(value = "user") final String user,
+                                                                        @RequestParam(value = "context") final String context,
+                                                                        @RequestParam(value = "time") final long time,
+                                                                        @RequestParam(value = "interpolation", required = false, defaultValue = "LINEAR") final Interpolation interpolation) {
+
+        return interpolationService.getPositionAtAsync(user, context, time, interpolation)
+                .thenApply(position -> position.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build()));
+    }
+
+    @GetMapping(value = "/positions", params = {"context", "time"}, produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<List<UnitPosition>> getPositionsAt(@RequestParam(value = "context") final String context,
+                                                                @RequestParam(value = "time") final long time,
+                                                                @RequestParam(value = "interpolation", required = false, defaultValue = "LINEAR") final Interpolation interpolation) {
+
+        return interpolationService.getPositionsAtAsync(context, time, interpolation);
+    }
+
+    /**
+     * Tracks looking like the track of a user, among the tracks of all contexts or of the candidate context over the
+     * candidate time range, the last 10 days by default
+     */
+    @GetMapping(value = "/similar", params = {"user", "context"}, produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<List<SimilarTrack>> getSimilarTracks(@RequestParam(value = "user") final String user,
+                                                                  @RequestParam(value = "context") final String context,
+                                                                  @RequestParam(value = "startDate", required = false, defaultValue = "0") final Long startDate,
+                                                                  @RequestParam(value = "endDate", required = false, defaultValue = "0") final Long endDate,
+                                                                  @RequestParam(value = "candidateContext", required = false) final String candidateContext,
+                                                                  @RequestParam(value = "candidateStartDate", required = false, defaultValue = "0") final Long candidateStartDate,
+                                                                  @RequestParam(value = "candidateEndDate", required = false, defaultValue = "0") final Long candidateEndDate,
+                                                                  @RequestParam(value = "metric", required = false, defaultValue = "FRECHET") final SimilarityMetric metric,
+                                                                  @RequestParam(value = "k", required = false, defaultValue = "10") final int k) {
+
+        return similaritySearchService.findSimilarAsync(user, context, startDate, endDate, candidateContext,
+                candidateStartDate, candidateEndDate, metric, k);
+    }
+}
@@ -0,0 +1,48 @@
+package ga.elirey.locationexplorer.controller;
+
+import ga.elirey.locationexplorer.exception.ServiceOverloadedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.context.request.async.AsyncRequestTimeoutException;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Map saturation of the processing pools to 503 responses telling the client when to come back
+ */
+@Slf4j
+@RestControllerAdvice
+public class LocationExplorerExceptionHandler {
+
+    @Value("${location-explorer.executors.retry-after-seconds:5}")
+    private long retryAfterSeconds;
+
+    @ExceptionHandler(ServiceOverloadedException.class)
+    public ResponseEntity<String> handleOverload(final ServiceOverloadedException e) {
+        log.warn("Rejecting request: {}", e.getMessage());
+        return serviceUnavailable(e.getRetryAfterSeconds());
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<String> handleRejection(final RejectedExecutionException e) {
+        log.warn("Rejecting request, no thread available: {}", e.getMessage());
+        return serviceUnavailable(retryAfterSeconds);
+    }
+
+    @ExceptionHandler(AsyncRequestTimeoutException.class)
+    public ResponseEntity<String> handleTimeout(final AsyncRequestTimeoutException e) {
+        log.warn("Request timed out before its processing completed");
+        return serviceUnavailable(retryAfterSeconds);
+    }
+
+    private ResponseEntity<String> serviceUnavailable(final long retryAfter) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter))
+                .body("Too many requests being processed, retry later");
+    }
+}
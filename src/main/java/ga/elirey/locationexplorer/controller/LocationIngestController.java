@@ -0,0 +1,25 @@
+package ga.elirey.locationexplorer.controller;
+
+import ga.elirey.locationexplorer.data.MeasurementRequest;
+import ga.elirey.locationexplorer.service.LocationIngestService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+@RestController
+@RequestMapping(value = "/locations")
+@RequiredArgsConstructor
+public class LocationIngestController {
+
+    private final LocationIngestService service;
+
+    @PostMapping(value = "/measurements", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public void ingestMeasurements(@RequestBody final List<MeasurementRequest> measurements) {
+        service.ingest(measurements.stream().map(MeasurementRequest::toMeasurement).collect(Collectors.toList()));
+    }
+}
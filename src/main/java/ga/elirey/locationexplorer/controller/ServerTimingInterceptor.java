@@ -0,0 +1,37 @@
+package ga.elirey.locationexplorer.controller;
+
+import ga.elirey.locationexplorer.utils.StageTimings;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Bind new stage timings to each request, to be reported by {@link ServerTimingResponseAdvice}
+ */
+public class ServerTimingInterceptor implements AsyncHandlerInterceptor {
+
+    static final String TIMINGS_ATTRIBUTE = StageTimings.class.getName();
+
+    @Override
+    public boolean preHandle(final HttpServletRequest request, final HttpServletResponse response, final Object handler) {
+        if (request.getAttribute(TIMINGS_ATTRIBUTE) == null) { // not again on the dispatch of an async result
+            final StageTimings timings = new StageTimings();
+            request.setAttribute(TIMINGS_ATTRIBUTE, timings);
+            StageTimings.bind(timings);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(final HttpServletRequest request, final HttpServletResponse response,
+                                               final Object handler) {
+        StageTimings.unbind();
+    }
+
+    @Override
+    public void afterCompletion(final HttpServletRequest request, final HttpServletResponse response, final Object handler,
+                                final Exception ex) {
+        StageTimings.unbind();
+    }
+}
@@ -0,0 +1,42 @@
+package ga.elirey.locationexplorer.controller;
+
+import ga.elirey.locationexplorer.utils.StageTimings;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Add the stage timings of the request to the response in a Server-Timing header, right before the body is written
+ */
+@ControllerAdvice
+@ConditionalOnProperty(value = "location-explorer.metrics.server-timing", havingValue = "true")
+public class ServerTimingResponseAdvice implements ResponseBodyAdvice<Object> {
+
+    @Override
+    public boolean supports(final MethodParameter returnType, final Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(final Object body, final MethodParameter returnType, final MediaType selectedContentType,
+                                  final Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  final ServerHttpRequest request, final ServerHttpResponse response) {
+        if (request instanceof ServletServerHttpRequest) {
+            final Object timings = ((ServletServerHttpRequest) request).getServletRequest()
+                    .getAttribute(ServerTimingInterceptor.TIMINGS_ATTRIBUTE);
+            if (timings instanceof StageTimings) {
+                final String header = ((StageTimings) timings).toHeaderValue();
+                if (!header.isEmpty()) {
+                    response.getHeaders().add("Server-Timing", header);
+                }
+            }
+        }
+        return body;
+    }
+}
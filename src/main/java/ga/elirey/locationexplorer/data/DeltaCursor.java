@@ -0,0 +1,48 @@
+package ga.elirey.locationexplorer.data;
+
+import ga.elirey.locationexplorer.exception.InvalidCursorException;
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Base64;
+
+/**
+ * Position of the last measurement sent to a client, handed over as an opaque token. The time is kept to the
+ * nanosecond as stored, a truncated time would compare as before the measurement and send it again.
+ */
+@Value
+public class DeltaCursor {
+
+    private static final String SEPARATOR = "|";
+    private static final String NANOS_SEPARATOR = ".";
+
+    LocalDateTime time;
+    String deviceId;
+
+    public String encode() {
+        final Instant instant = time.atZone(ZoneId.of("UTC")).toInstant();
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((instant.getEpochSecond() + NANOS_SEPARATOR + instant.getNano() + SEPARATOR + deviceId)
+                        .getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static DeltaCursor decode(final String cursor) {
+        try {
+            final String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            final int separatorIndex = decoded.indexOf(SEPARATOR);
+            final String timestamp = decoded.substring(0, separatorIndex);
+            final int nanosIndex = timestamp.indexOf(NANOS_SEPARATOR);
+            final Instant instant = nanosIndex < 0
+                    ? Instant.ofEpochMilli(Long.parseLong(timestamp)) // cursors handed out in milliseconds
+                    : Instant.ofEpochSecond(Long.parseLong(timestamp.substring(0, nanosIndex)),
+                    Long.parseLong(timestamp.substring(nanosIndex + 1)));
+            return new DeltaCursor(instant.atZone(ZoneId.of("UTC")).toLocalDateTime(), decoded.substring(separatorIndex + 1));
+        } catch (final IllegalArgumentException | IndexOutOfBoundsException | DateTimeException e) {
+            throw new InvalidCursorException(cursor, e);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package ga.elirey.locationexplorer.data;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Interval during which two units stayed within a distance of each other
+ */
+@Value
+@Builder
+public class Encounter {
+
+    String firstUnitId;
+    String secondUnitId;
+    long startTime;
+    long endTime;
+    double minDistanceInMeters;
+}
@@ -0,0 +1,17 @@
+package ga.elirey.locationexplorer.data;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Strategy chosen to read a track, with the estimates it was chosen on
+ */
+@Value
+@Builder
+public class ExecutionPlan {
+
+    ExecutionStrategy strategy;
+    long estimatedPoints;
+    long estimatedBytes;
+    int downsamplingStep; // one location out of downsamplingStep is read, 1 when not downsampled
+}
@@ -0,0 +1,23 @@
+package ga.elirey.locationexplorer.data;
+
+/**
+ * How the locations of a track are read, depending on their number
+ */
+public enum ExecutionStrategy {
+    /**
+     * Load all the entities at once
+     */
+    IN_MEMORY,
+    /**
+     * Stream the rows into a buffer spilling to disk, keeping only the mapped points or those kept by the path filters
+     */
+    STREAMING,
+    /**
+     * Let the database keep one location out of n of each device
+     */
+    DB_DOWNSAMPLED,
+    /**
+     * Too large even once downsampled
+     */
+    REJECTED
+}
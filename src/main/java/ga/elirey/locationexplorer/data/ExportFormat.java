@@ -0,0 +1,17 @@
+package ga.elirey.locationexplorer.data;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Formats of the files written by an export job, one file per unit and format
+ */
+@Getter
+@RequiredArgsConstructor
+public enum ExportFormat {
+
+    GPX("gpx"),
+    GEOJSON("geojson");
+
+    private final String extension;
+}
@@ -0,0 +1,36 @@
+package ga.elirey.locationexplorer.data;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * What an export job produces, saved along its files so that it can be resumed
+ */
+@Value
+public class ExportJobSpec {
+
+    String contextId;
+    List<ExportFormat> formats;
+    boolean isZipped; // the files are also gathered in a single archive once all units are exported
+    long startDate;
+    long endDate;
+    FilterOptions filterOptions;
+
+    @JsonCreator
+    public ExportJobSpec(@JsonProperty("contextId") final String contextId,
+                         @JsonProperty("formats") final List<ExportFormat> formats,
+                         @JsonProperty("zipped") final boolean isZipped,
+                         @JsonProperty("startDate") final long startDate,
+                         @JsonProperty("endDate") final long endDate,
+                         @JsonProperty("filterOptions") final FilterOptions filterOptions) {
+        this.contextId = contextId;
+        this.formats = formats;
+        this.isZipped = isZipped;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.filterOptions = filterOptions;
+    }
+}
@@ -0,0 +1,27 @@
+package ga.elirey.locationexplorer.data;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Progress of an export job. Throughput and ETA only cover the units exported since the job was last started or resumed.
+ */
+@Value
+@Builder
+public class ExportJobStatus {
+
+    String jobId;
+    String contextId;
+    ExportState state;
+    int totalUnits;
+    int exportedUnits;
+    int failedUnits;
+    List<String> errors; // first errors met, at most one per failed unit
+    long bytesWritten;
+    double unitsPerSecond;
+    double bytesPerSecond;
+    Long etaSeconds; // null while unknown
+    String archive; // name of the archive once written, null if the job is not zipped
+}
@@ -0,0 +1,10 @@
+package ga.elirey.locationexplorer.data;
+
+public enum ExportState {
+
+    RUNNING,
+    COMPLETED,
+    COMPLETED_WITH_ERRORS, // some units could not be exported, resuming the job retries them
+    FAILED,
+    INTERRUPTED // stopped before the end, by a restart of the service for instance, the job can be resumed
+}
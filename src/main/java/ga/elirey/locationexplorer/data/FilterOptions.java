@@ -1,5 +1,8 @@
 package ga.elirey.locationexplorer.data;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Value;
 
 @Value
@@ -9,15 +12,58 @@ public class FilterOptions {
       int optimizationCoefficient;
       boolean isGpsJumpFilterEnabled;
       boolean isWayPointIncluded;
+      int maxPoints; // point budget of the produced track, 0 when the track size is not bounded
+      boolean isSegmentationEnabled; // split the track on time gaps, device switches and stays
+      long resamplingPeriodMillis; // one interpolated point per period instead of the simplified fixes, 0 to keep the fixes
+      Interpolation interpolation; // how the resampled points are placed between two fixes, linear by default
 
    public static FilterOptions useDefault(){
       return new FilterOptions(true, 3, true, false);
     }
 
     public FilterOptions(boolean isPathOptimizerEnabled, int optimizationCoefficient, boolean isGpsJumpFilterEnabled, boolean isWayPointIncluded) {
+        this(isPathOptimizerEnabled, optimizationCoefficient, isGpsJumpFilterEnabled, isWayPointIncluded, 0, false, 0, null);
+    }
+
+    @JsonCreator
+    public FilterOptions(@JsonProperty("pathOptimizerEnabled") boolean isPathOptimizerEnabled,
+                         @JsonProperty("optimizationCoefficient") int optimizationCoefficient,
+                         @JsonProperty("gpsJumpFilterEnabled") boolean isGpsJumpFilterEnabled,
+                         @JsonProperty("wayPointIncluded") boolean isWayPointIncluded,
+                         @JsonProperty("maxPoints") int maxPoints,
+                         @JsonProperty("segmentationEnabled") boolean isSegmentationEnabled,
+                         @JsonProperty("resamplingPeriodMillis") long resamplingPeriodMillis,
+                         @JsonProperty("interpolation") Interpolation interpolation) {
         this.isPathOptimizerEnabled = isPathOptimizerEnabled;
         this.optimizationCoefficient = optimizationCoefficient;
         this.isGpsJumpFilterEnabled = isGpsJumpFilterEnabled;
         this.isWayPointIncluded = isWayPointIncluded;
+        this.maxPoints = maxPoints;
+        this.isSegmentationEnabled = isSegmentationEnabled;
+        this.resamplingPeriodMillis = resamplingPeriodMillis;
+        this.interpolation = interpolation == null ? Interpolation.LINEAR : interpolation;
+    }
+
+    public FilterOptions withMaxPoints(final int maxPoints) {
+        return new FilterOptions(isPathOptimizerEnabled, optimizationCoefficient, isGpsJumpFilterEnabled, isWayPointIncluded,
+                maxPoints, isSegmentationEnabled, resamplingPeriodMillis, interpolation);
+    }
+
+    /**
+     * Same options once the path optimizer and the GPS jumps filter have been applied
+     */
+    public FilterOptions withoutPathFilters() {
+        return new FilterOptions(false, optimizationCoefficient, false, isWayPointIncluded, maxPoints,
+                isSegmentationEnabled, resamplingPeriodMillis, interpolation);
+    }
+
+    @JsonIgnore
+    public boolean isPointBudgetEnabled() {
+        return maxPoints > 0;
+    }
+
+    @JsonIgnore
+    public boolean isResamplingEnabled() {
+        return resamplingPeriodMillis > 0;
     }
 }
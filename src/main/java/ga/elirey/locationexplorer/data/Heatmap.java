@@ -0,0 +1,27 @@
+package ga.elirey.locationexplorer.data;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Sparse density grid of the measurements of a context, in web mercator tile coordinates at a zoom level.
+ * The i-th non empty cell is at (x[i], y[i]) and holds counts[i] measurements.
+ * Days that could not be read in time are left out and listed in missingDays, empty when the heatmap is complete.
+ */
+@Value
+@Builder
+public class Heatmap {
+
+    private String contextId;
+    private int zoom;
+    private long startDate;
+    private long endDate;
+    private long pointCount;
+    private int maxCount;
+    private int[] x;
+    private int[] y;
+    private int[] counts;
+    private List<String> missingDays;
+}
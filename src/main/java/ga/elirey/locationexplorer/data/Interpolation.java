@@ -0,0 +1,15 @@
+package ga.elirey.locationexplorer.data;
+
+/**
+ * How a position is estimated between two fixes
+ */
+public enum Interpolation {
+    /**
+     * Straight line in latitude/longitude, good enough between close fixes
+     */
+    LINEAR,
+    /**
+     * Along the great circle between the fixes, for sparse fixes far from each other
+     */
+    GREAT_CIRCLE
+}
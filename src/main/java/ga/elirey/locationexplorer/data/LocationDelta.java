@@ -0,0 +1,33 @@
+package ga.elirey.locationexplorer.data;
+
+import lombok.Builder;
+import lombok.Singular;
+import lombok.Value;
+import org.geojson.FeatureCollection;
+
+import java.util.List;
+
+/**
+ * Points recorded since a cursor, along with the cursor to use for the next fetch
+ */
+@Value
+@Builder
+public class LocationDelta {
+
+    FeatureCollection points;
+
+    String cursor;
+
+    /**
+     * Points sent by a previous fetch which must be removed, as the GPS jumps filter only knows a point is a jump
+     * once the next one is recorded
+     */
+    @Singular
+    List<Correction> corrections;
+
+    @Value
+    public static class Correction {
+        String timestamp;
+        String collectorId;
+    }
+}
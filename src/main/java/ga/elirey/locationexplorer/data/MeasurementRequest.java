@@ -0,0 +1,44 @@
+package ga.elirey.locationexplorer.data;
+
+import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+import ga.elirey.locationexplorer.exception.InvalidMeasurementException;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A measurement as sent by the collectors, the geohash and the geofencing status being computed on ingest
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MeasurementRequest {
+
+    private String unitId;
+    private String contextId;
+    private String deviceId;
+    private LocalDateTime time;
+    private Double latitude;
+    private Double longitude;
+    private Double altitude;
+    private Double accuracyInMeters;
+    private Double heading;
+    private Double speed;
+
+    public UnitLocationMeasurement toMeasurement() {
+        if (unitId == null || contextId == null || deviceId == null || time == null || latitude == null || longitude == null) {
+            throw new InvalidMeasurementException("unitId, contextId, deviceId, time, latitude and longitude are required");
+        }
+        return UnitLocationMeasurement.builder()
+                .id(new UnitLocationMeasurement.Id(unitId, contextId, time, deviceId))
+                .latitude(latitude)
+                .longitude(longitude)
+                .altitude(altitude)
+                .accuracyInMeters(accuracyInMeters)
+                .heading(heading)
+                .speed(speed)
+                .build();
+    }
+}
@@ -0,0 +1,20 @@
+package ga.elirey.locationexplorer.data;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Track of a unit in a context over a time window, found close to a reference track
+ */
+@Value
+@Builder
+public class SimilarTrack {
+
+    String unitId;
+    String contextId;
+    String startTime; // first and last fix of the track that was compared
+    String endTime;
+    SimilarityMetric metric;
+    double distanceInMeters;
+    int pointCount; // points of the simplified track the distance was computed on
+}
@@ -0,0 +1,15 @@
+package ga.elirey.locationexplorer.data;
+
+/**
+ * Distance between two trajectories
+ */
+public enum SimilarityMetric {
+    /**
+     * Discrete Fréchet distance: the largest gap between the two tracks walked in order, in meters
+     */
+    FRECHET,
+    /**
+     * Dynamic time warping: the sum of the gaps between matched points, in meters, less sensitive to a single outlier
+     */
+    DTW
+}
@@ -0,0 +1,10 @@
+package ga.elirey.locationexplorer.data;
+
+/**
+ * What to do with the fixes of a live subscriber which does not read them as fast as they are ingested
+ */
+public enum SlowSubscriberPolicy {
+
+    DROP_OLDEST, // keep the most recent fixes up to the buffer size, drop the oldest ones
+    CONFLATE // keep only the latest fix of each followed unit
+}
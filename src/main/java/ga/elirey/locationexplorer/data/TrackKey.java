@@ -0,0 +1,13 @@
+package ga.elirey.locationexplorer.data;
+
+import lombok.Value;
+
+/**
+ * Identifies the track of one unit within one context
+ */
+@Value
+public class TrackKey {
+
+    String unitId;
+    String contextId;
+}
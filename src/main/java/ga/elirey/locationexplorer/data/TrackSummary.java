@@ -0,0 +1,23 @@
+package ga.elirey.locationexplorer.data;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Overview of the track of a unit over a date range, built from the daily rollups
+ */
+@Value
+@Builder
+public class TrackSummary {
+
+    String unitId;
+    String contextId;
+    String startDay;
+    String endDay;
+    int activeDays;
+    long pointCount;
+    double travelledDistanceInMeters;
+    long durationInSeconds; // sum of the time between first and last measurement of each day
+    double averageSpeed;
+    double[] boundingBox; // min latitude, min longitude, max latitude, max longitude
+}
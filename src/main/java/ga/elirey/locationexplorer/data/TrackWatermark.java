@@ -0,0 +1,16 @@
+package ga.elirey.locationexplorer.data;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * State of the measurements of a track in a time range, changing whenever a measurement is added to it or replaced
+ */
+@Value
+public class TrackWatermark {
+
+    long pointCount;
+    LocalDateTime lastTime; // null when there is no measurement
+    LocalDateTime lastIngestedAt; // last write, null when there is no measurement
+}
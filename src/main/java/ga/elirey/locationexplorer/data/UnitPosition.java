@@ -0,0 +1,23 @@
+package ga.elirey.locationexplorer.data;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Last known position of a unit, as displayed by the map markers
+ */
+@Value
+@Builder
+public class UnitPosition {
+
+    String name;
+    String category;
+    String description;
+    String unitId;
+    String contextId;
+    String collectorId;
+    String timestamp;
+    double lat;
+    double lng;
+    Double distanceInMeters; // only set for nearest units queries
+}
@@ -0,0 +1,114 @@
+package ga.elirey.locationexplorer.entity;
+
+import ga.elirey.locationexplorer.model.Geofence;
+import lombok.*;
+import org.hibernate.Hibernate;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * A registered geofence, stored so that the geofences survive a restart
+ */
+@Entity
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "geofence")
+public class StoredGeofence implements Serializable {
+
+    @Id
+    @Column(name = "id", nullable = false, updatable = false)
+    private String id;
+
+    @Column(name = "name")
+    private String name;
+
+    @Column(name = "shape", length = 16, nullable = false)
+    @Enumerated(EnumType.STRING)
+    private Geofence.Shape shape;
+
+    @Column(name = "center_lat", nullable = false)
+    private double centerLatitude;
+
+    @Column(name = "center_lng", nullable = false)
+    private double centerLongitude;
+
+    @Column(name = "radius", nullable = false)
+    private double radiusInMeters;
+
+    @Column(name = "destination", nullable = false)
+    private boolean destination;
+
+    // geofences are few and always loaded whole
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "geofence_vertex", joinColumns = @JoinColumn(name = "geofence_id"))
+    @OrderColumn(name = "vertex_index")
+    @Builder.Default
+    private List<Vertex> vertices = new ArrayList<>();
+
+    public static StoredGeofence of(final Geofence geofence) {
+        return StoredGeofence.builder()
+                .id(geofence.getId())
+                .name(geofence.getName())
+                .shape(geofence.getShape())
+                .centerLatitude(geofence.getCenterLatitude())
+                .centerLongitude(geofence.getCenterLongitude())
+                .radiusInMeters(geofence.getRadiusInMeters())
+                .destination(geofence.isDestination())
+                .vertices(geofence.getVertices() == null ? new ArrayList<>() : geofence.getVertices().stream()
+                        .map(vertex -> new Vertex(vertex[0], vertex[1]))
+                        .collect(Collectors.toList()))
+                .build();
+    }
+
+    public Geofence toGeofence() {
+        return Geofence.builder()
+                .id(id)
+                .name(name)
+                .shape(shape)
+                .centerLatitude(centerLatitude)
+                .centerLongitude(centerLongitude)
+                .radiusInMeters(radiusInMeters)
+                .destination(destination)
+                .vertices(vertices.stream()
+                        .map(vertex -> new double[]{vertex.latitude, vertex.longitude})
+                        .collect(Collectors.toList()))
+                .build();
+    }
+
+    @Embeddable
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Vertex implements Serializable {
+
+        private static final long serialVersionUID = -2395150325717290447L;
+
+        @Column(name = "lat", nullable = false)
+        private double latitude;
+
+        @Column(name = "lng", nullable = false)
+        private double longitude;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o)) return false;
+        StoredGeofence that = (StoredGeofence) o;
+        return id != null && Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+}
@@ -0,0 +1,111 @@
+package ga.elirey.locationexplorer.entity;
+
+import lombok.*;
+import org.hibernate.Hibernate;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * Aggregates of the measurements of a unit for one day of a context, maintained on ingest
+ */
+@Entity
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "unit_daily_rollup")
+public class UnitDailyRollup implements Serializable {
+
+    @EmbeddedId
+    private Id id;
+
+    @Column(name = "point_count", nullable = false)
+    private long pointCount;
+
+    @Column(name = "distance", nullable = false)
+    private double distanceInMeters;
+
+    @Column(name = "first_time", columnDefinition = "timestamp", nullable = false)
+    private LocalDateTime firstTime;
+
+    @Column(name = "last_time", columnDefinition = "timestamp", nullable = false)
+    private LocalDateTime lastTime;
+
+    // position at last_time, the distance to the next measurement is added to the rollup
+    @Column(name = "last_lat", nullable = false)
+    private double lastLatitude;
+
+    @Column(name = "last_lng", nullable = false)
+    private double lastLongitude;
+
+    @Column(name = "min_lat", nullable = false)
+    private double minLatitude;
+
+    @Column(name = "max_lat", nullable = false)
+    private double maxLatitude;
+
+    @Column(name = "min_lng", nullable = false)
+    private double minLongitude;
+
+    @Column(name = "max_lng", nullable = false)
+    private double maxLongitude;
+
+    @Column(name = "speed_sum", nullable = false)
+    private double speedSum;
+
+    @Column(name = "speed_count", nullable = false)
+    private long speedCount;
+
+    @Embeddable
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Builder
+    public static class Id implements Serializable {
+
+        private static final long serialVersionUID = 4316470582117630571L;
+
+        @Column(name = "unit_id", nullable = false, updatable = false)
+        private String unitId;
+
+        @Column(name = "context_id", nullable = false, updatable = false)
+        private String contextId;
+
+        @Column(name = "rollup_day", columnDefinition = "date", nullable = false, updatable = false)
+        private LocalDate day;
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Id id = (Id) o;
+            return unitId.equals(id.unitId)
+                    && contextId.equals(id.contextId)
+                    && day.equals(id.day);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(unitId, contextId, day);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o)) return false;
+        UnitDailyRollup that = (UnitDailyRollup) o;
+        return id != null && Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+}
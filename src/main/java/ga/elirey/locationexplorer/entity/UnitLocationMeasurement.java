@@ -15,7 +15,9 @@ import java.util.Objects;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "unit_location_measurement")
+@Table(name = "unit_location_measurement", indexes = {
+        @Index(name = "idx_unit_location_measurement_geohash_time", columnList = "geohash, time")
+})
 public class UnitLocationMeasurement implements Serializable {
 
     @EmbeddedId
@@ -43,6 +45,12 @@ public class UnitLocationMeasurement implements Serializable {
     @Column(name = "speed")
     private Double speed;
 
+    @Column(name = "geohash", length = 12)
+    private String geohash; // cell of the location, used by area queries
+
+    @Column(name = "ingested_at", insertable = false, updatable = false)
+    private LocalDateTime ingestedAt; // last written, set by the database on each upsert
+
     @Embeddable
     @Getter
     @Setter
@@ -0,0 +1,32 @@
+package ga.elirey.locationexplorer.event;
+
+import ga.elirey.locationexplorer.format.LocationStatus;
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.time.LocalDateTime;
+
+/**
+ * Published when the geofencing status of a unit changes
+ */
+@Getter
+public class GeofenceTransitionEvent extends ApplicationEvent {
+
+    private final String unitId;
+    private final String contextId;
+    private final String geofenceId; // fence the unit is in or close to, null if none
+    private final LocationStatus previousStatus;
+    private final LocationStatus status;
+    private final LocalDateTime time;
+
+    public GeofenceTransitionEvent(final Object source, final String unitId, final String contextId, final String geofenceId,
+                                   final LocationStatus previousStatus, final LocationStatus status, final LocalDateTime time) {
+        super(source);
+        this.unitId = unitId;
+        this.contextId = contextId;
+        this.geofenceId = geofenceId;
+        this.previousStatus = previousStatus;
+        this.status = status;
+        this.time = time;
+    }
+}
@@ -0,0 +1,21 @@
+package ga.elirey.locationexplorer.event;
+
+import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.List;
+
+/**
+ * Published once a batch of measurements has been stored
+ */
+@Getter
+public class LocationsIngestedEvent extends ApplicationEvent {
+
+    private final List<UnitLocationMeasurement> measurements;
+
+    public LocationsIngestedEvent(final Object source, final List<UnitLocationMeasurement> measurements) {
+        super(source);
+        this.measurements = measurements;
+    }
+}
@@ -0,0 +1,12 @@
+package ga.elirey.locationexplorer.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.NOT_FOUND, reason = "Unknown export job")
+public class ExportJobNotFoundException extends RuntimeException {
+
+    public ExportJobNotFoundException(final String jobId) {
+        super(String.format("No export job '%s'", jobId));
+    }
+}
@@ -0,0 +1,12 @@
+package ga.elirey.locationexplorer.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_REQUEST, reason = "Invalid cursor")
+public class InvalidCursorException extends RuntimeException {
+
+    public InvalidCursorException(final String cursor, final Throwable cause) {
+        super(String.format("Could not decode cursor '%s'", cursor), cause);
+    }
+}
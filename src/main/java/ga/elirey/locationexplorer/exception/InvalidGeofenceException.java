@@ -0,0 +1,12 @@
+package ga.elirey.locationexplorer.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_REQUEST, reason = "Invalid geofence")
+public class InvalidGeofenceException extends RuntimeException {
+
+    public InvalidGeofenceException(final String message) {
+        super(message);
+    }
+}
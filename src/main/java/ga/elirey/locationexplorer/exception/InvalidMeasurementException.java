@@ -0,0 +1,12 @@
+package ga.elirey.locationexplorer.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_REQUEST, reason = "Invalid measurement")
+public class InvalidMeasurementException extends RuntimeException {
+
+    public InvalidMeasurementException(final String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,12 @@
+package ga.elirey.locationexplorer.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_REQUEST, reason = "Invalid query parameter")
+public class InvalidQueryParameterException extends RuntimeException {
+
+    public InvalidQueryParameterException(final String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,14 @@
+package ga.elirey.locationexplorer.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.PAYLOAD_TOO_LARGE,
+        reason = "Resampling period too short for the time range, raise it, narrow the range or set a point budget")
+public class ResamplingTooLargeException extends RuntimeException {
+
+    public ResamplingTooLargeException(final long periodMillis, final long resampledPoints, final int maxPoints) {
+        super(String.format("Resampling every %d ms gives %d points, over the limit of %d points", periodMillis,
+                resampledPoints, maxPoints));
+    }
+}
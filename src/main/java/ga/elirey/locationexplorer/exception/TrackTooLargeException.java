@@ -0,0 +1,12 @@
+package ga.elirey.locationexplorer.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.PAYLOAD_TOO_LARGE, reason = "Too many locations requested, narrow the time range")
+public class TrackTooLargeException extends RuntimeException {
+
+    public TrackTooLargeException(final String userId, final long estimatedPoints) {
+        super(String.format("Track of user '%s' holds %d locations, over the processing budget", userId, estimatedPoints));
+    }
+}
@@ -0,0 +1,62 @@
+package ga.elirey.locationexplorer.format;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Envelope used when several tracks are streamed back in a single response
+ */
+@Getter
+@RequiredArgsConstructor
+public enum BatchOutputFormat {
+
+    GEOJSON(MediaType.APPLICATION_JSON_VALUE) {
+        @Override
+        public void writeStart(OutputStream outputStream) throws IOException {
+            outputStream.write("{\"type\":\"FeatureCollection\",\"features\":[".getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void writeFeature(OutputStream outputStream, byte[] feature, boolean isFirst) throws IOException {
+            if (!isFirst) {
+                outputStream.write(',');
+            }
+            outputStream.write(feature);
+        }
+
+        @Override
+        public void writeEnd(OutputStream outputStream) throws IOException {
+            outputStream.write("]}".getBytes(StandardCharsets.UTF_8));
+        }
+    },
+    NDJSON("application/x-ndjson") {
+        @Override
+        public void writeStart(OutputStream outputStream) {
+            // one feature per line, no envelope
+        }
+
+        @Override
+        public void writeFeature(OutputStream outputStream, byte[] feature, boolean isFirst) throws IOException {
+            outputStream.write(feature);
+            outputStream.write('\n');
+        }
+
+        @Override
+        public void writeEnd(OutputStream outputStream) {
+            // one feature per line, no envelope
+        }
+    };
+
+    private final String mediaType;
+
+    public abstract void writeStart(OutputStream outputStream) throws IOException;
+
+    public abstract void writeFeature(OutputStream outputStream, byte[] feature, boolean isFirst) throws IOException;
+
+    public abstract void writeEnd(OutputStream outputStream) throws IOException;
+}
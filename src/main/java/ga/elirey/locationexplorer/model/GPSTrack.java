@@ -1,5 +1,6 @@
 package ga.elirey.locationexplorer.model;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import ga.elirey.locationexplorer.basis.Traceable;
@@ -11,9 +12,12 @@ import org.geojson.Feature;
 import org.geojson.FeatureCollection;
 import org.geojson.GeoJsonObject;
 import org.geojson.LineString;
+import org.geojson.MultiLineString;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
@@ -39,6 +43,12 @@ public class GPSTrack implements Traceable {
     @Singular("point")
     private List<GPSPoint> track;
 
+    /**
+     * The track split in segments (trips between stays, gaps or device switches), empty if the track is a single segment
+     */
+    @Singular("segment")
+    private List<List<GPSPoint>> segments;
+
     private Optional<GPSPoint> getStartPoint() {
         return track.stream()
                 .min(GPSPoint::compareTo);
@@ -128,11 +138,33 @@ public class GPSTrack implements Traceable {
     }
 
     public String asGeoJsonString(final boolean isPointsIncluded) throws JsonProcessingException {
-        final FeatureCollection geoJsonTrack = (FeatureCollection) this.toGeoJsonObject();
+        final FeatureCollection geoJsonTrack = new FeatureCollection();
+        geoJsonTrack.setFeatures(toGeoJsonFeatures(isPointsIncluded));
+        return new ObjectMapper().writeValueAsString(geoJsonTrack);
+    }
+
+    /**
+     * Write the GeoJSON feature collection as it is serialized, the writer is left open
+     */
+    public void writeGeoJson(final Writer writer, final boolean isPointsIncluded) throws IOException {
+        final FeatureCollection geoJsonTrack = new FeatureCollection();
+        geoJsonTrack.setFeatures(toGeoJsonFeatures(isPointsIncluded));
+        new ObjectMapper().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValue(writer, geoJsonTrack);
+    }
+
+    /**
+     * Features of the track, to be embedded in a wider collection
+     *
+     * @param isPointsIncluded whether each point is added as a feature after the line string
+     * @return the line string feature followed by the point features if requested
+     */
+    public List<Feature> toGeoJsonFeatures(final boolean isPointsIncluded) {
+        final List<Feature> features = new ArrayList<>();
+        features.add(asLineStringFeature());
         if (isPointsIncluded) {
-            geoJsonTrack.addAll(asPointFeature());
+            features.addAll(asPointFeature());
         }
-        return new ObjectMapper().writeValueAsString(geoJsonTrack);
+        return features;
     }
 
     private List<Feature> asPointFeature() {
@@ -144,13 +176,22 @@ public class GPSTrack implements Traceable {
 
     private Feature asLineStringFeature() {
 
-        final LineString ls = new LineString();
-        ls.setCoordinates(track.stream()
-                .map(GPSPoint::toLngLatAlt)
-                .collect(Collectors.toList()));
-
         final Feature lineFeature = new Feature();
-        lineFeature.setGeometry(ls);
+        if (isSegmented()) {
+            final MultiLineString mls = new MultiLineString();
+            segments.stream()
+                    .filter(segment -> segment.size() > 1) // a line needs 2 positions
+                    .forEach(segment -> mls.add(segment.stream()
+                            .map(GPSPoint::toLngLatAlt)
+                            .collect(Collectors.toList())));
+            lineFeature.setGeometry(mls);
+        } else {
+            final LineString ls = new LineString();
+            ls.setCoordinates(track.stream()
+                    .map(GPSPoint::toLngLatAlt)
+                    .collect(Collectors.toList()));
+            lineFeature.setGeometry(ls);
+        }
 
         lineFeature.setProperties(buildProperties());
         lineFeature.setId(UUID.randomUUID().toString());
@@ -176,6 +217,7 @@ public class GPSTrack implements Traceable {
         properties.put("startDate", new Date(this.getStartDate().orElse(0)).toString());
         properties.put("endDate", new Date(this.getEndDate().orElse(0)).toString());
         properties.put("tracksSize", track.size());
+        properties.put("segmentsCount", getSegmentsOrWholeTrack().size());
         properties.put("trackedUser", this.getTrackedUser());
         properties.put("trackedDevices", this.getTrackingDevicesIds().toArray());
         properties.put("averageSpeed", this.getAverageSpeed().orElse(0.0));
@@ -193,17 +235,13 @@ public class GPSTrack implements Traceable {
     @Override
     public GPX toGpxObject() {
 
-        // TODO: Change this when we will be able to organize track in segments (based on dates for instance)
-        final TrackSegment uniqueSegment = TrackSegment.builder()
-                .points(track.stream()
+        // TODO: Change this when we will be able to manage more than one single track (based on dates for instance)
+        final Track.Builder uniqueTrack = Track.builder();
+        getSegmentsOrWholeTrack().forEach(segment -> uniqueTrack.addSegment(TrackSegment.builder()
+                .points(segment.stream()
                         .map(GPSPoint::toGpxWayPoint)
                         .collect(Collectors.toList()))
-                .build();
-
-        // TODO: Change this when we will be able to manage more than one single track (based on dates for instance)
-        final Track uniqueTrack = Track.builder()
-                .addSegment(uniqueSegment)
-                .build();
+                .build()));
 
         return GPX.builder()
                 .creator(this.trackedUser)
@@ -213,7 +251,7 @@ public class GPSTrack implements Traceable {
                         .name(String.format("GPX traces of %s", this.trackedUser))
                         .time(Instant.now())
                         .build())
-                .addTrack(uniqueTrack)
+                .addTrack(uniqueTrack.build())
                 .addWayPoint(this.getStartPoint()
                         .map(GPSPoint::toGpxWayPoint)
                         .orElseThrow(InsufficientRequiredPointsException::new)) // get start point of sole point if there is any
@@ -239,19 +277,35 @@ public class GPSTrack implements Traceable {
     @Override
     public String asGpxString() throws IOException {
         ByteArrayOutputStream gpxBaos = new ByteArrayOutputStream();
-        final GPX lineSegment = this.toGpxObject();
-        GPX.write(lineSegment, gpxBaos);
+        writeGpx(gpxBaos);
         return gpxBaos.toString();
     }
 
+    /**
+     * Write the GPX document as it is serialized, in UTF-8
+     */
+    public void writeGpx(final OutputStream output) throws IOException {
+        GPX.write(this.toGpxObject(), output);
+    }
+
     private double getTravelledDistance() {
         double distance = 0.0;
-        for (int i = 0; i < track.size() - 1; i++) {
-            distance += GeometryTools.getDistanceBetweenPointsInMeters(track.get(i), track.get(i + 1));
+        for (final List<GPSPoint> segment : getSegmentsOrWholeTrack()) { // no distance between segments
+            for (int i = 0; i < segment.size() - 1; i++) {
+                distance += GeometryTools.getDistanceBetweenPointsInMeters(segment.get(i), segment.get(i + 1));
+            }
         }
         return Math.ceil(distance);
     }
 
+    private boolean isSegmented() {
+        return segments != null && segments.size() > 1;
+    }
+
+    private List<List<GPSPoint>> getSegmentsOrWholeTrack() {
+        return isSegmented() ? segments : Collections.singletonList(track);
+    }
+
     public int size() {
         return track.size();
     }
@@ -0,0 +1,35 @@
+package ga.elirey.locationexplorer.model;
+
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * An area units can enter, either a circle or a polygon
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Geofence {
+
+    public enum Shape {
+        CIRCLE,
+        POLYGON
+    }
+
+    private String id;
+    private String name;
+    private Shape shape;
+    private boolean destination; // a unit entering it has arrived, without having to stay in it
+
+    // circle
+    private double centerLatitude;
+    private double centerLongitude;
+    private double radiusInMeters;
+
+    // polygon, as [latitude, longitude] vertices
+    @Singular
+    private List<double[]> vertices;
+}
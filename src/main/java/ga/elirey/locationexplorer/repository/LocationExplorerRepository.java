@@ -1,15 +1,161 @@
 package ga.elirey.locationexplorer.repository;
 
 import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
+/**
+ * Queries run in a read-only transaction, served by a read replica when they are enabled, unless they join a running
+ * transaction. The inherited save methods keep their own read-write transaction.
+ */
 @Repository
+@Transactional(readOnly = true)
 public interface LocationExplorerRepository extends CrudRepository<UnitLocationMeasurement, UnitLocationMeasurement.Id> {
 
-    List<UnitLocationMeasurement> findByIdTimeAfterAndIdTimeBeforeAndIdUnitIdAndIdMissionId(LocalDateTime startDate,
-                                                                                            LocalDateTime endDate, String unitId, String missionId);
+    String STREAMING_FETCH_SIZE = "1000";
+
+    /**
+     * Measurements of a unit ordered by device then time, one time-ordered run per device. The track index is read
+     * over the time range, only the rows of the range are then sorted by device.
+     */
+    List<UnitLocationMeasurement> findByIdTimeAfterAndIdTimeBeforeAndIdUnitIdAndIdContextIdOrderByIdDeviceIdAscIdTimeAsc(LocalDateTime startDate,
+                                                                                                                         LocalDateTime endDate, String unitId, String contextId);
+
+    /**
+     * Measurements of a unit from a time included to a time excluded, in time order whatever their device
+     */
+    List<UnitLocationMeasurement> findByIdUnitIdAndIdContextIdAndIdTimeGreaterThanEqualAndIdTimeLessThanOrderByIdTimeAsc(String unitId,
+                                                                                                                         String contextId, LocalDateTime from, LocalDateTime until);
+
+    long countByIdTimeAfterAndIdTimeBeforeAndIdUnitIdAndIdContextId(LocalDateTime startDate, LocalDateTime endDate,
+                                                                    String unitId, String contextId);
+
+    /**
+     * One [pointCount, lastTime, lastIngestedAt] row for the measurements of a unit in a time range, changing whenever
+     * one is added or replaced
+     */
+    @Query("select count(m), max(m.id.time), max(m.ingestedAt) from UnitLocationMeasurement m where m.id.unitId = :unitId"
+            + " and m.id.contextId = :contextId and m.id.time > :startDate and m.id.time < :endDate")
+    List<Object[]> findWatermark(@Param("unitId") String unitId, @Param("contextId") String contextId,
+                                 @Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate);
+
+    /**
+     * One measurement of a unit out of step for each device, ordered by device then time
+     */
+    @Query(value = "select * from (select m.*, row_number() over (partition by m.device_id order by m.time) as row_index"
+            + " from unit_location_measurement m where m.unit_id = :unitId and m.context_id = :contextId"
+            + " and m.time > :startDate and m.time < :endDate) sampled"
+            + " where mod(sampled.row_index - 1, :step) = 0 order by sampled.device_id, sampled.time", nativeQuery = true)
+    List<UnitLocationMeasurement> findDownsampled(@Param("unitId") String unitId, @Param("contextId") String contextId,
+                                                  @Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate,
+                                                  @Param("step") int step);
+
+    /**
+     * Units having measurements in a context within a time range, in alphabetical order
+     */
+    @Query("select distinct m.id.unitId from UnitLocationMeasurement m where m.id.contextId = :contextId"
+            + " and m.id.time > :startDate and m.id.time < :endDate order by m.id.unitId")
+    List<String> findUnitIdsInContext(@Param("contextId") String contextId,
+                                      @Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate);
+
+    /**
+     * Stream the measurements of several units of one context in a single query, ordered by unit, device then time so
+     * that the caller can split the rows per unit while reading them
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = STREAMING_FETCH_SIZE))
+    Stream<UnitLocationMeasurement> streamByIdTimeAfterAndIdTimeBeforeAndIdUnitIdInAndIdContextIdOrderByIdUnitIdAscIdDeviceIdAscIdTimeAsc(LocalDateTime startDate,
+                                                                                                                                          LocalDateTime endDate, Collection<String> unitIds, String contextId);
+
+    /**
+     * Measurements of a unit recorded strictly after a (time, device) position, in that order
+     */
+    @Query("select m from UnitLocationMeasurement m where m.id.unitId = :unitId and m.id.contextId = :contextId"
+            + " and (m.id.time > :time or (m.id.time = :time and m.id.deviceId > :deviceId))"
+            + " order by m.id.time asc, m.id.deviceId asc")
+    List<UnitLocationMeasurement> findAfterPosition(@Param("unitId") String unitId, @Param("contextId") String contextId,
+                                                    @Param("time") LocalDateTime time, @Param("deviceId") String deviceId);
+
+    /**
+     * Latest measurements of a unit recorded up to a (time, device) position included, most recent first
+     */
+    @Query("select m from UnitLocationMeasurement m where m.id.unitId = :unitId and m.id.contextId = :contextId"
+            + " and (m.id.time < :time or (m.id.time = :time and m.id.deviceId <= :deviceId))"
+            + " order by m.id.time desc, m.id.deviceId desc")
+    List<UnitLocationMeasurement> findLatestUpToPosition(@Param("unitId") String unitId, @Param("contextId") String contextId,
+                                                         @Param("time") LocalDateTime time, @Param("deviceId") String deviceId,
+                                                         Pageable pageable);
+
+    /**
+     * Time of the oldest measurement of all units, null without any
+     */
+    @Query("select min(m.id.time) from UnitLocationMeasurement m")
+    LocalDateTime findEarliestTime();
+
+    /**
+     * Time of the most recent measurement of all units, null without any
+     */
+    @Query("select max(m.id.time) from UnitLocationMeasurement m")
+    LocalDateTime findLatestTime();
+
+    /**
+     * Latest measurement of each unit in each context among those recorded after a time, one per device when several
+     * share that time
+     */
+    @Query("select m from UnitLocationMeasurement m where m.id.time > :since and m.id.time = (select max(l.id.time)"
+            + " from UnitLocationMeasurement l where l.id.unitId = m.id.unitId and l.id.contextId = m.id.contextId"
+            + " and l.id.time > :since)")
+    List<UnitLocationMeasurement> findLatestPerUnitSince(@Param("since") LocalDateTime since);
+
+    /**
+     * Measurements of all units whose geohash falls in [lowerBound, upperBound) within a time range
+     */
+    @Query("select m from UnitLocationMeasurement m where m.geohash >= :lowerBound and m.geohash < :upperBound"
+            + " and m.id.time > :startDate and m.id.time < :endDate")
+    List<UnitLocationMeasurement> findInGeohashRange(@Param("lowerBound") String lowerBound, @Param("upperBound") String upperBound,
+                                                     @Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate);
+
+    List<UnitLocationMeasurement> findTop1000ByGeohashIsNull();
+
+    /**
+     * Stream the coordinates of all measurements of a context within a time range, start included, as
+     * [latitude, longitude] rows
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = STREAMING_FETCH_SIZE))
+    @Query("select m.latitude, m.longitude from UnitLocationMeasurement m where m.id.contextId = :contextId"
+            + " and m.id.time >= :startDate and m.id.time < :endDate")
+    Stream<Object[]> streamCoordinatesInContext(@Param("contextId") String contextId,
+                                                @Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate);
+
+    /**
+     * Stream the [unitId, time, latitude, longitude] of all measurements of a context within a time range, ordered by time
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = STREAMING_FETCH_SIZE))
+    @Query("select m.id.unitId, m.id.time, m.latitude, m.longitude from UnitLocationMeasurement m"
+            + " where m.id.contextId = :contextId and m.id.time > :startDate and m.id.time < :endDate order by m.id.time asc")
+    Stream<Object[]> streamPositionsInContext(@Param("contextId") String contextId,
+                                              @Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate);
+
+    /**
+     * Stream the [unitId, deviceId, time, latitude, longitude, altitude, accuracy] of all measurements of a context within
+     * a time range, ordered by unit, device then time
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = STREAMING_FETCH_SIZE))
+    @Query("select m.id.unitId, m.id.deviceId, m.id.time, m.latitude, m.longitude, m.altitude, m.accuracyInMeters"
+            + " from UnitLocationMeasurement m where m.id.contextId = :contextId and m.id.time > :startDate"
+            + " and m.id.time < :endDate order by m.id.unitId asc, m.id.deviceId asc, m.id.time asc")
+    Stream<Object[]> streamFixesInContext(@Param("contextId") String contextId,
+                                          @Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate);
 }
@@ -0,0 +1,114 @@
+package ga.elirey.locationexplorer.repository;
+
+import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Write the ingested measurements with batched statements, without loading them first as a JPA merge of entities with
+ * an assigned id would. A measurement sent again with the same key replaces the stored one.
+ * <p>
+ * The measurements are inserted when missing, then those whose key was already stored are updated, so that the caller
+ * knows which ones are new: a measurement sent again must not be counted twice by the aggregates.
+ * <p>
+ * Each write stamps the measurement with the database time, the change marker of the track watermarks: it moves even
+ * when a measurement is replaced in place. The database clock is the same for all the instances writing.
+ */
+@Repository
+@RequiredArgsConstructor
+public class LocationMeasurementWriter {
+
+    private static final int BATCH_SIZE = 500;
+
+    private static final String COLUMNS = "unit_id, context_id, time, device_id, lat, lng, alt, accuracy,"
+            + " geofencing_status, hdg, speed, geohash, ingested_at";
+
+    private static final String POSTGRES_INSERT_MISSING = "insert into unit_location_measurement (" + COLUMNS + ")"
+            + " values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, localtimestamp)"
+            + " on conflict (unit_id, context_id, time, device_id) do nothing";
+    private static final String H2_INSERT_MISSING = "merge into unit_location_measurement m using (select"
+            + " cast(? as varchar(255)) unit_id, cast(? as varchar(255)) context_id, cast(? as timestamp) time,"
+            + " cast(? as varchar(255)) device_id) k"
+            + " on m.unit_id = k.unit_id and m.context_id = k.context_id and m.time = k.time and m.device_id = k.device_id"
+            + " when not matched then insert (" + COLUMNS + ") values"
+            + " (k.unit_id, k.context_id, k.time, k.device_id, ?, ?, ?, ?, ?, ?, ?, ?, localtimestamp)";
+    private static final String UPDATE = "update unit_location_measurement set lat = ?, lng = ?, alt = ?, accuracy = ?,"
+            + " geofencing_status = ?, hdg = ?, speed = ?, geohash = ?, ingested_at = localtimestamp"
+            + " where unit_id = ? and context_id = ? and time = ? and device_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile String insertMissing;
+
+    /**
+     * Insert the new measurements and replace the stored ones. A key repeated within the batch is inserted once, then
+     * replaced by its next occurrences.
+     *
+     * @return for each measurement, whether it was inserted rather than replacing a stored one
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public boolean[] upsertAll(final List<UnitLocationMeasurement> measurements) {
+        final boolean[] inserted = new boolean[measurements.size()];
+        final int[][] insertCounts = jdbcTemplate.batchUpdate(getInsertMissing(), measurements, BATCH_SIZE,
+                (statement, measurement) -> {
+                    setKey(statement, 1, measurement.getId());
+                    setValues(statement, 5, measurement);
+                });
+        final List<UnitLocationMeasurement> stored = new ArrayList<>();
+        int index = 0;
+        for (final int[] batchCounts : insertCounts) {
+            for (final int count : batchCounts) {
+                // a driver not reporting the counts leaves every measurement to the update, replacing it by itself
+                inserted[index] = count == 1;
+                if (!inserted[index]) {
+                    stored.add(measurements.get(index));
+                }
+                index++;
+            }
+        }
+        jdbcTemplate.batchUpdate(UPDATE, stored, BATCH_SIZE, (statement, measurement) -> {
+            setValues(statement, 1, measurement);
+            setKey(statement, 9, measurement.getId());
+        });
+        return inserted;
+    }
+
+    private String getInsertMissing() {
+        if (insertMissing == null) {
+            final String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                    connection.getMetaData().getDatabaseProductName());
+            insertMissing = "H2".equals(product) ? H2_INSERT_MISSING : POSTGRES_INSERT_MISSING;
+        }
+        return insertMissing;
+    }
+
+    private static void setKey(final PreparedStatement statement, final int first, final UnitLocationMeasurement.Id id)
+            throws SQLException {
+        statement.setString(first, id.getUnitId());
+        statement.setString(first + 1, id.getContextId());
+        statement.setTimestamp(first + 2, Timestamp.valueOf(id.getTime()));
+        statement.setString(first + 3, id.getDeviceId());
+    }
+
+    private static void setValues(final PreparedStatement statement, final int first,
+                                  final UnitLocationMeasurement measurement) throws SQLException {
+        statement.setDouble(first, measurement.getLatitude());
+        statement.setDouble(first + 1, measurement.getLongitude());
+        statement.setObject(first + 2, measurement.getAltitude(), Types.DOUBLE);
+        statement.setObject(first + 3, measurement.getAccuracyInMeters(), Types.DOUBLE);
+        statement.setObject(first + 4, measurement.getGeofencingStatus() == null ? null : measurement.getGeofencingStatus().name(), Types.VARCHAR);
+        statement.setObject(first + 5, measurement.getHeading(), Types.DOUBLE);
+        statement.setObject(first + 6, measurement.getSpeed(), Types.DOUBLE);
+        statement.setString(first + 7, measurement.getGeohash());
+    }
+}
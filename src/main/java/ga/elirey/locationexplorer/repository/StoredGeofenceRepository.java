@@ -0,0 +1,9 @@
+package ga.elirey.locationexplorer.repository;
+
+import ga.elirey.locationexplorer.entity.StoredGeofence;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface StoredGeofenceRepository extends CrudRepository<StoredGeofence, String> {
+}
@@ -0,0 +1,43 @@
+package ga.elirey.locationexplorer.repository;
+
+import ga.elirey.locationexplorer.entity.UnitDailyRollup;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface UnitDailyRollupRepository extends CrudRepository<UnitDailyRollup, UnitDailyRollup.Id> {
+
+    /**
+     * Lock the rollups being updated, so that concurrent ingestions of the same unit do not lose updates. Only
+     * existing rows are locked, see {@link UnitDailyRollupWriter#insertMissing}.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<UnitDailyRollup> findByIdIn(Collection<UnitDailyRollup.Id> ids);
+
+    List<UnitDailyRollup> findByIdDayGreaterThanEqualAndIdDayLessThanEqualAndIdUnitIdAndIdContextId(LocalDate startDay, LocalDate endDay,
+                                                                                                   String unitId, String contextId);
+
+    List<UnitDailyRollup> findByIdDayGreaterThanEqualAndIdDayLessThanEqualAndIdContextId(LocalDate startDay, LocalDate endDay,
+                                                                                         String contextId);
+
+    List<UnitDailyRollup> findByIdDayGreaterThanEqualAndIdDayLessThanEqual(LocalDate startDay, LocalDate endDay);
+
+    /**
+     * One [unitId, contextId] row per track having measurements within a day but no rollup for it, such as the tracks
+     * stored before the rollups were maintained
+     */
+    @Query("select distinct m.id.unitId, m.id.contextId from UnitLocationMeasurement m"
+            + " where m.id.time >= :dayStart and m.id.time < :dayEnd and not exists (select r from UnitDailyRollup r"
+            + " where r.id.unitId = m.id.unitId and r.id.contextId = m.id.contextId and r.id.day = :day)")
+    List<Object[]> findTracksWithoutRollup(@Param("day") LocalDate day, @Param("dayStart") LocalDateTime dayStart,
+                                           @Param("dayEnd") LocalDateTime dayEnd);
+}
@@ -0,0 +1,70 @@
+package ga.elirey.locationexplorer.repository;
+
+import ga.elirey.locationexplorer.entity.UnitDailyRollup;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Create the missing daily rollups without failing on the ones a concurrent ingestion creates at the same time, so
+ * that they can all be locked and updated afterwards
+ */
+@Repository
+@RequiredArgsConstructor
+public class UnitDailyRollupWriter {
+
+    private static final String COLUMNS = "unit_id, context_id, rollup_day, point_count, distance, first_time, last_time,"
+            + " last_lat, last_lng, min_lat, max_lat, min_lng, max_lng, speed_sum, speed_count";
+
+    private static final String POSTGRES_INSERT_MISSING = "insert into unit_daily_rollup (" + COLUMNS + ") values"
+            + " (?, ?, ?, 0, 0, ?, ?, ?, ?, ?, ?, ?, ?, 0, 0) on conflict (unit_id, context_id, rollup_day) do nothing";
+    private static final String H2_INSERT_MISSING = "merge into unit_daily_rollup r using (select cast(? as varchar(255)) unit_id,"
+            + " cast(? as varchar(255)) context_id, cast(? as date) rollup_day) k"
+            + " on r.unit_id = k.unit_id and r.context_id = k.context_id and r.rollup_day = k.rollup_day"
+            + " when not matched then insert (" + COLUMNS + ") values"
+            + " (k.unit_id, k.context_id, k.rollup_day, 0, 0, ?, ?, ?, ?, ?, ?, ?, ?, 0, 0)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile String insertMissing;
+
+    /**
+     * Insert the rollups which do not exist yet, empty apart from their first position, and leave the others as they are
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void insertMissing(final Collection<UnitDailyRollup> rollups) {
+        jdbcTemplate.batchUpdate(getInsertMissing(), new ArrayList<>(rollups), rollups.size(), UnitDailyRollupWriter::setValues);
+    }
+
+    private String getInsertMissing() {
+        if (insertMissing == null) {
+            final String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                    connection.getMetaData().getDatabaseProductName());
+            insertMissing = "H2".equals(product) ? H2_INSERT_MISSING : POSTGRES_INSERT_MISSING;
+        }
+        return insertMissing;
+    }
+
+    private static void setValues(final PreparedStatement statement, final UnitDailyRollup rollup) throws SQLException {
+        statement.setString(1, rollup.getId().getUnitId());
+        statement.setString(2, rollup.getId().getContextId());
+        statement.setDate(3, Date.valueOf(rollup.getId().getDay()));
+        statement.setTimestamp(4, Timestamp.valueOf(rollup.getFirstTime()));
+        statement.setTimestamp(5, Timestamp.valueOf(rollup.getLastTime()));
+        statement.setDouble(6, rollup.getLastLatitude());
+        statement.setDouble(7, rollup.getLastLongitude());
+        statement.setDouble(8, rollup.getMinLatitude());
+        statement.setDouble(9, rollup.getMaxLatitude());
+        statement.setDouble(10, rollup.getMinLongitude());
+        statement.setDouble(11, rollup.getMaxLongitude());
+    }
+}
@@ -0,0 +1,68 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+import ga.elirey.locationexplorer.model.GPSPoint;
+import ga.elirey.locationexplorer.utils.BoundedExecutor;
+import ga.elirey.locationexplorer.utils.GeoHash;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.geojson.Feature;
+import org.geojson.FeatureCollection;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Find the measurements of all units within an area, through the geohash of each measurement
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AreaSearchService {
+
+    private final LocationPollerService pollerService;
+    private final LocationExplorerService explorerService;
+
+    @Qualifier("databaseExecutor")
+    private final BoundedExecutor databaseExecutor;
+
+    @Value("${location-explorer.geohash.max-query-cells:16}")
+    private int maxQueryCells;
+
+    /**
+     * Get every measurement within a bounding box and a time range.
+     * The box is covered by a few geohash ranges queried in parallel, then the candidates are checked against the
+     * exact box.
+     *
+     * @return the matching points as a geojson feature collection, ordered by time
+     */
+    public CompletableFuture<FeatureCollection> findInBoundingBoxAsync(final double minLatitude, final double minLongitude,
+                                                                       final double maxLatitude, final double maxLongitude,
+                                                                       final Long startDateMillis, final Long endDateMillis) {
+        final List<GeoHash.Range> ranges = GeoHash.coveringRanges(minLatitude, minLongitude, maxLatitude, maxLongitude, maxQueryCells);
+        log.debug("Searching area [{}, {}, {}, {}] through {} geohash range(s)", minLatitude, minLongitude, maxLatitude,
+                maxLongitude, ranges.size());
+
+        final List<CompletableFuture<List<UnitLocationMeasurement>>> candidates = ranges.stream()
+                .map(range -> databaseExecutor.supply(() -> pollerService.getLocationsInGeohashRange(range, startDateMillis, endDateMillis)))
+                .collect(Collectors.toList());
+
+        return CompletableFuture.allOf(candidates.toArray(new CompletableFuture<?>[0]))
+                .thenApply(done -> {
+                    final FeatureCollection features = new FeatureCollection();
+                    candidates.stream()
+                            .flatMap(candidate -> candidate.join().stream())
+                            .filter(measurement -> measurement.getLatitude() >= minLatitude && measurement.getLatitude() <= maxLatitude
+                                    && measurement.getLongitude() >= minLongitude && measurement.getLongitude() <= maxLongitude)
+                            .map(explorerService::map)
+                            .sorted(Comparator.comparing(GPSPoint::getTimestamp))
+                            .forEach(point -> features.add((Feature) point.toGeoJsonObject()));
+                    return features;
+                });
+    }
+}
@@ -0,0 +1,84 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.data.Encounter;
+import ga.elirey.locationexplorer.utils.BoundedExecutor;
+import ga.elirey.locationexplorer.utils.CoLocationFinder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * Find which units of a mission were close to each other, and when
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CoLocationService {
+
+    private final LocationPollerService pollerService;
+    @Qualifier("readOnlyTransactionTemplate")
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    @Qualifier("databaseExecutor")
+    private final BoundedExecutor databaseExecutor;
+    @Qualifier("trackFilteringExecutor")
+    private final BoundedExecutor trackFilteringExecutor;
+
+    /**
+     * Get the intervals during which two users of a mission were within a distance of each other.
+     * The positions are compared once per time bucket, using the last fix of each user in the bucket.
+     *
+     * @param maxDistanceInMeters two users closer than this are in contact
+     * @param bucketSeconds       the time resolution of the search
+     */
+    public CompletableFuture<List<Encounter>> findEncountersAsync(final String missionId, final double maxDistanceInMeters,
+                                                                  final long bucketSeconds, final Long startDateMillis,
+                                                                  final Long endDateMillis) {
+        final CoLocationFinder finder = new CoLocationFinder(maxDistanceInMeters, Math.max(1, bucketSeconds) * 1000);
+        return databaseExecutor.supply(() -> readOnlyTransactionTemplate.execute(status -> loadBuckets(finder, missionId,
+                startDateMillis, endDateMillis)))
+                .thenCompose(buckets -> trackFilteringExecutor.supply(() -> {
+                    final List<Encounter> encounters = finder.find(buckets.buckets, buckets.maxLatitude, trackFilteringExecutor);
+                    log.debug("Found {} encounter(s) within {}m in mission '{}' over {} time bucket(s)", encounters.size(),
+                            maxDistanceInMeters, missionId, buckets.buckets.size());
+                    return encounters;
+                }));
+    }
+
+    private Buckets loadBuckets(final CoLocationFinder finder, final String missionId,
+                                final Long startDateMillis, final Long endDateMillis) {
+        final Buckets buckets = new Buckets();
+        try (Stream<Object[]> rows = pollerService.streamPositions(missionId, startDateMillis, endDateMillis)) {
+            final Iterator<Object[]> iterator = rows.iterator();
+            CoLocationFinder.TimeBucket current = null;
+            while (iterator.hasNext()) {
+                final Object[] row = iterator.next();
+                final long time = ((LocalDateTime) row[1]).toInstant(ZoneOffset.UTC).toEpochMilli();
+                final double latitude = ((Number) row[2]).doubleValue();
+                final long bucketIndex = finder.bucketIndex(time);
+                if (current == null || current.getIndex() != bucketIndex) { // rows come ordered by time
+                    current = new CoLocationFinder.TimeBucket(bucketIndex);
+                    buckets.buckets.add(current);
+                }
+                current.add((String) row[0], latitude, ((Number) row[3]).doubleValue());
+                buckets.maxLatitude = Math.max(buckets.maxLatitude, Math.abs(latitude));
+            }
+        }
+        return buckets;
+    }
+
+    private static class Buckets {
+        private final List<CoLocationFinder.TimeBucket> buckets = new ArrayList<>();
+        private double maxLatitude;
+    }
+}
@@ -0,0 +1,230 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.data.TrackSummary;
+import ga.elirey.locationexplorer.entity.UnitDailyRollup;
+import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+import ga.elirey.locationexplorer.repository.LocationExplorerRepository;
+import ga.elirey.locationexplorer.repository.UnitDailyRollupRepository;
+import ga.elirey.locationexplorer.repository.UnitDailyRollupWriter;
+import ga.elirey.locationexplorer.utils.GeometryTools;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Per unit and per day aggregates of the measurements, so that overviews over long periods never read the raw
+ * measurements
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DailyRollupService {
+
+    private static final int DEFAULT_SUMMARY_DAYS = 10;
+
+    private final UnitDailyRollupRepository repository;
+    private final UnitDailyRollupWriter writer;
+    private final LocationExplorerRepository measurementRepository;
+
+    /**
+     * Add a batch of measurements to the rollups of their day, in the ingestion transaction, once they are written.
+     * The missing rollups are created first, so that concurrent ingestions of the same unit and day all lock the
+     * same rows instead of inserting them twice.
+     * A measurement older than the last one of its day is counted but does not change the travelled distance.
+     * A day with a measurement replacing a stored one is rebuilt from its stored measurements instead, since the
+     * replaced values cannot be taken out of its aggregates.
+     *
+     * @param inserted for each measurement, whether it was new rather than replacing a stored one
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void addToRollups(final List<UnitLocationMeasurement> measurements, final boolean[] inserted) {
+        final Map<UnitDailyRollup.Id, List<UnitLocationMeasurement>> measurementsByRollup = measurements.stream()
+                .collect(Collectors.groupingBy(DailyRollupService::rollupIdOf));
+        measurementsByRollup.values().forEach(rollupMeasurements ->
+                rollupMeasurements.sort(Comparator.comparing(measurement -> measurement.getId().getTime())));
+        final Set<UnitDailyRollup.Id> rebuiltIds = new HashSet<>();
+        for (int i = 0; i < measurements.size(); i++) {
+            if (!inserted[i]) {
+                rebuiltIds.add(rollupIdOf(measurements.get(i)));
+            }
+        }
+        writer.insertMissing(measurementsByRollup.entrySet().stream()
+                .map(entry -> newRollup(entry.getKey(), entry.getValue().get(0)))
+                .collect(Collectors.toList()));
+        final Map<UnitDailyRollup.Id, UnitDailyRollup> rollups = repository.findByIdIn(measurementsByRollup.keySet()).stream()
+                .collect(Collectors.toMap(UnitDailyRollup::getId, Function.identity()));
+
+        measurementsByRollup.forEach((rollupId, rollupMeasurements) -> {
+            final UnitDailyRollup rollup = rollups.get(rollupId);
+            if (rebuiltIds.contains(rollupId)) {
+                rebuild(rollup, findDayMeasurements(rollupId));
+            } else {
+                rollupMeasurements.forEach(measurement -> add(rollup, measurement));
+            }
+        });
+        repository.saveAll(rollups.values());
+        log.debug("Updated {} daily rollup(s) with {} measurement(s), {} rebuilt", rollups.size(), measurements.size(),
+                rebuiltIds.size());
+    }
+
+    /**
+     * Create or compute again the rollups of days from their stored measurements, such as the days stored before the
+     * rollups were maintained
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void rebuildRollups(final Collection<UnitDailyRollup.Id> ids) {
+        final Map<UnitDailyRollup.Id, List<UnitLocationMeasurement>> measurementsByRollup = new HashMap<>();
+        ids.forEach(id -> {
+            final List<UnitLocationMeasurement> dayMeasurements = findDayMeasurements(id);
+            if (!dayMeasurements.isEmpty()) {
+                measurementsByRollup.put(id, dayMeasurements);
+            }
+        });
+        if (measurementsByRollup.isEmpty()) {
+            return;
+        }
+        writer.insertMissing(measurementsByRollup.entrySet().stream()
+                .map(entry -> newRollup(entry.getKey(), entry.getValue().get(0)))
+                .collect(Collectors.toList()));
+        final List<UnitDailyRollup> rollups = repository.findByIdIn(measurementsByRollup.keySet());
+        rollups.forEach(rollup -> rebuild(rollup, measurementsByRollup.get(rollup.getId())));
+        repository.saveAll(rollups);
+    }
+
+    /**
+     * Compute a rollup again from the stored measurements of its day, in time order
+     */
+    private void rebuild(final UnitDailyRollup rollup, final List<UnitLocationMeasurement> dayMeasurements) {
+        final UnitDailyRollup empty = newRollup(rollup.getId(), dayMeasurements.get(0));
+        dayMeasurements.forEach(measurement -> add(empty, measurement));
+        rollup.setPointCount(empty.getPointCount());
+        rollup.setDistanceInMeters(empty.getDistanceInMeters());
+        rollup.setFirstTime(empty.getFirstTime());
+        rollup.setLastTime(empty.getLastTime());
+        rollup.setLastLatitude(empty.getLastLatitude());
+        rollup.setLastLongitude(empty.getLastLongitude());
+        rollup.setMinLatitude(empty.getMinLatitude());
+        rollup.setMaxLatitude(empty.getMaxLatitude());
+        rollup.setMinLongitude(empty.getMinLongitude());
+        rollup.setMaxLongitude(empty.getMaxLongitude());
+        rollup.setSpeedSum(empty.getSpeedSum());
+        rollup.setSpeedCount(empty.getSpeedCount());
+    }
+
+    private List<UnitLocationMeasurement> findDayMeasurements(final UnitDailyRollup.Id id) {
+        return measurementRepository.findByIdUnitIdAndIdContextIdAndIdTimeGreaterThanEqualAndIdTimeLessThanOrderByIdTimeAsc(
+                id.getUnitId(), id.getContextId(), id.getDay().atStartOfDay(), id.getDay().plusDays(1).atStartOfDay());
+    }
+
+    /**
+     * Summarize the tracks of a mission over a date range, for one user or all of them
+     *
+     * @param userId the user, all users of the mission if null
+     * @return one summary per user having measurements in the range
+     */
+    @Transactional(readOnly = true)
+    public List<TrackSummary> summarize(final String userId, final String missionId,
+                                        final Long startDateMillis, final Long endDateMillis) {
+        final LocalDate endDay = endDateMillis == null || endDateMillis == 0 ? LocalDate.now(ZoneId.of("UTC")) : toDay(endDateMillis);
+        final LocalDate startDay = startDateMillis == null || startDateMillis == 0 ? endDay.minusDays(DEFAULT_SUMMARY_DAYS) : toDay(startDateMillis);
+        final List<UnitDailyRollup> rollups = userId == null
+                ? repository.findByIdDayGreaterThanEqualAndIdDayLessThanEqualAndIdContextId(startDay, endDay, missionId)
+                : repository.findByIdDayGreaterThanEqualAndIdDayLessThanEqualAndIdUnitIdAndIdContextId(startDay, endDay, userId, missionId);
+
+        return rollups.stream()
+                .collect(Collectors.groupingBy(rollup -> rollup.getId().getUnitId(), TreeMap::new, Collectors.toList()))
+                .values().stream()
+                .map(unitRollups -> combine(unitRollups, startDay, endDay))
+                .collect(Collectors.toList());
+    }
+
+    private static TrackSummary combine(final List<UnitDailyRollup> rollups, final LocalDate startDay, final LocalDate endDay) {
+        long pointCount = 0;
+        double distance = 0;
+        long durationInSeconds = 0;
+        double speedSum = 0;
+        long speedCount = 0;
+        final double[] boundingBox = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        for (final UnitDailyRollup rollup : rollups) {
+            pointCount += rollup.getPointCount();
+            distance += rollup.getDistanceInMeters();
+            durationInSeconds += Duration.between(rollup.getFirstTime(), rollup.getLastTime()).getSeconds();
+            speedSum += rollup.getSpeedSum();
+            speedCount += rollup.getSpeedCount();
+            boundingBox[0] = Math.min(boundingBox[0], rollup.getMinLatitude());
+            boundingBox[1] = Math.min(boundingBox[1], rollup.getMinLongitude());
+            boundingBox[2] = Math.max(boundingBox[2], rollup.getMaxLatitude());
+            boundingBox[3] = Math.max(boundingBox[3], rollup.getMaxLongitude());
+        }
+        final UnitDailyRollup.Id firstId = rollups.get(0).getId();
+        return TrackSummary.builder()
+                .unitId(firstId.getUnitId())
+                .contextId(firstId.getContextId())
+                .startDay(startDay.toString())
+                .endDay(endDay.toString())
+                .activeDays(rollups.size())
+                .pointCount(pointCount)
+                .travelledDistanceInMeters(Math.ceil(distance))
+                .durationInSeconds(durationInSeconds)
+                .averageSpeed(speedCount == 0 ? 0.0 : speedSum / speedCount)
+                .boundingBox(boundingBox)
+                .build();
+    }
+
+    private static UnitDailyRollup newRollup(final UnitDailyRollup.Id id, final UnitLocationMeasurement first) {
+        return UnitDailyRollup.builder()
+                .id(id)
+                .firstTime(first.getId().getTime())
+                .lastTime(first.getId().getTime())
+                .lastLatitude(first.getLatitude())
+                .lastLongitude(first.getLongitude())
+                .minLatitude(first.getLatitude())
+                .maxLatitude(first.getLatitude())
+                .minLongitude(first.getLongitude())
+                .maxLongitude(first.getLongitude())
+                .build();
+    }
+
+    private static void add(final UnitDailyRollup rollup, final UnitLocationMeasurement measurement) {
+        final double latitude = measurement.getLatitude();
+        final double longitude = measurement.getLongitude();
+        rollup.setPointCount(rollup.getPointCount() + 1);
+        rollup.setMinLatitude(Math.min(rollup.getMinLatitude(), latitude));
+        rollup.setMaxLatitude(Math.max(rollup.getMaxLatitude(), latitude));
+        rollup.setMinLongitude(Math.min(rollup.getMinLongitude(), longitude));
+        rollup.setMaxLongitude(Math.max(rollup.getMaxLongitude(), longitude));
+        if (measurement.getSpeed() != null) {
+            rollup.setSpeedSum(rollup.getSpeedSum() + measurement.getSpeed());
+            rollup.setSpeedCount(rollup.getSpeedCount() + 1);
+        }
+        if (measurement.getId().getTime().isBefore(rollup.getFirstTime())) {
+            rollup.setFirstTime(measurement.getId().getTime());
+        }
+        if (measurement.getId().getTime().isAfter(rollup.getLastTime())) {
+            rollup.setDistanceInMeters(rollup.getDistanceInMeters()
+                    + GeometryTools.distanceInMeters(rollup.getLastLatitude(), rollup.getLastLongitude(), latitude, longitude));
+            rollup.setLastTime(measurement.getId().getTime());
+            rollup.setLastLatitude(latitude);
+            rollup.setLastLongitude(longitude);
+        }
+    }
+
+    private static UnitDailyRollup.Id rollupIdOf(final UnitLocationMeasurement measurement) {
+        return new UnitDailyRollup.Id(measurement.getId().getUnitId(), measurement.getId().getContextId(),
+                measurement.getId().getTime().toLocalDate());
+    }
+
+    private static LocalDate toDay(final long dateMillis) {
+        return Instant.ofEpochMilli(dateMillis).atZone(ZoneId.of("UTC")).toLocalDate();
+    }
+}
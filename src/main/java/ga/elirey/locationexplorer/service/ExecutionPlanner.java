@@ -0,0 +1,162 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.data.ExecutionPlan;
+import ga.elirey.locationexplorer.data.ExecutionStrategy;
+import ga.elirey.locationexplorer.exception.ServiceOverloadedException;
+import ga.elirey.locationexplorer.utils.SpillableTrackBuffer;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Choose how to read a track from the number of its locations, counted before reading them, so that a single request
+ * over a long time range cannot exhaust the memory. The heap a plan needs is also reserved from a budget shared by all
+ * the requests, so that many concurrent requests cannot exhaust it either.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ExecutionPlanner {
+
+    private final LocationPollerService pollerService;
+    private final MeterRegistry registry;
+
+    @Value("${location-explorer.planner.entity-bytes-per-point:600}")
+    private long entityBytesPerPoint;
+
+    @Value("${location-explorer.planner.point-bytes-per-point:200}")
+    private long pointBytesPerPoint;
+
+    @Value("${location-explorer.planner.in-memory-budget-bytes:67108864}")
+    private long inMemoryBudgetBytes;
+
+    @Value("${location-explorer.planner.streaming-budget-bytes:268435456}")
+    private long streamingBudgetBytes;
+
+    @Value("${location-explorer.planner.max-downsampling-step:100}")
+    private int maxDownsamplingStep;
+
+    @Value("${location-explorer.planner.shared-budget-bytes:536870912}")
+    private long sharedBudgetBytes;
+
+    @Value("${location-explorer.spill.threshold-bytes:8388608}")
+    private long spillThresholdBytes;
+
+    @Value("${location-explorer.spill.max-points:16777216}")
+    private long maxSpilledPoints;
+
+    @Value("${location-explorer.executors.retry-after-seconds:5}")
+    private long retryAfterSeconds;
+
+    private final AtomicLong reservedBytes = new AtomicLong();
+
+    /**
+     * Heap reserved by the plan of a request, released when the request completes
+     */
+    public Reservation newReservation() {
+        return new Reservation();
+    }
+
+    /**
+     * <ul>
+     * <li>entities fitting the in-memory budget are loaded at once,</li>
+     * <li>mapped points fitting the streaming budget are streamed, without holding the entities, and also the tracks
+     * that would be loaded at once when the shared budget has no room left for their entities,</li>
+     * <li>larger tracks only filtered by the path filters are streamed too, up to the max spilled points: they are
+     * buffered on disk and only the points kept by the filters are mapped, within the streaming budget,</li>
+     * <li>otherwise the database keeps one location out of the step bringing the points within the streaming budget,</li>
+     * <li>unless that step exceeds the max downsampling step, then the request is rejected.</li>
+     * </ul>
+     *
+     * @param isFilteredInBuffer whether the requested filters run on the buffered track, see {@link #fitsStreamingBudget}
+     * @param reservation        receives the heap the plan needs, taken from the shared budget
+     * @throws ServiceOverloadedException if the shared budget has no room left for the plan
+     */
+    public ExecutionPlan plan(final String userId, final String missionId, final long startDateMillis, final long endDateMillis,
+                              final boolean isFilteredInBuffer, final Reservation reservation) {
+        final long count = pollerService.countLocations(userId, missionId, startDateMillis, endDateMillis);
+        final ExecutionPlan plan;
+        if (count * entityBytesPerPoint <= inMemoryBudgetBytes && reservation.reserve(count * entityBytesPerPoint)) {
+            plan = plan(ExecutionStrategy.IN_MEMORY, count, count * entityBytesPerPoint, 1);
+        } else if (count * pointBytesPerPoint <= streamingBudgetBytes) {
+            plan = plan(ExecutionStrategy.STREAMING, count, count * pointBytesPerPoint, 1);
+        } else if (isFilteredInBuffer && count <= maxSpilledPoints) {
+            // the buffers of the devices and of the merged track until they spill, then the kept points
+            plan = plan(ExecutionStrategy.STREAMING, count,
+                    2 * SpillableTrackBuffer.maxHeapBytes(spillThresholdBytes) + streamingBudgetBytes, 1);
+        } else {
+            final long step = (count * pointBytesPerPoint + streamingBudgetBytes - 1) / streamingBudgetBytes;
+            plan = step <= maxDownsamplingStep
+                    ? plan(ExecutionStrategy.DB_DOWNSAMPLED, count, count / step * pointBytesPerPoint, (int) step)
+                    : plan(ExecutionStrategy.REJECTED, count, count * pointBytesPerPoint, (int) Math.min(step, Integer.MAX_VALUE));
+        }
+        log.debug("Planned {} for the {} location(s) of user '{}' in mission '{}' (~{} bytes, step {})", plan.getStrategy(),
+                count, userId, missionId, plan.getEstimatedBytes(), plan.getDownsamplingStep());
+        DistributionSummary.builder("location.explorer.plan.points")
+                .description("Locations counted by the planner, per chosen strategy")
+                .tag("strategy", plan.getStrategy().name())
+                .register(registry)
+                .record(count);
+        if (plan.getStrategy() != ExecutionStrategy.IN_MEMORY && plan.getStrategy() != ExecutionStrategy.REJECTED
+                && !reservation.reserve(plan.getEstimatedBytes())) {
+            throw new ServiceOverloadedException(String.format("No memory left to read %d location(s) of user '%s'",
+                    count, userId), retryAfterSeconds);
+        }
+        return plan;
+    }
+
+    /**
+     * Whether the points kept by the filters of a streamed track fit the streaming budget, they are mapped on the heap
+     */
+    public boolean fitsStreamingBudget(final long points) {
+        return points * pointBytesPerPoint <= streamingBudgetBytes;
+    }
+
+    private static ExecutionPlan plan(final ExecutionStrategy strategy, final long count, final long bytes, final int step) {
+        return ExecutionPlan.builder()
+                .strategy(strategy)
+                .estimatedPoints(count)
+                .estimatedBytes(bytes)
+                .downsamplingStep(step)
+                .build();
+    }
+
+    /**
+     * Heap reserved from the shared budget, released once when closed. A reservation closed before anything was
+     * reserved, e.g. by a request that timed out while its plan was made, refuses to reserve anything afterwards.
+     */
+    public final class Reservation implements AutoCloseable {
+
+        private long bytes;
+        private boolean isClosed;
+
+        private synchronized boolean reserve(final long requestedBytes) {
+            if (isClosed) {
+                return false;
+            }
+            long reserved;
+            do {
+                reserved = reservedBytes.get();
+                if (reserved + requestedBytes > sharedBudgetBytes && requestedBytes > 0) {
+                    return false;
+                }
+            } while (!reservedBytes.compareAndSet(reserved, reserved + requestedBytes));
+            bytes += requestedBytes;
+            return true;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!isClosed) {
+                isClosed = true;
+                reservedBytes.addAndGet(-bytes);
+                bytes = 0;
+            }
+        }
+    }
+}
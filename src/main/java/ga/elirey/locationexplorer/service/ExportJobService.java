@@ -0,0 +1,452 @@
+package ga.elirey.locationexplorer.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ga.elirey.locationexplorer.data.ExportFormat;
+import ga.elirey.locationexplorer.data.ExportJobSpec;
+import ga.elirey.locationexplorer.data.ExportJobStatus;
+import ga.elirey.locationexplorer.data.ExportState;
+import ga.elirey.locationexplorer.exception.ExportJobNotFoundException;
+import ga.elirey.locationexplorer.exception.ServiceOverloadedException;
+import ga.elirey.locationexplorer.model.GPSTrack;
+import ga.elirey.locationexplorer.utils.BoundedExecutor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Export the tracks of all units of a context to files, one per unit and format, in the background.
+ * <p>
+ * Each job has its folder holding its spec, the units to export and the units already exported, appended as soon as
+ * their files are written. A job stopped before the end is resumed from that checkpoint, skipping the exported units.
+ * Ended jobs are kept in memory for a while, then their status is read back from their folder.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ExportJobService {
+
+    private static final String SPEC_FILE = "job.json";
+    private static final String UNITS_FILE = "units";
+    private static final String CHECKPOINT_FILE = "exported-units";
+    private static final String STATE_FILE = "state";
+    private static final String FILES_FOLDER = "files";
+    private static final String ARCHIVE_FILE = "export.zip";
+    private static final int MAX_ERRORS = 100;
+
+    private final LocationExplorerService explorerService;
+    private final LocationPollerService pollerService;
+    private final ObjectMapper objectMapper;
+
+    @Qualifier("exportExecutor")
+    private final BoundedExecutor exportExecutor;
+
+    @Value("${location-explorer.exports.directory:${java.io.tmpdir}/location-explorer-exports}")
+    private String exportsDirectory;
+
+    @Value("${location-explorer.exports.concurrency:4}")
+    private int concurrency;
+
+    @Value("${location-explorer.exports.retention-millis:3600000}")
+    private long retentionMillis;
+
+    // jobs running or recently ended, the others are read from their folder
+    private final ConcurrentMap<String, ExportJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Create a job and start it, the units of the context are listed once the job is started
+     *
+     * @throws ServiceOverloadedException if the export pool cannot take the job, which is then dropped
+     */
+    public ExportJobStatus start(final ExportJobSpec spec) {
+        final String jobId = UUID.randomUUID().toString();
+        try {
+            final Path folder = jobFolder(jobId);
+            Files.createDirectories(folder.resolve(FILES_FOLDER));
+            objectMapper.writeValue(folder.resolve(SPEC_FILE).toFile(), spec);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.info("Starting export job '{}' of mission '{}' in {} format(s)", jobId, spec.getContextId(), spec.getFormats());
+        try {
+            return launch(jobId, spec);
+        } catch (final ServiceOverloadedException e) {
+            deleteFolder(jobId); // the job id is not returned, nothing can resume it
+            throw e;
+        }
+    }
+
+    /**
+     * Start again a job which is not running, exporting only the units missing from its checkpoint
+     *
+     * @throws ExportJobNotFoundException if there is no such job
+     * @throws ServiceOverloadedException if the export pool cannot take the job, which is left as it was
+     */
+    public ExportJobStatus resume(final String jobId) {
+        final ExportJobSpec spec = readSpec(jobId);
+        log.info("Resuming export job '{}' of mission '{}'", jobId, spec.getContextId());
+        return launch(jobId, spec);
+    }
+
+    /**
+     * @throws ExportJobNotFoundException if there is no such job
+     */
+    public ExportJobStatus getStatus(final String jobId) {
+        evictEndedJobs();
+        final ExportJob job = jobs.get(jobId);
+        if (job != null) {
+            return job.toStatus();
+        }
+        final ExportJobSpec spec = readSpec(jobId);
+        final Path folder = jobFolder(jobId);
+        try {
+            final ExportState state = Files.exists(folder.resolve(STATE_FILE))
+                    ? ExportState.valueOf(new String(Files.readAllBytes(folder.resolve(STATE_FILE)), StandardCharsets.UTF_8).trim())
+                    : ExportState.INTERRUPTED;
+            final int totalUnits = readLines(folder.resolve(UNITS_FILE)).size();
+            final int exportedUnits = readLines(folder.resolve(CHECKPOINT_FILE)).size();
+            return ExportJobStatus.builder()
+                    .jobId(jobId)
+                    .contextId(spec.getContextId())
+                    .state(state)
+                    .totalUnits(totalUnits)
+                    .exportedUnits(exportedUnits)
+                    .failedUnits(state == ExportState.COMPLETED_WITH_ERRORS ? totalUnits - exportedUnits : 0)
+                    .errors(Collections.emptyList())
+                    .archive(archiveName(spec, state))
+                    .build();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The archive of a completed zipped job
+     *
+     * @throws ExportJobNotFoundException if there is no such job or no archive yet
+     */
+    public Path getArchive(final String jobId) {
+        final ExportJobSpec spec = readSpec(jobId);
+        final Path archive = jobFolder(jobId).resolve(ARCHIVE_FILE);
+        if (!spec.isZipped() || isRunning(jobs.get(jobId)) || !Files.exists(archive)) {
+            throw new ExportJobNotFoundException(jobId);
+        }
+        return archive;
+    }
+
+    /**
+     * Run the job on the export pool, or fail right away when the pool rejects it, without touching the job folder
+     */
+    private ExportJobStatus launch(final String jobId, final ExportJobSpec spec) {
+        evictEndedJobs();
+        final ExportJob job = new ExportJob(jobId, spec);
+        final ExportJob current = jobs.compute(jobId, (id, previous) -> isRunning(previous) ? previous : job);
+        if (current != job) {
+            return current.toStatus();
+        }
+        final CompletableFuture<ExportJob> run = exportExecutor.supply(() -> {
+            job.started = true;
+            prepare(job);
+            exportUnits(job);
+            return job;
+        });
+        // the export pool has no timeout, a failure before the job started can only be a rejection
+        final Throwable rejection = run.handle((result, throwable) -> throwable).getNow(null);
+        if (!job.started && rejection instanceof ServiceOverloadedException) {
+            jobs.remove(jobId, job);
+            log.warn("Export job '{}' rejected, too many exports are running", jobId);
+            throw (ServiceOverloadedException) rejection;
+        }
+        run.whenComplete((result, throwable) -> finish(job, throwable));
+        return job.toStatus();
+    }
+
+    /**
+     * Forget the jobs ended for longer than the retention, their status is then read back from their folder
+     */
+    private void evictEndedJobs() {
+        final long now = System.nanoTime();
+        jobs.forEach((jobId, job) -> {
+            if (!isRunning(job) && now - job.endNanos > TimeUnit.MILLISECONDS.toNanos(retentionMillis)) {
+                jobs.remove(jobId, job);
+            }
+        });
+    }
+
+    /**
+     * List the units to export on the first run, then drop those already in the checkpoint
+     */
+    private void prepare(final ExportJob job) {
+        try {
+            final Path folder = jobFolder(job.jobId);
+            Files.deleteIfExists(folder.resolve(STATE_FILE));
+            final Path unitsFile = folder.resolve(UNITS_FILE);
+            if (!Files.exists(unitsFile)) {
+                final List<String> unitIds = pollerService.getUnitIds(job.spec.getContextId(), job.spec.getStartDate(),
+                        job.spec.getEndDate());
+                final Path listing = folder.resolve(UNITS_FILE + ".tmp");
+                Files.write(listing, unitIds, StandardCharsets.UTF_8);
+                Files.move(listing, unitsFile, StandardCopyOption.ATOMIC_MOVE);
+            }
+            final List<String> unitIds = readLines(unitsFile);
+            final Set<String> exported = new HashSet<>(readLines(folder.resolve(CHECKPOINT_FILE)));
+            job.totalUnits = unitIds.size();
+            job.exportedUnits.set(exported.size());
+            unitIds.stream().filter(unitId -> !exported.contains(unitId)).forEach(job.pendingUnits::add);
+            job.checkpoint = Files.newBufferedWriter(folder.resolve(CHECKPOINT_FILE), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            job.startNanos = System.nanoTime();
+            log.info("Export job '{}' has {} unit(s) to export out of {}", job.jobId, job.pendingUnits.size(), job.totalUnits);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Run as many workers as the job concurrency, each one taking the next pending unit once done with the previous one.
+     * The calling thread is one of them.
+     */
+    private void exportUnits(final ExportJob job) {
+        final List<Supplier<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, concurrency); i++) {
+            workers.add(() -> {
+                for (String unitId = job.pendingUnits.poll(); unitId != null; unitId = job.pendingUnits.poll()) {
+                    try {
+                        exportUnit(job, unitId);
+                    } catch (final RuntimeException e) {
+                        job.failedUnits.incrementAndGet();
+                        if (job.errors.size() < MAX_ERRORS) {
+                            job.errors.add(String.format("%s: %s", unitId, e.getMessage()));
+                        }
+                        log.warn("Could not export unit '{}' of export job '{}'", unitId, job.jobId, e);
+                    }
+                }
+                return null;
+            });
+        }
+        exportExecutor.invokeAll(workers);
+    }
+
+    /**
+     * Write the files of a unit through temporary files moved in place, then add the unit to the checkpoint, so that a
+     * unit in the checkpoint always has complete files. The whole track is exported, it is never downsampled.
+     */
+    private void exportUnit(final ExportJob job, final String unitId) {
+        final Path files = jobFolder(job.jobId).resolve(FILES_FOLDER);
+        explorerService.writeFullTrack(unitId, job.spec.getContextId(), job.spec.getStartDate(), job.spec.getEndDate(),
+                job.spec.getFilterOptions(), track -> {
+                    try {
+                        for (final ExportFormat format : job.spec.getFormats()) {
+                            final Path file = files.resolve(fileName(unitId, format));
+                            final Path temporaryFile = files.resolve(file.getFileName() + ".tmp");
+                            write(track, format, job.spec, temporaryFile);
+                            job.bytesWritten.addAndGet(Files.size(temporaryFile));
+                            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                        }
+                    } catch (final IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+        try {
+            synchronized (job) {
+                job.checkpoint.write(unitId);
+                job.checkpoint.newLine();
+                job.checkpoint.flush();
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        job.exportedUnits.incrementAndGet();
+        job.exportedInRun.incrementAndGet();
+    }
+
+    /**
+     * Serialize the track straight to the file, without holding the whole document in memory
+     */
+    private static void write(final GPSTrack track, final ExportFormat format, final ExportJobSpec spec,
+                              final Path file) throws IOException {
+        switch (format) {
+            case GPX:
+                // the GPX writer encodes the document itself, it takes a byte stream
+                try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(file))) {
+                    track.writeGpx(output);
+                }
+                break;
+            case GEOJSON:
+            default:
+                try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                    track.writeGeoJson(writer, spec.getFilterOptions().isWayPointIncluded());
+                }
+        }
+    }
+
+    private void finish(final ExportJob job, final Throwable throwable) {
+        ExportState state;
+        if (throwable != null) {
+            log.error("Export job '{}' failed", job.jobId, throwable);
+            state = ExportState.FAILED;
+        } else {
+            state = job.failedUnits.get() > 0 ? ExportState.COMPLETED_WITH_ERRORS : ExportState.COMPLETED;
+        }
+        try {
+            if (job.checkpoint != null) {
+                job.checkpoint.close();
+            }
+            if (state != ExportState.FAILED && job.spec.isZipped()) {
+                zip(job);
+            }
+        } catch (final IOException | UncheckedIOException e) {
+            log.error("Could not complete export job '{}'", job.jobId, e);
+            state = ExportState.FAILED;
+        }
+        try {
+            Files.write(jobFolder(job.jobId).resolve(STATE_FILE), state.name().getBytes(StandardCharsets.UTF_8));
+        } catch (final IOException e) {
+            log.error("Could not save the state of export job '{}'", job.jobId, e);
+        }
+        job.endNanos = System.nanoTime();
+        job.state = state;
+        log.info("Export job '{}' ended {}: {} unit(s) exported, {} failed, {} bytes written", job.jobId, state,
+                job.exportedUnits.get(), job.failedUnits.get(), job.bytesWritten.get());
+    }
+
+    private void zip(final ExportJob job) throws IOException {
+        final Path folder = jobFolder(job.jobId);
+        final Path archive = folder.resolve(ARCHIVE_FILE);
+        final Path temporaryArchive = folder.resolve(archive.getFileName() + ".tmp");
+        try (OutputStream output = Files.newOutputStream(temporaryArchive);
+             ZipOutputStream zip = new ZipOutputStream(output);
+             DirectoryStream<Path> files = Files.newDirectoryStream(folder.resolve(FILES_FOLDER), "*.{gpx,geojson}")) {
+            for (final Path file : files) {
+                zip.putNextEntry(new ZipEntry(file.getFileName().toString()));
+                Files.copy(file, zip);
+                zip.closeEntry();
+            }
+        }
+        Files.move(temporaryArchive, archive, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void deleteFolder(final String jobId) {
+        try (Stream<Path> paths = Files.walk(jobFolder(jobId))) {
+            paths.sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (final IOException e) {
+            log.warn("Could not delete the folder of export job '{}'", jobId, e);
+        }
+    }
+
+    private static boolean isRunning(final ExportJob job) {
+        return job != null && job.state == ExportState.RUNNING;
+    }
+
+    private ExportJobSpec readSpec(final String jobId) {
+        final Path specFile = jobFolder(jobId).resolve(SPEC_FILE);
+        if (!Files.exists(specFile)) {
+            throw new ExportJobNotFoundException(jobId);
+        }
+        try {
+            return objectMapper.readValue(specFile.toFile(), ExportJobSpec.class);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path jobFolder(final String jobId) {
+        final Path root = Paths.get(exportsDirectory);
+        final Path folder = root.resolve(jobId).normalize();
+        if (!folder.getParent().equals(root.normalize())) {
+            throw new ExportJobNotFoundException(jobId);
+        }
+        return folder;
+    }
+
+    private static List<String> readLines(final Path file) throws IOException {
+        return Files.exists(file) ? Files.readAllLines(file, StandardCharsets.UTF_8) : Collections.emptyList();
+    }
+
+    private static String fileName(final String unitId, final ExportFormat format) throws UnsupportedEncodingException {
+        return URLEncoder.encode(unitId, StandardCharsets.UTF_8.name()) + "." + format.getExtension();
+    }
+
+    private static String archiveName(final ExportJobSpec spec, final ExportState state) {
+        return spec.isZipped() && (state == ExportState.COMPLETED || state == ExportState.COMPLETED_WITH_ERRORS)
+                ? ARCHIVE_FILE : null;
+    }
+
+    private static final class ExportJob {
+
+        private final String jobId;
+        private final ExportJobSpec spec;
+        private final Queue<String> pendingUnits = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger exportedUnits = new AtomicInteger();
+        private final AtomicInteger exportedInRun = new AtomicInteger();
+        private final AtomicInteger failedUnits = new AtomicInteger();
+        private final AtomicLong bytesWritten = new AtomicLong();
+        private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        private volatile int totalUnits;
+        private volatile long startNanos;
+        private volatile long endNanos;
+        private volatile ExportState state = ExportState.RUNNING;
+        private volatile boolean started;
+        private BufferedWriter checkpoint;
+
+        private ExportJob(final String jobId, final ExportJobSpec spec) {
+            this.jobId = jobId;
+            this.spec = spec;
+        }
+
+        private ExportJobStatus toStatus() {
+            final double elapsedSeconds = startNanos == 0 ? 0 : ((endNanos == 0 ? System.nanoTime() : endNanos) - startNanos) / 1e9;
+            final double unitsPerSecond = elapsedSeconds > 0 ? exportedInRun.get() / elapsedSeconds : 0;
+            final int remainingUnits = totalUnits - exportedUnits.get() - failedUnits.get();
+            return ExportJobStatus.builder()
+                    .jobId(jobId)
+                    .contextId(spec.getContextId())
+                    .state(state)
+                    .totalUnits(totalUnits)
+                    .exportedUnits(exportedUnits.get())
+                    .failedUnits(failedUnits.get())
+                    .errors(new ArrayList<>(errors))
+                    .bytesWritten(bytesWritten.get())
+                    .unitsPerSecond(unitsPerSecond)
+                    .bytesPerSecond(elapsedSeconds > 0 ? bytesWritten.get() / elapsedSeconds : 0)
+                    .etaSeconds(unitsPerSecond > 0 ? (long) Math.ceil(remainingUnits / unitsPerSecond) : null)
+                    .archive(archiveName(spec, state))
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.data.TrackKey;
+import ga.elirey.locationexplorer.entity.StoredGeofence;
+import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+import ga.elirey.locationexplorer.event.GeofenceTransitionEvent;
+import ga.elirey.locationexplorer.exception.InvalidGeofenceException;
+import ga.elirey.locationexplorer.format.LocationStatus;
+import ga.elirey.locationexplorer.model.Geofence;
+import ga.elirey.locationexplorer.repository.StoredGeofenceRepository;
+import ga.elirey.locationexplorer.utils.GeometryTools;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Compute the geofencing status of each ingested measurement against the registered geofences.
+ * <p>
+ * Geofences are bucketed in a regular lat/lng grid by their bounding box widened by the approach distance, so a
+ * measurement is only tested against the few fences of its cell, after a bounding box check.
+ * The last status of each unit is kept to detect and publish transitions, along with the time it entered the geofence
+ * it is in: a unit has only arrived once it stayed in a geofence for the dwell duration, or as soon as it enters a
+ * destination geofence. Within a transaction the unit states are only staged, they are applied and the transitions
+ * published once the measurements are committed.
+ * The geofences are stored, and indexed again at startup.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class GeofenceEngine {
+
+    private static final double METERS_PER_DEGREE = 111_320.0;
+    private static final int MAX_CELLS_PER_GEOFENCE = 10_000;
+    private static final PreparedGeofence[] NO_GEOFENCE = new PreparedGeofence[0];
+
+    private final ApplicationEventPublisher eventPublisher;
+    private final StoredGeofenceRepository geofenceRepository;
+
+    private final ConcurrentMap<String, PreparedGeofence> geofences = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, PreparedGeofence[]> cells = new ConcurrentHashMap<>();
+    private final List<PreparedGeofence> largeGeofences = new CopyOnWriteArrayList<>(); // too large to be bucketed
+    private final ConcurrentMap<TrackKey, UnitState> unitStates = new ConcurrentHashMap<>();
+
+    @Value("${location-explorer.geofencing.cell-size-degrees:0.05}")
+    private double cellSizeDegrees;
+
+    @Value("${location-explorer.geofencing.approach-distance-meters:500}")
+    private double approachDistanceInMeters;
+
+    @Value("${location-explorer.geofencing.stationary-speed:0.5}")
+    private double stationarySpeed;
+
+    @Value("${location-explorer.geofencing.arrival-dwell-millis:300000}")
+    private long arrivalDwellMillis;
+
+    @PostConstruct
+    public void loadGeofences() {
+        geofenceRepository.findAll().forEach(stored -> put(new PreparedGeofence(stored.toGeofence(), approachDistanceInMeters)));
+        log.info("Loaded {} geofence(s)", geofences.size());
+    }
+
+    /**
+     * Add a geofence, replacing the one with the same id if any. The new geofence is indexed before the replaced one is
+     * removed, so that a concurrent evaluation always finds one of them.
+     */
+    public void register(final Geofence geofence) {
+        final PreparedGeofence prepared = new PreparedGeofence(geofence, approachDistanceInMeters);
+        geofenceRepository.save(StoredGeofence.of(geofence));
+        put(prepared);
+    }
+
+    private void put(final PreparedGeofence prepared) {
+        geofences.compute(prepared.geofence.getId(), (id, replaced) -> {
+            index(prepared);
+            if (replaced != null) {
+                unindex(replaced);
+            }
+            return prepared;
+        });
+    }
+
+    public boolean remove(final String geofenceId) {
+        if (geofenceId == null || !geofenceRepository.existsById(geofenceId)) {
+            return false;
+        }
+        geofenceRepository.deleteById(geofenceId);
+        final PreparedGeofence removed = geofences.remove(geofenceId);
+        if (removed != null) {
+            unindex(removed);
+        }
+        return true;
+    }
+
+    private void index(final PreparedGeofence prepared) {
+        final int minLatIndex = index(prepared.minLatitude);
+        final int maxLatIndex = index(prepared.maxLatitude);
+        final int minLngIndex = index(prepared.minLongitude);
+        final int maxLngIndex = index(prepared.maxLongitude);
+        if ((long) (maxLatIndex - minLatIndex + 1) * (maxLngIndex - minLngIndex + 1) > MAX_CELLS_PER_GEOFENCE) {
+            largeGeofences.add(prepared);
+            return;
+        }
+        for (int latIndex = minLatIndex; latIndex <= maxLatIndex; latIndex++) {
+            for (int lngIndex = minLngIndex; lngIndex <= maxLngIndex; lngIndex++) {
+                cells.merge(cellKey(latIndex, lngIndex), new PreparedGeofence[]{prepared}, (current, added) -> {
+                    final PreparedGeofence[] merged = Arrays.copyOf(current, current.length + 1);
+                    merged[current.length] = prepared;
+                    return merged;
+                });
+            }
+        }
+    }
+
+    private void unindex(final PreparedGeofence removed) {
+        largeGeofences.remove(removed);
+        for (int latIndex = index(removed.minLatitude); latIndex <= index(removed.maxLatitude); latIndex++) {
+            for (int lngIndex = index(removed.minLongitude); lngIndex <= index(removed.maxLongitude); lngIndex++) {
+                cells.computeIfPresent(cellKey(latIndex, lngIndex), (cell, current) -> {
+                    final PreparedGeofence[] remaining = Arrays.stream(current)
+                            .filter(geofence -> geofence != removed)
+                            .toArray(PreparedGeofence[]::new);
+                    return remaining.length == 0 ? null : remaining;
+                });
+            }
+        }
+    }
+
+    public List<Geofence> getGeofences() {
+        final List<Geofence> registered = new ArrayList<>();
+        geofences.values().forEach(prepared -> registered.add(prepared.geofence));
+        return registered;
+    }
+
+    /**
+     * Set the geofencing status of a batch of measurements, in time order. The unit states are updated and the status
+     * transitions published after the running transaction commits, right away without transaction.
+     * Measurements are left untouched when no geofence is registered.
+     */
+    public void evaluate(final List<UnitLocationMeasurement> measurements) {
+        if (geofences.isEmpty()) {
+            return;
+        }
+        final List<UnitLocationMeasurement> ordered = new ArrayList<>(measurements);
+        ordered.sort(Comparator.comparing(measurement -> measurement.getId().getTime()));
+        final List<StagedState> staged = new ArrayList<>(ordered.size());
+        final Map<TrackKey, UnitState> latestStaged = new HashMap<>();
+        for (final UnitLocationMeasurement measurement : ordered) {
+            measurement.setGeofencingStatus(evaluate(measurement, latestStaged, staged));
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    staged.forEach(GeofenceEngine.this::updateUnitState);
+                }
+            });
+        } else {
+            staged.forEach(this::updateUnitState);
+        }
+    }
+
+    private LocationStatus evaluate(final UnitLocationMeasurement measurement, final Map<TrackKey, UnitState> latestStaged,
+                                    final List<StagedState> staged) {
+        final TrackKey trackKey = new TrackKey(measurement.getId().getUnitId(), measurement.getId().getContextId());
+        final LocalDateTime time = measurement.getId().getTime();
+        final double latitude = measurement.getLatitude();
+        final double longitude = measurement.getLongitude();
+        PreparedGeofence closest = null;
+        double closestDistance = Double.MAX_VALUE;
+        for (final PreparedGeofence geofence : candidates(latitude, longitude)) {
+            if (!geofence.isInBoundingBox(latitude, longitude)) {
+                continue;
+            }
+            final double distance = geofence.distanceOutside(latitude, longitude);
+            if (distance < closestDistance) {
+                closest = geofence;
+                closestDistance = distance;
+                if (distance == 0) {
+                    break;
+                }
+            }
+        }
+
+        final LocationStatus status;
+        LocalDateTime insideSince = null;
+        if (closest != null && closestDistance == 0) {
+            final UnitState previous = latestStaged.containsKey(trackKey) ? latestStaged.get(trackKey) : unitStates.get(trackKey);
+            final boolean entering = previous == null || previous.insideSince == null
+                    || !closest.geofence.getId().equals(previous.geofenceId) || previous.insideSince.isAfter(time);
+            insideSince = entering ? time : previous.insideSince;
+            status = insideStatus(closest.geofence, Duration.between(insideSince, time), measurement.getSpeed());
+        } else if (closest != null && closestDistance <= approachDistanceInMeters) {
+            status = LocationStatus.STATUS_APPROACHING;
+        } else {
+            closest = null;
+            status = LocationStatus.STATUS_MOVING;
+        }
+        final UnitState state = new UnitState(status, closest == null ? null : closest.geofence.getId(), time, insideSince);
+        latestStaged.put(trackKey, state);
+        staged.add(new StagedState(trackKey, state));
+        return status;
+    }
+
+    /**
+     * Status of a unit inside a geofence: arrived in a destination or after staying long enough, boarding when
+     * stationary, moving when passing through, and unknown without speed
+     */
+    private LocationStatus insideStatus(final Geofence geofence, final Duration inside, final Double speed) {
+        if (geofence.isDestination() || inside.toMillis() >= arrivalDwellMillis) {
+            return LocationStatus.STATUS_ARRIVED;
+        }
+        if (speed == null) {
+            return LocationStatus.STATUS_UNKNOWN;
+        }
+        return speed <= stationarySpeed ? LocationStatus.STATUS_BOARDING : LocationStatus.STATUS_MOVING;
+    }
+
+    private void updateUnitState(final StagedState staged) {
+        final TrackKey trackKey = staged.trackKey;
+        final LocationStatus status = staged.state.status;
+        final String geofenceId = staged.state.geofenceId;
+        final LocalDateTime time = staged.state.time;
+        final UnitState[] previous = new UnitState[1];
+        final UnitState updated = unitStates.compute(trackKey, (key, current) -> {
+            previous[0] = current;
+            if (current != null && current.time.isAfter(time)) {
+                return current; // late measurement, keep the current state
+            }
+            return staged.state;
+        });
+
+        final UnitState before = previous[0];
+        if (updated != before && (before == null || before.status != status || !Objects.equals(before.geofenceId, geofenceId))) {
+            final LocationStatus previousStatus = before == null ? LocationStatus.STATUS_UNKNOWN : before.status;
+            log.debug("Unit '{}' went from {} to {} (geofence '{}')", trackKey.getUnitId(), previousStatus, status, geofenceId);
+            eventPublisher.publishEvent(new GeofenceTransitionEvent(this, trackKey.getUnitId(), trackKey.getContextId(),
+                    geofenceId, previousStatus, status, time));
+        }
+    }
+
+    private Iterable<PreparedGeofence> candidates(final double latitude, final double longitude) {
+        final PreparedGeofence[] cellGeofences = cells.getOrDefault(cellKey(index(latitude), index(longitude)), NO_GEOFENCE);
+        if (largeGeofences.isEmpty()) {
+            return Arrays.asList(cellGeofences);
+        }
+        final List<PreparedGeofence> candidates = new ArrayList<>(Arrays.asList(cellGeofences));
+        candidates.addAll(largeGeofences);
+        return candidates;
+    }
+
+    private int index(final double degrees) {
+        return (int) Math.floor(degrees / cellSizeDegrees);
+    }
+
+    private static long cellKey(final int latitudeIndex, final int longitudeIndex) {
+        return ((long) latitudeIndex << 32) | (longitudeIndex & 0xffffffffL);
+    }
+
+    @RequiredArgsConstructor
+    private static final class UnitState {
+        private final LocationStatus status;
+        private final String geofenceId;
+        private final LocalDateTime time;
+        private final LocalDateTime insideSince; // time the unit entered the geofence, null if not in it
+    }
+
+    @RequiredArgsConstructor
+    private static final class StagedState {
+        private final TrackKey trackKey;
+        private final UnitState state;
+    }
+
+    /**
+     * Geofence with its vertices as primitive arrays and its bounding box widened by the approach distance
+     */
+    private static final class PreparedGeofence {
+        private final Geofence geofence;
+        private final boolean isCircle;
+        private final double[] latitudes;
+        private final double[] longitudes;
+        private final double minLatitude;
+        private final double maxLatitude;
+        private final double minLongitude;
+        private final double maxLongitude;
+
+        private PreparedGeofence(final Geofence geofence, final double marginInMeters) {
+            if (geofence.getId() == null || geofence.getShape() == null) {
+                throw new InvalidGeofenceException("A geofence needs an id and a shape");
+            }
+            this.geofence = geofence;
+            this.isCircle = geofence.getShape() == Geofence.Shape.CIRCLE;
+            if (isCircle) {
+                latitudes = new double[]{geofence.getCenterLatitude()};
+                longitudes = new double[]{geofence.getCenterLongitude()};
+            } else {
+                if (geofence.getVertices() == null || geofence.getVertices().size() < 3) {
+                    throw new InvalidGeofenceException(String.format("Polygon geofence '%s' needs at least 3 vertices", geofence.getId()));
+                }
+                latitudes = geofence.getVertices().stream().mapToDouble(vertex -> vertex[0]).toArray();
+                longitudes = geofence.getVertices().stream().mapToDouble(vertex -> vertex[1]).toArray();
+            }
+            final double margin = marginInMeters + (isCircle ? geofence.getRadiusInMeters() : 0);
+            final double latitudeMargin = margin / METERS_PER_DEGREE;
+            final double maxAbsLatitude = Math.min(89.0, Arrays.stream(latitudes).map(Math::abs).max().orElse(0) + latitudeMargin);
+            final double longitudeMargin = margin / (METERS_PER_DEGREE * Math.cos(Math.toRadians(maxAbsLatitude)));
+            minLatitude = Arrays.stream(latitudes).min().orElse(0) - latitudeMargin;
+            maxLatitude = Arrays.stream(latitudes).max().orElse(0) + latitudeMargin;
+            minLongitude = Arrays.stream(longitudes).min().orElse(0) - longitudeMargin;
+            maxLongitude = Arrays.stream(longitudes).max().orElse(0) + longitudeMargin;
+        }
+
+        private boolean isInBoundingBox(final double latitude, final double longitude) {
+            return latitude >= minLatitude && latitude <= maxLatitude && longitude >= minLongitude && longitude <= maxLongitude;
+        }
+
+        /**
+         * @return 0 if the location is inside the geofence, the distance to its border in meters otherwise
+         */
+        private double distanceOutside(final double latitude, final double longitude) {
+            if (isCircle) {
+                return Math.max(0, GeometryTools.distanceInMeters(latitude, longitude, latitudes[0], longitudes[0])
+                        - geofence.getRadiusInMeters());
+            }
+            if (GeometryTools.isInsidePolygon(latitude, longitude, latitudes, longitudes)) {
+                return 0;
+            }
+            return GeometryTools.distanceToPolygonEdgesInMeters(latitude, longitude, latitudes, longitudes);
+        }
+    }
+}
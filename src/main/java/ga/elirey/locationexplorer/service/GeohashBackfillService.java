@@ -0,0 +1,46 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+import ga.elirey.locationexplorer.repository.LocationExplorerRepository;
+import ga.elirey.locationexplorer.utils.GeoHash;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Fill the geohash of the measurements stored before it was computed on ingest, one page per transaction
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(value = "location-explorer.geohash.backfill.enabled", havingValue = "true")
+public class GeohashBackfillService {
+
+    private final LocationExplorerRepository repository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Scheduled(fixedDelayString = "${location-explorer.geohash.backfill.delay-millis:60000}")
+    public void backfill() {
+        long backfilled = 0;
+        int pageSize;
+        do {
+            pageSize = transactionTemplate.execute(status -> backfillPage());
+            backfilled += pageSize;
+        } while (pageSize > 0);
+        if (backfilled > 0) {
+            log.info("Backfilled the geohash of {} location measurement(s)", backfilled);
+        }
+    }
+
+    private int backfillPage() {
+        final List<UnitLocationMeasurement> measurements = repository.findTop1000ByGeohashIsNull();
+        measurements.forEach(measurement -> measurement.setGeohash(GeoHash.encode(measurement.getLatitude(), measurement.getLongitude())));
+        repository.saveAll(measurements);
+        return measurements.size();
+    }
+}
@@ -0,0 +1,248 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.data.Heatmap;
+import ga.elirey.locationexplorer.utils.BoundedExecutor;
+import ga.elirey.locationexplorer.utils.HeatmapBinner;
+import ga.elirey.locationexplorer.utils.LongIntHashMap;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * Density of the measurements of a context over a time range, computed on the server so that clients never download
+ * the points themselves.
+ * <p>
+ * The range is counted one UTC day at a time: whole days that are over never change and are cached, so that a moving
+ * window only reads its first and last days again, and each day is read within its own database timeout. A day that
+ * cannot be read in time is left out of the heatmap instead of failing it.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class HeatmapService {
+
+    private static final int CHUNK_SIZE = 50_000;
+    private static final int MIN_CACHED_CELLS = 1024; // an empty count map still holds this many slots
+
+    private final LocationPollerService pollerService;
+    @Qualifier("readOnlyTransactionTemplate")
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    @Qualifier("databaseExecutor")
+    private final BoundedExecutor databaseExecutor;
+    @Qualifier("trackFilteringExecutor")
+    private final BoundedExecutor trackFilteringExecutor;
+
+    @Value("${location-explorer.heatmap.cache-max-cells:2000000}")
+    private long maxCachedCells;
+
+    // counts of the days that are over, least recently used first, guarded by itself
+    private final Map<DayKey, DayCounts> closedDays = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedCells;
+
+    /**
+     * Count the measurements of a mission per map tile at a zoom level.
+     * The days of the range are read one after the other on the database pool, in chunks that are counted on the
+     * filtering pool, then the partial counts are merged.
+     *
+     * @param zoom the zoom level of the tiles, the grid has 2^zoom x 2^zoom cells
+     */
+    public CompletableFuture<Heatmap> getHeatmapAsync(final String missionId, final int zoom,
+                                                      final Long startDateMillis, final Long endDateMillis) {
+        final int boundedZoom = Math.max(0, Math.min(HeatmapBinner.MAX_ZOOM, zoom));
+        final LocalDateTime start = pollerService.setStartTimeFromParam(startDateMillis);
+        final LocalDateTime end = pollerService.setStopTimeFromParam(endDateMillis);
+        final LocalDateTime now = LocalDateTime.now(ZoneId.of("UTC"));
+
+        CompletableFuture<HeatmapCounts> counting = CompletableFuture.completedFuture(new HeatmapCounts());
+        for (LocalDate day = start.toLocalDate(); day.atStartOfDay().isBefore(end); day = day.plusDays(1)) {
+            final LocalDate countedDay = day;
+            counting = counting.thenCompose(counts -> countDay(missionId, boundedZoom, countedDay, start, end, now)
+                    .handle((dayCounts, error) -> counts.add(missionId, countedDay, dayCounts, error)));
+        }
+        return counting.thenCompose(counts -> {
+            if (counts.error != null && counts.days == counts.missingDays.size()) {
+                final CompletableFuture<Heatmap> failed = new CompletableFuture<>();
+                failed.completeExceptionally(counts.error); // no day at all, nothing to degrade to
+                return failed;
+            }
+            log.debug("Counted {} location(s) of mission '{}' in {} cell(s) at zoom {}", counts.pointCount, missionId,
+                    counts.cells.size(), boundedZoom);
+            return CompletableFuture.completedFuture(toHeatmap(counts, missionId, boundedZoom, startDateMillis, endDateMillis));
+        });
+    }
+
+    /**
+     * Counts of the part of a day within [start, end), from the cache when the whole day is in the range and is over
+     */
+    private CompletableFuture<DayCounts> countDay(final String missionId, final int zoom, final LocalDate day,
+                                                  final LocalDateTime start, final LocalDateTime end, final LocalDateTime now) {
+        final LocalDateTime dayStart = day.atStartOfDay();
+        final LocalDateTime dayEnd = day.plusDays(1).atStartOfDay();
+        final LocalDateTime from = start.isAfter(dayStart) ? start : dayStart;
+        final LocalDateTime until = end.isBefore(dayEnd) ? end : dayEnd;
+        final boolean isCacheable = from.equals(dayStart) && until.equals(dayEnd) && !dayEnd.isAfter(now);
+        final DayKey key = new DayKey(missionId, zoom, day);
+        if (isCacheable) {
+            final DayCounts cached;
+            synchronized (closedDays) {
+                cached = closedDays.get(key);
+            }
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+        return databaseExecutor.supply(() -> readOnlyTransactionTemplate.execute(status -> countCells(missionId, zoom, from, until)))
+                .thenApply(counts -> {
+                    if (isCacheable) {
+                        cache(key, counts);
+                    }
+                    return counts;
+                });
+    }
+
+    private DayCounts countCells(final String missionId, final int zoom, final LocalDateTime from, final LocalDateTime until) {
+        final LongIntHashMap counts = new LongIntHashMap();
+        final Deque<CompletableFuture<LongIntHashMap>> pending = new ArrayDeque<>();
+        final int maxPending = trackFilteringExecutor.getPoolSize() * 2;
+        long pointCount = 0;
+
+        try (Stream<Object[]> rows = pollerService.streamCoordinates(missionId, from, until)) {
+            final Iterator<Object[]> iterator = rows.iterator();
+            double[] latitudes = new double[CHUNK_SIZE];
+            double[] longitudes = new double[CHUNK_SIZE];
+            int length = 0;
+            while (iterator.hasNext()) {
+                final Object[] row = iterator.next();
+                latitudes[length] = ((Number) row[0]).doubleValue();
+                longitudes[length] = ((Number) row[1]).doubleValue();
+                if (++length == CHUNK_SIZE) {
+                    pending.add(submitChunk(latitudes, longitudes, length, zoom));
+                    pointCount += length;
+                    latitudes = new double[CHUNK_SIZE];
+                    longitudes = new double[CHUNK_SIZE];
+                    length = 0;
+                    if (pending.size() > maxPending) { // keep the number of chunks held in memory bounded
+                        counts.addAll(pending.poll().join());
+                    }
+                }
+            }
+            if (length > 0) {
+                pending.add(submitChunk(latitudes, longitudes, length, zoom));
+                pointCount += length;
+            }
+        }
+        while (!pending.isEmpty()) {
+            counts.addAll(pending.poll().join());
+        }
+        return new DayCounts(counts, pointCount);
+    }
+
+    private CompletableFuture<LongIntHashMap> submitChunk(final double[] latitudes, final double[] longitudes,
+                                                          final int length, final int zoom) {
+        return trackFilteringExecutor.supplyOrRunInline(() -> HeatmapBinner.bin(latitudes, longitudes, length, zoom));
+    }
+
+    private void cache(final DayKey key, final DayCounts counts) {
+        if (counts.cachedCells() > maxCachedCells) {
+            return;
+        }
+        synchronized (closedDays) {
+            final DayCounts previous = closedDays.put(key, counts);
+            cachedCells += counts.cachedCells() - (previous == null ? 0 : previous.cachedCells());
+            final Iterator<DayCounts> leastRecentlyUsed = closedDays.values().iterator();
+            while (cachedCells > maxCachedCells && leastRecentlyUsed.hasNext()) {
+                cachedCells -= leastRecentlyUsed.next().cachedCells();
+                leastRecentlyUsed.remove();
+            }
+        }
+    }
+
+    private static Heatmap toHeatmap(final HeatmapCounts counts, final String missionId, final int zoom,
+                                     final Long startDateMillis, final Long endDateMillis) {
+        final int[] x = new int[counts.cells.size()];
+        final int[] y = new int[counts.cells.size()];
+        final int[] cellCounts = new int[counts.cells.size()];
+        final int[] index = {0, 0}; // next cell, max count
+        counts.cells.forEach((key, count) -> {
+            x[index[0]] = HeatmapBinner.cellX(key);
+            y[index[0]] = HeatmapBinner.cellY(key);
+            cellCounts[index[0]++] = count;
+            index[1] = Math.max(index[1], count);
+        });
+        return Heatmap.builder()
+                .contextId(missionId)
+                .zoom(zoom)
+                .startDate(startDateMillis == null ? 0 : startDateMillis)
+                .endDate(endDateMillis == null ? 0 : endDateMillis)
+                .pointCount(counts.pointCount)
+                .maxCount(index[1])
+                .x(x)
+                .y(y)
+                .counts(cellCounts)
+                .missingDays(counts.missingDays)
+                .build();
+    }
+
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static final class DayKey {
+        private final String missionId;
+        private final int zoom;
+        private final LocalDate day;
+    }
+
+    /**
+     * Counts of a day, never modified once computed since they may be cached
+     */
+    @RequiredArgsConstructor
+    private static final class DayCounts {
+        private final LongIntHashMap cells;
+        private final long pointCount;
+
+        private long cachedCells() {
+            return Math.max(MIN_CACHED_CELLS, cells.size());
+        }
+    }
+
+    /**
+     * Counts of the days of a range, merged in day order
+     */
+    private static final class HeatmapCounts {
+        private final LongIntHashMap cells = new LongIntHashMap();
+        private final List<String> missingDays = new ArrayList<>();
+        private long pointCount;
+        private int days;
+        private Throwable error;
+
+        private HeatmapCounts add(final String missionId, final LocalDate day, final DayCounts dayCounts, final Throwable dayError) {
+            days++;
+            if (dayError != null) {
+                log.warn("Leaving day {} out of the heatmap of mission '{}': {}", day, missionId, dayError.getMessage());
+                missingDays.add(day.toString());
+                error = dayError;
+            } else {
+                cells.addAll(dayCounts.cells);
+                pointCount += dayCounts.pointCount;
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.data.TrackKey;
+import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+import ga.elirey.locationexplorer.event.LocationsIngestedEvent;
+import ga.elirey.locationexplorer.model.GPSPoint;
+import ga.elirey.locationexplorer.utils.DeviceStreamMerger;
+import ga.elirey.locationexplorer.utils.OffHeapTrackStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Keep the fixes ingested since startup in the off-heap store, so that recent positions are answered without the
+ * database nor heap objects per fix.
+ * <p>
+ * The store only answers when it provably holds every fix the database would return: this instance must be the only
+ * one ingesting, as declared by the single-writer setting, and the fixes must be more recent than the last one stored
+ * in the database before startup as well as than the fixes the store dropped or evicted. The database is read
+ * otherwise.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class HotTrackService {
+
+    private final OffHeapTrackStore hotTrackStore;
+    private final LocationPollerService pollerService;
+
+    @Value("${location-explorer.hot-tracks.single-writer:false}")
+    private boolean isSingleWriter;
+
+    @Value("${location-explorer.devices-merge.duplicate-window-millis:2000}")
+    private long duplicateWindowMillis;
+
+    @Value("${location-explorer.devices-merge.duplicate-distance-meters:10}")
+    private double duplicateDistanceInMeters;
+
+    // fixes up to this time may be in the database without having gone through the store, none is trusted until ready
+    private volatile long storedSinceMillis = Long.MAX_VALUE;
+
+    /**
+     * Take the time of the last fix stored in the database before the store was fed as the watermark of the store,
+     * once the listeners are registered so that no fix ingested from then on can be missed
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initWatermark() {
+        if (!isSingleWriter) {
+            log.info("Hot tracks store disabled, other instances may ingest fixes it would miss");
+            return;
+        }
+        storedSinceMillis = pollerService.getLatestTimeMillis().map(time -> time + 1).orElse(Long.MIN_VALUE);
+        log.info("Hot tracks store answering for the fixes recorded from {}", storedSinceMillis == Long.MIN_VALUE
+                ? "the beginning" : Instant.ofEpochMilli(storedSinceMillis));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLocationsIngested(final LocationsIngestedEvent event) {
+        if (isSingleWriter) {
+            event.getMeasurements().forEach(this::store);
+        }
+    }
+
+    /**
+     * @return whether the measurement was stored, false if it came too late after the following ones
+     */
+    public boolean store(final UnitLocationMeasurement measurement) {
+        final UnitLocationMeasurement.Id id = measurement.getId();
+        return hotTrackStore.append(new TrackKey(id.getUnitId(), id.getContextId()),
+                id.getTime().atZone(ZoneOffset.UTC).toInstant().toEpochMilli(),
+                measurement.getLatitude(), measurement.getLongitude(), valueOf(measurement.getAltitude()),
+                valueOf(measurement.getSpeed()), valueOf(measurement.getHeading()),
+                valueOf(measurement.getAccuracyInMeters()), id.getDeviceId());
+    }
+
+    /**
+     * The fixes of a unit around a time, among the ones recorded after a time and before another, both excluded, read
+     * from the store when it holds all of them. The fixes of the devices are merged like the ones read from the
+     * database, in the store, so that only the fixes around the time are copied to the heap.
+     *
+     * @return the last merged fix recorded at or before the time and the first one after it, the ones there are, empty
+     * when the database has to be read instead
+     */
+    public Optional<List<GPSPoint>> findFixesAround(final String unitId, final String contextId, final long timeMillis,
+                                                    final long afterMillis, final long beforeMillis) {
+        if (afterMillis < storedSinceMillis) {
+            return Optional.empty();
+        }
+        return hotTrackStore.read(new TrackKey(unitId, contextId), track -> {
+            if (afterMillis < track.getCompleteSinceMillis()) {
+                return null; // some fixes in the range may be missing
+            }
+            final OffHeapTrackStore.FixesView fixes = track.fixesBetween(afterMillis, beforeMillis);
+            final int[] merged = new DeviceStreamMerger(duplicateWindowMillis, duplicateDistanceInMeters).select(fixes);
+            int low = 0; // first merged fix after the time
+            int high = merged.length;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (fixes.time(merged[middle]) > timeMillis) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            final List<GPSPoint> around = new ArrayList<>(2);
+            if (low > 0) {
+                around.add(fixes.toPoint(merged[low - 1]));
+            }
+            if (low < merged.length) {
+                around.add(fixes.toPoint(merged[low]));
+            }
+            return around;
+        });
+    }
+
+    private static double valueOf(final Double value) {
+        return value == null ? 0 : value;
+    }
+}
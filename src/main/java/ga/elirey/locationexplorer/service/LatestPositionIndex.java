@@ -0,0 +1,323 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.data.TrackKey;
+import ga.elirey.locationexplorer.data.UnitPosition;
+import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+import ga.elirey.locationexplorer.event.LocationsIngestedEvent;
+import ga.elirey.locationexplorer.model.GPSPoint;
+import ga.elirey.locationexplorer.repository.LocationExplorerRepository;
+import ga.elirey.locationexplorer.utils.CustomTimer;
+import ga.elirey.locationexplorer.utils.GeometryTools;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory index of the last known position of every unit, bucketed in a regular lat/lng grid.
+ * <p>
+ * Updates are serialized per unit by the concurrent map bins, so ingestion of different units never contends.
+ * A reader may briefly see a moving unit in its old and new cell, results are therefore checked against the unit's
+ * current position.
+ * The index is seeded from the database at startup, before the web server accepts requests.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LatestPositionIndex implements SmartInitializingSingleton {
+
+    private static final double METERS_PER_DEGREE = 111_320.0;
+
+    private final LocationExplorerService explorerService;
+    private final LocationExplorerRepository repository;
+
+    private final ConcurrentMap<TrackKey, IndexedPosition> latestPositions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, Set<TrackKey>> cells = new ConcurrentHashMap<>();
+
+    @Value("${location-explorer.latest-positions.cell-size-degrees:0.1}")
+    private double cellSizeDegrees;
+
+    @Value("${location-explorer.latest-positions.warmup-days:30}")
+    private int warmupDays;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        final CustomTimer timer = new CustomTimer();
+        final List<UnitLocationMeasurement> measurements = repository.findLatestPerUnitSince(warmupDays > 0
+                ? LocalDateTime.now(ZoneId.of("UTC")).minusDays(warmupDays) : LocalDateTime.of(1970, 1, 1, 0, 0));
+        measurements.forEach(this::update);
+        log.info("Seeded the last known positions of {} unit(s) from the database in {} ms", latestPositions.size(),
+                timer.elapsedMsecs());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLocationsIngested(final LocationsIngestedEvent event) {
+        event.getMeasurements().forEach(this::update);
+    }
+
+    /**
+     * Record a measurement, ignored if the unit already has a more recent one
+     *
+     * @param measurement the ingested measurement
+     */
+    public void update(final UnitLocationMeasurement measurement) {
+        final GPSPoint point = explorerService.map(measurement);
+        final TrackKey trackKey = new TrackKey(point.getUnitId(), measurement.getId().getContextId());
+        final long cell = cellOf(point.getLatitude(), point.getLongitude());
+        latestPositions.compute(trackKey, (key, current) -> {
+            if (current != null && current.point.getTimestamp().isAfter(point.getTimestamp())) {
+                return current;
+            }
+            if (current == null || current.cell != cell) {
+                cells.computeIfAbsent(cell, c -> ConcurrentHashMap.newKeySet()).add(key);
+                if (current != null) {
+                    removeFromCell(current.cell, key);
+                }
+            }
+            return new IndexedPosition(point, cell);
+        });
+    }
+
+    /**
+     * Units whose last position is inside a bounding box
+     *
+     * @param contextId only units of this context, all contexts if null
+     * @return the positions, in no particular order
+     */
+    public List<UnitPosition> findInBoundingBox(final double minLatitude, final double minLongitude,
+                                                final double maxLatitude, final double maxLongitude,
+                                                final String contextId) {
+        final int minLatIndex = latitudeIndex(minLatitude);
+        final int maxLatIndex = latitudeIndex(maxLatitude);
+        final int minLngIndex = longitudeIndex(minLongitude);
+        final int maxLngIndex = longitudeIndex(maxLongitude);
+        final long coveredCells = (long) (maxLatIndex - minLatIndex + 1) * (maxLngIndex - minLngIndex + 1);
+
+        final List<UnitPosition> positions = new ArrayList<>();
+        if (coveredCells > cells.size()) {
+            // large viewport over a sparse grid, cheaper to go through the occupied cells
+            cells.forEach((cell, trackKeys) -> {
+                final int latIndex = (int) (cell >> 32);
+                final int lngIndex = (int) cell.longValue();
+                if (latIndex >= minLatIndex && latIndex <= maxLatIndex && lngIndex >= minLngIndex && lngIndex <= maxLngIndex) {
+                    collectInBoundingBox(cell, trackKeys, minLatitude, minLongitude, maxLatitude, maxLongitude, contextId, positions);
+                }
+            });
+        } else {
+            for (int latIndex = minLatIndex; latIndex <= maxLatIndex; latIndex++) {
+                for (int lngIndex = minLngIndex; lngIndex <= maxLngIndex; lngIndex++) {
+                    final long cell = cellKey(latIndex, lngIndex);
+                    final Set<TrackKey> trackKeys = cells.get(cell);
+                    if (trackKeys != null) {
+                        collectInBoundingBox(cell, trackKeys, minLatitude, minLongitude, maxLatitude, maxLongitude, contextId, positions);
+                    }
+                }
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * The k units closest to a location, searching the grid in rings of cells around it. Once the rings would visit
+     * more cells than the occupied ones, the remaining units are found going through the occupied cells instead, so
+     * that a search never visits more cells than twice the occupied ones.
+     *
+     * @param contextId only units of this context, all contexts if null
+     * @return the positions, closest first, none when k is not positive
+     */
+    public List<UnitPosition> findNearest(final double latitude, final double longitude, final int k, final String contextId) {
+        final PriorityQueue<Neighbour> nearest = new PriorityQueue<>(Comparator.comparingDouble((Neighbour n) -> n.distance).reversed());
+        if (k <= 0) {
+            return Collections.emptyList();
+        }
+        final int centerLatIndex = latitudeIndex(latitude);
+        final int centerLngIndex = longitudeIndex(longitude);
+        final int latitudeCells = latitudeIndex(90) + 1;
+        final int longitudeCells = (int) Math.ceil(360 / cellSizeDegrees);
+        final int maxRing = Math.max(Math.max(centerLatIndex, latitudeCells - 1 - centerLatIndex), longitudeCells / 2);
+        final CellVisitor visitor = (cell, trackKeys) -> {
+            for (final TrackKey trackKey : trackKeys) {
+                final IndexedPosition position = latestPositions.get(trackKey);
+                // a unit seen in the cell it is leaving is counted once, from its new cell
+                if (position == null || position.cell != cell || !matchesContext(trackKey, contextId)) {
+                    continue;
+                }
+                final double distance = GeometryTools.distanceInMeters(latitude, longitude,
+                        position.point.getLatitude(), position.point.getLongitude());
+                if (nearest.size() < k) {
+                    nearest.add(new Neighbour(trackKey, position.point, distance));
+                } else if (distance < nearest.peek().distance) {
+                    nearest.poll();
+                    nearest.add(new Neighbour(trackKey, position.point, distance));
+                }
+            }
+        };
+
+        long visitedCells = 0;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // no point of this ring or further can be closer than this
+            final double ringMinDistance = Math.max(0, ring - 1) * cellSizeDegrees * METERS_PER_DEGREE
+                    * Math.cos(Math.toRadians(Math.min(89.0, Math.abs(latitude) + ring * cellSizeDegrees)));
+            if (nearest.size() >= k && ringMinDistance > nearest.peek().distance) {
+                break;
+            }
+            visitedCells += 8L * Math.max(1, ring);
+            if (visitedCells > cells.size()) {
+                // sparse grid, cheaper to go through the occupied cells not visited yet
+                final int firstRing = ring;
+                cells.forEach((cell, trackKeys) -> {
+                    if (ringOf((int) (cell >> 32), (int) cell.longValue(), centerLatIndex, centerLngIndex, longitudeCells) >= firstRing) {
+                        visitor.visit(cell, trackKeys);
+                    }
+                });
+                break;
+            }
+            visitRing(ring, centerLatIndex, centerLngIndex, latitudeCells, longitudeCells, visitor);
+        }
+
+        final List<UnitPosition> positions = new ArrayList<>(nearest.size());
+        while (!nearest.isEmpty()) {
+            final Neighbour neighbour = nearest.poll();
+            positions.add(0, toUnitPosition(neighbour.trackKey, neighbour.point, neighbour.distance));
+        }
+        return positions;
+    }
+
+    public int size() {
+        return latestPositions.size();
+    }
+
+    private void collectInBoundingBox(final long cell, final Set<TrackKey> trackKeys, final double minLatitude, final double minLongitude,
+                                      final double maxLatitude, final double maxLongitude, final String contextId,
+                                      final List<UnitPosition> positions) {
+        for (final TrackKey trackKey : trackKeys) {
+            final IndexedPosition position = latestPositions.get(trackKey);
+            if (position == null || !matchesContext(trackKey, contextId)) {
+                continue;
+            }
+            final GPSPoint point = position.point;
+            // skip a unit seen in the cell it is leaving, it is reported from its new cell
+            if (position.cell == cell
+                    && point.getLatitude() >= minLatitude && point.getLatitude() <= maxLatitude
+                    && point.getLongitude() >= minLongitude && point.getLongitude() <= maxLongitude) {
+                positions.add(toUnitPosition(trackKey, point, null));
+            }
+        }
+    }
+
+    /**
+     * Visit the occupied cells at a ring distance from a center cell, only along the perimeter of the ring, without the
+     * rows beyond the poles and without visiting a cell twice where the ring wraps around the antimeridian
+     */
+    private void visitRing(final int ring, final int centerLatIndex, final int centerLngIndex, final int latitudeCells,
+                           final int longitudeCells, final CellVisitor visitor) {
+        // longitude offsets of the distinct cells of a full row, the eastmost one wrapping onto the westmost one
+        final int westOffset = -Math.min(ring, longitudeCells / 2);
+        final int eastOffset = Math.min(ring, longitudeCells - 1 - longitudeCells / 2);
+        for (final int latIndex : new int[]{centerLatIndex - ring, centerLatIndex + ring}) {
+            if (latIndex >= 0 && latIndex < latitudeCells) {
+                for (int offset = westOffset; offset <= eastOffset; offset++) {
+                    visitCell(latIndex, centerLngIndex + offset, longitudeCells, visitor);
+                }
+            }
+            if (ring == 0) {
+                return; // a single cell, the same row twice
+            }
+        }
+        for (int latIndex = Math.max(0, centerLatIndex - ring + 1); latIndex <= Math.min(latitudeCells - 1, centerLatIndex + ring - 1); latIndex++) {
+            if (-ring >= westOffset) {
+                visitCell(latIndex, centerLngIndex - ring, longitudeCells, visitor);
+            }
+            if (ring <= eastOffset) {
+                visitCell(latIndex, centerLngIndex + ring, longitudeCells, visitor);
+            }
+        }
+    }
+
+    private void visitCell(final int latIndex, final int lngIndex, final int longitudeCells, final CellVisitor visitor) {
+        final long cell = cellKey(latIndex, Math.floorMod(lngIndex, longitudeCells));
+        final Set<TrackKey> trackKeys = cells.get(cell);
+        if (trackKeys != null) {
+            visitor.visit(cell, trackKeys);
+        }
+    }
+
+    /**
+     * @return the ring of a cell around a center cell, the number of cells between them along a row or a column
+     */
+    private static int ringOf(final int latIndex, final int lngIndex, final int centerLatIndex, final int centerLngIndex,
+                              final int longitudeCells) {
+        final int lngDistance = Math.floorMod(lngIndex - centerLngIndex, longitudeCells);
+        return Math.max(Math.abs(latIndex - centerLatIndex), Math.min(lngDistance, longitudeCells - lngDistance));
+    }
+
+    private void removeFromCell(final long cell, final TrackKey trackKey) {
+        cells.computeIfPresent(cell, (c, trackKeys) -> {
+            trackKeys.remove(trackKey);
+            return trackKeys.isEmpty() ? null : trackKeys;
+        });
+    }
+
+    private static boolean matchesContext(final TrackKey trackKey, final String contextId) {
+        return contextId == null || contextId.equals(trackKey.getContextId());
+    }
+
+    private long cellOf(final double latitude, final double longitude) {
+        return cellKey(latitudeIndex(latitude), longitudeIndex(longitude));
+    }
+
+    private int latitudeIndex(final double latitude) {
+        return (int) Math.floor((Math.max(-90, Math.min(90, latitude)) + 90) / cellSizeDegrees);
+    }
+
+    private int longitudeIndex(final double longitude) {
+        return (int) Math.floor((Math.max(-180, Math.min(180, longitude)) + 180) / cellSizeDegrees);
+    }
+
+    private static long cellKey(final int latitudeIndex, final int longitudeIndex) {
+        return ((long) latitudeIndex << 32) | (longitudeIndex & 0xffffffffL);
+    }
+
+    private static UnitPosition toUnitPosition(final TrackKey trackKey, final GPSPoint point, final Double distance) {
+        final String timestamp = point.getTimestamp().atZone(ZoneId.of("UTC")).format(DateTimeFormatter.ISO_ZONED_DATE_TIME);
+        return UnitPosition.builder()
+                .name(trackKey.getUnitId())
+                .category(trackKey.getContextId())
+                .description(String.format("Last fix at %s from device %s", timestamp, point.getCollectorId()))
+                .unitId(trackKey.getUnitId())
+                .contextId(trackKey.getContextId())
+                .collectorId(point.getCollectorId())
+                .timestamp(timestamp)
+                .lat(point.getLatitude())
+                .lng(point.getLongitude())
+                .distanceInMeters(distance)
+                .build();
+    }
+
+    @RequiredArgsConstructor
+    private static final class IndexedPosition {
+        private final GPSPoint point;
+        private final long cell;
+    }
+
+    @FunctionalInterface
+    private interface CellVisitor {
+        void visit(long cell, Set<TrackKey> trackKeys);
+    }
+
+    @RequiredArgsConstructor
+    private static final class Neighbour {
+        private final TrackKey trackKey;
+        private final GPSPoint point;
+        private final double distance;
+    }
+}
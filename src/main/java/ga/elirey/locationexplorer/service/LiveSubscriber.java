@@ -0,0 +1,126 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.data.SlowSubscriberPolicy;
+import ga.elirey.locationexplorer.data.TrackKey;
+import lombok.Getter;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One client following live tracks. Fixes are buffered up to a bounded size according to the subscriber policy
+ * and sent by a single drain task at a time, so that a slow client never blocks the ingestion.
+ */
+@Slf4j
+class LiveSubscriber {
+
+    @Getter
+    private final SseEmitter emitter;
+    @Getter
+    private final Set<TrackKey> trackKeys;
+    private final SlowSubscriberPolicy policy;
+    private final int bufferSize;
+
+    private final Deque<LiveFix> queue = new ArrayDeque<>();
+    private final Map<TrackKey, LiveFix> latestFixes = new LinkedHashMap<>();
+    private final AtomicBoolean isDrainScheduled = new AtomicBoolean();
+    private volatile boolean isClosed;
+    private long droppedFixes;
+
+    LiveSubscriber(final SseEmitter emitter, final Set<TrackKey> trackKeys, final SlowSubscriberPolicy policy, final int bufferSize) {
+        this.emitter = emitter;
+        this.trackKeys = trackKeys;
+        this.policy = policy;
+        this.bufferSize = Math.max(1, bufferSize);
+    }
+
+    /**
+     * Buffer a fix for this subscriber
+     *
+     * @param fix the fix, already serialized
+     * @return true if a drain task should be scheduled
+     */
+    boolean offer(final LiveFix fix) {
+        if (isClosed) {
+            return false;
+        }
+        synchronized (this) {
+            if (policy == SlowSubscriberPolicy.CONFLATE) {
+                latestFixes.remove(fix.getTrackKey()); // re-insert at the end to keep fixes in arrival order
+                latestFixes.put(fix.getTrackKey(), fix);
+            } else {
+                if (queue.size() >= bufferSize) {
+                    queue.pollFirst();
+                    if (++droppedFixes % bufferSize == 1) {
+                        log.debug("Live subscriber too slow, dropped {} fix(es) so far", droppedFixes);
+                    }
+                }
+                queue.addLast(fix);
+            }
+        }
+        return isDrainScheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * Send the buffered fixes until the buffer is empty. Only one drain runs at a time per subscriber.
+     */
+    void drain() {
+        while (true) {
+            final List<LiveFix> fixes = takeAll();
+            if (fixes.isEmpty()) {
+                isDrainScheduled.set(false);
+                // a fix may have been offered after takeAll but before the flag was reset
+                if (isEmpty() || !isDrainScheduled.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+            for (final LiveFix fix : fixes) {
+                try {
+                    emitter.send(SseEmitter.event().name("fix").data(fix.getFeature()));
+                } catch (final IOException | IllegalStateException e) {
+                    log.debug("Live subscriber disconnected: {}", e.getMessage());
+                    close();
+                    return;
+                }
+            }
+        }
+    }
+
+    void cancelDrain() {
+        isDrainScheduled.set(false);
+    }
+
+    void close() {
+        isClosed = true;
+        synchronized (this) {
+            queue.clear();
+            latestFixes.clear();
+        }
+    }
+
+    boolean isClosed() {
+        return isClosed;
+    }
+
+    private synchronized List<LiveFix> takeAll() {
+        final List<LiveFix> fixes = new ArrayList<>(policy == SlowSubscriberPolicy.CONFLATE ? latestFixes.values() : queue);
+        queue.clear();
+        latestFixes.clear();
+        return fixes;
+    }
+
+    private synchronized boolean isEmpty() {
+        return queue.isEmpty() && latestFixes.isEmpty();
+    }
+
+    @Value
+    static class LiveFix {
+        TrackKey trackKey;
+        String feature;
+    }
+}
@@ -0,0 +1,156 @@
+package ga.elirey.locationexplorer.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ga.elirey.locationexplorer.data.SlowSubscriberPolicy;
+import ga.elirey.locationexplorer.data.TrackKey;
+import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+import ga.elirey.locationexplorer.event.LocationsIngestedEvent;
+import ga.elirey.locationexplorer.model.GPSPoint;
+import ga.elirey.locationexplorer.utils.BoundedExecutor;
+import ga.elirey.locationexplorer.utils.StreamingGpsJumpsFilter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * Push the fixes of followed tracks to the subscribers as they are ingested, after the GPS jumps filter.
+ * Each fix is filtered and serialized once per track whatever the number of subscribers following it.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LiveTrackingService {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final LocationExplorerService explorerService;
+
+    @Qualifier("liveStreamingExecutor")
+    private final BoundedExecutor liveStreamingExecutor;
+
+    private final ConcurrentMap<TrackKey, LiveTopic> topics = new ConcurrentHashMap<>();
+
+    @Value("${location-explorer.live.timeout-millis:1800000}")
+    private long timeoutMillis;
+
+    /**
+     * Follow the tracks of some users of a mission
+     *
+     * @param userIds   the followed users
+     * @param missionId the mission
+     * @param policy    what to do when the client reads slower than fixes arrive
+     * @param bufferSize max number of fixes buffered for the client
+     * @return the emitter the fixes are pushed to
+     */
+    public SseEmitter subscribe(final Collection<String> userIds, final String missionId,
+                                final SlowSubscriberPolicy policy, final int bufferSize) {
+        final SseEmitter emitter = new SseEmitter(timeoutMillis);
+        final Set<TrackKey> trackKeys = userIds.stream()
+                .map(userId -> new TrackKey(userId, missionId))
+                .collect(Collectors.toSet());
+        final LiveSubscriber subscriber = new LiveSubscriber(emitter, trackKeys, policy, bufferSize);
+
+        trackKeys.forEach(trackKey -> topics.compute(trackKey, (key, topic) -> {
+            final LiveTopic liveTopic = topic == null ? new LiveTopic() : topic;
+            liveTopic.subscribers.add(subscriber);
+            return liveTopic;
+        }));
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscriber));
+        emitter.onError(throwable -> unsubscribe(subscriber));
+        log.info("New live subscriber following {} track(s) of mission '{}', {} track(s) followed overall",
+                trackKeys.size(), missionId, topics.size());
+        return emitter;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLocationsIngested(final LocationsIngestedEvent event) {
+        if (topics.isEmpty()) {
+            return;
+        }
+        final Map<TrackKey, List<UnitLocationMeasurement>> followedMeasurements = event.getMeasurements().stream()
+                .filter(measurement -> topics.containsKey(trackKeyOf(measurement)))
+                .collect(Collectors.groupingBy(LiveTrackingService::trackKeyOf));
+
+        followedMeasurements.forEach((trackKey, measurements) -> {
+            final LiveTopic topic = topics.get(trackKey);
+            if (topic != null) {
+                publish(trackKey, topic, measurements);
+            }
+        });
+    }
+
+    private void publish(final TrackKey trackKey, final LiveTopic topic, final List<UnitLocationMeasurement> measurements) {
+        final List<LiveSubscriber.LiveFix> fixes = new ArrayList<>();
+        synchronized (topic) {
+            measurements.stream()
+                    .map(explorerService::map)
+                    .sorted(GPSPoint::compareTo)
+                    .forEach(point -> topic.jumpsFilter.offer(point)
+                            .ifPresent(accepted -> fixes.add(new LiveSubscriber.LiveFix(trackKey, serialize(accepted)))));
+        }
+        if (fixes.isEmpty()) {
+            return;
+        }
+        for (final LiveSubscriber subscriber : topic.subscribers) {
+            boolean isDrainNeeded = false;
+            for (final LiveSubscriber.LiveFix fix : fixes) {
+                isDrainNeeded |= subscriber.offer(fix);
+            }
+            if (isDrainNeeded) {
+                scheduleDrain(subscriber);
+            }
+        }
+    }
+
+    private void scheduleDrain(final LiveSubscriber subscriber) {
+        liveStreamingExecutor.supply(() -> {
+            subscriber.drain();
+            if (subscriber.isClosed()) {
+                unsubscribe(subscriber);
+            }
+            return null;
+        }).whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                // pool saturated, the next ingested fix will try again
+                subscriber.cancelDrain();
+            }
+        });
+    }
+
+    private void unsubscribe(final LiveSubscriber subscriber) {
+        subscriber.close();
+        subscriber.getTrackKeys().forEach(trackKey -> topics.computeIfPresent(trackKey, (key, topic) -> {
+            topic.subscribers.remove(subscriber);
+            return topic.subscribers.isEmpty() ? null : topic;
+        }));
+    }
+
+    private static TrackKey trackKeyOf(final UnitLocationMeasurement measurement) {
+        return new TrackKey(measurement.getId().getUnitId(), measurement.getId().getContextId());
+    }
+
+    private static String serialize(final GPSPoint point) {
+        try {
+            return MAPPER.writeValueAsString(point.toGeoJsonObject());
+        } catch (final JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize live fix", e);
+        }
+    }
+
+    private static final class LiveTopic {
+        private final StreamingGpsJumpsFilter<GPSPoint> jumpsFilter = new StreamingGpsJumpsFilter<>();
+        private final List<LiveSubscriber> subscribers = new CopyOnWriteArrayList<>();
+    }
+}
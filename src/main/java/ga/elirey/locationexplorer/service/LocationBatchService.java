@@ -0,0 +1,171 @@
+package ga.elirey.locationexplorer.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ga.elirey.locationexplorer.data.FilterOptions;
+import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+import ga.elirey.locationexplorer.exception.ServiceOverloadedException;
+import ga.elirey.locationexplorer.format.BatchOutputFormat;
+import ga.elirey.locationexplorer.model.GPSPoint;
+import ga.elirey.locationexplorer.utils.BoundedExecutor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.geojson.Feature;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LocationBatchService {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final LocationPollerService pollerService;
+    private final LocationExplorerService explorerService;
+    private final EntityManager entityManager;
+
+    @Qualifier("trackFilteringExecutor")
+    private final BoundedExecutor trackFilteringExecutor;
+
+    /**
+     * Load the tracks of several users of one mission with a single query and stream them as one document.
+     * Rows come ordered by user so each user's points are handed to the filtering pool as soon as the next user starts,
+     * while results are written back in user order.
+     */
+    @Transactional(readOnly = true)
+    public void convertBatch(final List<String> userIds, final String missionId, final BatchOutputFormat format,
+                             final Long startDateMillis, final Long endDateMillis, final FilterOptions options,
+                             final OutputStream outputStream) throws IOException {
+
+        // bound the number of tracks held in memory, from loading until written, by the pool capacity: the reading
+        // thread writes the oldest track out when none is left
+        final Semaphore inFlight = new Semaphore(trackFilteringExecutor.getPoolSize() * 2);
+        final Deque<CompletableFuture<List<Feature>>> pending = new ArrayDeque<>();
+        final BatchWriter writer = new BatchWriter(format, outputStream, inFlight);
+
+        format.writeStart(outputStream);
+        try (Stream<UnitLocationMeasurement> rows = pollerService.streamLocations(new LinkedHashSet<>(userIds), missionId,
+                startDateMillis, endDateMillis)) {
+
+            final Iterator<UnitLocationMeasurement> iterator = rows.iterator();
+            String currentUserId = null;
+            List<GPSPoint> currentPoints = new ArrayList<>();
+            while (iterator.hasNext()) {
+                final UnitLocationMeasurement row = iterator.next();
+                final String userId = row.getId().getUnitId();
+                if (currentUserId != null && !currentUserId.equals(userId)) {
+                    pending.add(submit(currentUserId, currentPoints, options));
+                    currentPoints = new ArrayList<>();
+                    writer.writeCompleted(pending, false);
+                }
+                if (currentUserId == null || !currentUserId.equals(userId)) {
+                    writer.acquire(pending); // the track starting now takes a permit until it is written
+                }
+                currentUserId = userId;
+                currentPoints.add(explorerService.map(row));
+                entityManager.detach(row); // keep the persistence context from growing with the whole batch
+            }
+            if (currentUserId != null) {
+                pending.add(submit(currentUserId, currentPoints, options));
+            }
+            writer.writeCompleted(pending, true);
+        }
+        format.writeEnd(outputStream);
+        log.info("Streamed {} track(s) out of {} requested user(s) for mission '{}'", writer.getWrittenTracks(),
+                userIds.size(), missionId);
+    }
+
+    /**
+     * Filter a track on the pool. The response status being sent already, a track timing out is written as an error
+     * feature of its user rather than failing the whole document.
+     */
+    private CompletableFuture<List<Feature>> submit(final String userId, final List<GPSPoint> points,
+                                                    final FilterOptions options) {
+        return trackFilteringExecutor.supplyOrRunInline(() -> explorerService.buildGpsTrack(userId,
+                explorerService.mergeDevices(points), options)
+                .toGeoJsonFeatures(options.isWayPointIncluded()))
+                .exceptionally(throwable -> {
+                    final Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                    if (!(cause instanceof ServiceOverloadedException)) {
+                        throw throwable instanceof CompletionException ? (CompletionException) throwable
+                                : new CompletionException(throwable);
+                    }
+                    log.warn("Track of user '{}' left out of the batch: {}", userId, cause.getMessage());
+                    return Collections.singletonList(errorFeature(userId, cause.getMessage()));
+                });
+    }
+
+    private static Feature errorFeature(final String userId, final String message) {
+        final Feature feature = new Feature();
+        feature.setProperty("trackedUser", userId);
+        feature.setProperty("error", message);
+        return feature;
+    }
+
+    @RequiredArgsConstructor
+    private static final class BatchWriter {
+
+        private final BatchOutputFormat format;
+        private final OutputStream outputStream;
+        private final Semaphore inFlight;
+        private boolean isFirst = true;
+        private int writtenTracks;
+
+        /**
+         * Take a permit for a new track, writing the oldest pending tracks out until one is released. Every permit is
+         * held by a pending track at this point, so there is always one to wait for.
+         */
+        void acquire(final Deque<CompletableFuture<List<Feature>>> pending) throws IOException {
+            while (!inFlight.tryAcquire()) {
+                writeNext(pending);
+                outputStream.flush();
+                inFlight.release();
+            }
+        }
+
+        /**
+         * Write the tracks which are done, in submission order, and release their permits once flushed
+         *
+         * @param pending tracks being processed
+         * @param isWaiting whether to wait for the tracks still being processed
+         */
+        void writeCompleted(final Deque<CompletableFuture<List<Feature>>> pending, final boolean isWaiting) throws IOException {
+            int written = 0;
+            while (!pending.isEmpty() && (isWaiting || pending.peek().isDone())) {
+                writeNext(pending);
+                written++;
+            }
+            outputStream.flush();
+            inFlight.release(written);
+        }
+
+        private void writeNext(final Deque<CompletableFuture<List<Feature>>> pending) throws IOException {
+            final List<Feature> features;
+            try {
+                features = pending.poll().join();
+            } catch (final CompletionException e) {
+                pending.forEach(future -> future.cancel(false));
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+            for (final Feature feature : features) {
+                format.writeFeature(outputStream, MAPPER.writeValueAsBytes(feature), isFirst);
+                isFirst = false;
+            }
+            writtenTracks++;
+        }
+
+        int getWrittenTracks() {
+            return writtenTracks;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.data.DeltaCursor;
+import ga.elirey.locationexplorer.data.FilterOptions;
+import ga.elirey.locationexplorer.data.LocationDelta;
+import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+import ga.elirey.locationexplorer.model.GPSPoint;
+import ga.elirey.locationexplorer.repository.LocationExplorerRepository;
+import ga.elirey.locationexplorer.utils.BoundedExecutor;
+import ga.elirey.locationexplorer.utils.GpsJumpsFilterAlgorithm;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.geojson.Feature;
+import org.geojson.FeatureCollection;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Incremental refresh of a track: only the points recorded since the last fetch are read and sent
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LocationDeltaService {
+
+    // the points before the new ones: the previously sent last point is judged between its predecessor and the next
+    // point, and the GPS jumps filter leaves tracks of up to 3 points untouched so a single new point needs 3 of them
+    private static final int TAIL_SIZE = 3;
+
+    private final LocationExplorerRepository repository;
+    private final LocationPollerService pollerService;
+    private final LocationExplorerService explorerService;
+
+    @Qualifier("databaseExecutor")
+    private final BoundedExecutor databaseExecutor;
+
+    /**
+     * Get the points of a user recorded after a cursor
+     *
+     * @param userId    the user
+     * @param missionId the mission
+     * @param since     the cursor returned by the previous fetch, null for a first fetch over the default time range
+     * @param options   only the GPS jumps filter is applied, simplification would not be stable across fetches
+     * @return the new points, the cursor to use next and the points of the previous fetch to remove
+     */
+    public CompletableFuture<LocationDelta> getDeltaAsync(final String userId, final String missionId, final String since,
+                                                          final FilterOptions options) {
+        final Optional<DeltaCursor> cursor = Optional.ofNullable(since).filter(s -> !s.isEmpty()).map(DeltaCursor::decode);
+        return databaseExecutor.supply(() -> cursor
+                .map(c -> getDelta(userId, missionId, c, options))
+                .orElseGet(() -> getFirstDelta(userId, missionId, options)));
+    }
+
+    private LocationDelta getFirstDelta(final String userId, final String missionId, final FilterOptions options) {
+        final List<GPSPoint> points = toPoints(pollerService.getLocations(userId, missionId, 0, 0));
+        if (points.isEmpty()) {
+            return LocationDelta.builder().points(new FeatureCollection()).build();
+        }
+        final GPSPoint lastPoint = points.get(points.size() - 1);
+        return LocationDelta.builder()
+                .points(asFeatureCollection(filterGpsJumps(points, options)))
+                .cursor(cursorOf(lastPoint).encode())
+                .build();
+    }
+
+    private LocationDelta getDelta(final String userId, final String missionId, final DeltaCursor cursor,
+                                   final FilterOptions options) {
+        final List<GPSPoint> newPoints = toPoints(repository.findAfterPosition(userId, missionId, cursor.getTime(),
+                cursor.getDeviceId()));
+        if (newPoints.isEmpty()) {
+            return LocationDelta.builder()
+                    .points(new FeatureCollection())
+                    .cursor(cursor.encode())
+                    .build();
+        }
+
+        final List<GPSPoint> tail = toPoints(repository.findLatestUpToPosition(userId, missionId, cursor.getTime(),
+                cursor.getDeviceId(), PageRequest.of(0, TAIL_SIZE)));
+        final List<GPSPoint> points = new ArrayList<>(tail);
+        points.addAll(newPoints);
+        final List<GPSPoint> filteredPoints = filterGpsJumps(points, options);
+
+        final LocationDelta.LocationDeltaBuilder delta = LocationDelta.builder();
+        if (!tail.isEmpty()) {
+            // the last point of the previous fetch was kept anyway, it can now be judged with the next one
+            final GPSPoint previousLastPoint = tail.get(tail.size() - 1);
+            if (!filteredPoints.contains(previousLastPoint)) {
+                delta.correction(new LocationDelta.Correction(formatTimestamp(previousLastPoint), previousLastPoint.getCollectorId()));
+            }
+        }
+        final Set<GPSPoint> tailPoints = new HashSet<>(tail);
+        log.debug("Sending {} new point(s) to user '{}' since {}", newPoints.size(), userId, cursor.getTime());
+        return delta
+                .points(asFeatureCollection(filteredPoints.stream()
+                        .filter(point -> !tailPoints.contains(point))
+                        .collect(Collectors.toList())))
+                .cursor(cursorOf(newPoints.get(newPoints.size() - 1)).encode())
+                .build();
+    }
+
+    private List<GPSPoint> filterGpsJumps(final List<GPSPoint> points, final FilterOptions options) {
+        return options.isGpsJumpFilterEnabled() ? new GpsJumpsFilterAlgorithm<GPSPoint>().apply(points) : points;
+    }
+
+    private List<GPSPoint> toPoints(final List<UnitLocationMeasurement> measurements) {
+        return measurements.stream()
+                .map(explorerService::map)
+                .sorted(Comparator.comparing(GPSPoint::getTimestamp).thenComparing(GPSPoint::getCollectorId))
+                .collect(Collectors.toList());
+    }
+
+    private static FeatureCollection asFeatureCollection(final List<GPSPoint> points) {
+        final FeatureCollection features = new FeatureCollection();
+        points.forEach(point -> features.add((Feature) point.toGeoJsonObject()));
+        return features;
+    }
+
+    private static DeltaCursor cursorOf(final GPSPoint point) {
+        return new DeltaCursor(point.getTimestamp(), point.getCollectorId());
+    }
+
+    private static String formatTimestamp(final GPSPoint point) {
+        return point.getTimestamp().atZone(ZoneId.of("UTC")).format(DateTimeFormatter.ISO_ZONED_DATE_TIME);
+    }
+}
@@ -1,20 +1,46 @@
 package ga.elirey.locationexplorer.service;
 
+import ga.elirey.locationexplorer.data.ExecutionPlan;
 import ga.elirey.locationexplorer.data.FilterOptions;
 import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+import ga.elirey.locationexplorer.exception.ResamplingTooLargeException;
+import ga.elirey.locationexplorer.exception.TrackTooLargeException;
 import ga.elirey.locationexplorer.format.LocationOutputFormat;
 import ga.elirey.locationexplorer.model.GPSPoint;
 import ga.elirey.locationexplorer.model.GPSTrack;
+import ga.elirey.locationexplorer.utils.BoundedExecutor;
+import ga.elirey.locationexplorer.utils.CustomTimer;
+import ga.elirey.locationexplorer.utils.DeviceStreamMerger;
 import ga.elirey.locationexplorer.utils.GpsJumpsFilterAlgorithm;
 import ga.elirey.locationexplorer.utils.RamerDouglasPeuckerAlgorithm;
+import ga.elirey.locationexplorer.utils.SpillableTrackBuffer;
+import ga.elirey.locationexplorer.utils.TrackSegmenter;
+import ga.elirey.locationexplorer.utils.UniformResamplingAlgorithm;
+import ga.elirey.locationexplorer.utils.VisvalingamWhyattAlgorithm;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.persistence.EntityManager;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
@@ -22,6 +48,41 @@ import java.util.stream.Collectors;
 public class LocationExplorerService {
 
     private final LocationPollerService pollerService;
+    private final PipelineMetrics pipelineMetrics;
+    private final ExecutionPlanner executionPlanner;
+    @Qualifier("readOnlyTransactionTemplate")
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final EntityManager entityManager;
+
+    @Qualifier("databaseExecutor")
+    private final BoundedExecutor databaseExecutor;
+
+    @Qualifier("trackFilteringExecutor")
+    private final BoundedExecutor trackFilteringExecutor;
+
+    @Value("${location-explorer.segmentation.max-gap-millis:1800000}")
+    private long maxSegmentGapMillis;
+
+    @Value("${location-explorer.segmentation.dwell-radius-meters:100}")
+    private double dwellRadiusInMeters;
+
+    @Value("${location-explorer.segmentation.dwell-duration-millis:900000}")
+    private long dwellDurationMillis;
+
+    @Value("${location-explorer.devices-merge.duplicate-window-millis:2000}")
+    private long duplicateWindowMillis;
+
+    @Value("${location-explorer.devices-merge.duplicate-distance-meters:10}")
+    private double duplicateDistanceInMeters;
+
+    @Value("${location-explorer.resampling.max-points:100000}")
+    private int maxResampledPoints;
+
+    @Value("${location-explorer.spill.threshold-bytes:8388608}")
+    private long spillThresholdBytes;
+
+    @Value("${location-explorer.spill.directory:${java.io.tmpdir}}")
+    private String spillDirectory;
 
     /**
      * Convert a database entry to a geojson or a gpx entry (other location data format will be added progressively)
@@ -33,25 +94,126 @@ public class LocationExplorerService {
                           final Long startDateMillis, final Long endDateMillis,
                           final FilterOptions options) throws Exception {
 
-        final List<UnitLocationMeasurement> locations = pollerService.getLocations(userId, missionId, startDateMillis, endDateMillis);
+        return processAndFormat(outputFormat, loadTrack(userId, missionId, startDateMillis, endDateMillis, options), options);
+    }
+
+    /**
+     * Read and filter the track of a user, to format it more than once
+     */
+    @Transactional(readOnly = true)
+    public GPSTrack loadTrack(final String userId, final String missionId, final Long startDateMillis,
+                              final Long endDateMillis, final FilterOptions options) {
+        try (ExecutionPlanner.Reservation reservation = executionPlanner.newReservation();
+             SharedTrackBuffer buffer = new SharedTrackBuffer(userId)) {
+            final LoadedPoints loaded = filterBuffered(userId, loadPoints(userId, missionId, startDateMillis, endDateMillis,
+                    options, reservation, buffer), buffer);
+            return buildGpsTrack(userId, loaded.points, loaded.remainingOptions);
+        }
+    }
+
+    /**
+     * Same as {@link #convert} without holding the calling thread: the database read runs on the database pool,
+     * filtering and formatting on the track filtering pool, including the path filters of a track streamed into a buffer
+     *
+     * @return a future string version of the produced geojson, failed with a
+     * {@link ga.elirey.locationexplorer.exception.ServiceOverloadedException} if one of the pools is saturated or the
+     * memory shared by the requests is exhausted
+     */
+    public CompletableFuture<String> convertAsync(final String userId, final String missionId, final String outputFormat,
+                                                  final Long startDateMillis, final Long endDateMillis,
+                                                  final FilterOptions options) {
+
+        final ExecutionPlanner.Reservation reservation = executionPlanner.newReservation();
+        final SharedTrackBuffer buffer = new SharedTrackBuffer(userId);
+        return databaseExecutor.supply(() -> loadPoints(userId, missionId, startDateMillis, endDateMillis, options,
+                reservation, buffer))
+                .thenCompose(loaded -> trackFilteringExecutor.supply(() -> {
+                    final LoadedPoints filtered = filterBuffered(userId, loaded, buffer);
+                    final GPSTrack gpsTrack = buildGpsTrack(userId, filtered.points, filtered.remainingOptions);
+                    try {
+                        return processAndFormat(outputFormat, gpsTrack, options);
+                    } catch (final IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }))
+                .whenComplete((output, error) -> {
+                    buffer.close();
+                    reservation.close();
+                });
+    }
+
+    /**
+     * Drop the GPS jumps and simplify the path, or resample it when a resampling period is set. Jumps are dropped
+     * before resampling so that no point is interpolated towards them.
+     */
+    private List<GPSPoint> filterPoints(final List<GPSPoint> points, final FilterOptions options) {
+        if (options.isResamplingEnabled()) {
+            final List<GPSPoint> fixes = filterGpsJumps(points, options.isGpsJumpFilterEnabled());
+            return pipelineMetrics.apply(new UniformResamplingAlgorithm(resamplingPeriodOf(fixes, options),
+                    options.getInterpolation()), fixes);
+        }
+        return filterGpsJumps(optimizePath(points, options), options.isGpsJumpFilterEnabled());
+    }
+
+    /**
+     * Resampling period of a track, raised so that the resampled track fits its point budget, and the resampling limit
+     */
+    private long resamplingPeriodOf(final List<GPSPoint> fixes, final FilterOptions options) {
+        final long periodMillis = options.getResamplingPeriodMillis();
+        if (fixes.size() < 2) {
+            return periodMillis;
+        }
+        final long spanMillis = fixes.get(fixes.size() - 1).getTimestampAsMilliSeconds() - fixes.get(0).getTimestampAsMilliSeconds();
+        final int maxPoints = options.isPointBudgetEnabled()
+                ? Math.min(options.getMaxPoints(), maxResampledPoints) : maxResampledPoints;
+        if (spanMillis / periodMillis < maxPoints) {
+            return periodMillis;
+        }
+        // smallest period giving at most maxPoints points, the first one included
+        final long raisedPeriodMillis = maxPoints > 1 ? (spanMillis + maxPoints - 2) / (maxPoints - 1) : spanMillis + 1;
+        log.debug("Raised the resampling period from {} ms to {} ms to fit {} points", periodMillis, raisedPeriodMillis, maxPoints);
+        return raisedPeriodMillis;
+    }
 
-        final GPSTrack gpsTrack = loadGpsTrackForUserWithOptimizationParameters(userId, locations, options);
+    /**
+     * Reject a resampling without point budget that would produce more points than the resampling limit over the
+     * requested time range, before anything is read
+     *
+     * @throws ResamplingTooLargeException if the resampling period is too short for the time range
+     */
+    private void checkResampling(final Long startDateMillis, final Long endDateMillis, final FilterOptions options) {
+        if (!options.isResamplingEnabled() || options.isPointBudgetEnabled()) {
+            return;
+        }
+        final long rangeMillis = Duration.between(pollerService.setStartTimeFromParam(startDateMillis),
+                pollerService.setStopTimeFromParam(endDateMillis)).toMillis();
+        final long resampledPoints = rangeMillis / options.getResamplingPeriodMillis() + 1;
+        if (resampledPoints > maxResampledPoints) {
+            throw new ResamplingTooLargeException(options.getResamplingPeriodMillis(), resampledPoints, maxResampledPoints);
+        }
+    }
 
-        return processAndFormat(outputFormat, gpsTrack, options);
+    private List<GPSPoint> optimizePath(final List<GPSPoint> points, final FilterOptions options) {
+        if (options.isPointBudgetEnabled()) {
+            log.trace("Processing {} points with Visvalingam-Whyatt algorithm for a budget of {} points", points.size(),
+                    options.getMaxPoints());
+            return pipelineMetrics.apply(new VisvalingamWhyattAlgorithm<>(options.getMaxPoints()), points);
+        }
+        return optimizePath(points, options.isPathOptimizerEnabled(), options.getOptimizationCoefficient());
     }
 
     private List<GPSPoint> optimizePath(final List<GPSPoint> points, final boolean isPathOptimizerEnabled, final int optimizationCoefficient) {
         if (isPathOptimizerEnabled) {
             log.trace("Processing {} points with Ramer-Douglas-Peucker algorithm", points.size());
             final RamerDouglasPeuckerAlgorithm<GPSPoint> rdp = new RamerDouglasPeuckerAlgorithm<>(optimizationCoefficient);
-            return rdp.apply(points);
+            return pipelineMetrics.apply(rdp, points);
         } else return points; // do nothing
     }
 
     private List<GPSPoint> filterGpsJumps(final List<GPSPoint> points, final boolean isGpsJumpFilterEnabled) {
         if (isGpsJumpFilterEnabled) {
             GpsJumpsFilterAlgorithm<GPSPoint> gjf = new GpsJumpsFilterAlgorithm<>();
-            return gjf.apply(points);
+            return pipelineMetrics.apply(gjf, points);
         } else return points;
     }
 
@@ -63,16 +225,188 @@ public class LocationExplorerService {
             log.error("Could not parse ENUM location format output '{}', reverting to default value GEOJSON", locationOutputFormat);
             format = LocationOutputFormat.GEOJSON;
         }
-        return format.process(gpsTrack, options);
+        final CustomTimer timer = new CustomTimer();
+        final String output = format.process(gpsTrack, options);
+        pipelineMetrics.record(PipelineMetrics.STAGE_SERIALIZATION, timer.elapsedNanos());
+        pipelineMetrics.recordResponseSize(format, output);
+        return output;
+    }
+
+    /**
+     * Read the time-ordered points of a user with the strategy planned from their number
+     *
+     * @param reservation receives the heap reserved for the plan, to release once the track is produced
+     * @param buffer receives the track when it is streamed, see {@link #filterBuffered}
+     * @return the points along with the filters still to apply to them
+     * @throws TrackTooLargeException if there are too many points to process, even downsampled
+     * @throws ResamplingTooLargeException if the resampling period is too short for the time range
+     */
+    private LoadedPoints loadPoints(final String userId, final String missionId, final Long startDateMillis,
+                                    final Long endDateMillis, final FilterOptions options,
+                                    final ExecutionPlanner.Reservation reservation, final SharedTrackBuffer buffer) {
+        checkResampling(startDateMillis, endDateMillis, options);
+        final ExecutionPlan plan = pipelineMetrics.time(PipelineMetrics.STAGE_PLANNING,
+                () -> executionPlanner.plan(userId, missionId, startDateMillis, endDateMillis, isFilterableInBuffer(options),
+                        reservation));
+        switch (plan.getStrategy()) {
+            case REJECTED:
+                throw new TrackTooLargeException(userId, plan.getEstimatedPoints());
+            case STREAMING:
+                return streamIntoBuffer(userId, missionId, startDateMillis, endDateMillis, options, buffer);
+            case DB_DOWNSAMPLED:
+                return new LoadedPoints(toTrackPoints(pipelineMetrics.time(PipelineMetrics.STAGE_DATABASE_QUERY,
+                        () -> pollerService.getDownsampledLocations(userId, missionId, startDateMillis, endDateMillis,
+                                plan.getDownsamplingStep()))), options);
+            default:
+                return new LoadedPoints(toTrackPoints(pipelineMetrics.time(PipelineMetrics.STAGE_DATABASE_QUERY,
+                        () -> pollerService.getLocations(userId, missionId, startDateMillis, endDateMillis))), options);
+        }
     }
 
-    private GPSTrack loadGpsTrackForUserWithOptimizationParameters(final String userId,
-                                                                   final List<UnitLocationMeasurement> locations,
-                                                                   final FilterOptions filterOptions) {
-        final List<GPSPoint> points = locations.parallelStream()
+    /**
+     * Only the path optimizer and the GPS jumps filter work on a track buffer, the other options need the points
+     */
+    private static boolean isFilterableInBuffer(final FilterOptions options) {
+        return (options.isPathOptimizerEnabled() || options.isGpsJumpFilterEnabled()) && !options.isPointBudgetEnabled()
+                && !options.isResamplingEnabled() && !options.isSegmentationEnabled();
+    }
+
+    /**
+     * Read and merge a large track row by row into buffers spilling to disk above a size, without holding entities or
+     * points. The points are left in the buffer, for {@link #filterBuffered} to filter them.
+     */
+    private LoadedPoints streamIntoBuffer(final String userId, final String missionId,
+                                          final Long startDateMillis, final Long endDateMillis,
+                                          final FilterOptions options, final SharedTrackBuffer buffer) {
+        final SpillableTrackBuffer track = buffer.acquire();
+        try {
+            readIntoBuffer(userId, missionId, startDateMillis, endDateMillis, track);
+        } finally {
+            buffer.release();
+        }
+        return new LoadedPoints(null, options);
+    }
+
+    /**
+     * Materialize the points of a track streamed into a buffer. The path filters run on the buffer, so that only the
+     * points they keep are materialized on the heap; the options working on points, i.e. the point budget, resampling
+     * and segmentation, get all the merged points.
+     *
+     * @return the loaded points as is if they were not streamed
+     * @throws TrackTooLargeException if the points kept by the path filters do not fit the streaming budget
+     */
+    private LoadedPoints filterBuffered(final String userId, final LoadedPoints loaded, final SharedTrackBuffer buffer) {
+        if (loaded.points != null) {
+            return loaded;
+        }
+        final SpillableTrackBuffer track = buffer.acquire();
+        try {
+            final FilterOptions options = loaded.remainingOptions;
+            if (!isFilterableInBuffer(options)) {
+                return new LoadedPoints(new ArrayList<>(new BufferedPoints(track, null)), options);
+            }
+            return new LoadedPoints(pipelineMetrics.time(PipelineMetrics.STAGE_BUFFER_FILTERING, () -> {
+                final BitSet kept = selectInBuffer(track, options);
+                if (!executionPlanner.fitsStreamingBudget(kept.cardinality())) {
+                    throw new TrackTooLargeException(userId, kept.cardinality());
+                }
+                final List<GPSPoint> points = new ArrayList<>(new BufferedPoints(track, kept));
+                log.info("Kept {} out of {} points of user '{}' filtered in a {} buffer", points.size(), track.size(),
+                        userId, track.isSpilled() ? "spilled" : "heap");
+                return points;
+            }), options.withoutPathFilters());
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Read and filter the whole track of a user on the calling thread, then hand it to a writer, for the exports. The
+     * track goes through the buffers spilling to disk without being planned, so it is never downsampled nor rejected
+     * whatever its size, and the points given to the writer are read from the buffer one at a time.
+     *
+     * @throws ResamplingTooLargeException if the resampling period is too short for the time range
+     */
+    public void writeFullTrack(final String userId, final String missionId, final Long startDateMillis,
+                               final Long endDateMillis, final FilterOptions options, final Consumer<GPSTrack> writer) {
+        checkResampling(startDateMillis, endDateMillis, options);
+        try (SpillableTrackBuffer track = newTrackBuffer(userId)) {
+            readIntoBuffer(userId, missionId, startDateMillis, endDateMillis, track);
+            if (!isFilterableInBuffer(options)) {
+                writer.accept(buildGpsTrack(userId, new BufferedPoints(track, null), options));
+                return;
+            }
+            final BitSet kept = pipelineMetrics.time(PipelineMetrics.STAGE_BUFFER_FILTERING, () -> selectInBuffer(track, options));
+            writer.accept(buildGpsTrack(userId, new BufferedPoints(track, kept), options.withoutPathFilters()));
+        }
+    }
+
+    /**
+     * Read the measurements of a user, ordered by device then time, and merge them into a time-ordered buffer
+     */
+    private void readIntoBuffer(final String userId, final String missionId, final Long startDateMillis,
+                                final Long endDateMillis, final SpillableTrackBuffer track) {
+        pipelineMetrics.time(PipelineMetrics.STAGE_DATABASE_QUERY, () -> readOnlyTransactionTemplate.execute(status -> {
+            try (SpillableTrackBuffer pointsByDevice = newTrackBuffer(userId);
+                 Stream<UnitLocationMeasurement> rows = pollerService.streamLocations(Collections.singleton(userId),
+                         missionId, startDateMillis, endDateMillis)) {
+                rows.forEach(row -> {
+                    entityManager.detach(row);
+                    pointsByDevice.append(map(row));
+                });
+                pipelineMetrics.time(PipelineMetrics.STAGE_DEVICES_MERGE, () -> {
+                    new DeviceStreamMerger(duplicateWindowMillis, duplicateDistanceInMeters).merge(pointsByDevice, track);
+                    return track;
+                });
+            }
+            return track;
+        }));
+    }
+
+    /**
+     * @return the indexes of the points of the buffer kept by the path filters of the options
+     */
+    private static BitSet selectInBuffer(final SpillableTrackBuffer track, final FilterOptions options) {
+        BitSet kept = new BitSet(track.size());
+        kept.set(0, track.size());
+        if (options.isPathOptimizerEnabled()) {
+            kept = new RamerDouglasPeuckerAlgorithm<GPSPoint>(options.getOptimizationCoefficient()).select(track);
+        }
+        if (options.isGpsJumpFilterEnabled()) {
+            kept = new GpsJumpsFilterAlgorithm<GPSPoint>().select(track, kept);
+        }
+        return kept;
+    }
+
+    private SpillableTrackBuffer newTrackBuffer(final String userId) {
+        return new SpillableTrackBuffer(userId, spillThresholdBytes, Paths.get(spillDirectory));
+    }
+
+    /**
+     * Map the measurements of a user, ordered by device then time, to a single time-ordered track
+     */
+    List<GPSPoint> toTrackPoints(final List<UnitLocationMeasurement> locations) {
+        return mergeDevices(pipelineMetrics.time(PipelineMetrics.STAGE_MAPPING, () -> locations.stream()
                 .map(this::map)
-                .sorted(GPSPoint::compareTo)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList())));
+    }
+
+    /**
+     * Merge the time-ordered runs of each device of a user, dropping the near duplicates between devices
+     */
+    List<GPSPoint> mergeDevices(final List<GPSPoint> pointsByDevice) {
+        final List<GPSPoint> points = pipelineMetrics.time(PipelineMetrics.STAGE_DEVICES_MERGE,
+                () -> new DeviceStreamMerger(duplicateWindowMillis, duplicateDistanceInMeters).merge(pointsByDevice));
+        if (points.size() < pointsByDevice.size()) {
+            log.debug("Dropped {} near duplicate fix(es) between devices", pointsByDevice.size() - points.size());
+        }
+        return points;
+    }
+
+    /**
+     * Filter and optimize already time-ordered points of a single user into a track
+     */
+    GPSTrack buildGpsTrack(final String userId, final List<GPSPoint> points, final FilterOptions filterOptions) {
         final List<String> trackingDevicesIds = points.stream()
                 .map(GPSPoint::getCollectorId)
                 .distinct()
@@ -80,15 +414,43 @@ public class LocationExplorerService {
         log.info("Loaded {} recorded GPS locations from {} tracking device(s) {} for user '{}'", points.size(),
                 trackingDevicesIds.size(), trackingDevicesIds.toArray(), userId);
 
+        if (!filterOptions.isSegmentationEnabled()) {
+            return GPSTrack.builder()
+                    .trackedUser(userId)
+                    .trackingDevicesIds(trackingDevicesIds)
+                    .track(filterPoints(points, filterOptions))
+                    .build();
+        }
+
+        List<List<GPSPoint>> segments = new TrackSegmenter(maxSegmentGapMillis, dwellRadiusInMeters, dwellDurationMillis)
+                .split(points);
+        final List<Supplier<List<GPSPoint>>> segmentFilters = new ArrayList<>(segments.size());
+        if (filterOptions.isPointBudgetEnabled()) {
+            // at least the 2 ends of each segment are kept, a budget too small for all of them merges the shortest ones
+            final int budget = Math.max(2, filterOptions.getMaxPoints());
+            segments = TrackSegmenter.mergeSmallest(segments, budget / 2);
+            final int[] shares = TrackSegmenter.shareBudget(segments, budget);
+            for (int i = 0; i < segments.size(); i++) {
+                final List<GPSPoint> segment = segments.get(i);
+                final FilterOptions segmentOptions = filterOptions.withMaxPoints(shares[i]);
+                segmentFilters.add(() -> filterPoints(segment, segmentOptions));
+            }
+        } else {
+            segments.forEach(segment -> segmentFilters.add(() -> filterPoints(segment, filterOptions)));
+        }
+        final List<List<GPSPoint>> filteredSegments = trackFilteringExecutor.invokeAll(segmentFilters);
+
         return GPSTrack.builder()
                 .trackedUser(userId)
                 .trackingDevicesIds(trackingDevicesIds)
-                .track(filterGpsJumps(optimizePath(points, filterOptions.isPathOptimizerEnabled(),
-                        filterOptions.getOptimizationCoefficient()), filterOptions.isGpsJumpFilterEnabled()))
+                .track(filteredSegments.stream()
+                        .flatMap(List::stream)
+                        .collect(Collectors.toList()))
+                .segments(filteredSegments)
                 .build();
     }
 
-    private GPSPoint map(UnitLocationMeasurement unitLocationMeasurement) {
+    GPSPoint map(UnitLocationMeasurement unitLocationMeasurement) {
         return GPSPoint.builder()
                 .accuracy(unitLocationMeasurement.getAccuracyInMeters())
                 .altitude(unitLocationMeasurement.getAltitude())
@@ -101,4 +463,75 @@ public class LocationExplorerService {
                 .timestamp(unitLocationMeasurement.getId().getTime())
                 .build();
     }
+
+    /**
+     * Read-only points of a buffer, all of them or the selected ones, materialized when they are read
+     */
+    private static final class BufferedPoints extends AbstractList<GPSPoint> implements RandomAccess {
+        private final SpillableTrackBuffer track;
+        private final int[] indexes;
+
+        /**
+         * @param selected the indexes of the points to read, all points if null
+         */
+        private BufferedPoints(final SpillableTrackBuffer track, final BitSet selected) {
+            this.track = track;
+            this.indexes = selected == null ? null : selected.stream().toArray();
+        }
+
+        @Override
+        public GPSPoint get(final int index) {
+            return track.toPoint(indexes == null ? index : indexes[index]);
+        }
+
+        @Override
+        public int size() {
+            return indexes == null ? track.size() : indexes.length;
+        }
+    }
+
+    /**
+     * Buffer of a streamed track, handed from the database pool to the track filtering pool. A stage that timed out
+     * keeps running until it ends, so the buffer is only closed once the request and every stage using it released it.
+     */
+    private final class SharedTrackBuffer implements AutoCloseable {
+        private final String userId;
+        private SpillableTrackBuffer track;
+        private int holders = 1; // the request, released on close
+
+        private SharedTrackBuffer(final String userId) {
+            this.userId = userId;
+        }
+
+        /**
+         * @throws IllegalStateException if the request already completed, e.g. on a timeout
+         */
+        private synchronized SpillableTrackBuffer acquire() {
+            if (holders == 0) {
+                throw new IllegalStateException(String.format("The request for the track of user '%s' already completed", userId));
+            }
+            holders++;
+            if (track == null) {
+                track = newTrackBuffer(userId);
+            }
+            return track;
+        }
+
+        private synchronized void release() {
+            if (--holders == 0 && track != null) {
+                track.close();
+            }
+        }
+
+        @Override
+        public void close() {
+            release();
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static final class LoadedPoints {
+        private final List<GPSPoint> points; // null while the track is in the buffer of the request
+        private final FilterOptions remainingOptions;
+    }
 }
@@ -0,0 +1,44 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+import ga.elirey.locationexplorer.event.LocationsIngestedEvent;
+import ga.elirey.locationexplorer.repository.LocationMeasurementWriter;
+import ga.elirey.locationexplorer.utils.GeoHash;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LocationIngestService {
+
+    private final LocationMeasurementWriter writer;
+    private final GeofenceEngine geofenceEngine;
+    private final DailyRollupService dailyRollupService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * Store a batch of measurements sent by the collectors and notify the listeners once stored
+     *
+     * @param measurements the measurements to store
+     * @return the stored measurements
+     */
+    @Transactional
+    public List<UnitLocationMeasurement> ingest(final List<UnitLocationMeasurement> measurements) {
+        measurements.forEach(measurement -> measurement.setGeohash(GeoHash.encode(measurement.getLatitude(), measurement.getLongitude())));
+        geofenceEngine.evaluate(measurements); // status is stored along with the measurement
+        final boolean[] inserted = writer.upsertAll(measurements);
+        final List<UnitLocationMeasurement> saved = new ArrayList<>(measurements);
+        dailyRollupService.addToRollups(saved, inserted);
+        log.debug("Ingested {} location measurement(s)", saved.size());
+        eventPublisher.publishEvent(new LocationsIngestedEvent(this, Collections.unmodifiableList(saved)));
+        return saved;
+    }
+}
@@ -0,0 +1,130 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.data.Interpolation;
+import ga.elirey.locationexplorer.data.UnitPosition;
+import ga.elirey.locationexplorer.model.GPSPoint;
+import ga.elirey.locationexplorer.utils.BoundedExecutor;
+import ga.elirey.locationexplorer.utils.TimeIndexedTrack;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * Estimate where units were at a given time, from the fixes recorded around it
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LocationInterpolationService {
+
+    private final LocationPollerService pollerService;
+    private final LocationExplorerService explorerService;
+    private final HotTrackService hotTrackService;
+    @Qualifier("readOnlyTransactionTemplate")
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    @Qualifier("databaseExecutor")
+    private final BoundedExecutor databaseExecutor;
+
+    @Value("${location-explorer.interpolation.search-window-millis:600000}")
+    private long searchWindowMillis;
+
+    /**
+     * Get the position of a user at a time, interpolated between the closest fixes before and after it. Recent fixes
+     * are read from the hot tracks store when it holds all of them, from the database otherwise, and the fixes of the
+     * devices are merged the same way in both cases.
+     *
+     * @return the position, empty if the user has no fix within the search window on both sides of the time
+     */
+    public CompletableFuture<Optional<UnitPosition>> getPositionAtAsync(final String userId, final String missionId,
+                                                                        final long timeMillis, final Interpolation interpolation) {
+        final Optional<List<GPSPoint>> recentFixes = hotTrackService.findFixesAround(userId, missionId, timeMillis,
+                timeMillis - searchWindowMillis, timeMillis + searchWindowMillis);
+        if (recentFixes.isPresent()) {
+            return CompletableFuture.completedFuture(positionAt(missionId, recentFixes.get(), timeMillis, interpolation));
+        }
+        return databaseExecutor.supply(() -> pollerService.getLocations(userId, missionId, timeMillis - searchWindowMillis,
+                timeMillis + searchWindowMillis))
+                .thenApply(locations -> positionAt(missionId, explorerService.toTrackPoints(locations), timeMillis, interpolation));
+    }
+
+    private static Optional<UnitPosition> positionAt(final String missionId, final List<GPSPoint> points, final long timeMillis,
+                                                     final Interpolation interpolation) {
+        return new TimeIndexedTrack(points).positionAt(timeMillis, interpolation).map(point -> toUnitPosition(missionId, point));
+    }
+
+    /**
+     * Get the positions of all users of a mission at a time, reading the fixes of the search window around it once. The
+     * fixes of each user are merged like for {@link #getPositionAtAsync}, one user at a time.
+     *
+     * @return the positions ordered by user, users without a fix within the window on both sides are left out
+     */
+    public CompletableFuture<List<UnitPosition>> getPositionsAtAsync(final String missionId, final long timeMillis,
+                                                                     final Interpolation interpolation) {
+        return databaseExecutor.supply(() -> readOnlyTransactionTemplate.execute(status -> {
+            final List<UnitPosition> positions = new ArrayList<>();
+            try (Stream<Object[]> rows = pollerService.streamFixesByUser(missionId, timeMillis - searchWindowMillis,
+                    timeMillis + searchWindowMillis)) {
+                final Iterator<Object[]> iterator = rows.iterator();
+                List<GPSPoint> userFixes = new ArrayList<>();
+                while (iterator.hasNext()) { // rows come ordered by user, device then time
+                    final GPSPoint fix = toPoint(iterator.next());
+                    if (!userFixes.isEmpty() && !userFixes.get(0).getUnitId().equals(fix.getUnitId())) {
+                        positionAt(missionId, explorerService.mergeDevices(userFixes), timeMillis, interpolation)
+                                .ifPresent(positions::add);
+                        userFixes = new ArrayList<>();
+                    }
+                    userFixes.add(fix);
+                }
+                if (!userFixes.isEmpty()) {
+                    positionAt(missionId, explorerService.mergeDevices(userFixes), timeMillis, interpolation)
+                            .ifPresent(positions::add);
+                }
+            }
+            positions.sort(Comparator.comparing(UnitPosition::getUnitId));
+            log.debug("Resolved the position of {} user(s) of mission '{}' at {}", positions.size(), missionId, timeMillis);
+            return positions;
+        }));
+    }
+
+    private static GPSPoint toPoint(final Object[] row) {
+        return GPSPoint.builder()
+                .unitId((String) row[0])
+                .collectorId((String) row[1])
+                .timestamp((LocalDateTime) row[2])
+                .latitude(((Number) row[3]).doubleValue())
+                .longitude(((Number) row[4]).doubleValue())
+                .altitude(row[5] == null ? 0 : ((Number) row[5]).doubleValue())
+                .accuracy(row[6] == null ? 0 : ((Number) row[6]).doubleValue())
+                .build();
+    }
+
+    private static UnitPosition toUnitPosition(final String missionId, final GPSPoint point) {
+        final String timestamp = point.getTimestamp().atZone(ZoneId.of("UTC")).format(DateTimeFormatter.ISO_ZONED_DATE_TIME);
+        return UnitPosition.builder()
+                .name(point.getUnitId())
+                .category(missionId)
+                .description(String.format("Position at %s", timestamp))
+                .unitId(point.getUnitId())
+                .contextId(missionId)
+                .collectorId(point.getCollectorId())
+                .timestamp(timestamp)
+                .lat(point.getLatitude())
+                .lng(point.getLongitude())
+                .build();
+    }
+}
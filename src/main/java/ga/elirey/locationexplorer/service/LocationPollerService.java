@@ -1,9 +1,12 @@
 package ga.elirey.locationexplorer.service;
 
+import ga.elirey.locationexplorer.data.TrackWatermark;
 import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
 import ga.elirey.locationexplorer.repository.LocationExplorerRepository;
+import ga.elirey.locationexplorer.utils.GeoHash;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
 
 import java.time.Instant;
 import java.time.LocalDate;
@@ -11,21 +14,117 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Slf4j
+@Service
 @RequiredArgsConstructor
 public class LocationPollerService {
 
     private final LocationExplorerRepository repository;
 
+    /**
+     * Get the locations of a user, ordered by device then time
+     */
     public List<UnitLocationMeasurement> getLocations(final String userId, final String missionId,
                                                       final long startDateMillis, final long endDateMillis) {
-        return repository.findByIdTimeAfterAndIdTimeBeforeAndIdUnitIdAndIdMissionId(setStartTimeFromParam(startDateMillis),
+        return repository.findByIdTimeAfterAndIdTimeBeforeAndIdUnitIdAndIdContextIdOrderByIdDeviceIdAscIdTimeAsc(setStartTimeFromParam(startDateMillis),
                 setStopTimeFromParam(endDateMillis), userId, missionId);
     }
 
-    private LocalDateTime setStartTimeFromParam(final Long startDateMillis) {
+    public long countLocations(final String userId, final String missionId, final long startDateMillis, final long endDateMillis) {
+        return repository.countByIdTimeAfterAndIdTimeBeforeAndIdUnitIdAndIdContextId(setStartTimeFromParam(startDateMillis),
+                setStopTimeFromParam(endDateMillis), userId, missionId);
+    }
+
+    /**
+     * Get the number, the last time and the last write of the locations of a user, which change whenever a location is
+     * added or replaced
+     */
+    public TrackWatermark getWatermark(final String userId, final String missionId, final long startDateMillis, final long endDateMillis) {
+        final Object[] row = repository.findWatermark(userId, missionId, setStartTimeFromParam(startDateMillis),
+                setStopTimeFromParam(endDateMillis)).get(0);
+        return new TrackWatermark(((Number) row[0]).longValue(), (LocalDateTime) row[1], (LocalDateTime) row[2]);
+    }
+
+    /**
+     * Get one location of a user out of step for each of their devices, ordered by device then time
+     */
+    public List<UnitLocationMeasurement> getDownsampledLocations(final String userId, final String missionId,
+                                                                 final long startDateMillis, final long endDateMillis,
+                                                                 final int step) {
+        return repository.findDownsampled(userId, missionId, setStartTimeFromParam(startDateMillis),
+                setStopTimeFromParam(endDateMillis), step);
+    }
+
+    /**
+     * Get the users having locations in a mission, in alphabetical order
+     */
+    public List<String> getUnitIds(final String missionId, final long startDateMillis, final long endDateMillis) {
+        return repository.findUnitIdsInContext(missionId, setStartTimeFromParam(startDateMillis), setStopTimeFromParam(endDateMillis));
+    }
+
+    /**
+     * Stream the locations of several users of the same mission, ordered by user, device then time.
+     * The returned stream must be consumed and closed inside a transaction.
+     */
+    public Stream<UnitLocationMeasurement> streamLocations(final Collection<String> userIds, final String missionId,
+                                                           final long startDateMillis, final long endDateMillis) {
+        return repository.streamByIdTimeAfterAndIdTimeBeforeAndIdUnitIdInAndIdContextIdOrderByIdUnitIdAscIdDeviceIdAscIdTimeAsc(
+                setStartTimeFromParam(startDateMillis), setStopTimeFromParam(endDateMillis), userIds, missionId);
+    }
+
+    /**
+     * Get the locations of all users whose geohash is within a range
+     */
+    public List<UnitLocationMeasurement> getLocationsInGeohashRange(final GeoHash.Range range,
+                                                                    final long startDateMillis, final long endDateMillis) {
+        return repository.findInGeohashRange(range.getLowerBound(), range.getUpperBound(),
+                setStartTimeFromParam(startDateMillis), setStopTimeFromParam(endDateMillis));
+    }
+
+    /**
+     * Stream the [latitude, longitude] of every location of a mission from a time, included, until a time, excluded.
+     * The returned stream must be consumed and closed inside a transaction.
+     */
+    public Stream<Object[]> streamCoordinates(final String missionId, final LocalDateTime from, final LocalDateTime until) {
+        return repository.streamCoordinatesInContext(missionId, from, until);
+    }
+
+    /**
+     * Get the time of the most recent location of all users, from the primary database outside of a read-only
+     * transaction
+     *
+     * @return the time in milliseconds, empty without any location
+     */
+    public Optional<Long> getLatestTimeMillis() {
+        return Optional.ofNullable(repository.findLatestTime())
+                .map(time -> time.atZone(ZoneId.of("UTC")).toInstant().toEpochMilli());
+    }
+
+    /**
+     * Stream the [userId, time, latitude, longitude] of every location of a mission, ordered by time.
+     * The returned stream must be consumed and closed inside a transaction.
+     */
+    public Stream<Object[]> streamPositions(final String missionId, final long startDateMillis, final long endDateMillis) {
+        return repository.streamPositionsInContext(missionId, setStartTimeFromParam(startDateMillis),
+                setStopTimeFromParam(endDateMillis));
+    }
+
+    /**
+     * Stream the [userId, deviceId, time, latitude, longitude, altitude, accuracy] of every location of a mission, ordered
+     * by user, device then time.
+     * The returned stream must be consumed and closed inside a transaction.
+     */
+    public Stream<Object[]> streamFixesByUser(final String missionId, final long startDateMillis, final long endDateMillis) {
+        return repository.streamFixesInContext(missionId, setStartTimeFromParam(startDateMillis),
+                setStopTimeFromParam(endDateMillis));
+    }
+
+    LocalDateTime setStartTimeFromParam(final Long startDateMillis) {
         final LocalDateTime startDateTime = (startDateMillis == null || startDateMillis == 0) ?
                 LocalDate.now().minus(10, ChronoUnit.DAYS).atStartOfDay() : // get last 10 days locations
                 Instant.ofEpochMilli(startDateMillis).atZone(ZoneId.of("UTC")).toLocalDateTime();
@@ -33,7 +132,7 @@ public class LocationPollerService {
         return startDateTime;
     }
 
-    private LocalDateTime setStopTimeFromParam(final Long endDateMillis) {
+    LocalDateTime setStopTimeFromParam(final Long endDateMillis) {
         final LocalDateTime endDateTime = (endDateMillis == null || endDateMillis == 0) ?
                 LocalDateTime.now() :
                 Instant.ofEpochMilli(endDateMillis).atZone(ZoneId.of("UTC")).toLocalDateTime();
@@ -0,0 +1,52 @@
+package ga.elirey.locationexplorer.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Date;
+import java.time.LocalDate;
+
+/**
+ * Keep the monthly partitions of the measurements ahead of the ingest, and drop the months past the retention period
+ * at once instead of deleting their rows
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(value = "location-explorer.partitions.enabled", havingValue = "true")
+public class PartitionMaintenanceService {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${location-explorer.partitions.months-ahead:2}")
+    private int monthsAhead;
+
+    @Value("${location-explorer.partitions.retention-months:0}")
+    private int retentionMonths;
+
+    @Scheduled(fixedDelayString = "${location-explorer.partitions.check-delay-millis:3600000}")
+    public void maintainPartitions() {
+        final LocalDate currentMonth = LocalDate.now().withDayOfMonth(1);
+        for (int month = 0; month <= monthsAhead; month++) {
+            final LocalDate partitionMonth = currentMonth.plusMonths(month);
+            if (Boolean.TRUE.equals(jdbcTemplate.queryForObject("select create_unit_location_measurement_partition(?)",
+                    Boolean.class, Date.valueOf(partitionMonth)))) {
+                log.info("Created the measurements partition of {}", partitionMonth);
+            }
+        }
+
+        if (retentionMonths > 0) {
+            final LocalDate retainedSince = currentMonth.minusMonths(retentionMonths);
+            final Integer dropped = jdbcTemplate.queryForObject("select drop_unit_location_measurement_partitions(?)",
+                    Integer.class, Date.valueOf(retainedSince));
+            if (dropped != null && dropped > 0) {
+                log.info("Dropped {} measurements partition(s) before {}", dropped, retainedSince);
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.basis.Localizable;
+import ga.elirey.locationexplorer.format.LocationOutputFormat;
+import ga.elirey.locationexplorer.utils.AlgorithmExecutor;
+import ga.elirey.locationexplorer.utils.CustomTimer;
+import ga.elirey.locationexplorer.utils.StageTimings;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Timers and counters of the track processing pipeline, exposed on the actuator endpoints and added to the timings of
+ * the current request
+ */
+@Component
+@RequiredArgsConstructor
+public class PipelineMetrics {
+
+    public static final String STAGE_PLANNING = "planning";
+    public static final String STAGE_DATABASE_QUERY = "database-query";
+    public static final String STAGE_MAPPING = "mapping";
+    public static final String STAGE_DEVICES_MERGE = "devices-merge";
+    public static final String STAGE_BUFFER_FILTERING = "buffer-filtering";
+    public static final String STAGE_SERIALIZATION = "serialization";
+    public static final String STAGE_WATERMARK = "watermark";
+    public static final String STAGE_COMPRESSION = "compression";
+
+    public static final String CACHE_NOT_MODIFIED = "not-modified";
+    public static final String CACHE_HIT = "hit";
+    public static final String CACHE_MISS = "miss";
+
+    private static final String STAGE_TIMER = "location.explorer.stage";
+    private static final String ALGORITHM_POINTS = "location.explorer.algorithm.points";
+    private static final String RESPONSE_SIZE = "location.explorer.response.size";
+    private static final String RESPONSE_CACHE = "location.explorer.response.cache";
+
+    private final MeterRegistry registry;
+
+    /**
+     * Run and time a stage
+     */
+    public <T> T time(final String stage, final Supplier<T> supplier) {
+        final CustomTimer timer = new CustomTimer();
+        try {
+            return supplier.get();
+        } finally {
+            record(stage, timer.elapsedNanos());
+        }
+    }
+
+    /**
+     * Record the duration of a stage timed by the caller
+     */
+    public void record(final String stage, final long nanos) {
+        Timer.builder(STAGE_TIMER)
+                .description("Time spent in a stage of the track processing")
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        StageTimings.current().ifPresent(timings -> timings.add(stage, nanos));
+    }
+
+    /**
+     * Run and time an algorithm, counting the points it receives and returns
+     */
+    public <E extends Localizable> List<E> apply(final AlgorithmExecutor<E> algorithm, final List<E> points) {
+        final List<E> result = time(algorithm.getName(), () -> algorithm.apply(points));
+        pointsCounter(algorithm, "in").increment(points == null ? 0 : points.size());
+        pointsCounter(algorithm, "out").increment(result == null ? 0 : result.size());
+        return result;
+    }
+
+    /**
+     * Record the UTF-8 size of a produced track, without encoding it
+     */
+    public void recordResponseSize(final LocationOutputFormat format, final String body) {
+        recordResponseSize(format, utf8Length(body));
+    }
+
+    public void recordResponseSize(final LocationOutputFormat format, final long bytes) {
+        DistributionSummary.builder(RESPONSE_SIZE)
+                .description("Size of the produced tracks")
+                .baseUnit("bytes")
+                .tag("format", format.name())
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(bytes);
+    }
+
+    /**
+     * Count a track request answered without running the pipeline, or not
+     *
+     * @param result {@link #CACHE_NOT_MODIFIED}, {@link #CACHE_HIT} or {@link #CACHE_MISS}
+     */
+    public void countCachedResponse(final String result) {
+        Counter.builder(RESPONSE_CACHE)
+                .description("Track requests answered as not modified, from the cached bodies or by running the pipeline")
+                .tag("result", result)
+                .register(registry)
+                .increment();
+    }
+
+    private Counter pointsCounter(final AlgorithmExecutor<?> algorithm, final String direction) {
+        return Counter.builder(ALGORITHM_POINTS)
+                .description("Points going through a track processing algorithm")
+                .tag("algorithm", algorithm.getName())
+                .tag("direction", direction)
+                .register(registry);
+    }
+
+    private static long utf8Length(final String value) {
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
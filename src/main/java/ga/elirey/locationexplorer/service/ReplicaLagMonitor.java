@@ -0,0 +1,23 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.utils.ReadReplicaRoutingDataSource;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Check the read replicas regularly, taking the lagging or unreachable ones out of the rotation until they catch up
+ */
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(value = "location-explorer.replicas.enabled", havingValue = "true")
+public class ReplicaLagMonitor {
+
+    private final ReadReplicaRoutingDataSource replicaRoutingDataSource;
+
+    @Scheduled(fixedDelayString = "${location-explorer.replicas.check-delay-millis:5000}")
+    public void checkReplicas() {
+        replicaRoutingDataSource.checkReplicas();
+    }
+}
@@ -0,0 +1,65 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.entity.UnitDailyRollup;
+import ga.elirey.locationexplorer.repository.LocationExplorerRepository;
+import ga.elirey.locationexplorer.repository.UnitDailyRollupRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Roll up the measurements stored before the daily rollups were maintained on ingest, one day per transaction from the
+ * oldest measurement on. The rollups of the days already walked through are kept up to date by the ingestion.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(value = "location-explorer.rollups.backfill.enabled", havingValue = "true")
+public class RollupBackfillService {
+
+    private final LocationExplorerRepository measurementRepository;
+    private final UnitDailyRollupRepository rollupRepository;
+    private final DailyRollupService rollupService;
+    private final TransactionTemplate transactionTemplate;
+
+    // next day to roll up, null until the oldest measurement is known
+    private LocalDate nextDay;
+
+    @Scheduled(fixedDelayString = "${location-explorer.rollups.backfill.delay-millis:3600000}")
+    public void backfill() {
+        if (nextDay == null) {
+            final LocalDateTime earliestTime = measurementRepository.findEarliestTime();
+            if (earliestTime == null) {
+                return;
+            }
+            nextDay = earliestTime.toLocalDate();
+        }
+        final LocalDate today = LocalDate.now(ZoneId.of("UTC"));
+        long backfilled = 0;
+        for (; !nextDay.isAfter(today); nextDay = nextDay.plusDays(1)) {
+            final LocalDate day = nextDay;
+            backfilled += transactionTemplate.execute(status -> backfillDay(day));
+        }
+        if (backfilled > 0) {
+            log.info("Backfilled {} daily rollup(s)", backfilled);
+        }
+    }
+
+    private int backfillDay(final LocalDate day) {
+        final List<UnitDailyRollup.Id> ids = rollupRepository.findTracksWithoutRollup(day, day.atStartOfDay(),
+                day.plusDays(1).atStartOfDay()).stream()
+                .map(row -> new UnitDailyRollup.Id((String) row[0], (String) row[1], day))
+                .collect(Collectors.toList());
+        rollupService.rebuildRollups(ids);
+        return ids.size();
+    }
+}
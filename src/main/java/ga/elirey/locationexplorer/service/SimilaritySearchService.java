@@ -0,0 +1,327 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.data.SimilarTrack;
+import ga.elirey.locationexplorer.data.SimilarityMetric;
+import ga.elirey.locationexplorer.data.TrackKey;
+import ga.elirey.locationexplorer.entity.UnitDailyRollup;
+import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+import ga.elirey.locationexplorer.repository.UnitDailyRollupRepository;
+import ga.elirey.locationexplorer.utils.BoundedExecutor;
+import ga.elirey.locationexplorer.utils.TrackSignature;
+import ga.elirey.locationexplorer.utils.TrajectoryDistances;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Find the archived tracks that look like a reference track.
+ * Candidates are the tracks of the units of all contexts, or of one context, over a candidate time range, cut into
+ * windows of as many days as the reference spans and aligned on the start of that range. The paths are compared
+ * regardless of their timestamps, so a patrol is found on any day of the range and at any time of its window. Candidates
+ * are ranked by a cheap lower bound of their distance to the reference, taken from the daily rollups, and compared in
+ * that order in parallel batches: as soon as k tracks are found, the candidates whose lower bound exceeds the k-th
+ * distance are skipped without being loaded.
+ * Tracks stored before the rollups were maintained are only found once {@link RollupBackfillService} rolled them up.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SimilaritySearchService {
+
+    private final LocationPollerService pollerService;
+    private final LocationExplorerService explorerService;
+    private final UnitDailyRollupRepository rollupRepository;
+
+    @Qualifier("databaseExecutor")
+    private final BoundedExecutor databaseExecutor;
+    @Qualifier("trackFilteringExecutor")
+    private final BoundedExecutor trackFilteringExecutor;
+
+    @Value("${location-explorer.similarity.signature-points:64}")
+    private int signaturePoints;
+
+    @Value("${location-explorer.similarity.cache-size:10000}")
+    private int cacheSize;
+
+    // signatures of the archived track windows, least recently used first, dropped when the track received new
+    // measurements since, guarded by itself
+    private final Map<WindowKey, CachedSignature> signatures = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Get the k tracks closest to the track of a user in a mission over a time range
+     *
+     * @param candidateContextId the context of the candidate tracks, all contexts if null
+     * @return the closest tracks first, the reference track excluded
+     */
+    public CompletableFuture<List<SimilarTrack>> findSimilarAsync(final String userId, final String missionId,
+                                                                  final Long startDateMillis, final Long endDateMillis,
+                                                                  final String candidateContextId,
+                                                                  final Long candidateStartDateMillis,
+                                                                  final Long candidateEndDateMillis,
+                                                                  final SimilarityMetric metric, final int k) {
+        final LocalDateTime candidateStart = pollerService.setStartTimeFromParam(candidateStartDateMillis);
+        final LocalDateTime candidateEnd = pollerService.setStopTimeFromParam(candidateEndDateMillis);
+        final CompletableFuture<List<UnitLocationMeasurement>> reference = databaseExecutor.supply(
+                () -> pollerService.getLocations(userId, missionId, startDateMillis, endDateMillis));
+        final CompletableFuture<List<UnitDailyRollup>> rollups = databaseExecutor.supply(() -> candidateContextId == null
+                ? rollupRepository.findByIdDayGreaterThanEqualAndIdDayLessThanEqual(candidateStart.toLocalDate(),
+                candidateEnd.toLocalDate())
+                : rollupRepository.findByIdDayGreaterThanEqualAndIdDayLessThanEqualAndIdContextId(candidateStart.toLocalDate(),
+                candidateEnd.toLocalDate(), candidateContextId));
+
+        final TrackKey referenceKey = new TrackKey(userId, missionId);
+        return reference.thenCombine(rollups, SearchInput::new)
+                .thenCompose(input -> trackFilteringExecutor.supply(() -> new Search(referenceKey, toSignature(input.locations),
+                        rankCandidates(input, candidateStart, candidateEnd, referenceKey), metric, Math.max(1, k))))
+                .thenCompose(search -> compareFrom(search, 0));
+    }
+
+    /**
+     * Track windows of the rollups, clipped to the candidate time range, other than the ones overlapping the reference
+     */
+    private static List<Candidate> rankCandidates(final SearchInput input, final LocalDateTime start, final LocalDateTime end,
+                                                  final TrackKey referenceKey) {
+        if (input.locations.isEmpty()) {
+            return new ArrayList<>();
+        }
+        final LocalDateTime referenceStart = input.locations.stream().map(location -> location.getId().getTime())
+                .min(Comparator.naturalOrder()).get();
+        final LocalDateTime referenceEnd = input.locations.stream().map(location -> location.getId().getTime())
+                .max(Comparator.naturalOrder()).get();
+        final long windowDays = ChronoUnit.DAYS.between(referenceStart.toLocalDate(), referenceEnd.toLocalDate()) + 1;
+
+        final Map<WindowKey, Candidate> windows = new HashMap<>();
+        for (final UnitDailyRollup rollup : input.rollups) {
+            final long window = ChronoUnit.DAYS.between(start.toLocalDate(), rollup.getId().getDay()) / windowDays;
+            final WindowKey key = new WindowKey(new TrackKey(rollup.getId().getUnitId(), rollup.getId().getContextId()),
+                    start.toLocalDate().plusDays(window * windowDays));
+            windows.computeIfAbsent(key, Candidate::new).add(rollup);
+        }
+        return windows.values().stream()
+                .filter(candidate -> candidate.clip(start, end))
+                .filter(candidate -> !candidate.key.getTrack().equals(referenceKey)
+                        || candidate.endTime.isBefore(referenceStart) || candidate.startTime.isAfter(referenceEnd))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Compare the candidates from an index in a batch, then the next batches once its distances lowered the threshold.
+     * Signatures are loaded on the database pool and compared on the filtering pool, no thread waits for the other pool.
+     */
+    private CompletableFuture<List<SimilarTrack>> compareFrom(final Search search, final int from) {
+        final List<Candidate> candidates = search.candidates;
+        if (search.reference.isEmpty() || from >= candidates.size()
+                || candidates.get(from).lowerBound >= search.threshold()) {
+            // candidates are sorted by lower bound, none of the next ones can do better
+            log.debug("Compared {} out of {} candidate track(s) to the track of '{}' in '{}'", search.compared,
+                    candidates.size(), search.referenceKey.getUnitId(), search.referenceKey.getContextId());
+            return CompletableFuture.completedFuture(search.results());
+        }
+        final double threshold = search.threshold();
+        final int batchSize = trackFilteringExecutor.getPoolSize() * 2;
+        final List<CompletableFuture<SimilarTrack>> comparisons = candidates.subList(from, Math.min(candidates.size(), from + batchSize))
+                .stream()
+                .filter(candidate -> candidate.lowerBound < threshold)
+                .map(candidate -> getSignatureAsync(candidate).thenCompose(signature -> trackFilteringExecutor.supply(
+                        () -> compare(search.reference, candidate, signature, search.metric, threshold))))
+                .collect(Collectors.toList());
+        search.compared += comparisons.size();
+        return CompletableFuture.allOf(comparisons.toArray(new CompletableFuture<?>[0])).thenCompose(done -> {
+            comparisons.forEach(comparison -> search.offer(comparison.join()));
+            return compareFrom(search, from + batchSize);
+        });
+    }
+
+    /**
+     * @return the distance of the candidate to the reference, null if it is known to exceed the threshold
+     */
+    private SimilarTrack compare(final TrackSignature reference, final Candidate candidate, final TrackSignature signature,
+                                 final SimilarityMetric metric, final double threshold) {
+        if (signature.isEmpty() || TrajectoryDistances.endpointsLowerBound(metric, reference, signature) >= threshold
+                || TrajectoryDistances.boundingBoxLowerBound(metric, reference, signature) >= threshold) {
+            return null;
+        }
+        final double distance = TrajectoryDistances.distance(metric, reference, signature, threshold);
+        if (Double.isInfinite(distance)) {
+            return null;
+        }
+        return SimilarTrack.builder()
+                .unitId(candidate.key.getTrack().getUnitId())
+                .contextId(candidate.key.getTrack().getContextId())
+                .startTime(candidate.startTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))
+                .endTime(candidate.endTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))
+                .metric(metric)
+                .distanceInMeters(Math.ceil(distance))
+                .pointCount(signature.size())
+                .build();
+    }
+
+    private CompletableFuture<TrackSignature> getSignatureAsync(final Candidate candidate) {
+        final CachedSignature cached;
+        synchronized (signatures) {
+            cached = signatures.get(candidate.key);
+        }
+        if (cached != null && cached.pointCount == candidate.pointCount && cached.from.equals(candidate.from)
+                && cached.until.equals(candidate.until)) {
+            return CompletableFuture.completedFuture(cached.signature);
+        }
+        return databaseExecutor.supply(() -> pollerService.getLocations(candidate.key.getTrack().getUnitId(),
+                candidate.key.getTrack().getContextId(), toMillis(candidate.from), toMillis(candidate.until)))
+                .thenApply(locations -> {
+                    final TrackSignature signature = toSignature(locations);
+                    cache(candidate.key, new CachedSignature(candidate.pointCount, candidate.from, candidate.until, signature));
+                    return signature;
+                });
+    }
+
+    private void cache(final WindowKey key, final CachedSignature signature) {
+        synchronized (signatures) {
+            signatures.put(key, signature);
+            final Iterator<CachedSignature> leastRecentlyUsed = signatures.values().iterator();
+            while (signatures.size() > cacheSize && leastRecentlyUsed.hasNext()) {
+                leastRecentlyUsed.next();
+                leastRecentlyUsed.remove();
+            }
+        }
+    }
+
+    private TrackSignature toSignature(final List<UnitLocationMeasurement> locations) {
+        return new TrackSignature(explorerService.toTrackPoints(locations), signaturePoints);
+    }
+
+    private static long toMillis(final LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    @RequiredArgsConstructor
+    private static class SearchInput {
+        private final List<UnitLocationMeasurement> locations;
+        private final List<UnitDailyRollup> rollups;
+    }
+
+    @RequiredArgsConstructor
+    private static class CachedSignature {
+        private final long pointCount;
+        private final LocalDateTime from;
+        private final LocalDateTime until;
+        private final TrackSignature signature;
+    }
+
+    /**
+     * State of a search, only read and updated by one stage at a time
+     */
+    private static class Search {
+        private final TrackKey referenceKey;
+        private final TrackSignature reference;
+        private final List<Candidate> candidates;
+        private final SimilarityMetric metric;
+        private final int k;
+        private final PriorityQueue<SimilarTrack> best = new PriorityQueue<>(
+                Comparator.comparingDouble(SimilarTrack::getDistanceInMeters).reversed());
+        private int compared;
+
+        Search(final TrackKey referenceKey, final TrackSignature reference, final List<Candidate> candidates,
+               final SimilarityMetric metric, final int k) {
+            this.referenceKey = referenceKey;
+            this.reference = reference;
+            this.metric = metric;
+            this.k = k;
+            this.candidates = candidates;
+            if (!reference.isEmpty()) {
+                candidates.forEach(candidate -> candidate.lowerBound = TrajectoryDistances.boundingBoxLowerBound(metric,
+                        reference, candidate.minLatitude, candidate.minLongitude, candidate.maxLatitude, candidate.maxLongitude));
+                candidates.sort(Comparator.comparingDouble(candidate -> candidate.lowerBound));
+            }
+        }
+
+        double threshold() {
+            return best.size() < k ? Double.POSITIVE_INFINITY : best.peek().getDistanceInMeters();
+        }
+
+        void offer(final SimilarTrack similarTrack) {
+            if (similarTrack != null) {
+                best.add(similarTrack);
+                if (best.size() > k) {
+                    best.poll();
+                }
+            }
+        }
+
+        List<SimilarTrack> results() {
+            final List<SimilarTrack> results = new ArrayList<>(best);
+            results.sort(Comparator.comparingDouble(SimilarTrack::getDistanceInMeters));
+            return results;
+        }
+    }
+
+    /**
+     * Window of days of a track, identified by its first day
+     */
+    @lombok.Value
+    private static class WindowKey {
+        TrackKey track;
+        LocalDate firstDay;
+    }
+
+    /**
+     * Archived track window, described by its rollups over the days of the window and read within the candidate range
+     */
+    private static class Candidate {
+        private final WindowKey key;
+        private long pointCount;
+        private LocalDateTime startTime;
+        private LocalDateTime endTime;
+        private LocalDateTime from;
+        private LocalDateTime until;
+        private double minLatitude = Double.MAX_VALUE;
+        private double minLongitude = Double.MAX_VALUE;
+        private double maxLatitude = -Double.MAX_VALUE;
+        private double maxLongitude = -Double.MAX_VALUE;
+        private double lowerBound;
+
+        Candidate(final WindowKey key) {
+            this.key = key;
+        }
+
+        void add(final UnitDailyRollup rollup) {
+            pointCount += rollup.getPointCount();
+            startTime = startTime == null || rollup.getFirstTime().isBefore(startTime) ? rollup.getFirstTime() : startTime;
+            endTime = endTime == null || rollup.getLastTime().isAfter(endTime) ? rollup.getLastTime() : endTime;
+            minLatitude = Math.min(minLatitude, rollup.getMinLatitude());
+            minLongitude = Math.min(minLongitude, rollup.getMinLongitude());
+            maxLatitude = Math.max(maxLatitude, rollup.getMaxLatitude());
+            maxLongitude = Math.max(maxLongitude, rollup.getMaxLongitude());
+        }
+
+        /**
+         * Restrict the window to a time range, the bounds it is read within excluded
+         *
+         * @return whether the window has measurements within the range
+         */
+        boolean clip(final LocalDateTime start, final LocalDateTime end) {
+            startTime = startTime.isAfter(start) ? startTime : start;
+            endTime = endTime.isBefore(end) ? endTime : end;
+            from = startTime.minusNanos(1_000_000);
+            until = endTime.plusNanos(1_000_000);
+            return !startTime.isAfter(endTime);
+        }
+    }
+}
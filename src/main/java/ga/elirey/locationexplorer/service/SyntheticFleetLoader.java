@@ -0,0 +1,88 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+import ga.elirey.locationexplorer.model.GPSPoint;
+import ga.elirey.locationexplorer.utils.CustomTimer;
+import ga.elirey.locationexplorer.utils.SyntheticFleetGenerator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fill the embedded database with a synthetic fleet at startup, before the web server accepts requests, through the
+ * ingestion so that the rollups and the in-memory indexes are filled as well
+ */
+@Slf4j
+@Component
+@Profile("embedded")
+@RequiredArgsConstructor
+public class SyntheticFleetLoader implements SmartInitializingSingleton {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final LocationIngestService ingestService;
+
+    @Value("${location-explorer.synthetic-fleet.units:20}")
+    private int units;
+
+    @Value("${location-explorer.synthetic-fleet.days:1}")
+    private int days;
+
+    @Value("${location-explorer.synthetic-fleet.period-seconds:30}")
+    private long periodSeconds;
+
+    @Value("${location-explorer.synthetic-fleet.context:synthetic}")
+    private String contextId;
+
+    @Value("${location-explorer.synthetic-fleet.seed:42}")
+    private long seed;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        final CustomTimer timer = new CustomTimer();
+        final SyntheticFleetGenerator generator = new SyntheticFleetGenerator(seed, TimeUnit.SECONDS.toMillis(periodSeconds));
+        final long endMillis = System.currentTimeMillis() / 1000 * 1000;
+        final long startMillis = endMillis - TimeUnit.DAYS.toMillis(days);
+        final List<UnitLocationMeasurement> batch = new ArrayList<>(BATCH_SIZE);
+        final long[] count = {0};
+        for (int unit = 0; unit < units; unit++) {
+            generator.generate(unit, startMillis, endMillis, point -> {
+                batch.add(toMeasurement(point));
+                count[0]++;
+                if (batch.size() == BATCH_SIZE) {
+                    ingestService.ingest(new ArrayList<>(batch));
+                    batch.clear();
+                }
+            });
+        }
+        if (!batch.isEmpty()) {
+            ingestService.ingest(batch);
+        }
+        log.info("Loaded a synthetic fleet of {} unit(s) over {} day(s) in context '{}', {} measurements in {} ms", units,
+                days, contextId, count[0], timer.elapsedMsecs());
+    }
+
+    private UnitLocationMeasurement toMeasurement(final GPSPoint point) {
+        return UnitLocationMeasurement.builder()
+                .id(UnitLocationMeasurement.Id.builder()
+                        .unitId(point.getUnitId())
+                        .contextId(contextId)
+                        .deviceId(point.getCollectorId())
+                        .time(point.getTimestamp())
+                        .build())
+                .latitude(point.getLatitude())
+                .longitude(point.getLongitude())
+                .altitude(point.getAltitude())
+                .speed(point.getSpeed())
+                .heading(point.getHeading())
+                .accuracyInMeters(point.getAccuracy())
+                .build();
+    }
+}
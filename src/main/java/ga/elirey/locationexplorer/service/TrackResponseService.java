@@ -0,0 +1,106 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.data.FilterOptions;
+import ga.elirey.locationexplorer.data.TrackWatermark;
+import ga.elirey.locationexplorer.utils.BoundedExecutor;
+import ga.elirey.locationexplorer.utils.PrecompressedBody;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Conditional and cached track responses: the ETag of a track is computed from the request and the watermark of its
+ * measurements, so that an unchanged track is answered without running the pipeline, and produced tracks are kept gzip
+ * compressed in a bounded cache
+ */
+@Service
+@RequiredArgsConstructor
+public class TrackResponseService {
+
+    private final LocationExplorerService explorerService;
+    private final LocationPollerService pollerService;
+    private final PipelineMetrics pipelineMetrics;
+
+    @Qualifier("databaseExecutor")
+    private final BoundedExecutor databaseExecutor;
+
+    @Value("${location-explorer.response-cache.max-bytes:67108864}")
+    private long maxCachedBytes;
+
+    // least recently used first, guarded by itself
+    private final Map<String, PrecompressedBody> bodies = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+
+    /**
+     * Strong ETag of a track response, quoted, changing whenever a measurement of the track is added or replaced
+     */
+    public CompletableFuture<String> computeETag(final String userId, final String missionId, final String outputFormat,
+                                                 final Long startDateMillis, final Long endDateMillis,
+                                                 final FilterOptions options) {
+        return databaseExecutor.supply(() -> pipelineMetrics.time(PipelineMetrics.STAGE_WATERMARK,
+                () -> pollerService.getWatermark(userId, missionId, startDateMillis, endDateMillis)))
+                .thenApply(watermark -> toETag(userId, missionId, outputFormat, startDateMillis, endDateMillis, options, watermark));
+    }
+
+    /**
+     * Cached body of a track response, produced and cached when missing
+     *
+     * @param etag ETag of the response, as computed by {@link #computeETag}
+     */
+    public CompletableFuture<PrecompressedBody> getBody(final String etag, final String userId, final String missionId,
+                                                        final String outputFormat, final Long startDateMillis,
+                                                        final Long endDateMillis, final FilterOptions options) {
+        final PrecompressedBody cached;
+        synchronized (bodies) {
+            cached = bodies.get(etag);
+        }
+        if (cached != null) {
+            pipelineMetrics.countCachedResponse(PipelineMetrics.CACHE_HIT);
+            return CompletableFuture.completedFuture(cached);
+        }
+        pipelineMetrics.countCachedResponse(PipelineMetrics.CACHE_MISS);
+        return explorerService.convertAsync(userId, missionId, outputFormat, startDateMillis, endDateMillis, options)
+                .thenApply(body -> {
+                    final PrecompressedBody compressed = pipelineMetrics.time(PipelineMetrics.STAGE_COMPRESSION,
+                            () -> PrecompressedBody.compress(body));
+                    cache(etag, compressed);
+                    return compressed;
+                });
+    }
+
+    public void countNotModified() {
+        pipelineMetrics.countCachedResponse(PipelineMetrics.CACHE_NOT_MODIFIED);
+    }
+
+    private void cache(final String etag, final PrecompressedBody body) {
+        if (body.getCompressedLength() > maxCachedBytes) {
+            return;
+        }
+        synchronized (bodies) {
+            final PrecompressedBody previous = bodies.put(etag, body);
+            cachedBytes += body.getCompressedLength() - (previous == null ? 0 : previous.getCompressedLength());
+            final Iterator<PrecompressedBody> leastRecentlyUsed = bodies.values().iterator();
+            while (cachedBytes > maxCachedBytes && leastRecentlyUsed.hasNext()) {
+                cachedBytes -= leastRecentlyUsed.next().getCompressedLength();
+                leastRecentlyUsed.remove();
+            }
+        }
+    }
+
+    private static String toETag(final String userId, final String missionId, final String outputFormat,
+                                 final Long startDateMillis, final Long endDateMillis, final FilterOptions options,
+                                 final TrackWatermark watermark) {
+        final String key = String.join("|", userId, missionId, outputFormat, String.valueOf(startDateMillis),
+                String.valueOf(endDateMillis), options.toString(), String.valueOf(watermark.getPointCount()),
+                String.valueOf(watermark.getLastTime()), String.valueOf(watermark.getLastIngestedAt()));
+        return '"' + DigestUtils.md5DigestAsHex(key.getBytes(StandardCharsets.UTF_8)) + '"';
+    }
+}
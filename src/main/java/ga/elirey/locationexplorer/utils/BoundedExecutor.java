@@ -0,0 +1,177 @@
+package ga.elirey.locationexplorer.utils;
+
+import ga.elirey.locationexplorer.exception.ServiceOverloadedException;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Named thread pool acting as a bulkhead: a bounded number of threads, a bounded queue and a timeout per task.
+ * A task which cannot be queued or which does not complete in time fails with a {@link ServiceOverloadedException}
+ * instead of piling up behind the others.
+ */
+@Slf4j
+public class BoundedExecutor {
+
+    private static final ScheduledExecutorService TIMEOUT_SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "bounded-executor-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Getter
+    private final String name;
+    @Getter
+    private final int poolSize;
+    private final long timeoutMillis;
+    private final long retryAfterSeconds;
+    private final ThreadPoolTaskExecutor executor;
+
+    public BoundedExecutor(final String name, final int poolSize, final int queueCapacity,
+                           final long timeoutMillis, final long retryAfterSeconds) {
+        this.name = name;
+        this.poolSize = poolSize;
+        this.timeoutMillis = timeoutMillis;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.executor = new ThreadPoolTaskExecutor();
+        this.executor.setThreadNamePrefix(name + "-");
+        this.executor.setCorePoolSize(poolSize);
+        this.executor.setMaxPoolSize(poolSize);
+        this.executor.setQueueCapacity(queueCapacity);
+        this.executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        this.executor.initialize();
+    }
+
+    /**
+     * Run the supplier on the pool
+     *
+     * @param supplier the task
+     * @param <T> the task result type
+     * @return a future completed with the result, or failed with a {@link ServiceOverloadedException} when the pool
+     * is saturated or the task timed out
+     */
+    public <T> CompletableFuture<T> supply(final Supplier<T> supplier) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final Future<?> task;
+        try {
+            // the result is completed with the request timings still bound, for the stages chained to it
+            task = executor.submit(StageTimings.propagate(() -> {
+                try {
+                    result.complete(supplier.get());
+                } catch (final Throwable throwable) {
+                    result.completeExceptionally(throwable);
+                }
+            }));
+        } catch (final RejectedExecutionException e) {
+            log.warn("Executor '{}' is saturated ({} active, {} queued), rejecting task", name,
+                    executor.getActiveCount(), executor.getThreadPoolExecutor().getQueue().size());
+            result.completeExceptionally(new ServiceOverloadedException(String.format("Executor '%s' is saturated", name),
+                    retryAfterSeconds));
+            return result;
+        }
+
+        if (timeoutMillis > 0) {
+            final ScheduledFuture<?> timer = TIMEOUT_SCHEDULER.schedule(() -> {
+                if (result.completeExceptionally(new ServiceOverloadedException(String.format("Task timed out on executor '%s' after %d ms",
+                        name, timeoutMillis), retryAfterSeconds))) {
+                    log.warn("Task timed out on executor '{}' after {} ms, cancelling it", name, timeoutMillis);
+                    task.cancel(true);
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+            result.whenComplete((value, throwable) -> timer.cancel(false));
+        }
+        return result;
+    }
+
+    /**
+     * Run the supplier on the pool, or on the calling thread when the pool queue is full. Meant for callers which
+     * already bound their own concurrency and prefer slowing down over failing.
+     *
+     * @param supplier the task
+     * @param <T> the task result type
+     * @return a future completed with the result
+     */
+    public <T> CompletableFuture<T> supplyOrRunInline(final Supplier<T> supplier) {
+        if (executor.getThreadPoolExecutor().getQueue().remainingCapacity() > 0) {
+            final CompletableFuture<T> result = supply(supplier);
+            if (!isRejected(result)) {
+                return result;
+            }
+        }
+        log.debug("Executor '{}' is saturated, running task on calling thread", name);
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            result.complete(supplier.get());
+        } catch (final RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Run the suppliers in parallel on the pool and wait for their results. The calling thread runs itself the tasks
+     * no pool thread has started yet, so it is safe to call from a task already running on the same pool.
+     *
+     * @param suppliers the tasks
+     * @param <T> the task result type
+     * @return the results, in the order of the suppliers
+     */
+    public <T> List<T> invokeAll(final List<Supplier<T>> suppliers) {
+        final List<AtomicBoolean> claims = new ArrayList<>(suppliers.size());
+        final List<CompletableFuture<T>> results = new ArrayList<>(suppliers.size());
+        for (int i = 0; i < suppliers.size(); i++) {
+            final AtomicBoolean claim = new AtomicBoolean();
+            final CompletableFuture<T> result = new CompletableFuture<>();
+            claims.add(claim);
+            results.add(result);
+            if (i > 0) { // the first one is for the calling thread anyway
+                final Supplier<T> supplier = suppliers.get(i);
+                try {
+                    executor.execute(StageTimings.propagate(() -> runClaimed(claim, supplier, result)));
+                } catch (final RejectedExecutionException e) {
+                    log.debug("Executor '{}' is saturated, task left to calling thread", name);
+                }
+            }
+        }
+        for (int i = 0; i < suppliers.size(); i++) {
+            runClaimed(claims.get(i), suppliers.get(i), results.get(i));
+        }
+        final List<T> values = new ArrayList<>(results.size());
+        for (final CompletableFuture<T> result : results) {
+            values.add(result.join());
+        }
+        return values;
+    }
+
+    private static <T> void runClaimed(final AtomicBoolean claim, final Supplier<T> supplier, final CompletableFuture<T> result) {
+        if (claim.compareAndSet(false, true)) {
+            try {
+                result.complete(supplier.get());
+            } catch (final Throwable throwable) {
+                result.completeExceptionally(throwable);
+            }
+        }
+    }
+
+    private static boolean isRejected(final CompletableFuture<?> result) {
+        if (!result.isCompletedExceptionally()) {
+            return false;
+        }
+        try {
+            result.join();
+            return false;
+        } catch (final CompletionException e) {
+            return e.getCause() instanceof ServiceOverloadedException;
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
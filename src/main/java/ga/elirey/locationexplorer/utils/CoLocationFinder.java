@@ -0,0 +1,194 @@
+package ga.elirey.locationexplorer.utils;
+
+import ga.elirey.locationexplorer.data.Encounter;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Find the units that were close to each other, without comparing every pair of tracks.
+ * Time is cut into buckets keeping the last fix of each unit, fixes of a bucket are hashed into a grid whose cells are
+ * as large as the searched distance, so only the fixes of the same and the 8 neighbour cells are compared. Buckets are
+ * independent and are processed in parallel by time partition, then consecutive close buckets of each pair are merged
+ * into encounter intervals.
+ */
+@RequiredArgsConstructor
+public class CoLocationFinder {
+
+    private static final double METERS_PER_DEGREE = 111_320.0;
+    private static final int BUCKETS_PER_PARTITION = 64;
+
+    private final double maxDistanceInMeters;
+    private final long bucketMillis;
+
+    /**
+     * Last position of each unit within a time bucket
+     */
+    public static class TimeBucket {
+
+        @Getter
+        private final long index;
+        private final Map<String, double[]> positions = new LinkedHashMap<>();
+
+        public TimeBucket(final long index) {
+            this.index = index;
+        }
+
+        public void add(final String unitId, final double latitude, final double longitude) {
+            positions.put(unitId, new double[]{latitude, longitude});
+        }
+    }
+
+    public long bucketIndex(final long timeMillis) {
+        return Math.floorDiv(timeMillis, bucketMillis);
+    }
+
+    /**
+     * @param buckets    the buckets, each index at most once
+     * @param maxLatitude the largest absolute latitude of the fixes, used to size the grid cells
+     * @param executor   runs the time partitions
+     * @return the encounters, ordered by pair then time
+     */
+    public List<Encounter> find(final List<TimeBucket> buckets, final double maxLatitude, final BoundedExecutor executor) {
+        // longitudes are scaled at the highest latitude, so that a cell is never narrower than the searched distance
+        final double longitudeScale = Math.cos(Math.toRadians(Math.min(Math.abs(maxLatitude), 89.0)));
+        final double cellSizeInDegrees = maxDistanceInMeters / METERS_PER_DEGREE;
+
+        final List<Supplier<List<Contact>>> partitions = new ArrayList<>();
+        for (int from = 0; from < buckets.size(); from += BUCKETS_PER_PARTITION) {
+            final List<TimeBucket> partition = buckets.subList(from, Math.min(buckets.size(), from + BUCKETS_PER_PARTITION));
+            partitions.add(() -> partition.stream()
+                    .flatMap(bucket -> findContacts(bucket, cellSizeInDegrees, longitudeScale).stream())
+                    .collect(Collectors.toList()));
+        }
+        final List<Contact> contacts = executor.invokeAll(partitions).stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparing((Contact contact) -> contact.firstUnitId)
+                        .thenComparing(contact -> contact.secondUnitId)
+                        .thenComparingLong(contact -> contact.bucketIndex))
+                .collect(Collectors.toList());
+        return toEncounters(contacts);
+    }
+
+    private List<Contact> findContacts(final TimeBucket bucket, final double cellSizeInDegrees, final double longitudeScale) {
+        final int size = bucket.positions.size();
+        final String[] unitIds = new String[size];
+        final double[][] positions = new double[size][];
+        final long[] cells = new long[size];
+        final Integer[] order = new Integer[size];
+        int i = 0;
+        for (final Map.Entry<String, double[]> entry : bucket.positions.entrySet()) {
+            unitIds[i] = entry.getKey();
+            positions[i] = entry.getValue();
+            cells[i] = cellKey((int) Math.floor(positions[i][0] / cellSizeInDegrees),
+                    (int) Math.floor(positions[i][1] * longitudeScale / cellSizeInDegrees));
+            order[i] = i;
+            i++;
+        }
+        Arrays.sort(order, Comparator.comparingLong(index -> cells[index]));
+
+        // first and last position in order of each non empty cell
+        final Map<Long, int[]> cellRanges = new HashMap<>();
+        for (int position = 0; position < size; position++) {
+            final int[] range = cellRanges.computeIfAbsent(cells[order[position]], cell -> new int[]{0, 0});
+            if (range[1] == 0) {
+                range[0] = position;
+            }
+            range[1] = position + 1;
+        }
+
+        final List<Contact> contacts = new ArrayList<>();
+        for (int position = 0; position < size; position++) {
+            final int first = order[position];
+            final int row = (int) (cells[first] >> 32);
+            final int column = (int) cells[first];
+            for (int dRow = -1; dRow <= 1; dRow++) {
+                for (int dColumn = -1; dColumn <= 1; dColumn++) {
+                    final int[] range = cellRanges.get(cellKey(row + dRow, column + dColumn));
+                    if (range == null) {
+                        continue;
+                    }
+                    // each pair is seen from both sides, only the side with the lower position reports it
+                    for (int other = Math.max(range[0], position + 1); other < range[1]; other++) {
+                        final int second = order[other];
+                        final double distance = GeometryTools.distanceInMeters(positions[first][0], positions[first][1],
+                                positions[second][0], positions[second][1]);
+                        if (distance <= maxDistanceInMeters) {
+                            contacts.add(new Contact(unitIds[first], unitIds[second], bucket.index, distance));
+                        }
+                    }
+                }
+            }
+        }
+        return contacts;
+    }
+
+    private List<Encounter> toEncounters(final List<Contact> contacts) {
+        final List<Encounter> encounters = new ArrayList<>();
+        Contact start = null;
+        Contact previous = null;
+        double minDistance = Double.MAX_VALUE;
+        for (final Contact contact : contacts) {
+            if (previous != null && !(contact.isSamePair(previous) && contact.bucketIndex == previous.bucketIndex + 1)) {
+                encounters.add(toEncounter(start, previous, minDistance));
+                start = null;
+            }
+            if (start == null) {
+                start = contact;
+                minDistance = Double.MAX_VALUE;
+            }
+            minDistance = Math.min(minDistance, contact.distanceInMeters);
+            previous = contact;
+        }
+        if (previous != null) {
+            encounters.add(toEncounter(start, previous, minDistance));
+        }
+        return encounters;
+    }
+
+    private Encounter toEncounter(final Contact start, final Contact end, final double minDistance) {
+        return Encounter.builder()
+                .firstUnitId(start.firstUnitId)
+                .secondUnitId(start.secondUnitId)
+                .startTime(start.bucketIndex * bucketMillis)
+                .endTime((end.bucketIndex + 1) * bucketMillis)
+                .minDistanceInMeters(Math.ceil(minDistance))
+                .build();
+    }
+
+    private static long cellKey(final int row, final int column) {
+        return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Two units close to each other within a bucket, in unit id order
+     */
+    private static class Contact {
+
+        private final String firstUnitId;
+        private final String secondUnitId;
+        private final long bucketIndex;
+        private final double distanceInMeters;
+
+        Contact(final String unitId, final String otherUnitId, final long bucketIndex, final double distanceInMeters) {
+            final boolean ordered = unitId.compareTo(otherUnitId) < 0;
+            this.firstUnitId = ordered ? unitId : otherUnitId;
+            this.secondUnitId = ordered ? otherUnitId : unitId;
+            this.bucketIndex = bucketIndex;
+            this.distanceInMeters = distanceInMeters;
+        }
+
+        boolean isSamePair(final Contact other) {
+            return firstUnitId.equals(other.firstUnitId) && secondUnitId.equals(other.secondUnitId);
+        }
+    }
+}
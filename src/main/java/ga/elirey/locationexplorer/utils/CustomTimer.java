@@ -16,34 +16,41 @@ import lombok.Getter;
 @Getter
 public class CustomTimer {
 
-    private long startTimeMilliseconds;
+    private long startTimeNanoseconds; // monotonic, not affected by wall clock adjustments
 
     /**
      * Creates a new timer that is reset at creation.
      */
     public CustomTimer() {
-        this.startTimeMilliseconds = System.currentTimeMillis();
+        this.startTimeNanoseconds = System.nanoTime();
     }
 
     /**
      * Returns the time that elapsed since the last reset, in millis.
      */
     public long elapsedMsecs() {
-        return System.currentTimeMillis() - this.startTimeMilliseconds;
+        return elapsedNanos() / 1_000_000;
+    }
+
+    /**
+     * Returns the time that elapsed since the last reset, in nanos.
+     */
+    public long elapsedNanos() {
+        return System.nanoTime() - this.startTimeNanoseconds;
     }
 
     /**
      * Returns the time that elapsed since the last reset, in seconds.
      */
     public double elapsedSecs() {
-        return elapsedMsecs() / 1000.0;
+        return elapsedNanos() / 1_000_000_000.0;
     }
 
     /**
      * Sets the timer to the current time as base time.
      */
     public void resetTimer() {
-        this.startTimeMilliseconds = System.currentTimeMillis();
+        this.startTimeNanoseconds = System.nanoTime();
     }
 
     public long now() {
@@ -0,0 +1,172 @@
+package ga.elirey.locationexplorer.utils;
+
+import ga.elirey.locationexplorer.model.GPSPoint;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Merge the fixes of the devices carried by a unit into a single time-ordered track.
+ * The input holds one time-ordered run per device, the runs are merged with a heap in O(n log k) for k devices.
+ * Fixes of different devices close in time and space are the same position seen twice: only the most accurate one is
+ * kept, which avoids zig-zags between the devices.
+ */
+@RequiredArgsConstructor
+public class DeviceStreamMerger {
+
+    private final long duplicateWindowMillis;
+    private final double duplicateDistanceInMeters;
+
+    /**
+     * @param points fixes ordered by device then time
+     * @return the fixes ordered by time, without near duplicates between devices
+     */
+    public List<GPSPoint> merge(final List<GPSPoint> points) {
+        final long[] times = new long[points.size()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = points.get(i).getTimestampAsMilliSeconds();
+        }
+        final Fixes fixes = new Fixes() {
+            @Override
+            public int size() {
+                return points.size();
+            }
+
+            @Override
+            public long time(final int index) {
+                return times[index];
+            }
+
+            @Override
+            public double latitude(final int index) {
+                return points.get(index).getLatitude();
+            }
+
+            @Override
+            public double longitude(final int index) {
+                return points.get(index).getLongitude();
+            }
+
+            @Override
+            public double altitude(final int index) {
+                return points.get(index).getAltitude();
+            }
+
+            @Override
+            public double accuracy(final int index) {
+                return points.get(index).getAccuracy();
+            }
+
+            @Override
+            public String deviceId(final int index) {
+                return points.get(index).getCollectorId();
+            }
+        };
+        final List<GPSPoint> merged = new ArrayList<>(points.size());
+        if (!merge(fixes, index -> merged.add(points.get(index)))) {
+            return points;
+        }
+        return merged;
+    }
+
+    /**
+     * Same as {@link #merge(List)} between two buffers, without materializing the points
+     *
+     * @param source fixes ordered by device then time
+     * @param target receives the fixes ordered by time
+     */
+    public void merge(final SpillableTrackBuffer source, final SpillableTrackBuffer target) {
+        if (!merge(source, index -> target.append(source, index))) {
+            for (int i = 0; i < source.size(); i++) {
+                target.append(source, i);
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #merge(List)} on a view of fixes, without materializing the points
+     *
+     * @param fixes fixes ordered by device then time
+     * @return the indexes of the fixes kept, in time order
+     */
+    public int[] select(final Fixes fixes) {
+        final IntStream.Builder kept = IntStream.builder();
+        if (!merge(fixes, kept::add)) {
+            return IntStream.range(0, fixes.size()).toArray();
+        }
+        return kept.build().toArray();
+    }
+
+    /**
+     * @return false without emitting anything when there is a single device, the fixes being already ordered
+     */
+    private boolean merge(final Fixes fixes, final IntConsumer emit) {
+        final List<Run> runs = new ArrayList<>();
+        for (int i = 0; i < fixes.size(); i++) {
+            if (i == 0 || !Objects.equals(fixes.deviceId(i), fixes.deviceId(i - 1))) {
+                runs.add(new Run(i));
+            }
+            runs.get(runs.size() - 1).end = i + 1;
+        }
+        if (runs.size() <= 1) {
+            return false;
+        }
+
+        final PriorityQueue<Run> heads = new PriorityQueue<>(runs.size(),
+                (r1, r2) -> Long.compare(fixes.time(r1.position), fixes.time(r2.position)));
+        heads.addAll(runs);
+
+        int last = -1; // kept until the next fix tells whether it is replaced by a duplicate
+        while (!heads.isEmpty()) {
+            final Run run = heads.poll();
+            final int index = run.position;
+            if (++run.position < run.end) {
+                heads.add(run);
+            }
+
+            if (last >= 0 && isDuplicate(fixes, last, index)) {
+                if (accuracyOf(fixes, index) < accuracyOf(fixes, last)) {
+                    last = index;
+                }
+                continue;
+            }
+            if (last >= 0) {
+                emit.accept(last);
+            }
+            last = index;
+        }
+        if (last >= 0) {
+            emit.accept(last);
+        }
+        return true;
+    }
+
+    private boolean isDuplicate(final Fixes fixes, final int last, final int index) {
+        return !Objects.equals(fixes.deviceId(last), fixes.deviceId(index))
+                && fixes.time(index) - fixes.time(last) <= duplicateWindowMillis
+                && GeometryTools.distanceInMeters(fixes.latitude(last), fixes.longitude(last), fixes.latitude(index),
+                fixes.longitude(index)) <= duplicateDistanceInMeters;
+    }
+
+    /**
+     * Accuracy radius in meters, lower is better, unknown when not positive
+     */
+    private static double accuracyOf(final Fixes fixes, final int index) {
+        final double accuracy = fixes.accuracy(index);
+        return accuracy > 0 ? accuracy : Double.MAX_VALUE;
+    }
+
+    private static class Run {
+        private int position;
+        private int end;
+
+        Run(final int start) {
+            this.position = start;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package ga.elirey.locationexplorer.utils;
+
+import ga.elirey.locationexplorer.basis.Localizable;
+import ga.elirey.locationexplorer.model.GPSPoint;
+
+import java.util.List;
+
+/**
+ * Fixes accessed by index, whatever their storage, so that the algorithms selecting fixes work the same on a list of
+ * points and on a {@link SpillableTrackBuffer} without copying it
+ */
+public interface Fixes {
+
+    int size();
+
+    long time(int index);
+
+    double latitude(int index);
+
+    double longitude(int index);
+
+    double altitude(int index);
+
+    /**
+     * Accuracy radius in meters, unknown when not positive
+     */
+    double accuracy(int index);
+
+    /**
+     * @return the device having recorded the fix, null when unknown
+     */
+    String deviceId(int index);
+
+    /**
+     * View a list of points as fixes, the list must not be modified while it is viewed
+     */
+    static Fixes of(final List<? extends Localizable> points) {
+        return new Fixes() {
+            @Override
+            public int size() {
+                return points.size();
+            }
+
+            @Override
+            public long time(final int index) {
+                return points.get(index).getTimestampAsMilliSeconds();
+            }
+
+            @Override
+            public double latitude(final int index) {
+                return points.get(index).getLatitude();
+            }
+
+            @Override
+            public double longitude(final int index) {
+                return points.get(index).getLongitude();
+            }
+
+            @Override
+            public double altitude(final int index) {
+                return points.get(index).getAltitude();
+            }
+
+            @Override
+            public double accuracy(final int index) {
+                return points.get(index).getAccuracy();
+            }
+
+            @Override
+            public String deviceId(final int index) {
+                final Localizable point = points.get(index);
+                return point instanceof GPSPoint ? ((GPSPoint) point).getCollectorId() : null;
+            }
+        };
+    }
+}
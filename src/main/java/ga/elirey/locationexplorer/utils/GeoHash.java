@@ -0,0 +1,164 @@
+package ga.elirey.locationexplorer.utils;
+
+import lombok.Value;
+import lombok.experimental.UtilityClass;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Geohash encoding of locations and covering of bounding boxes with geohash ranges.
+ * <p>
+ * The base 32 alphabet is in ascending ASCII order, so every location of a geohash cell is stored in the
+ * lexicographic range [cell, next cell) of a geohash column, and adjacent cells merge into a single range.
+ */
+@UtilityClass
+public final class GeoHash {
+
+    public static final int MAX_PRECISION = 12;
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+    private static final char AFTER_LAST_CHARACTER = '{'; // follows 'z' in ASCII
+
+    /**
+     * Range of geohashes [lowerBound, upperBound)
+     */
+    @Value
+    public static class Range {
+        String lowerBound;
+        String upperBound;
+    }
+
+    public static String encode(final double latitude, final double longitude) {
+        return encode(latitude, longitude, MAX_PRECISION);
+    }
+
+    public static String encode(final double latitude, final double longitude, final int precision) {
+        double minLatitude = -90;
+        double maxLatitude = 90;
+        double minLongitude = -180;
+        double maxLongitude = 180;
+        final StringBuilder geohash = new StringBuilder(precision);
+        boolean isLongitudeBit = true;
+        int bit = 0;
+        int character = 0;
+        while (geohash.length() < precision) {
+            if (isLongitudeBit) {
+                final double middle = (minLongitude + maxLongitude) / 2;
+                if (longitude >= middle) {
+                    character = (character << 1) | 1;
+                    minLongitude = middle;
+                } else {
+                    character <<= 1;
+                    maxLongitude = middle;
+                }
+            } else {
+                final double middle = (minLatitude + maxLatitude) / 2;
+                if (latitude >= middle) {
+                    character = (character << 1) | 1;
+                    minLatitude = middle;
+                } else {
+                    character <<= 1;
+                    maxLatitude = middle;
+                }
+            }
+            isLongitudeBit = !isLongitudeBit;
+            if (++bit == 5) {
+                geohash.append(BASE32[character]);
+                bit = 0;
+                character = 0;
+            }
+        }
+        return geohash.toString();
+    }
+
+    /**
+     * Cover a bounding box with geohash ranges, using the finest precision which needs at most maxCells cells
+     *
+     * @return the ranges, sorted and merged when adjacent
+     */
+    public static List<Range> coveringRanges(final double minLatitude, final double minLongitude,
+                                             final double maxLatitude, final double maxLongitude, final int maxCells) {
+        int precision = 1;
+        while (precision < MAX_PRECISION && countCoveringCells(minLatitude, minLongitude, maxLatitude, maxLongitude, precision + 1) <= maxCells) {
+            precision++;
+        }
+        final TreeSet<String> cells = new TreeSet<>();
+        final double cellHeight = cellHeight(precision);
+        final double cellWidth = cellWidth(precision);
+        for (long latIndex = latitudeIndex(minLatitude, cellHeight); latIndex <= latitudeIndex(maxLatitude, cellHeight); latIndex++) {
+            for (long lngIndex = longitudeIndex(minLongitude, cellWidth); lngIndex <= longitudeIndex(maxLongitude, cellWidth); lngIndex++) {
+                cells.add(encode(-90 + (latIndex + 0.5) * cellHeight, -180 + (lngIndex + 0.5) * cellWidth, precision));
+            }
+        }
+
+        final List<Range> ranges = new ArrayList<>();
+        String lowerBound = null;
+        String upperBound = null;
+        for (final String cell : cells) {
+            if (cell.equals(upperBound)) {
+                upperBound = next(cell);
+                continue;
+            }
+            if (lowerBound != null) {
+                ranges.add(new Range(lowerBound, upperBound));
+            }
+            lowerBound = cell;
+            upperBound = next(cell);
+        }
+        if (lowerBound != null) {
+            ranges.add(new Range(lowerBound, upperBound));
+        }
+        return ranges;
+    }
+
+    private static long countCoveringCells(final double minLatitude, final double minLongitude,
+                                           final double maxLatitude, final double maxLongitude, final int precision) {
+        final double cellHeight = cellHeight(precision);
+        final double cellWidth = cellWidth(precision);
+        return (latitudeIndex(maxLatitude, cellHeight) - latitudeIndex(minLatitude, cellHeight) + 1)
+                * (longitudeIndex(maxLongitude, cellWidth) - longitudeIndex(minLongitude, cellWidth) + 1);
+    }
+
+    /**
+     * The geohash following the given one at the same precision, or a bound above all geohashes of that precision
+     */
+    private static String next(final String geohash) {
+        final char[] characters = geohash.toCharArray();
+        for (int i = characters.length - 1; i >= 0; i--) {
+            final int index = indexOf(characters[i]);
+            if (index < BASE32.length - 1) {
+                characters[i] = BASE32[index + 1];
+                return new String(characters);
+            }
+            characters[i] = BASE32[0];
+        }
+        return String.valueOf(AFTER_LAST_CHARACTER);
+    }
+
+    private static int indexOf(final char character) {
+        for (int i = 0; i < BASE32.length; i++) {
+            if (BASE32[i] == character) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(String.format("'%s' is not a geohash character", character));
+    }
+
+    private static double cellHeight(final int precision) {
+        return 180.0 / (1L << (5 * precision / 2));
+    }
+
+    private static double cellWidth(final int precision) {
+        return 360.0 / (1L << (5 * precision - 5 * precision / 2));
+    }
+
+    private static long latitudeIndex(final double latitude, final double cellHeight) {
+        return (long) Math.min(Math.floor((latitude + 90) / cellHeight), Math.floor(180 / cellHeight) - 1);
+    }
+
+    private static long longitudeIndex(final double longitude, final double cellWidth) {
+        return (long) Math.min(Math.floor((longitude + 180) / cellWidth), Math.floor(360 / cellWidth) - 1);
+    }
+}
@@ -39,18 +39,28 @@ public final class GeometryTools {
      */
     public static double getOrthogonalDistanceBetweenPointAndLine(final Localizable pointToBeTested,
                                                                   final Localizable firstPointOfLine, final Localizable secondPointOfLine) {
+        return getOrthogonalDistanceBetweenPointAndLine(pointToBeTested.getLatitude(), pointToBeTested.getLongitude(),
+                firstPointOfLine.getLatitude(), firstPointOfLine.getLongitude(),
+                secondPointOfLine.getLatitude(), secondPointOfLine.getLongitude());
+    }
+
+    /**
+     * Same as {@link #getOrthogonalDistanceBetweenPointAndLine(Localizable, Localizable, Localizable)} on coordinates
+     */
+    public static double getOrthogonalDistanceBetweenPointAndLine(final double latitude, final double longitude,
+                                                                  final double firstLatitude, final double firstLongitude,
+                                                                  final double secondLatitude, final double secondLongitude) {
         double area;
         double bottom;
         double height;
 
         area = Math
-                .abs((((firstPointOfLine.getLatitude() * secondPointOfLine.getLongitude()) + (secondPointOfLine.getLatitude() * pointToBeTested.getLongitude()) + (pointToBeTested
-                        .getLatitude() * firstPointOfLine.getLongitude()))
-                        - (secondPointOfLine.getLatitude() * firstPointOfLine.getLongitude())
-                        - (pointToBeTested.getLatitude() * secondPointOfLine.getLongitude()) - (firstPointOfLine.getLatitude() * pointToBeTested.getLongitude())) * 0.5);
+                .abs((((firstLatitude * secondLongitude) + (secondLatitude * longitude) + (latitude * firstLongitude))
+                        - (secondLatitude * firstLongitude)
+                        - (latitude * secondLongitude) - (firstLatitude * longitude)) * 0.5);
 
-        bottom = Math.sqrt(Math.pow(firstPointOfLine.getLatitude() - secondPointOfLine.getLatitude(), 2)
-                + Math.pow(firstPointOfLine.getLongitude() - secondPointOfLine.getLongitude(), 2));
+        bottom = Math.sqrt(Math.pow(firstLatitude - secondLatitude, 2)
+                + Math.pow(firstLongitude - secondLongitude, 2));
 
         height = (area / bottom) * 2.0;
 
@@ -128,6 +138,59 @@ public final class GeometryTools {
         return distance;
     }
 
+    /**
+     * Whether a location is inside a polygon, using ray casting in the lat/lng plane
+     *
+     * @param latitudes  latitudes of the polygon vertices
+     * @param longitudes longitudes of the polygon vertices
+     * @return true if inside
+     */
+    public static boolean isInsidePolygon(final double latitude, final double longitude,
+                                          final double[] latitudes, final double[] longitudes) {
+        boolean isInside = false;
+        for (int i = 0, j = latitudes.length - 1; i < latitudes.length; j = i++) {
+            if ((latitudes[i] > latitude) != (latitudes[j] > latitude)
+                    && longitude < (longitudes[j] - longitudes[i]) * (latitude - latitudes[i]) / (latitudes[j] - latitudes[i]) + longitudes[i]) {
+                isInside = !isInside;
+            }
+        }
+        return isInside;
+    }
+
+    /**
+     * Approximate distance in meters between a location and the closest edge of a polygon, projecting the
+     * coordinates on a plane around the location. Only accurate for distances up to a few kilometers.
+     *
+     * @param latitudes  latitudes of the polygon vertices
+     * @param longitudes longitudes of the polygon vertices
+     * @return a distance in meters
+     */
+    public static double distanceToPolygonEdgesInMeters(final double latitude, final double longitude,
+                                                        final double[] latitudes, final double[] longitudes) {
+        final double metersPerDegreeLatitude = 111_320.0;
+        final double metersPerDegreeLongitude = metersPerDegreeLatitude * Math.cos(Math.toRadians(latitude));
+        double minDistance = Double.MAX_VALUE;
+        for (int i = 0, j = latitudes.length - 1; i < latitudes.length; j = i++) {
+            final double ax = (longitudes[j] - longitude) * metersPerDegreeLongitude;
+            final double ay = (latitudes[j] - latitude) * metersPerDegreeLatitude;
+            final double bx = (longitudes[i] - longitude) * metersPerDegreeLongitude;
+            final double by = (latitudes[i] - latitude) * metersPerDegreeLatitude;
+            final double lengthSquared = (bx - ax) * (bx - ax) + (by - ay) * (by - ay);
+            final double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, -(ax * (bx - ax) + ay * (by - ay)) / lengthSquared));
+            minDistance = Math.min(minDistance, Math.hypot(ax + t * (bx - ax), ay + t * (by - ay)));
+        }
+        return minDistance;
+    }
+
+    /**
+     * Calculate distance in meters between 2 locations given as coordinates, ignoring altitude
+     *
+     * @return a distance in meters
+     */
+    public static double distanceInMeters(final double lat1, final double lon1, final double lat2, final double lon2) {
+        return distanceInMeters(lat1, lat2, lon1, lon2, null, null);
+    }
+
     /**
      * Calculate distance in meters between 2 points
      * @param loc1 start point
@@ -135,7 +198,17 @@ public final class GeometryTools {
      * @return a distance in meters
      */
     public static double distanceInMeters(final Localizable loc1, final Localizable loc2) {
-        return distanceInMeters(loc1.getLatitude(), loc2.getLatitude(), loc1.getLongitude(), loc2.getLongitude(),
-                loc1.getAltitude(), loc2.getAltitude());
+        return distanceInMeters(loc1.getLatitude(), loc1.getLongitude(), loc1.getAltitude(),
+                loc2.getLatitude(), loc2.getLongitude(), loc2.getAltitude());
+    }
+
+    /**
+     * Calculate distance in meters between 2 locations given as coordinates, altitude included
+     *
+     * @return a distance in meters
+     */
+    public static double distanceInMeters(final double lat1, final double lon1, final double alt1,
+                                          final double lat2, final double lon2, final double alt2) {
+        return distanceInMeters(lat1, lat2, lon1, lon2, Double.valueOf(alt1), Double.valueOf(alt2));
     }
 }
@@ -5,6 +5,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.CollectionUtils;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -35,41 +36,79 @@ public class GpsJumpsFilterAlgorithm<E extends Localizable> implements Algorithm
                 .sorted(Comparator.comparing(E::getTimestamp))
                 .collect(Collectors.toList());
 
-        // add first loc anyway
-        dtoLocationValuesFiltered.add(sortedPoints.get(0));
-
-        for (int i = 1; i < (sortedPoints.size() - 1); i++) {
-            final E dtoLocationValuePrecedent = sortedPoints.get(i - 1);
-            final E dtoLocationValue = sortedPoints.get(i);
-            final E dtoLocationValueNext = sortedPoints.get(i + 1);
-            addIfNoJump(dtoLocationValuesFiltered, dtoLocationValuePrecedent, dtoLocationValue, dtoLocationValueNext);
+        final BitSet selected = new BitSet(sortedPoints.size());
+        selected.set(0, sortedPoints.size());
+        final BitSet kept = select(Fixes.of(sortedPoints), selected);
+        for (int i = kept.nextSetBit(0); i >= 0; i = kept.nextSetBit(i + 1)) {
+            dtoLocationValuesFiltered.add(sortedPoints.get(i));
         }
-        // add last loc anyway
-        dtoLocationValuesFiltered.add(sortedPoints.get(sortedPoints.size() - 1));
         log.warn("Filtered {} locations as GPS jumps in {} ms, now {} locations remaining for further process",
                 points.size() - dtoLocationValuesFiltered.size(), timer.elapsedMsecs(), dtoLocationValuesFiltered.size()); // filterBadAccuracyIfRecentLocationPresent
         return dtoLocationValuesFiltered;
     }
 
+    /**
+     * Filter the jumps among already selected fixes without copying them, see {@link #isJump(Fixes, int, int, int)}
+     *
+     * @param selected the indices of the fixes to filter, ordered by time
+     * @return the indices of the kept fixes
+     */
+    public BitSet select(final Fixes fixes, final BitSet selected) {
+        if (selected.cardinality() <= 3) {
+            return (BitSet) selected.clone();
+        }
+        final BitSet kept = new BitSet(fixes.size());
+        int precedent = selected.nextSetBit(0);
+        // add first loc anyway
+        kept.set(precedent);
+        int current = selected.nextSetBit(precedent + 1);
+        for (int next = selected.nextSetBit(current + 1); next >= 0; next = selected.nextSetBit(next + 1)) {
+            if (!isJump(fixes, precedent, current, next)) {
+                kept.set(current);
+            }
+            precedent = current;
+            current = next;
+        }
+        // add last loc anyway
+        kept.set(current);
+        return kept;
+    }
+
     /**
      * Filter jumps between 3 locations.
      * Sudden change of direction identified by a jump to one direction followed
      * by a return jump near to the first location. To identify it we consider a triangle formed by L1, L2, L3 and
      * filter locations if distances L1->L3 < L1->L2 && L1-L2 < L2 -> L3
      *
-     * @param dtoLocationValuesFiltered  the filtered values list to be filled
-     * @param dtoLocationValuePrecedent1 the previous recorded value
-     * @param dtoLocationValue2          the current value being evaluated too far or not
-     * @param dtoLocationValueNext3      the next value
+     * @param precedent1 index of the previous recorded value
+     * @param value2     index of the current value being evaluated too far or not
+     * @param next3      index of the next value
+     * @return true if L2 should be filtered
      */
-    private void addIfNoJump(final List<E> dtoLocationValuesFiltered,
-                                   final E dtoLocationValuePrecedent1, final E dtoLocationValue2,
-                                   final E dtoLocationValueNext3) {
-        final double distanceL1L2 = distanceInMeters(dtoLocationValuePrecedent1, dtoLocationValue2);
-        final double distanceL2L3 = distanceInMeters(dtoLocationValue2, dtoLocationValueNext3);
-        final double distanceL1L3 = distanceInMeters(dtoLocationValuePrecedent1, dtoLocationValueNext3);
-        if ((distanceL1L2 < distanceL1L3) && (distanceL2L3 < distanceL1L3)) {
-            dtoLocationValuesFiltered.add(dtoLocationValue2);
-        }
+    private static boolean isJump(final Fixes fixes, final int precedent1, final int value2, final int next3) {
+        final double distanceL1L2 = distanceBetween(fixes, precedent1, value2);
+        final double distanceL2L3 = distanceBetween(fixes, value2, next3);
+        final double distanceL1L3 = distanceBetween(fixes, precedent1, next3);
+        return !((distanceL1L2 < distanceL1L3) && (distanceL2L3 < distanceL1L3));
+    }
+
+    private static double distanceBetween(final Fixes fixes, final int first, final int second) {
+        return GeometryTools.distanceInMeters(fixes.latitude(first), fixes.longitude(first), fixes.altitude(first),
+                fixes.latitude(second), fixes.longitude(second), fixes.altitude(second));
+    }
+
+    /**
+     * Whether the location L2 recorded between L1 and L3 is a jump, see {@link #isJump(Fixes, int, int, int)}
+     *
+     * @param precedent1 the previous recorded value
+     * @param value2     the value being evaluated
+     * @param next3      the next value
+     * @return true if L2 should be filtered
+     */
+    static boolean isJump(final Localizable precedent1, final Localizable value2, final Localizable next3) {
+        final double distanceL1L2 = distanceInMeters(precedent1, value2);
+        final double distanceL2L3 = distanceInMeters(value2, next3);
+        final double distanceL1L3 = distanceInMeters(precedent1, next3);
+        return !((distanceL1L2 < distanceL1L3) && (distanceL2L3 < distanceL1L3));
     }
 }
@@ -0,0 +1,53 @@
+package ga.elirey.locationexplorer.utils;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Count coordinates per web mercator tile at a zoom level, the same tiling as the slippy map on the front end
+ */
+@UtilityClass
+public class HeatmapBinner {
+
+    public static final int MAX_ZOOM = 24;
+    private static final double MAX_LATITUDE = 85.05112878;
+
+    /**
+     * Count a chunk of coordinates per cell
+     *
+     * @param latitudes  the latitudes, only the first length ones are read
+     * @param longitudes the longitudes, only the first length ones are read
+     * @return the count per cell key, see {@link #cellKey(int, int)}
+     */
+    public static LongIntHashMap bin(final double[] latitudes, final double[] longitudes, final int length, final int zoom) {
+        final LongIntHashMap counts = new LongIntHashMap();
+        final int tiles = 1 << zoom;
+        for (int i = 0; i < length; i++) {
+            counts.addTo(cellKey(tileX(longitudes[i], tiles), tileY(latitudes[i], tiles)), 1);
+        }
+        return counts;
+    }
+
+    public static long cellKey(final int x, final int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    public static int cellX(final long key) {
+        return (int) (key >>> 32);
+    }
+
+    public static int cellY(final long key) {
+        return (int) key;
+    }
+
+    private static int tileX(final double longitude, final int tiles) {
+        final int x = (int) Math.floor((longitude + 180.0) / 360.0 * tiles);
+        return Math.min(Math.max(x, 0), tiles - 1);
+    }
+
+    private static int tileY(final double latitude, final int tiles) {
+        final double latitudeRadians = Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude)));
+        final double mercator = Math.log(Math.tan(latitudeRadians) + 1 / Math.cos(latitudeRadians));
+        final int y = (int) Math.floor((1 - mercator / Math.PI) / 2 * tiles);
+        return Math.min(Math.max(y, 0), tiles - 1);
+    }
+}
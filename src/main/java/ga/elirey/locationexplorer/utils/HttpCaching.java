@@ -0,0 +1,82 @@
+package ga.elirey.locationexplorer.utils;
+
+/**
+ * Parsing of the conditional request and content negotiation headers. The gzip representation of a response has its
+ * own strong ETag, the identity one suffixed with {@value #GZIP_SUFFIX}.
+ */
+public final class HttpCaching {
+
+    public static final String GZIP = "gzip";
+    private static final String GZIP_SUFFIX = "-gzip";
+
+    private HttpCaching() {
+    }
+
+    /**
+     * @param etag quoted identity ETag of the current response
+     * @return the quoted ETag of its gzip representation
+     */
+    public static String gzipETag(final String etag) {
+        return etag.substring(0, etag.length() - 1) + GZIP_SUFFIX + '"';
+    }
+
+    /**
+     * Whether an If-None-Match header matches one of the representations of a response, compared weakly as required
+     * for this header
+     *
+     * @param etag quoted identity ETag of the current response
+     */
+    public static boolean isNotModified(final String ifNoneMatch, final String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*")) {
+                return true;
+            }
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(etag) || candidate.equals(gzipETag(etag))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether an Accept-Encoding header accepts gzip, listed or through *, and not refused with q=0
+     */
+    public static boolean acceptsGzip(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean gzip = null; // an explicit gzip entry wins over *
+        boolean any = false;
+        for (final String coding : acceptEncoding.split(",")) {
+            final String[] parameters = coding.split(";");
+            final String name = parameters[0].trim();
+            if (name.equalsIgnoreCase(GZIP)) {
+                gzip = !isRefused(parameters);
+            } else if (name.equals("*")) {
+                any = !isRefused(parameters);
+            }
+        }
+        return gzip != null ? gzip : any;
+    }
+
+    private static boolean isRefused(final String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            final String parameter = parameters[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2)) == 0;
+                } catch (final NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+}
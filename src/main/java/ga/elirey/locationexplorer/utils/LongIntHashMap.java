@@ -0,0 +1,119 @@
+package ga.elirey.locationexplorer.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing map of primitive long keys to int counters, to accumulate millions of increments without boxing
+ */
+public class LongIntHashMap {
+
+    private static final long EMPTY_KEY = Long.MIN_VALUE;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private boolean hasEmptyKey;
+    private int emptyKeyValue;
+
+    public LongIntHashMap() {
+        this(1024);
+    }
+
+    public LongIntHashMap(final int expectedSize) {
+        allocate(Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1);
+    }
+
+    @FunctionalInterface
+    public interface Consumer {
+        void accept(long key, int value);
+    }
+
+    /**
+     * Add a delta to the counter of a key, starting from 0
+     */
+    public void addTo(final long key, final int delta) {
+        if (key == EMPTY_KEY) {
+            if (!hasEmptyKey) {
+                hasEmptyKey = true;
+                size++;
+            }
+            emptyKeyValue += delta;
+            return;
+        }
+        final int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY_KEY) {
+            if (keys[slot] == key) {
+                values[slot] += delta;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = delta;
+        if (++size > keys.length * LOAD_FACTOR) {
+            rehash();
+        }
+    }
+
+    public int get(final long key) {
+        if (key == EMPTY_KEY) {
+            return hasEmptyKey ? emptyKeyValue : 0;
+        }
+        final int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY_KEY) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    /**
+     * Add all the counters of another map to this one
+     */
+    public void addAll(final LongIntHashMap other) {
+        other.forEach(this::addTo);
+    }
+
+    public void forEach(final Consumer consumer) {
+        if (hasEmptyKey) {
+            consumer.accept(EMPTY_KEY, emptyKeyValue);
+        }
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY_KEY) {
+                consumer.accept(keys[slot], values[slot]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void rehash() {
+        final long[] oldKeys = keys;
+        final int[] oldValues = values;
+        allocate(oldKeys.length << 1);
+        size = hasEmptyKey ? 1 : 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != EMPTY_KEY) {
+                addTo(oldKeys[slot], oldValues[slot]);
+            }
+        }
+    }
+
+    private void allocate(final int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY_KEY);
+    }
+
+    private static int mix(final long key) {
+        final long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -0,0 +1,693 @@
+package ga.elirey.locationexplorer.utils;
+
+import ga.elirey.locationexplorer.basis.Localizable;
+import ga.elirey.locationexplorer.data.TrackKey;
+import ga.elirey.locationexplorer.model.GPSPoint;
+import io.jenetics.jpx.GPX;
+import io.jenetics.jpx.WayPoint;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.geojson.GeoJsonObject;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * Recent fixes of many units kept outside of the heap, so that they are never traversed by the garbage collector.
+ * <p>
+ * Fixes are fixed-width records in chunks of direct {@link ByteBuffer} slabs. Each track is a chain of chunks, the
+ * header of a chunk holding the next chunk of the track and its number of records. Chunks freed by the retention or
+ * by eviction go to a free list. Once the capacity is reached, the oldest chunk of the least recently updated track is
+ * evicted to make room. A fix stored again with the same time and device, i.e. upserted, replaces the stored one.
+ * <p>
+ * Tracks are read through {@link Fix} flyweights implementing {@link Localizable}, or {@link FixesView} views of
+ * {@link Fixes}, valid only within {@link #read(TrackKey, Function)}.
+ */
+@Slf4j
+public class OffHeapTrackStore {
+
+    private static final int HEADER_BYTES = 2 * Integer.BYTES; // next chunk, record count
+    private static final int RECORD_BYTES = Long.BYTES + 6 * Double.BYTES + Integer.BYTES;
+    private static final int NO_CHUNK = -1;
+
+    private static final int TIME = 0;
+    private static final int LATITUDE = 8;
+    private static final int LONGITUDE = 16;
+    private static final int ALTITUDE = 24;
+    private static final int SPEED = 32;
+    private static final int HEADING = 40;
+    private static final int ACCURACY = 48;
+    private static final int DEVICE = 56;
+
+    private final int chunkRecords;
+    private final int chunkBytes;
+    private final int chunksPerSlab;
+    private final int maxChunks;
+    private final int slabBytes;
+    private final long retentionMillis;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    private final Map<TrackKey, Track> tracks = new LinkedHashMap<>(); // least recently updated first
+    private final List<String> devices = new ArrayList<>();
+    private final Map<String, Integer> deviceIndexes = new HashMap<>();
+    private int[] freeChunks = new int[64];
+    private int freeChunkCount;
+    private int carvedChunks;
+
+    @Getter
+    private volatile long evictedChunks;
+    @Getter
+    private volatile long droppedFixes;
+
+    /**
+     * @param capacityBytes   max off-heap memory taken by the slabs
+     * @param slabBytes       size of the buffers allocated at once
+     * @param chunkRecords    number of fixes per chunk
+     * @param retentionMillis fixes older than this compared to the last fix of their track are released, 0 to keep them
+     */
+    public OffHeapTrackStore(final long capacityBytes, final int slabBytes, final int chunkRecords, final long retentionMillis) {
+        this.chunkRecords = chunkRecords;
+        this.chunkBytes = HEADER_BYTES + chunkRecords * RECORD_BYTES;
+        this.chunksPerSlab = slabBytes / chunkBytes;
+        this.slabBytes = chunksPerSlab * chunkBytes;
+        this.maxChunks = (int) Math.min(Integer.MAX_VALUE, (capacityBytes / this.slabBytes) * chunksPerSlab);
+        this.retentionMillis = retentionMillis;
+        if (chunksPerSlab < 1 || maxChunks < 2) {
+            throw new IllegalArgumentException(String.format("A capacity of %d bytes in slabs of %d bytes cannot hold two chunks of %d fixes",
+                    capacityBytes, slabBytes, chunkRecords));
+        }
+    }
+
+    /**
+     * Add a fix to the end of a track. A fix older than the last one is put in place if it belongs to the last chunk
+     * of the track, dropped otherwise. A fix of the last chunk with the same time and device is replaced.
+     *
+     * @return whether the fix was stored
+     */
+    public boolean append(final TrackKey trackKey, final long time, final double latitude, final double longitude,
+                          final double altitude, final double speed, final double heading, final double accuracy,
+                          final String deviceId) {
+        lock.writeLock().lock();
+        try {
+            Track track = tracks.remove(trackKey);
+            if (track == null) {
+                track = new Track(trackKey.getUnitId());
+            }
+            tracks.put(trackKey, track); // now the most recently updated
+
+            final int device = deviceIndexes.computeIfAbsent(deviceId, id -> {
+                devices.add(id);
+                return devices.size() - 1;
+            });
+            if (!insert(track, time, latitude, longitude, altitude, speed, heading, accuracy, device)) {
+                droppedFixes++;
+                return false;
+            }
+            applyRetention(track);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Read a track, the view and its fixes must not be used once the function returns
+     *
+     * @return the result of the function, empty if the track is not stored
+     */
+    public <T> Optional<T> read(final TrackKey trackKey, final Function<TrackView, T> function) {
+        lock.readLock().lock();
+        try {
+            final Track track = tracks.get(trackKey);
+            return track == null || track.size == 0 ? Optional.empty() : Optional.ofNullable(function.apply(new TrackView(track)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getTrackCount() {
+        lock.readLock().lock();
+        try {
+            return tracks.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getCapacityBytes() {
+        return (long) maxChunks * chunkBytes;
+    }
+
+    /**
+     * Off-heap memory allocated so far, slabs are never released
+     */
+    public long getAllocatedBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) slabs.size() * slabBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Off-heap memory held by the chunks of the stored tracks
+     */
+    public long getUsedBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) (carvedChunks - freeChunkCount) * chunkBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean insert(final Track track, final long time, final double latitude, final double longitude,
+                           final double altitude, final double speed, final double heading, final double accuracy,
+                           final int device) {
+        if (track.tail == NO_CHUNK) {
+            track.head = allocateChunk(track);
+            track.tail = track.head;
+            track.completeSinceMillis = time;
+        }
+        int count = count(track.tail);
+        int position = count;
+        while (position > 0 && timeAt(track.tail, position - 1) > time) {
+            position--;
+        }
+        for (int i = position - 1; i >= 0 && timeAt(track.tail, i) == time; i--) {
+            if (deviceAt(track.tail, i) == device) { // upserted, replaced in place
+                write(track.tail, i, time, latitude, longitude, altitude, speed, heading, accuracy, device);
+                return true;
+            }
+        }
+        if (position == 0 && count > 0 && track.tail != track.head) {
+            // older than the whole last chunk, fixes recorded after it may be missing or outdated from now on
+            track.completeSinceMillis = Math.max(track.completeSinceMillis, timeAt(track.tail, 0));
+            return false;
+        }
+
+        if (count == chunkRecords) {
+            final int chunk = allocateChunk(track);
+            setNext(track.tail, chunk);
+            if (position == count) {
+                track.tail = chunk;
+                position = 0;
+                count = 0;
+            } else { // the last fix moves to the new chunk to make room
+                copyRecord(track.tail, count - 1, chunk, 0);
+                setCount(chunk, 1);
+                setCount(track.tail, --count);
+                final int previousTail = track.tail;
+                track.tail = chunk;
+                shiftAndWrite(previousTail, position, count, time, latitude, longitude, altitude, speed, heading, accuracy, device);
+                track.size++;
+                return true;
+            }
+        }
+        shiftAndWrite(track.tail, position, count, time, latitude, longitude, altitude, speed, heading, accuracy, device);
+        track.size++;
+        return true;
+    }
+
+    private void shiftAndWrite(final int chunk, final int position, final int count, final long time,
+                               final double latitude, final double longitude, final double altitude, final double speed,
+                               final double heading, final double accuracy, final int device) {
+        for (int i = count; i > position; i--) {
+            copyRecord(chunk, i - 1, chunk, i);
+        }
+        write(chunk, position, time, latitude, longitude, altitude, speed, heading, accuracy, device);
+        setCount(chunk, count + 1);
+    }
+
+    private void write(final int chunk, final int record, final long time, final double latitude, final double longitude,
+                       final double altitude, final double speed, final double heading, final double accuracy,
+                       final int device) {
+        final ByteBuffer slab = slabOf(chunk);
+        final int offset = recordOffset(chunk, record);
+        slab.putLong(offset + TIME, time);
+        slab.putDouble(offset + LATITUDE, latitude);
+        slab.putDouble(offset + LONGITUDE, longitude);
+        slab.putDouble(offset + ALTITUDE, altitude);
+        slab.putDouble(offset + SPEED, speed);
+        slab.putDouble(offset + HEADING, heading);
+        slab.putDouble(offset + ACCURACY, accuracy);
+        slab.putInt(offset + DEVICE, device);
+    }
+
+    private void applyRetention(final Track track) {
+        if (retentionMillis <= 0) {
+            return;
+        }
+        final long newestTime = timeAt(track.tail, count(track.tail) - 1);
+        while (track.head != track.tail && timeAt(track.head, count(track.head) - 1) < newestTime - retentionMillis) {
+            releaseHead(track);
+        }
+    }
+
+    /**
+     * Take a chunk from the free list, a new one from the slabs or, at capacity, the oldest one of the least recently
+     * updated track
+     */
+    private int allocateChunk(final Track requester) {
+        if (freeChunkCount == 0 && carvedChunks == maxChunks) {
+            evictChunk(requester);
+        }
+        final int chunk;
+        if (freeChunkCount > 0) {
+            chunk = freeChunks[--freeChunkCount];
+        } else {
+            if (carvedChunks == slabs.size() * chunksPerSlab) {
+                slabs.add(ByteBuffer.allocateDirect(slabBytes));
+                log.debug("Allocated off-heap slab #{}, {} bytes in use", slabs.size(), (long) slabs.size() * slabBytes);
+            }
+            chunk = carvedChunks++;
+        }
+        setNext(chunk, NO_CHUNK);
+        setCount(chunk, 0);
+        return chunk;
+    }
+
+    private void evictChunk(final Track requester) {
+        final Iterator<Map.Entry<TrackKey, Track>> iterator = tracks.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Track track = iterator.next().getValue();
+            if (track == requester && track.head == track.tail) {
+                continue;
+            }
+            releaseHead(track);
+            evictedChunks++;
+            if (track.head == NO_CHUNK) {
+                iterator.remove();
+            }
+            return;
+        }
+        throw new IllegalStateException("No chunk can be evicted from the off-heap track store");
+    }
+
+    private void releaseHead(final Track track) {
+        final int chunk = track.head;
+        track.size -= count(chunk);
+        track.head = next(chunk);
+        if (track.head == NO_CHUNK) {
+            track.tail = NO_CHUNK;
+        } else {
+            track.completeSinceMillis = Math.max(track.completeSinceMillis, timeAt(track.head, 0));
+        }
+        if (freeChunkCount == freeChunks.length) {
+            freeChunks = Arrays.copyOf(freeChunks, freeChunkCount * 2);
+        }
+        freeChunks[freeChunkCount++] = chunk;
+    }
+
+    private ByteBuffer slabOf(final int chunk) {
+        return slabs.get(chunk / chunksPerSlab);
+    }
+
+    private int chunkOffset(final int chunk) {
+        return (chunk % chunksPerSlab) * chunkBytes;
+    }
+
+    private int recordOffset(final int chunk, final int record) {
+        return chunkOffset(chunk) + HEADER_BYTES + record * RECORD_BYTES;
+    }
+
+    private int next(final int chunk) {
+        return slabOf(chunk).getInt(chunkOffset(chunk));
+    }
+
+    private void setNext(final int chunk, final int next) {
+        slabOf(chunk).putInt(chunkOffset(chunk), next);
+    }
+
+    private int count(final int chunk) {
+        return slabOf(chunk).getInt(chunkOffset(chunk) + Integer.BYTES);
+    }
+
+    private void setCount(final int chunk, final int count) {
+        slabOf(chunk).putInt(chunkOffset(chunk) + Integer.BYTES, count);
+    }
+
+    private long timeAt(final int chunk, final int record) {
+        return slabOf(chunk).getLong(recordOffset(chunk, record) + TIME);
+    }
+
+    private int deviceAt(final int chunk, final int record) {
+        return slabOf(chunk).getInt(recordOffset(chunk, record) + DEVICE);
+    }
+
+    private void copyRecord(final int fromChunk, final int fromRecord, final int toChunk, final int toRecord) {
+        final ByteBuffer from = slabOf(fromChunk);
+        final ByteBuffer to = slabOf(toChunk);
+        final int fromOffset = recordOffset(fromChunk, fromRecord);
+        final int toOffset = recordOffset(toChunk, toRecord);
+        for (int i = 0; i < DEVICE; i += Long.BYTES) {
+            to.putLong(toOffset + i, from.getLong(fromOffset + i));
+        }
+        to.putInt(toOffset + DEVICE, from.getInt(fromOffset + DEVICE));
+    }
+
+    private static final class Track {
+
+        private final String unitId;
+        private int head = NO_CHUNK;
+        private int tail = NO_CHUNK;
+        private int size;
+        private long completeSinceMillis;
+
+        private Track(final String unitId) {
+            this.unitId = unitId;
+        }
+    }
+
+    /**
+     * Read-only access to the fixes of a track, in time order
+     */
+    public final class TrackView {
+
+        private final Track track;
+
+        private TrackView(final Track track) {
+            this.track = track;
+        }
+
+        public int size() {
+            return track.size;
+        }
+
+        /**
+         * Time from which no fix of the track is missing nor outdated, provided that every fix stored elsewhere since the
+         * store started went through it. Fixes recorded before the store started may be missing whatever their time.
+         */
+        public long getCompleteSinceMillis() {
+            return track.completeSinceMillis;
+        }
+
+        /**
+         * Go through the fixes recorded after a time and before another, both excluded like in the database queries,
+         * with a single flyweight moved from one fix to the next
+         */
+        public void forEachBetween(final long afterMillis, final long beforeMillis, final Consumer<? super Fix> consumer) {
+            final Fix fix = new Fix(track.unitId);
+            for (int chunk = track.head; chunk != NO_CHUNK; chunk = next(chunk)) {
+                final int count = count(chunk);
+                if (count == 0 || timeAt(chunk, count - 1) <= afterMillis) {
+                    continue;
+                }
+                for (int record = firstRecordAfter(chunk, count, afterMillis); record < count; record++) {
+                    if (timeAt(chunk, record) >= beforeMillis) {
+                        return;
+                    }
+                    consumer.accept(fix.moveTo(chunk, record));
+                }
+            }
+        }
+
+        /**
+         * View the fixes recorded after a time and before another, both excluded, ordered by device then time like in
+         * the database queries. Only the location of each fix in the chunks is copied.
+         */
+        public FixesView fixesBetween(final long afterMillis, final long beforeMillis) {
+            final FixesView view = new FixesView(track.unitId);
+            forEachBetween(afterMillis, beforeMillis, fix -> view.add(fix.chunk, fix.record));
+            view.orderByDevice();
+            return view;
+        }
+
+        /**
+         * Index in a chunk of the first fix recorded strictly after a time, the last fix of the chunk being after it
+         */
+        private int firstRecordAfter(final int chunk, final int count, final long timeMillis) {
+            int low = 0;
+            int high = count - 1;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (timeAt(chunk, middle) > timeMillis) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Read-only {@link Fixes} backed by records of the store, each fix being located by its chunk and its record
+     */
+    public final class FixesView implements Fixes {
+
+        private final Fix fix; // moved to the fixes copied to the heap
+        private int[] chunks = new int[16];
+        private int[] records = new int[16];
+        private int size;
+
+        private FixesView(final String unitId) {
+            this.fix = new Fix(unitId);
+        }
+
+        private void add(final int chunk, final int record) {
+            if (size == chunks.length) {
+                chunks = Arrays.copyOf(chunks, size * 2);
+                records = Arrays.copyOf(records, size * 2);
+            }
+            chunks[size] = chunk;
+            records[size] = record;
+            size++;
+        }
+
+        /**
+         * Stable reordering of the time-ordered fixes into one run per device, the devices being ordered by id
+         */
+        private void orderByDevice() {
+            final int[] deviceOrder = IntStream.range(0, size)
+                    .map(this::device)
+                    .distinct()
+                    .boxed()
+                    .sorted(Comparator.comparing(devices::get))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            if (deviceOrder.length <= 1) {
+                return;
+            }
+            final int[] orderedChunks = new int[size];
+            final int[] orderedRecords = new int[size];
+            int position = 0;
+            for (final int device : deviceOrder) {
+                for (int i = 0; i < size; i++) {
+                    if (device(i) == device) {
+                        orderedChunks[position] = chunks[i];
+                        orderedRecords[position] = records[i];
+                        position++;
+                    }
+                }
+            }
+            chunks = orderedChunks;
+            records = orderedRecords;
+        }
+
+        private int device(final int index) {
+            return slabOf(chunks[index]).getInt(offset(index) + DEVICE);
+        }
+
+        private int offset(final int index) {
+            return recordOffset(chunks[index], records[index]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public long time(final int index) {
+            return slabOf(chunks[index]).getLong(offset(index) + TIME);
+        }
+
+        @Override
+        public double latitude(final int index) {
+            return slabOf(chunks[index]).getDouble(offset(index) + LATITUDE);
+        }
+
+        @Override
+        public double longitude(final int index) {
+            return slabOf(chunks[index]).getDouble(offset(index) + LONGITUDE);
+        }
+
+        @Override
+        public double altitude(final int index) {
+            return slabOf(chunks[index]).getDouble(offset(index) + ALTITUDE);
+        }
+
+        @Override
+        public double accuracy(final int index) {
+            return slabOf(chunks[index]).getDouble(offset(index) + ACCURACY);
+        }
+
+        @Override
+        public String deviceId(final int index) {
+            return devices.get(device(index));
+        }
+
+        /**
+         * Copy a fix to the heap, to keep it once the store is released
+         */
+        public GPSPoint toPoint(final int index) {
+            return fix.moveTo(chunks[index], records[index]).toPoint();
+        }
+    }
+
+    /**
+     * Read-only {@link Localizable} backed by a record of the store, setters throw {@link UnsupportedOperationException}
+     */
+    public final class Fix implements Localizable {
+
+        @Getter
+        private final String unitId;
+        private int chunk;
+        private int record;
+        private int offset;
+
+        private Fix(final String unitId) {
+            this.unitId = unitId;
+        }
+
+        private Fix moveTo(final int chunk, final int record) {
+            this.chunk = chunk;
+            this.record = record;
+            this.offset = recordOffset(chunk, record);
+            return this;
+        }
+
+        public String getCollectorId() {
+            return devices.get(slabOf(chunk).getInt(offset + DEVICE));
+        }
+
+        @Override
+        public long getTimestampAsMilliSeconds() {
+            return slabOf(chunk).getLong(offset + TIME);
+        }
+
+        @Override
+        public LocalDateTime getTimestamp() {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(getTimestampAsMilliSeconds()), ZoneOffset.UTC);
+        }
+
+        @Override
+        public double getLatitude() {
+            return slabOf(chunk).getDouble(offset + LATITUDE);
+        }
+
+        @Override
+        public double getLongitude() {
+            return slabOf(chunk).getDouble(offset + LONGITUDE);
+        }
+
+        @Override
+        public double getAltitude() {
+            return slabOf(chunk).getDouble(offset + ALTITUDE);
+        }
+
+        public double getSpeed() {
+            return slabOf(chunk).getDouble(offset + SPEED);
+        }
+
+        public double getHeading() {
+            return slabOf(chunk).getDouble(offset + HEADING);
+        }
+
+        @Override
+        public double getAccuracy() {
+            return slabOf(chunk).getDouble(offset + ACCURACY);
+        }
+
+        /**
+         * Copy the fix to the heap, to keep it once the store is released
+         */
+        public GPSPoint toPoint() {
+            return GPSPoint.builder()
+                    .unitId(unitId)
+                    .collectorId(getCollectorId())
+                    .timestamp(getTimestamp())
+                    .latitude(getLatitude())
+                    .longitude(getLongitude())
+                    .altitude(getAltitude())
+                    .speed(getSpeed())
+                    .heading(getHeading())
+                    .accuracy(getAccuracy())
+                    .build();
+        }
+
+        @Override
+        public double[] as2DDoubleVector() {
+            return new double[]{getLatitude(), getLongitude()};
+        }
+
+        @Override
+        public double[] as3DDoubleVector() {
+            return new double[]{getLatitude(), getLongitude(), getAltitude()};
+        }
+
+        @Override
+        public WayPoint toGpxWayPoint() {
+            return toPoint().toGpxWayPoint();
+        }
+
+        @Override
+        public GeoJsonObject toGeoJsonObject() {
+            return toPoint().toGeoJsonObject();
+        }
+
+        @Override
+        public String asGeoJsonString() {
+            return toPoint().asGeoJsonString();
+        }
+
+        @Override
+        public GPX toGpxObject() {
+            return toPoint().toGpxObject();
+        }
+
+        @Override
+        public String asGpxString() {
+            return toPoint().asGpxString();
+        }
+
+        @Override
+        public void setLatitude(final double latitude) {
+            throw new UnsupportedOperationException("Fixes of the off-heap track store are read-only");
+        }
+
+        @Override
+        public void setLongitude(final double longitude) {
+            throw new UnsupportedOperationException("Fixes of the off-heap track store are read-only");
+        }
+
+        @Override
+        public void setAltitude(final double altitude) {
+            throw new UnsupportedOperationException("Fixes of the off-heap track store are read-only");
+        }
+
+        @Override
+        public void setAccuracy(final double accuracy) {
+            throw new UnsupportedOperationException("Fixes of the off-heap track store are read-only");
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package ga.elirey.locationexplorer.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Response body kept gzip compressed, sent as is to the clients accepting gzip and inflated for the others
+ */
+public class PrecompressedBody {
+
+    private final byte[] gzipBytes;
+    private final int length; // uncompressed
+
+    private PrecompressedBody(final byte[] gzipBytes, final int length) {
+        this.gzipBytes = gzipBytes;
+        this.length = length;
+    }
+
+    public static PrecompressedBody compress(final String body) {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(64, bytes.length / 8));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(output, 8192)) {
+            gzip.write(bytes);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new PrecompressedBody(output.toByteArray(), bytes.length);
+    }
+
+    public byte[] getGzipBytes() {
+        return gzipBytes;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getCompressedLength() {
+        return gzipBytes.length;
+    }
+
+    /**
+     * Inflate the body for a client not accepting gzip
+     */
+    public byte[] getBytes() {
+        final byte[] bytes = new byte[length];
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(gzipBytes), 8192)) {
+            int read = 0;
+            while (read < length) {
+                final int count = gzip.read(bytes, read, length - read);
+                if (count < 0) {
+                    throw new IOException("Truncated compressed body");
+                }
+                read += count;
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes;
+    }
+}
@@ -4,7 +4,10 @@ import ga.elirey.locationexplorer.basis.Localizable;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
 import java.util.List;
 
 @Slf4j
@@ -21,80 +24,75 @@ public class RamerDouglasPeuckerAlgorithm<E extends Localizable> implements Algo
     @Override
     public List<E> apply(List<E> points) {
         log.info("Path optimization enabled");
-        final List<E> optimizedPathPoints = getOptimizedPath(points, calculateAccurateEpsilon(points));
+        final BitSet kept = select(Fixes.of(points));
+        final List<E> optimizedPathPoints = new ArrayList<>(kept.cardinality());
+        for (int i = kept.nextSetBit(0); i >= 0; i = kept.nextSetBit(i + 1)) {
+            optimizedPathPoints.add(points.get(i));
+        }
         log.info("Shortened path from {} points down to {} points for RDP optimization using epsilon coefficient '{}'", points.size(), optimizedPathPoints.size(), this.optimizationCoefficient);
         return optimizedPathPoints;
     }
 
-    private List<E> getOptimizedPath(final List<E> allPoints, final double tolerance) {
-        log.trace("using tolerance '{}'", tolerance);
-        if ((allPoints == null) || (allPoints.size() < 3)) {
-            return allPoints;
+    /**
+     * Select the fixes of the optimized path without copying them, iteratively so that huge tracks cannot overflow the
+     * stack
+     *
+     * @return the indices of the kept fixes
+     */
+    public BitSet select(final Fixes fixes) {
+        final int size = fixes.size();
+        final BitSet kept = new BitSet(size);
+        if (size < 3) {
+            kept.set(0, size);
+            return kept;
         }
-
-        final E firstPoint = allPoints.get(0);
-        final E lastPoint = allPoints.get(allPoints.size() - 1);
-        double maxDistance = 0;
-        int farthestPointIndex = 0;
-
-        for (int i = 0; i < allPoints.size(); i++) {
-            final Localizable currentPoint = allPoints.get(i);
-            final double currentPointDistance = GeometryTools.getOrthogonalDistanceBetweenPointAndLine(currentPoint, firstPoint, lastPoint);
-            if (currentPointDistance > maxDistance) {
-                maxDistance = currentPointDistance;
-                farthestPointIndex = i;
+        final double tolerance = calculateAccurateEpsilon(fixes);
+        log.trace("using tolerance '{}'", tolerance);
+        // [first, last] ranges still to optimize
+        final Deque<int[]> ranges = new ArrayDeque<>();
+        ranges.push(new int[]{0, size - 1});
+        while (!ranges.isEmpty()) {
+            final int[] range = ranges.pop();
+            final int first = range[0];
+            final int last = range[1];
+            kept.set(first);
+            kept.set(last);
+            if (last - first < 2) {
+                continue;
             }
-        }
-
-        log.debug(String.format("Found maxDistance of : %s, for point index : %s", maxDistance, farthestPointIndex));
-        final List<E> returnedValue = new ArrayList<>();
-
-        if (maxDistance > tolerance) {
-            log.debug("maxDistance still exceed tolerance, about to perform two recursive calls");
-            log.debug(String.format("call for first half is between points 0 and %s", farthestPointIndex + 1));
-            log.debug(String.format("call for second half is between points %s and %s", farthestPointIndex + 1, allPoints.size()));
-            final List<E> firstHalf = new ArrayList<>(allPoints.subList(0, farthestPointIndex + 1));
-            final List<E> secondHalf = new ArrayList<>(allPoints.subList(farthestPointIndex, allPoints.size()));
-            // recursive calls
-            final List<E> firstHalfReturn = getOptimizedPath(firstHalf, tolerance);
-            final List<E> secondHalfReturn = getOptimizedPath(secondHalf, tolerance);
-
-            returnedValue.addAll(firstHalfReturn);
-            // removing the first element to avoid 2 occurrence of the farthestPoint
-            if (!secondHalfReturn.isEmpty()) {
-                secondHalfReturn.remove(0);
+            final double firstLatitude = fixes.latitude(first);
+            final double firstLongitude = fixes.longitude(first);
+            final double lastLatitude = fixes.latitude(last);
+            final double lastLongitude = fixes.longitude(last);
+            double maxDistance = 0;
+            int farthestPointIndex = first;
+            for (int i = first; i <= last; i++) {
+                final double currentPointDistance = GeometryTools.getOrthogonalDistanceBetweenPointAndLine(fixes.latitude(i),
+                        fixes.longitude(i), firstLatitude, firstLongitude, lastLatitude, lastLongitude);
+                if (currentPointDistance > maxDistance) {
+                    maxDistance = currentPointDistance;
+                    farthestPointIndex = i;
+                }
+            }
+            // if no point is far enough, the evaluated range keeps only its 2 extreme points
+            if (maxDistance > tolerance) {
+                ranges.push(new int[]{farthestPointIndex, last});
+                ranges.push(new int[]{first, farthestPointIndex});
             }
-
-            returnedValue.addAll(secondHalfReturn);
-        } else {
-            // if no point is far enough, the evaluated sublist returns only the 2 extreme points
-            returnedValue.add(firstPoint);
-            returnedValue.add(lastPoint);
         }
-        return returnedValue;
+        return kept;
     }
 
-    private double calculateAccurateEpsilon(final List<E> allPoints) {
-        log.debug("about to calculateAccurateEpsilon");
-        if (allPoints.isEmpty()) {
-            return 0;
-        }
-
+    /**
+     * Average lat/lng like distance between consecutive fixes, divided by the optimization coefficient
+     */
+    private double calculateAccurateEpsilon(final Fixes fixes) {
         double allDistancesSum = 0;
-        E firstPoint = null;
-        E secondPoint = null;
-        for (final E currentPoint : allPoints) {
-            if (secondPoint != null) {
-                firstPoint = secondPoint;
-            }
-            secondPoint = currentPoint;
-            final double distanceBetweenPoints = GeometryTools.getDistanceBetweenPoints(firstPoint, secondPoint);
-            if ((firstPoint != null) && (secondPoint != null)) {
-                log.debug(String.format("about to add distance between Points %s and %s : %s", firstPoint, secondPoint,
-                        distanceBetweenPoints));
-            }
-            allDistancesSum += distanceBetweenPoints;
+        for (int i = 1; i < fixes.size(); i++) {
+            final double latDif = fixes.latitude(i) - fixes.latitude(i - 1);
+            final double lngDif = fixes.longitude(i) - fixes.longitude(i - 1);
+            allDistancesSum += Math.sqrt(Math.pow(latDif, 2) + Math.pow(lngDif, 2));
         }
-        return allDistancesSum / (allPoints.size() * this.optimizationCoefficient);
+        return allDistancesSum / (fixes.size() * this.optimizationCoefficient);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,162 @@
+package ga.elirey.locationexplorer.utils;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Route the connections of read-only transactions to the read replicas in turn, and every other connection to the
+ * primary. A replica is skipped while it is unreachable or lags behind the primary by more than a bound, the primary
+ * serves the reads when no replica is usable.
+ * The routing key is read when the connection is fetched: wrap this data source in a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy} so that it happens once the transaction
+ * is started and flagged read-only.
+ */
+@Slf4j
+public class ReadReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    public static final String PRIMARY = "primary";
+
+    private final List<Replica> replicas;
+    private final long maxLagMillis;
+    private final String lagQuery;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final AtomicLong primaryFallbacks = new AtomicLong();
+
+    /**
+     * @param replicas replica data sources by name, in their rotation order
+     * @param lagQuery SQL run on a replica returning its replication lag in milliseconds, null or empty to only
+     *                 check that the replica is reachable
+     */
+    public ReadReplicaRoutingDataSource(final DataSource primary, final Map<String, DataSource> replicas,
+                                        final long maxLagMillis, final String lagQuery) {
+        this.replicas = new ArrayList<>(replicas.size());
+        replicas.forEach((name, dataSource) -> this.replicas.add(new Replica(name, dataSource)));
+        this.maxLagMillis = maxLagMillis;
+        this.lagQuery = StringUtils.hasText(lagQuery) ? lagQuery : null;
+
+        final Map<Object, Object> targets = new HashMap<>(replicas);
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || replicas.isEmpty()) {
+            return PRIMARY;
+        }
+        for (int attempt = 0; attempt < replicas.size(); attempt++) {
+            final Replica replica = replicas.get((nextReplica.getAndIncrement() & Integer.MAX_VALUE) % replicas.size());
+            if (replica.isUsable()) {
+                replica.routed.incrementAndGet();
+                return replica.getName();
+            }
+        }
+        primaryFallbacks.incrementAndGet();
+        return PRIMARY;
+    }
+
+    /**
+     * Measure the lag of each replica and update the ones the reads may be routed to
+     */
+    public void checkReplicas() {
+        replicas.forEach(this::checkReplica);
+    }
+
+    private void checkReplica(final Replica replica) {
+        boolean usable;
+        try (Connection connection = replica.getDataSource().getConnection()) {
+            replica.lagMillis = lagQuery == null ? 0 : queryLagMillis(connection);
+            usable = replica.lagMillis <= maxLagMillis;
+            if (!usable && replica.usable) {
+                log.warn("Replica '{}' lags {} ms behind the primary, reads are routed elsewhere", replica.getName(), replica.lagMillis);
+            }
+        } catch (SQLException | RuntimeException e) {
+            usable = false;
+            if (replica.usable) {
+                log.warn("Replica '{}' is unreachable, reads are routed elsewhere: {}", replica.getName(), e.getMessage());
+            }
+        }
+        if (usable && !replica.usable) {
+            log.info("Replica '{}' is back in the rotation", replica.getName());
+        }
+        replica.usable = usable;
+    }
+
+    private long queryLagMillis(final Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(lagQuery)) {
+            // no row or null when nothing was replayed yet, considered up to date
+            return resultSet.next() ? Math.max(0, resultSet.getLong(1)) : 0;
+        }
+    }
+
+    /**
+     * Close the replica pools, the primary one is left to its owner
+     */
+    public void close() {
+        replicas.forEach(replica -> {
+            if (replica.getDataSource() instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) replica.getDataSource()).close();
+                } catch (Exception e) {
+                    log.warn("Failed to close replica '{}'", replica.getName(), e);
+                }
+            }
+        });
+    }
+
+    public List<Replica> getReplicas() {
+        return Collections.unmodifiableList(replicas);
+    }
+
+    /**
+     * Number of read-only connections served by the primary because no replica was usable
+     */
+    public long getPrimaryFallbacks() {
+        return primaryFallbacks.get();
+    }
+
+    public static class Replica {
+
+        @Getter
+        private final String name;
+        @Getter
+        private final DataSource dataSource;
+        @Getter
+        private volatile boolean usable = true; // until the first check tells otherwise
+        @Getter
+        private volatile long lagMillis;
+        private final AtomicLong routed = new AtomicLong();
+
+        Replica(final String name, final DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        /**
+         * Number of read-only connections routed to this replica
+         */
+        public long getRoutedConnections() {
+            return routed.get();
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package ga.elirey.locationexplorer.utils;
+
+import ga.elirey.locationexplorer.model.GPSPoint;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+
+/**
+ * Append-only track of a single unit stored in columns, on the heap while small and in memory-mapped temporary files
+ * once it exceeds a size, so that the pages of a huge track are managed by the OS instead of filling the heap.
+ * Points are read back by index, the algorithms working on it keep indices instead of copies.
+ * <p>
+ * The mapped file is split into segments of {@value #SEGMENT_RECORDS} records, each holding its columns one after the
+ * other. The segments are unmapped when the buffer is closed rather than when they are collected, so that the pages
+ * and the file are released as soon as the track is produced. Not thread-safe.
+ */
+@Slf4j
+public class SpillableTrackBuffer implements Fixes, Closeable {
+
+    private static final int SEGMENT_RECORDS = 1 << 20;
+    private static final int DOUBLE_COLUMNS = 6; // latitude, longitude, altitude, speed, heading, accuracy
+    private static final int RECORD_BYTES = Long.BYTES + DOUBLE_COLUMNS * Double.BYTES + Integer.BYTES;
+    private static final int LATITUDE = 0;
+    private static final int LONGITUDE = 1;
+    private static final int ALTITUDE = 2;
+    private static final int SPEED = 3;
+    private static final int HEADING = 4;
+    private static final int ACCURACY = 5;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final Consumer<MappedByteBuffer> UNMAPPER = unmapper();
+
+    @Getter
+    private final String unitId;
+    private final long spillThresholdBytes;
+    private final Path spillDirectory;
+    private final List<String> devices = new ArrayList<>();
+    private final Map<String, Integer> deviceIndexes = new HashMap<>();
+
+    // on-heap columns, released once spilled
+    private long[] times = new long[INITIAL_CAPACITY];
+    private double[][] doubles = new double[DOUBLE_COLUMNS][INITIAL_CAPACITY];
+    private int[] deviceColumn = new int[INITIAL_CAPACITY];
+
+    private Path file;
+    private FileChannel channel;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+    private int size;
+
+    public SpillableTrackBuffer(final String unitId, final long spillThresholdBytes, final Path spillDirectory) {
+        this.unitId = unitId;
+        this.spillThresholdBytes = spillThresholdBytes;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Heap held at most by the columns of a buffer before it spills
+     */
+    public static long maxHeapBytes(final long spillThresholdBytes) {
+        return Math.max(INITIAL_CAPACITY, spillThresholdBytes / RECORD_BYTES) * RECORD_BYTES;
+    }
+
+    /**
+     * Bytes written to the spill file by a buffer of this many points
+     */
+    public static long spilledBytes(final long points) {
+        return (points + SEGMENT_RECORDS - 1) / SEGMENT_RECORDS * SEGMENT_RECORDS * RECORD_BYTES;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public boolean isSpilled() {
+        return channel != null;
+    }
+
+    public void append(final GPSPoint point) {
+        append(point.getTimestampAsMilliSeconds(), point.getLatitude(), point.getLongitude(), point.getAltitude(),
+                point.getSpeed(), point.getHeading(), point.getAccuracy(), point.getCollectorId());
+    }
+
+    /**
+     * Append the point at an index of another buffer
+     */
+    public void append(final SpillableTrackBuffer source, final int index) {
+        append(source.time(index), source.latitude(index), source.longitude(index), source.altitude(index),
+                source.speed(index), source.heading(index), source.accuracy(index), source.deviceId(index));
+    }
+
+    public void append(final long time, final double latitude, final double longitude, final double altitude,
+                       final double speed, final double heading, final double accuracy, final String deviceId) {
+        if (!isSpilled() && (long) (size + 1) * RECORD_BYTES > spillThresholdBytes) {
+            spill();
+        }
+        final int device = deviceIndexes.computeIfAbsent(deviceId, id -> {
+            devices.add(id);
+            return devices.size() - 1;
+        });
+        if (isSpilled()) {
+            final MappedByteBuffer segment = segmentFor(size);
+            final int record = size % SEGMENT_RECORDS;
+            segment.putLong(record * Long.BYTES, time);
+            putDouble(segment, LATITUDE, record, latitude);
+            putDouble(segment, LONGITUDE, record, longitude);
+            putDouble(segment, ALTITUDE, record, altitude);
+            putDouble(segment, SPEED, record, speed);
+            putDouble(segment, HEADING, record, heading);
+            putDouble(segment, ACCURACY, record, accuracy);
+            segment.putInt(deviceOffset(record), device);
+        } else {
+            if (size == times.length) {
+                grow();
+            }
+            times[size] = time;
+            doubles[LATITUDE][size] = latitude;
+            doubles[LONGITUDE][size] = longitude;
+            doubles[ALTITUDE][size] = altitude;
+            doubles[SPEED][size] = speed;
+            doubles[HEADING][size] = heading;
+            doubles[ACCURACY][size] = accuracy;
+            deviceColumn[size] = device;
+        }
+        size++;
+    }
+
+    @Override
+    public long time(final int index) {
+        return isSpilled() ? segments.get(index / SEGMENT_RECORDS).getLong((index % SEGMENT_RECORDS) * Long.BYTES) : times[index];
+    }
+
+    @Override
+    public double latitude(final int index) {
+        return getDouble(LATITUDE, index);
+    }
+
+    @Override
+    public double longitude(final int index) {
+        return getDouble(LONGITUDE, index);
+    }
+
+    @Override
+    public double altitude(final int index) {
+        return getDouble(ALTITUDE, index);
+    }
+
+    public double speed(final int index) {
+        return getDouble(SPEED, index);
+    }
+
+    public double heading(final int index) {
+        return getDouble(HEADING, index);
+    }
+
+    @Override
+    public double accuracy(final int index) {
+        return getDouble(ACCURACY, index);
+    }
+
+    @Override
+    public String deviceId(final int index) {
+        final int device = isSpilled()
+                ? segments.get(index / SEGMENT_RECORDS).getInt(deviceOffset(index % SEGMENT_RECORDS))
+                : deviceColumn[index];
+        return devices.get(device);
+    }
+
+    /**
+     * Materialize the point at an index
+     */
+    public GPSPoint toPoint(final int index) {
+        return GPSPoint.builder()
+                .unitId(unitId)
+                .collectorId(deviceId(index))
+                .timestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(time(index)), ZoneOffset.UTC))
+                .latitude(latitude(index))
+                .longitude(longitude(index))
+                .altitude(altitude(index))
+                .speed(speed(index))
+                .heading(heading(index))
+                .accuracy(accuracy(index))
+                .build();
+    }
+
+    /**
+     * Unmap and delete the spill file, the buffer must not be used afterwards
+     */
+    @Override
+    public void close() {
+        segments.forEach(UNMAPPER);
+        segments.clear();
+        times = null;
+        doubles = null;
+        deviceColumn = null;
+        if (channel != null) {
+            try {
+                channel.close();
+                Files.deleteIfExists(file);
+            } catch (final IOException e) {
+                log.warn("Could not delete spill file '{}'", file, e);
+            }
+        }
+    }
+
+    private double getDouble(final int column, final int index) {
+        if (isSpilled()) {
+            final int record = index % SEGMENT_RECORDS;
+            return segments.get(index / SEGMENT_RECORDS).getDouble(doubleOffset(column, record));
+        }
+        return doubles[column][index];
+    }
+
+    private static void putDouble(final MappedByteBuffer segment, final int column, final int record, final double value) {
+        segment.putDouble(doubleOffset(column, record), value);
+    }
+
+    private static int doubleOffset(final int column, final int record) {
+        return SEGMENT_RECORDS * Long.BYTES + (column * SEGMENT_RECORDS + record) * Double.BYTES;
+    }
+
+    private static int deviceOffset(final int record) {
+        return SEGMENT_RECORDS * (Long.BYTES + DOUBLE_COLUMNS * Double.BYTES) + record * Integer.BYTES;
+    }
+
+    /**
+     * Double the columns, without going past the spill threshold they would never fill
+     */
+    private void grow() {
+        final int capacity = (int) Math.min(Integer.MAX_VALUE - 8,
+                Math.max(size + 1L, Math.min(times.length * 2L, spillThresholdBytes / RECORD_BYTES)));
+        times = Arrays.copyOf(times, capacity);
+        for (int column = 0; column < DOUBLE_COLUMNS; column++) {
+            doubles[column] = Arrays.copyOf(doubles[column], capacity);
+        }
+        deviceColumn = Arrays.copyOf(deviceColumn, capacity);
+    }
+
+    private MappedByteBuffer segmentFor(final int index) {
+        final int segmentIndex = index / SEGMENT_RECORDS;
+        while (segments.size() <= segmentIndex) {
+            try {
+                final long segmentBytes = (long) SEGMENT_RECORDS * RECORD_BYTES;
+                segments.add(channel.map(FileChannel.MapMode.READ_WRITE, segments.size() * segmentBytes, segmentBytes));
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return segments.get(segmentIndex);
+    }
+
+    private void spill() {
+        try {
+            file = Files.createTempFile(spillDirectory, "track-", ".spill");
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.info("Track of unit '{}' exceeds {} bytes, spilling {} points to '{}'", unitId, spillThresholdBytes, size, file);
+        final long[] heapTimes = times;
+        final double[][] heapDoubles = doubles;
+        final int[] heapDevices = deviceColumn;
+        final int heapSize = size;
+        size = 0;
+        for (int i = 0; i < heapSize; i++) {
+            final MappedByteBuffer segment = segmentFor(i);
+            final int record = i % SEGMENT_RECORDS;
+            segment.putLong(record * Long.BYTES, heapTimes[i]);
+            for (int column = 0; column < DOUBLE_COLUMNS; column++) {
+                putDouble(segment, column, record, heapDoubles[column][i]);
+            }
+            segment.putInt(deviceOffset(record), heapDevices[i]);
+            size++;
+        }
+        times = null;
+        doubles = null;
+        deviceColumn = null;
+    }
+
+    /**
+     * Unmap a segment right away, through the cleaner of the JDK the application runs on since there is no public API
+     * for it. When the cleaner cannot be reached, the segment is unmapped once collected as before.
+     */
+    private static Consumer<MappedByteBuffer> unmapper() {
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            try {
+                // Java 9 and later
+                final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                final Object unsafe = theUnsafe.get(null);
+                return segment -> invokeQuietly(() -> invokeCleaner.invoke(unsafe, segment));
+            } catch (final NoSuchMethodException e) {
+                // Java 8
+                final Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+                final Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+                return segment -> invokeQuietly(() -> clean.invoke(cleaner.invoke(segment)));
+            }
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            log.warn("Spill files cannot be unmapped explicitly, their pages are released once collected", e);
+            return segment -> {
+            };
+        }
+    }
+
+    private static void invokeQuietly(final Callable<?> invocation) {
+        try {
+            invocation.call();
+        } catch (final Exception e) {
+            log.debug("Could not unmap a spill segment, released once collected", e);
+        }
+    }
+}
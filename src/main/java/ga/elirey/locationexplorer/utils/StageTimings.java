@@ -0,0 +1,63 @@
+package ga.elirey.locationexplorer.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Time spent in each processing stage of a single request, reported to the client in a Server-Timing header.
+ * The timings of the current request are bound to the thread handling it and follow its tasks onto the executors,
+ * see {@link #propagate(Runnable)}.
+ */
+public class StageTimings {
+
+    private static final ThreadLocal<StageTimings> CURRENT = new ThreadLocal<>();
+
+    private final Map<String, Long> nanosByStage = new LinkedHashMap<>();
+
+    public static Optional<StageTimings> current() {
+        return Optional.ofNullable(CURRENT.get());
+    }
+
+    public static void bind(final StageTimings timings) {
+        CURRENT.set(timings);
+    }
+
+    public static void unbind() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Make the timings of the calling thread current while the task runs, on whatever thread it runs
+     */
+    public static Runnable propagate(final Runnable task) {
+        final StageTimings timings = CURRENT.get();
+        if (timings == null) {
+            return task;
+        }
+        return () -> {
+            final StageTimings previous = CURRENT.get();
+            CURRENT.set(timings);
+            try {
+                task.run();
+            } finally {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    public synchronized void add(final String stage, final long nanos) {
+        nanosByStage.merge(stage, nanos, Long::sum);
+    }
+
+    /**
+     * @return the timings as a Server-Timing header value, durations in milliseconds
+     */
+    public synchronized String toHeaderValue() {
+        return nanosByStage.entrySet().stream()
+                .map(entry -> String.format("%s;dur=%.3f", entry.getKey().replaceAll("[^A-Za-z0-9-]", "-"),
+                        entry.getValue() / 1_000_000.0))
+                .collect(Collectors.joining(", "));
+    }
+}
@@ -0,0 +1,47 @@
+package ga.elirey.locationexplorer.utils;
+
+import ga.elirey.locationexplorer.basis.Localizable;
+
+import java.util.Optional;
+
+/**
+ * Incremental version of {@link GpsJumpsFilterAlgorithm} for fixes received one at a time.
+ * <p>
+ * A fix can only be judged once the next one is known, so each accepted fix is released with a delay of one fix,
+ * except the very first one which is accepted anyway like in the batch version.
+ * Fixes older than the last received one are dropped.
+ * <p>
+ * Not thread-safe, one instance per followed track.
+ */
+public class StreamingGpsJumpsFilter<E extends Localizable> {
+
+    private E precedent;
+    private E pending;
+
+    /**
+     * Offer the next fix of the track
+     *
+     * @param next the received fix
+     * @return the fix which can now be released, if any
+     */
+    public Optional<E> offer(final E next) {
+        if (precedent == null) { // add first loc anyway
+            precedent = next;
+            return Optional.of(next);
+        }
+        final E last = pending == null ? precedent : pending;
+        if (next.getTimestampAsMilliSeconds() <= last.getTimestampAsMilliSeconds()) {
+            return Optional.empty();
+        }
+        if (pending == null) {
+            pending = next;
+            return Optional.empty();
+        }
+
+        final E evaluated = pending;
+        final boolean isJump = GpsJumpsFilterAlgorithm.isJump(precedent, evaluated, next);
+        precedent = evaluated;
+        pending = next;
+        return isJump ? Optional.empty() : Optional.of(evaluated);
+    }
+}
@@ -0,0 +1,101 @@
+package ga.elirey.locationexplorer.utils;
+
+import ga.elirey.locationexplorer.model.GPSPoint;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Generate realistic tracks for a fleet of units: each unit drives around its home base, alternating trips and stops,
+ * and carries one to three devices recording the same path with their own period, noise and occasional GPS jumps.
+ * The same seed always produces the same fleet.
+ */
+public class SyntheticFleetGenerator {
+
+    private static final double METERS_PER_DEGREE = 111_320.0;
+    private static final double JUMP_PROBABILITY = 0.005;
+    private static final double STOP_PROBABILITY = 0.002; // per second of driving, a stop every ~8 minutes on average
+
+    private final long seed;
+    private final long periodMillis;
+
+    /**
+     * @param periodMillis time between two fixes of the main device of a unit
+     */
+    public SyntheticFleetGenerator(final long seed, final long periodMillis) {
+        this.seed = seed;
+        this.periodMillis = periodMillis;
+    }
+
+    /**
+     * Generate the fixes of a unit between two times, in time order per device
+     *
+     * @param unitIndex index of the unit in the fleet, giving its id, home base and devices
+     */
+    public void generate(final int unitIndex, final long startMillis, final long endMillis, final Consumer<GPSPoint> consumer) {
+        final Random random = new Random(seed * 31 + unitIndex);
+        final String unitId = unitId(unitIndex);
+        final int deviceCount = 1 + random.nextInt(3);
+        final long[] devicePeriods = new long[deviceCount];
+        final double[] deviceNoise = new double[deviceCount];
+        final long[] nextFixTimes = new long[deviceCount];
+        for (int device = 0; device < deviceCount; device++) {
+            devicePeriods[device] = periodMillis * (device + 1);
+            deviceNoise[device] = 3 + random.nextDouble() * 12; // meters, a phone is noisier than a tracker
+            nextFixTimes[device] = startMillis + random.nextInt((int) Math.max(1, Math.min(Integer.MAX_VALUE, devicePeriods[device])));
+        }
+
+        // home bases spread over western Europe
+        double latitude = 43 + random.nextDouble() * 8;
+        double longitude = -1 + random.nextDouble() * 10;
+        double heading = random.nextDouble() * 360;
+        double speed = 0;
+        long stopEndMillis = startMillis;
+
+        for (long time = startMillis; time < endMillis; time += 1000) {
+            if (time < stopEndMillis) {
+                speed = 0;
+            } else if (random.nextDouble() < STOP_PROBABILITY) {
+                stopEndMillis = time + 60_000 + (long) (random.nextDouble() * 1_740_000); // 1 to 30 minutes
+                speed = 0;
+            } else {
+                speed = Math.max(2, Math.min(35, speed + random.nextGaussian() * 1.5 + (speed < 8 ? 1 : 0)));
+                heading = (heading + random.nextGaussian() * 4 + 360) % 360;
+                final double distance = speed; // one second
+                latitude += distance * Math.cos(Math.toRadians(heading)) / METERS_PER_DEGREE;
+                longitude += distance * Math.sin(Math.toRadians(heading)) / (METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude)));
+            }
+
+            for (int device = 0; device < deviceCount; device++) {
+                if (time < nextFixTimes[device]) {
+                    continue;
+                }
+                nextFixTimes[device] += devicePeriods[device];
+                double noise = deviceNoise[device];
+                if (random.nextDouble() < JUMP_PROBABILITY) {
+                    noise = 500 + random.nextDouble() * 1500;
+                }
+                final double angle = random.nextDouble() * 2 * Math.PI;
+                final double offset = Math.abs(random.nextGaussian()) * noise;
+                consumer.accept(GPSPoint.builder()
+                        .unitId(unitId)
+                        .collectorId(String.format("%s-device-%d", unitId, device))
+                        .timestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneOffset.UTC))
+                        .latitude(latitude + offset * Math.cos(angle) / METERS_PER_DEGREE)
+                        .longitude(longitude + offset * Math.sin(angle) / (METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude))))
+                        .altitude(50 + random.nextGaussian() * 5)
+                        .speed(Math.max(0, speed + random.nextGaussian() * 0.5))
+                        .heading(heading)
+                        .accuracy(deviceNoise[device])
+                        .build());
+            }
+        }
+    }
+
+    public static String unitId(final int unitIndex) {
+        return String.format("unit-%05d", unitIndex);
+    }
+}
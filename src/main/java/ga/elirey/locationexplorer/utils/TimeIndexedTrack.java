@@ -0,0 +1,140 @@
+package ga.elirey.locationexplorer.utils;
+
+import ga.elirey.locationexplorer.data.Interpolation;
+import ga.elirey.locationexplorer.model.GPSPoint;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Time-ordered track held in primitive arrays, answering "where was the unit at time T" by binary search
+ */
+public class TimeIndexedTrack {
+
+    private final long[] times;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double[] altitudes;
+    private final GPSPoint[] points;
+
+    /**
+     * @param points the fixes of a single unit ordered by time
+     */
+    public TimeIndexedTrack(final List<GPSPoint> points) {
+        final int size = points.size();
+        this.times = new long[size];
+        this.latitudes = new double[size];
+        this.longitudes = new double[size];
+        this.altitudes = new double[size];
+        this.points = points.toArray(new GPSPoint[0]);
+        for (int i = 0; i < size; i++) {
+            final GPSPoint point = this.points[i];
+            times[i] = point.getTimestampAsMilliSeconds();
+            latitudes[i] = point.getLatitude();
+            longitudes[i] = point.getLongitude();
+            altitudes[i] = point.getAltitude();
+        }
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    /**
+     * Estimate the position at a time between the first and the last fix
+     *
+     * @return the fix recorded at that time or a point interpolated between the surrounding fixes, empty outside the
+     * track time range
+     */
+    public Optional<GPSPoint> positionAt(final long timeMillis, final Interpolation interpolation) {
+        if (times.length == 0 || timeMillis < times[0] || timeMillis > times[times.length - 1]) {
+            return Optional.empty();
+        }
+        final int index = Arrays.binarySearch(times, timeMillis);
+        if (index >= 0) {
+            return Optional.of(points[index]);
+        }
+        final int after = -index - 1;
+        return Optional.of(interpolate(after - 1, after, timeMillis, interpolation));
+    }
+
+    /**
+     * Positions at a fixed period from the first fix to the last one, walking the track once
+     */
+    public List<GPSPoint> resample(final long periodMillis, final Interpolation interpolation) {
+        final List<GPSPoint> resampled = new ArrayList<>();
+        if (times.length == 0) {
+            return resampled;
+        }
+        int after = 0;
+        for (long time = times[0]; time <= times[times.length - 1]; time += periodMillis) {
+            while (times[after] < time) {
+                after++;
+            }
+            resampled.add(times[after] == time ? points[after] : interpolate(after - 1, after, time, interpolation));
+        }
+        return resampled;
+    }
+
+    private GPSPoint interpolate(final int before, final int after, final long timeMillis, final Interpolation interpolation) {
+        final double ratio = (double) (timeMillis - times[before]) / (times[after] - times[before]);
+        final double[] position = interpolation == Interpolation.GREAT_CIRCLE
+                ? interpolateOnGreatCircle(before, after, ratio)
+                : new double[]{latitudes[before] + (latitudes[after] - latitudes[before]) * ratio,
+                interpolateLongitude(longitudes[before], longitudes[after], ratio)};
+        final GPSPoint previous = points[before];
+        return GPSPoint.builder()
+                .unitId(previous.getUnitId())
+                .collectorId(previous.getCollectorId())
+                .timestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(timeMillis), ZoneOffset.UTC))
+                .latitude(position[0])
+                .longitude(position[1])
+                .altitude(altitudes[before] + (altitudes[after] - altitudes[before]) * ratio)
+                .speed(previous.getSpeed() + (points[after].getSpeed() - previous.getSpeed()) * ratio)
+                .heading(previous.getHeading())
+                .accuracy(Math.max(previous.getAccuracy(), points[after].getAccuracy()))
+                .build();
+    }
+
+    private static double interpolateLongitude(final double from, final double to, final double ratio) {
+        double delta = to - from;
+        if (delta > 180) { // take the short way across the antimeridian
+            delta -= 360;
+        } else if (delta < -180) {
+            delta += 360;
+        }
+        final double longitude = from + delta * ratio;
+        return longitude > 180 ? longitude - 360 : longitude < -180 ? longitude + 360 : longitude;
+    }
+
+    /**
+     * Spherical linear interpolation between the unit vectors of two fixes
+     */
+    private double[] interpolateOnGreatCircle(final int before, final int after, final double ratio) {
+        final double lat1 = Math.toRadians(latitudes[before]);
+        final double lon1 = Math.toRadians(longitudes[before]);
+        final double lat2 = Math.toRadians(latitudes[after]);
+        final double lon2 = Math.toRadians(longitudes[after]);
+        final double x1 = Math.cos(lat1) * Math.cos(lon1);
+        final double y1 = Math.cos(lat1) * Math.sin(lon1);
+        final double z1 = Math.sin(lat1);
+        final double x2 = Math.cos(lat2) * Math.cos(lon2);
+        final double y2 = Math.cos(lat2) * Math.sin(lon2);
+        final double z2 = Math.sin(lat2);
+        final double angle = Math.acos(Math.max(-1, Math.min(1, x1 * x2 + y1 * y2 + z1 * z2)));
+        if (angle < 1e-12) {
+            return new double[]{latitudes[before], longitudes[before]};
+        }
+        final double a = Math.sin((1 - ratio) * angle) / Math.sin(angle);
+        final double b = Math.sin(ratio * angle) / Math.sin(angle);
+        final double x = a * x1 + b * x2;
+        final double y = a * y1 + b * y2;
+        final double z = a * z1 + b * z2;
+        return new double[]{Math.toDegrees(Math.atan2(z, Math.sqrt(x * x + y * y))), Math.toDegrees(Math.atan2(y, x))};
+    }
+}
@@ -0,0 +1,186 @@
+package ga.elirey.locationexplorer.utils;
+
+import ga.elirey.locationexplorer.model.GPSPoint;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Split a time-ordered track into segments in a single pass, on:
+ * <ul>
+ * <li>time gaps longer than a maximum duration,</li>
+ * <li>device switches, i.e. a new device sending several fixes in a row,</li>
+ * <li>stay points, i.e. the unit remaining within a dwell radius for at least a dwell duration. The fixes recorded
+ * during the stay are dropped, the segment before ends on arrival and the next one starts on departure.</li>
+ * </ul>
+ * The stay detection moves its anchor to the first fix leaving the dwell radius instead of the next fix, which keeps it
+ * linear at the cost of possibly missing a stay starting right after a moving fix.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class TrackSegmenter {
+
+    private static final int DEVICE_SWITCH_MIN_FIXES = 3;
+
+    private final long maxGapMillis;
+    private final double dwellRadiusInMeters;
+    private final long dwellDurationMillis;
+
+    public List<List<GPSPoint>> split(final List<GPSPoint> points) {
+        final List<List<GPSPoint>> segments = new ArrayList<>();
+        List<GPSPoint> current = new ArrayList<>();
+        int anchorIndex = 0; // index in current of the first fix of the candidate stay
+
+        for (int i = 0; i < points.size(); i++) {
+            final GPSPoint point = points.get(i);
+            if (!current.isEmpty()) {
+                final GPSPoint previous = current.get(current.size() - 1);
+                if (point.getTimestampAsMilliSeconds() - previous.getTimestampAsMilliSeconds() > maxGapMillis
+                        || isDeviceSwitch(points, i)) {
+                    segments.add(current);
+                    current = new ArrayList<>();
+                    anchorIndex = 0;
+                }
+            }
+            current.add(point);
+
+            final GPSPoint anchor = current.get(anchorIndex);
+            if (GeometryTools.distanceInMeters(anchor, point) > dwellRadiusInMeters) {
+                final GPSPoint previous = current.get(current.size() - 2);
+                if (previous.getTimestampAsMilliSeconds() - anchor.getTimestampAsMilliSeconds() >= dwellDurationMillis) {
+                    // stay from anchor to previous: end the segment on arrival, start the next one on departure
+                    segments.add(new ArrayList<>(current.subList(0, anchorIndex + 1)));
+                    final List<GPSPoint> next = new ArrayList<>();
+                    next.add(previous);
+                    next.add(point);
+                    current = next;
+                }
+                anchorIndex = current.size() - 1;
+            }
+        }
+        if (!current.isEmpty()) {
+            segments.add(current);
+        }
+        log.debug("Split track of {} points into {} segment(s)", points.size(), segments.size());
+        return segments;
+    }
+
+    /**
+     * Merge the smallest segments into their smallest neighbour until at most maxSegments remain, so that a point
+     * budget of 2 points per segment can still be honoured
+     *
+     * @param segments the segments in time order, merged in place
+     * @return the remaining segments in time order
+     */
+    public static List<List<GPSPoint>> mergeSmallest(final List<List<GPSPoint>> segments, final int maxSegments) {
+        final int size = segments.size();
+        if (size <= Math.max(1, maxSegments)) {
+            return segments;
+        }
+        final int[] previous = new int[size];
+        final int[] next = new int[size];
+        final int[] versions = new int[size];
+        // [segment size, segment index, version] entries, outdated by a merge when the version changed
+        final PriorityQueue<long[]> queue = new PriorityQueue<>(size,
+                (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        for (int i = 0; i < size; i++) {
+            previous[i] = i - 1;
+            next[i] = i + 1 < size ? i + 1 : -1;
+            queue.add(new long[]{segments.get(i).size(), i, 0});
+        }
+
+        int remaining = size;
+        while (remaining > Math.max(1, maxSegments)) {
+            final long[] smallest = queue.poll();
+            final int index = (int) smallest[1];
+            if (smallest[2] != versions[index]) {
+                continue; // outdated entry, the segment was merged since
+            }
+            final int before = previous[index];
+            final int after = next[index];
+            final boolean isMergedBefore = after < 0
+                    || before >= 0 && segments.get(before).size() <= segments.get(after).size();
+            final int left = isMergedBefore ? before : index;
+            final int right = isMergedBefore ? index : after;
+            segments.get(left).addAll(segments.get(right));
+            next[left] = next[right];
+            if (next[right] >= 0) {
+                previous[next[right]] = left;
+            }
+            versions[right] = -1;
+            queue.add(new long[]{segments.get(left).size(), left, ++versions[left]});
+            remaining--;
+        }
+
+        final List<List<GPSPoint>> merged = new ArrayList<>(remaining);
+        for (int i = 0; i >= 0; i = next[i]) {
+            merged.add(segments.get(i));
+        }
+        return merged;
+    }
+
+    /**
+     * Share a point budget between segments according to their size, with the largest remainder method so that the
+     * shares add up to the budget. Each segment gets at least its 2 ends, provided there are at most budget / 2 of them.
+     *
+     * @return the budget of each segment
+     */
+    public static int[] shareBudget(final List<List<GPSPoint>> segments, final int budget) {
+        final int[] shares = new int[segments.size()];
+        long extraPoints = 0;
+        int leftBudget = budget;
+        for (int i = 0; i < shares.length; i++) {
+            shares[i] = Math.min(2, segments.get(i).size());
+            leftBudget -= shares[i];
+            extraPoints += segments.get(i).size() - shares[i];
+        }
+        if (leftBudget <= 0) {
+            return shares;
+        }
+        if (leftBudget >= extraPoints) {
+            for (int i = 0; i < shares.length; i++) {
+                shares[i] = segments.get(i).size();
+            }
+            return shares;
+        }
+
+        final long[] remainders = new long[shares.length];
+        int shared = 0;
+        for (int i = 0; i < shares.length; i++) {
+            final long quota = (long) leftBudget * (segments.get(i).size() - shares[i]);
+            final int share = (int) (quota / extraPoints);
+            shares[i] += share;
+            shared += share;
+            remainders[i] = quota % extraPoints;
+        }
+        final PriorityQueue<Integer> byRemainder = new PriorityQueue<>((a, b) -> Long.compare(remainders[b], remainders[a]));
+        for (int i = 0; i < shares.length; i++) {
+            byRemainder.add(i);
+        }
+        for (int left = leftBudget - shared; left > 0; left--) {
+            shares[byRemainder.poll()]++;
+        }
+        return shares;
+    }
+
+    /**
+     * A device switch happens when the device differs from the previous fix and sends the next fixes too,
+     * so that two devices reporting in turns do not split the track on every fix
+     */
+    private static boolean isDeviceSwitch(final List<GPSPoint> points, final int index) {
+        final String device = points.get(index).getCollectorId();
+        if (index == 0 || device == null || device.equals(points.get(index - 1).getCollectorId())
+                || index + DEVICE_SWITCH_MIN_FIXES > points.size()) {
+            return false; // the fixes at the end of the track cannot tell a switch
+        }
+        for (int i = index + 1; i < Math.min(points.size(), index + DEVICE_SWITCH_MIN_FIXES); i++) {
+            if (!device.equals(points.get(i).getCollectorId())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
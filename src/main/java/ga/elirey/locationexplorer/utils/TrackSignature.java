@@ -0,0 +1,55 @@
+package ga.elirey.locationexplorer.utils;
+
+import ga.elirey.locationexplorer.model.GPSPoint;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Compact form of a track used for similarity searches: a simplified path in primitive arrays along with its bounding
+ * box
+ */
+@Getter
+public class TrackSignature {
+
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double minLatitude;
+    private final double minLongitude;
+    private final double maxLatitude;
+    private final double maxLongitude;
+
+    /**
+     * @param points    the time-ordered fixes of the track
+     * @param maxPoints the number of points the track is simplified to
+     */
+    public TrackSignature(final List<GPSPoint> points, final int maxPoints) {
+        final List<GPSPoint> simplified = new VisvalingamWhyattAlgorithm<GPSPoint>(maxPoints).apply(points);
+        latitudes = new double[simplified.size()];
+        longitudes = new double[simplified.size()];
+        double minLat = Double.MAX_VALUE;
+        double minLng = Double.MAX_VALUE;
+        double maxLat = -Double.MAX_VALUE;
+        double maxLng = -Double.MAX_VALUE;
+        for (int i = 0; i < simplified.size(); i++) {
+            latitudes[i] = simplified.get(i).getLatitude();
+            longitudes[i] = simplified.get(i).getLongitude();
+            minLat = Math.min(minLat, latitudes[i]);
+            minLng = Math.min(minLng, longitudes[i]);
+            maxLat = Math.max(maxLat, latitudes[i]);
+            maxLng = Math.max(maxLng, longitudes[i]);
+        }
+        minLatitude = minLat;
+        minLongitude = minLng;
+        maxLatitude = maxLat;
+        maxLongitude = maxLng;
+    }
+
+    public int size() {
+        return latitudes.length;
+    }
+
+    public boolean isEmpty() {
+        return latitudes.length == 0;
+    }
+}
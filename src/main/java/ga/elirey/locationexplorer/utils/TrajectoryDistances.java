@@ -0,0 +1,155 @@
+package ga.elirey.locationexplorer.utils;
+
+import ga.elirey.locationexplorer.data.SimilarityMetric;
+import lombok.experimental.UtilityClass;
+
+/**
+ * Distances between trajectories and their cheap lower bounds, in meters.
+ * Both distances run in O(n * m) time and O(m) memory, and give up as soon as the result is known to exceed a
+ * threshold: every matching of the two tracks goes through each row of the distance matrix, so once the best cell of a
+ * row is above the threshold the distance is too.
+ */
+@UtilityClass
+public class TrajectoryDistances {
+
+    private static final double EARTH_RADIUS_IN_METERS = 6_371_000; // the sphere of GeometryTools
+
+    public static double distance(final SimilarityMetric metric, final TrackSignature first, final TrackSignature second,
+                                  final double abandonAbove) {
+        return metric == SimilarityMetric.DTW ? dtw(first, second, abandonAbove) : discreteFrechet(first, second, abandonAbove);
+    }
+
+    /**
+     * @return the discrete Fréchet distance, or {@link Double#POSITIVE_INFINITY} if it exceeds abandonAbove
+     */
+    public static double discreteFrechet(final TrackSignature first, final TrackSignature second, final double abandonAbove) {
+        final int n = first.size();
+        final int m = second.size();
+        double[] previous = new double[m];
+        double[] current = new double[m];
+        for (int i = 0; i < n; i++) {
+            double rowMin = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < m; j++) {
+                final double cost = pointDistance(first, i, second, j);
+                final double reach;
+                if (i == 0 && j == 0) {
+                    reach = cost;
+                } else if (i == 0) {
+                    reach = Math.max(current[j - 1], cost);
+                } else if (j == 0) {
+                    reach = Math.max(previous[0], cost);
+                } else {
+                    reach = Math.max(Math.min(Math.min(previous[j], previous[j - 1]), current[j - 1]), cost);
+                }
+                current[j] = reach;
+                rowMin = Math.min(rowMin, reach);
+            }
+            if (rowMin > abandonAbove) {
+                return Double.POSITIVE_INFINITY;
+            }
+            final double[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[m - 1] > abandonAbove ? Double.POSITIVE_INFINITY : previous[m - 1];
+    }
+
+    /**
+     * @return the dynamic time warping distance, or {@link Double#POSITIVE_INFINITY} if it exceeds abandonAbove
+     */
+    public static double dtw(final TrackSignature first, final TrackSignature second, final double abandonAbove) {
+        final int n = first.size();
+        final int m = second.size();
+        double[] previous = new double[m];
+        double[] current = new double[m];
+        for (int i = 0; i < n; i++) {
+            double rowMin = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < m; j++) {
+                final double cost = pointDistance(first, i, second, j);
+                final double best;
+                if (i == 0 && j == 0) {
+                    best = 0;
+                } else if (i == 0) {
+                    best = current[j - 1];
+                } else if (j == 0) {
+                    best = previous[0];
+                } else {
+                    best = Math.min(Math.min(previous[j], previous[j - 1]), current[j - 1]);
+                }
+                current[j] = best + cost;
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > abandonAbove) {
+                return Double.POSITIVE_INFINITY;
+            }
+            final double[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[m - 1] > abandonAbove ? Double.POSITIVE_INFINITY : previous[m - 1];
+    }
+
+    /**
+     * Lower bound from the endpoints: both distances match the first points together and the last points together
+     */
+    public static double endpointsLowerBound(final SimilarityMetric metric, final TrackSignature first, final TrackSignature second) {
+        final double start = pointDistance(first, 0, second, 0);
+        final double end = pointDistance(first, first.size() - 1, second, second.size() - 1);
+        if (metric == SimilarityMetric.FRECHET) {
+            return Math.max(start, end);
+        }
+        return first.size() == 1 && second.size() == 1 ? start : start + end;
+    }
+
+    /**
+     * Lower bound from a bounding box holding all the points of the other track: each point of the track is matched at
+     * least once, to a point that can be no closer than the box
+     */
+    public static double boundingBoxLowerBound(final SimilarityMetric metric, final TrackSignature track,
+                                               final double minLatitude, final double minLongitude,
+                                               final double maxLatitude, final double maxLongitude) {
+        double bound = 0;
+        for (int i = 0; i < track.size(); i++) {
+            final double distance = boxDistanceLowerBound(track.getLatitudes()[i], track.getLongitudes()[i],
+                    minLatitude, minLongitude, maxLatitude, maxLongitude);
+            bound = metric == SimilarityMetric.FRECHET ? Math.max(bound, distance) : bound + distance;
+        }
+        return bound;
+    }
+
+    /**
+     * Lower bound from the bounding boxes of both tracks, each point of either track being matched at least once
+     */
+    public static double boundingBoxLowerBound(final SimilarityMetric metric, final TrackSignature track, final TrackSignature other) {
+        return Math.max(boundingBoxLowerBound(metric, track, other.getMinLatitude(), other.getMinLongitude(),
+                other.getMaxLatitude(), other.getMaxLongitude()),
+                boundingBoxLowerBound(metric, other, track.getMinLatitude(), track.getMinLongitude(),
+                        track.getMaxLatitude(), track.getMaxLongitude()));
+    }
+
+    /**
+     * Lower bound of the distance from a location to the locations of a lat/lng box. A great circle arc is never shorter
+     * than the latitude it spans, nor than the distance to the great circle of the box meridian closest in longitude,
+     * which is reached within the box side of that meridian as long as it is less than 90 degrees of longitude away.
+     */
+    static double boxDistanceLowerBound(final double latitude, final double longitude,
+                                        final double minLatitude, final double minLongitude,
+                                        final double maxLatitude, final double maxLongitude) {
+        final double latitudeGap = Math.max(0, Math.max(minLatitude - latitude, latitude - maxLatitude));
+        final double longitudeGap = longitude >= minLongitude && longitude <= maxLongitude ? 0
+                : Math.min(longitudeDifference(longitude, minLongitude), longitudeDifference(longitude, maxLongitude));
+        final double crossTrack = Math.asin(Math.min(1, Math.cos(Math.toRadians(latitude))
+                * Math.sin(Math.toRadians(Math.min(90, longitudeGap)))));
+        return EARTH_RADIUS_IN_METERS * Math.max(Math.toRadians(latitudeGap), crossTrack);
+    }
+
+    private static double longitudeDifference(final double longitude, final double other) {
+        final double difference = Math.abs(longitude - other) % 360;
+        return difference > 180 ? 360 - difference : difference;
+    }
+
+    private static double pointDistance(final TrackSignature first, final int i, final TrackSignature second, final int j) {
+        return GeometryTools.distanceInMeters(first.getLatitudes()[i], first.getLongitudes()[i],
+                second.getLatitudes()[j], second.getLongitudes()[j]);
+    }
+}
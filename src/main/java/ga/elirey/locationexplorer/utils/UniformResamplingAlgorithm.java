@@ -0,0 +1,39 @@
+package ga.elirey.locationexplorer.utils;
+
+import ga.elirey.locationexplorer.data.Interpolation;
+import ga.elirey.locationexplorer.model.GPSPoint;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+
+/**
+ * Resample a time-ordered track to one point per period, interpolating between the recorded fixes
+ */
+@Slf4j
+public class UniformResamplingAlgorithm implements AlgorithmExecutor<GPSPoint> {
+
+    private final long periodMillis;
+    private final Interpolation interpolation;
+
+    public UniformResamplingAlgorithm(final long periodMillis, final Interpolation interpolation) {
+        this.periodMillis = Math.max(1, periodMillis);
+        this.interpolation = interpolation;
+    }
+
+    @Override
+    public String getName() {
+        return "Uniform resampling";
+    }
+
+    @Override
+    public List<GPSPoint> apply(final List<GPSPoint> points) {
+        if (points == null || points.size() < 2) {
+            return points;
+        }
+        final CustomTimer timer = new CustomTimer();
+        final List<GPSPoint> resampled = new TimeIndexedTrack(points).resample(periodMillis, interpolation);
+        log.info("Resampled path from {} points to {} points every {} ms in {} ms", points.size(), resampled.size(),
+                periodMillis, timer.elapsedMsecs());
+        return resampled;
+    }
+}
@@ -0,0 +1,118 @@
+package ga.elirey.locationexplorer.utils;
+
+import ga.elirey.locationexplorer.basis.Localizable;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Simplify a path down to a maximum number of points, by repeatedly removing the point whose triangle with its two
+ * neighbours has the smallest area. Runs in O(n log n) using a priority queue with lazy invalidation of outdated areas.
+ * <p>
+ * Unlike {@link RamerDouglasPeuckerAlgorithm} the output size is known in advance, whatever the track shape.
+ */
+@Slf4j
+public class VisvalingamWhyattAlgorithm<E extends Localizable> implements AlgorithmExecutor<E> {
+
+    private static final int MIN_POINTS = 2;
+
+    private final int maxPoints;
+
+    public VisvalingamWhyattAlgorithm(final int maxPoints) {
+        this.maxPoints = Math.max(MIN_POINTS, maxPoints);
+    }
+
+    @Override
+    public String getName() {
+        return "Visvalingam-Whyatt";
+    }
+
+    @Override
+    public List<E> apply(List<E> points) {
+        if (points == null || points.size() <= maxPoints) {
+            return points;
+        }
+        final CustomTimer timer = new CustomTimer();
+        final int size = points.size();
+        final int[] previous = new int[size];
+        final int[] next = new int[size];
+        final double[] areas = new double[size];
+        final boolean[] isRemoved = new boolean[size];
+        final PriorityQueue<Candidate> queue = new PriorityQueue<>(size);
+
+        for (int i = 0; i < size; i++) {
+            previous[i] = i - 1;
+            next[i] = i + 1;
+        }
+        for (int i = 1; i < size - 1; i++) {
+            areas[i] = triangleArea(points.get(i - 1), points.get(i), points.get(i + 1));
+            queue.add(new Candidate(i, areas[i]));
+        }
+
+        int remaining = size;
+        double lastRemovedArea = 0;
+        while (remaining > maxPoints && !queue.isEmpty()) {
+            final Candidate candidate = queue.poll();
+            final int index = candidate.index;
+            if (isRemoved[index] || candidate.area != areas[index]) {
+                continue; // outdated entry, the point was removed or its area changed since
+            }
+            isRemoved[index] = true;
+            remaining--;
+            // areas of the neighbours never go below the area already removed, so that a point is not removed
+            // before the ones it was shielding
+            lastRemovedArea = Math.max(lastRemovedArea, candidate.area);
+
+            final int before = previous[index];
+            final int after = next[index];
+            next[before] = after;
+            previous[after] = before;
+            updateArea(points, before, previous, next, areas, lastRemovedArea, queue);
+            updateArea(points, after, previous, next, areas, lastRemovedArea, queue);
+        }
+
+        final List<E> simplifiedPoints = new ArrayList<>(remaining);
+        for (int i = 0; i < size; i = next[i]) {
+            simplifiedPoints.add(points.get(i));
+        }
+        log.info("Shortened path from {} points down to {} points for a budget of {} points in {} ms", size,
+                simplifiedPoints.size(), maxPoints, timer.elapsedMsecs());
+        return simplifiedPoints;
+    }
+
+    private void updateArea(final List<E> points, final int index, final int[] previous, final int[] next,
+                            final double[] areas, final double lastRemovedArea, final PriorityQueue<Candidate> queue) {
+        if (previous[index] < 0 || next[index] >= points.size()) {
+            return; // first and last points are always kept
+        }
+        areas[index] = Math.max(lastRemovedArea,
+                triangleArea(points.get(previous[index]), points.get(index), points.get(next[index])));
+        queue.add(new Candidate(index, areas[index]));
+    }
+
+    /**
+     * Area of the triangle in a Lat/lng like space, see {@link GeometryTools#getOrthogonalDistanceBetweenPointAndLine}
+     */
+    private static double triangleArea(final Localizable a, final Localizable b, final Localizable c) {
+        return Math.abs((b.getLatitude() - a.getLatitude()) * (c.getLongitude() - a.getLongitude())
+                - (c.getLatitude() - a.getLatitude()) * (b.getLongitude() - a.getLongitude())) * 0.5;
+    }
+
+    private static final class Candidate implements Comparable<Candidate> {
+        private final int index;
+        private final double area;
+
+        private Candidate(final int index, final double area) {
+            this.index = index;
+            this.area = area;
+        }
+
+        @Override
+        public int compareTo(final Candidate other) {
+            final int byArea = Double.compare(area, other.area);
+            return byArea != 0 ? byArea : Integer.compare(index, other.index);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+-- Same schema as on PostgreSQL, without the partitions. H2 has no covering index, the coordinates are trailing columns
+-- of the index instead.
+
+CREATE TABLE unit_location_measurement (
+    unit_id           VARCHAR(255)     NOT NULL,
+    context_id        VARCHAR(255)     NOT NULL,
+    time              TIMESTAMP        NOT NULL,
+    device_id         VARCHAR(255)     NOT NULL,
+    lat               DOUBLE PRECISION NOT NULL,
+    lng               DOUBLE PRECISION NOT NULL,
+    alt               DOUBLE PRECISION,
+    accuracy          DOUBLE PRECISION,
+    geofencing_status VARCHAR(255),
+    hdg               DOUBLE PRECISION,
+    speed             DOUBLE PRECISION,
+    geohash           VARCHAR(12),
+    PRIMARY KEY (unit_id, context_id, time, device_id)
+);
+
+CREATE INDEX idx_unit_location_measurement_unit_context_time
+    ON unit_location_measurement (unit_id, context_id, time, device_id, lat, lng, alt);
+
+CREATE INDEX idx_unit_location_measurement_geohash_time ON unit_location_measurement (geohash, time);
+
+CREATE TABLE unit_daily_rollup (
+    unit_id     VARCHAR(255)     NOT NULL,
+    context_id  VARCHAR(255)     NOT NULL,
+    rollup_day  DATE             NOT NULL,
+    point_count BIGINT           NOT NULL,
+    distance    DOUBLE PRECISION NOT NULL,
+    first_time  TIMESTAMP        NOT NULL,
+    last_time   TIMESTAMP        NOT NULL,
+    last_lat    DOUBLE PRECISION NOT NULL,
+    last_lng    DOUBLE PRECISION NOT NULL,
+    min_lat     DOUBLE PRECISION NOT NULL,
+    max_lat     DOUBLE PRECISION NOT NULL,
+    min_lng     DOUBLE PRECISION NOT NULL,
+    max_lng     DOUBLE PRECISION NOT NULL,
+    speed_sum   DOUBLE PRECISION NOT NULL,
+    speed_count BIGINT           NOT NULL,
+    PRIMARY KEY (unit_id, context_id, rollup_day)
+);
@@ -0,0 +1,2 @@
+-- Rollups are also read per context over a range of days, by the context summaries and the similarity search
+CREATE INDEX idx_unit_daily_rollup_context_day ON unit_daily_rollup (context_id, rollup_day);
@@ -0,0 +1,6 @@
+-- Time each measurement was last written, so that a measurement replaced in place changes the watermark of its track
+ALTER TABLE unit_location_measurement ADD COLUMN ingested_at TIMESTAMP DEFAULT LOCALTIMESTAMP;
+
+DROP INDEX idx_unit_location_measurement_unit_context_time;
+CREATE INDEX idx_unit_location_measurement_unit_context_time
+    ON unit_location_measurement (unit_id, context_id, time, device_id, lat, lng, alt, ingested_at);
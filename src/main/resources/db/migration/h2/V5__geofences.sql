@@ -0,0 +1,20 @@
+-- Geofences registered through the API, loaded back into the geofencing index at startup
+CREATE TABLE geofence (
+    id          VARCHAR(255)     NOT NULL,
+    name        VARCHAR(255),
+    shape       VARCHAR(16)      NOT NULL,
+    center_lat  DOUBLE PRECISION NOT NULL,
+    center_lng  DOUBLE PRECISION NOT NULL,
+    radius      DOUBLE PRECISION NOT NULL,
+    destination BOOLEAN          NOT NULL,
+    PRIMARY KEY (id)
+);
+
+-- Vertices of the polygon geofences, in order
+CREATE TABLE geofence_vertex (
+    geofence_id  VARCHAR(255)     NOT NULL REFERENCES geofence (id) ON DELETE CASCADE,
+    vertex_index INTEGER          NOT NULL,
+    lat          DOUBLE PRECISION NOT NULL,
+    lng          DOUBLE PRECISION NOT NULL,
+    PRIMARY KEY (geofence_id, vertex_index)
+);
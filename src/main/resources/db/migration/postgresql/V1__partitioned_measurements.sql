@@ -0,0 +1,143 @@
+-- Measurements partitioned by month, so that a time range only reads its partitions and old months are dropped at
+-- once instead of deleted row by row. Requires PostgreSQL 11 for the covering index.
+
+-- Tables created by hibernate before the migrations are kept aside, their rows are copied below
+DO $$
+BEGIN
+    IF to_regclass('unit_location_measurement') IS NOT NULL THEN
+        ALTER TABLE unit_location_measurement RENAME TO unit_location_measurement_unpartitioned;
+        ALTER INDEX IF EXISTS unit_location_measurement_pkey RENAME TO unit_location_measurement_unpartitioned_pkey;
+        ALTER INDEX IF EXISTS idx_unit_location_measurement_geohash_time RENAME TO idx_unit_location_measurement_unpartitioned_geohash_time;
+    END IF;
+END
+$$;
+
+CREATE TABLE unit_location_measurement (
+    unit_id           VARCHAR(255)     NOT NULL,
+    context_id        VARCHAR(255)     NOT NULL,
+    time              TIMESTAMP        NOT NULL,
+    device_id         VARCHAR(255)     NOT NULL,
+    lat               DOUBLE PRECISION NOT NULL,
+    lng               DOUBLE PRECISION NOT NULL,
+    alt               DOUBLE PRECISION,
+    accuracy          DOUBLE PRECISION,
+    geofencing_status VARCHAR(255),
+    hdg               DOUBLE PRECISION,
+    speed             DOUBLE PRECISION,
+    geohash           VARCHAR(12),
+    -- in the order of the query predicates: equality on the unit and context, then a range of time
+    PRIMARY KEY (unit_id, context_id, time, device_id)
+) PARTITION BY RANGE (time);
+
+-- Tracks read from the index alone, without visiting the rows. The index is bounded by the time range and read in time
+-- order, the rows of the range alone are then sorted by device: with the device before the time, the range could not
+-- bound the scan, which would read every fix of the unit in the partitions instead
+CREATE INDEX idx_unit_location_measurement_unit_context_time
+    ON unit_location_measurement (unit_id, context_id, time) INCLUDE (device_id, lat, lng, alt);
+
+-- Area queries
+CREATE INDEX idx_unit_location_measurement_geohash_time ON unit_location_measurement (geohash, time);
+
+-- Partition of the month of a day, named unit_location_measurement_YYYY_MM, returns whether it was created
+CREATE OR REPLACE FUNCTION create_unit_location_measurement_partition(month_day DATE) RETURNS BOOLEAN AS $$
+DECLARE
+    month_start DATE := date_trunc('month', month_day)::DATE;
+    partition_name TEXT := 'unit_location_measurement_' || to_char(month_start, 'YYYY_MM');
+BEGIN
+    IF to_regclass(partition_name) IS NOT NULL THEN
+        RETURN FALSE;
+    END IF;
+    EXECUTE format('CREATE TABLE %I PARTITION OF unit_location_measurement FOR VALUES FROM (%L) TO (%L)',
+                   partition_name, month_start, (month_start + INTERVAL '1 month')::DATE);
+    RETURN TRUE;
+END
+$$ LANGUAGE plpgsql;
+
+-- Drop the monthly partitions entirely before a day, returns the number of partitions dropped
+CREATE OR REPLACE FUNCTION drop_unit_location_measurement_partitions(before_day DATE) RETURNS INTEGER AS $$
+DECLARE
+    partition_name TEXT;
+    dropped INTEGER := 0;
+BEGIN
+    FOR partition_name IN
+        SELECT child.relname
+        FROM pg_inherits
+                 JOIN pg_class parent ON parent.oid = pg_inherits.inhparent
+                 JOIN pg_class child ON child.oid = pg_inherits.inhrelid
+        WHERE parent.relname = 'unit_location_measurement'
+          AND child.relname ~ '^unit_location_measurement_[0-9]{4}_[0-9]{2}$'
+    LOOP
+        IF (to_date(right(partition_name, 7), 'YYYY_MM') + INTERVAL '1 month')::DATE <= before_day THEN
+            EXECUTE format('DROP TABLE %I', partition_name);
+            dropped := dropped + 1;
+        END IF;
+    END LOOP;
+    RETURN dropped;
+END
+$$ LANGUAGE plpgsql;
+
+-- Partitions from the oldest measurement kept aside, or the current month, up to the newest one or the next month
+DO $$
+DECLARE
+    month_day DATE := date_trunc('month', now())::DATE;
+    last_day DATE := (now() + INTERVAL '1 month')::DATE;
+BEGIN
+    IF to_regclass('unit_location_measurement_unpartitioned') IS NOT NULL THEN
+        -- bounds the min and max below and each batch of the copy
+        CREATE INDEX unit_location_measurement_unpartitioned_time ON unit_location_measurement_unpartitioned (time);
+        SELECT least(min(time)::DATE, month_day), greatest(max(time)::DATE, last_day) INTO month_day, last_day
+        FROM unit_location_measurement_unpartitioned;
+    END IF;
+    month_day := date_trunc('month', month_day)::DATE;
+    WHILE month_day <= last_day LOOP
+        PERFORM create_unit_location_measurement_partition(month_day);
+        month_day := (month_day + INTERVAL '1 month')::DATE;
+    END LOOP;
+END
+$$;
+
+-- Measurements kept aside copied one day at a time, so that each statement only reads and routes the rows of a day
+DO $$
+DECLARE
+    batch_day DATE;
+    batch_rows BIGINT;
+    copied BIGINT := 0;
+BEGIN
+    IF to_regclass('unit_location_measurement_unpartitioned') IS NULL THEN
+        RETURN;
+    END IF;
+    FOR batch_day IN
+        SELECT generate_series(min(time)::DATE, max(time)::DATE, INTERVAL '1 day')::DATE
+        FROM unit_location_measurement_unpartitioned
+    LOOP
+        INSERT INTO unit_location_measurement (unit_id, context_id, time, device_id, lat, lng, alt, accuracy,
+                                               geofencing_status, hdg, speed, geohash)
+        SELECT unit_id, context_id, time, device_id, lat, lng, alt, accuracy, geofencing_status, hdg, speed, geohash
+        FROM unit_location_measurement_unpartitioned
+        WHERE time >= batch_day AND time < batch_day + 1;
+        GET DIAGNOSTICS batch_rows = ROW_COUNT;
+        copied := copied + batch_rows;
+    END LOOP;
+    RAISE NOTICE 'Copied % measurement(s) into the monthly partitions', copied;
+    DROP TABLE unit_location_measurement_unpartitioned;
+END
+$$;
+
+CREATE TABLE IF NOT EXISTS unit_daily_rollup (
+    unit_id     VARCHAR(255)     NOT NULL,
+    context_id  VARCHAR(255)     NOT NULL,
+    rollup_day  DATE             NOT NULL,
+    point_count BIGINT           NOT NULL,
+    distance    DOUBLE PRECISION NOT NULL,
+    first_time  TIMESTAMP        NOT NULL,
+    last_time   TIMESTAMP        NOT NULL,
+    last_lat    DOUBLE PRECISION NOT NULL,
+    last_lng    DOUBLE PRECISION NOT NULL,
+    min_lat     DOUBLE PRECISION NOT NULL,
+    max_lat     DOUBLE PRECISION NOT NULL,
+    min_lng     DOUBLE PRECISION NOT NULL,
+    max_lng     DOUBLE PRECISION NOT NULL,
+    speed_sum   DOUBLE PRECISION NOT NULL,
+    speed_count BIGINT           NOT NULL,
+    PRIMARY KEY (unit_id, context_id, rollup_day)
+);
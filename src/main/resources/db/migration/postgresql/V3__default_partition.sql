@@ -0,0 +1,25 @@
+-- Measurements out of the monthly partitions, such as fixes dated far in the future by a wrong device clock, land in
+-- the default partition instead of failing the whole ingested batch
+CREATE TABLE IF NOT EXISTS unit_location_measurement_default PARTITION OF unit_location_measurement DEFAULT;
+
+-- With a default partition, a new partition cannot be created while the default one holds rows of its range: they are
+-- moved to the new partition before it is attached. Attaching takes a SHARE UPDATE EXCLUSIVE lock on the measurements,
+-- only the default partition is locked out while it is checked.
+CREATE OR REPLACE FUNCTION create_unit_location_measurement_partition(month_day DATE) RETURNS BOOLEAN AS $$
+DECLARE
+    month_start DATE := date_trunc('month', month_day)::DATE;
+    month_end DATE := (month_start + INTERVAL '1 month')::DATE;
+    partition_name TEXT := 'unit_location_measurement_' || to_char(month_start, 'YYYY_MM');
+BEGIN
+    IF to_regclass(partition_name) IS NOT NULL THEN
+        RETURN FALSE;
+    END IF;
+    EXECUTE format('CREATE TABLE %I (LIKE unit_location_measurement INCLUDING DEFAULTS INCLUDING CONSTRAINTS)',
+                   partition_name);
+    EXECUTE format('WITH moved AS (DELETE FROM unit_location_measurement_default WHERE time >= %L AND time < %L RETURNING *)'
+                       || ' INSERT INTO %I SELECT * FROM moved', month_start, month_end, partition_name);
+    EXECUTE format('ALTER TABLE unit_location_measurement ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+                   partition_name, month_start, month_end);
+    RETURN TRUE;
+END
+$$ LANGUAGE plpgsql;
@@ -0,0 +1,10 @@
+-- Time each measurement was last written, so that a measurement replaced in place changes the watermark of its track
+-- even though the number of measurements and their last time stay the same. The default is only evaluated once: the
+-- rows already stored take the time of the migration without rewriting the partitions.
+ALTER TABLE unit_location_measurement ADD COLUMN ingested_at TIMESTAMP DEFAULT LOCALTIMESTAMP;
+
+-- The watermark of a track keeps being read from the track index alone
+CREATE INDEX idx_unit_location_measurement_unit_context_time_ingested
+    ON unit_location_measurement (unit_id, context_id, time) INCLUDE (device_id, lat, lng, alt, ingested_at);
+DROP INDEX idx_unit_location_measurement_unit_context_time;
+ALTER INDEX idx_unit_location_measurement_unit_context_time_ingested RENAME TO idx_unit_location_measurement_unit_context_time;
@@ -8,7 +8,7 @@ L.layerJSON({
     minShift: 300,				//min shift for update data(in meters)
     updateOutBounds: false,		//request new data only if current bounds higher than last bounds
     layerTarget:layerGroup,
-    url: '/get',
+    url: 'locations/latest?lat1={lat1}&lon1={lon1}&lat2={lat2}&lon2={lon2}',
     propertyItems: '',
     propertyTitle: 'name',
     propertyLoc: ['lat','lng'],
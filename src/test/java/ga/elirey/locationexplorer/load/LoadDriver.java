@@ -0,0 +1,257 @@
+package ga.elirey.locationexplorer.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ga.elirey.locationexplorer.utils.SyntheticFleetGenerator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Send requests to the locations endpoints of a running service at a fixed rate and report the latency percentiles,
+ * the throughput, the errors and the heap used by the service.
+ * <p>
+ * The load is open-loop: requests are scheduled at the target rate whatever the response times, and their latency is
+ * measured from the time they were meant to be sent, so that a stalled service shows in the percentiles instead of
+ * slowing down the clients. Errors are counted by cause and left out of the latencies.
+ * <p>
+ * Meant to run against the {@code embedded} profile, see {@code scripts/load-test.sh}. Settings are system properties:
+ * {@code baseUrl}, {@code context}, {@code units}, {@code rate} in requests per second, {@code concurrency} the
+ * connections open at most, {@code warmupSeconds}, {@code durationSeconds} and {@code scenarios}, a comma-separated
+ * list out of track, batch, summary, heatmap and latest.
+ */
+public class LoadDriver {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final int TIMEOUT_MILLIS = 30_000;
+
+    public static void main(final String[] args) throws Exception {
+        final String baseUrl = System.getProperty("baseUrl", "http://localhost:8080/locationexplorer");
+        final String context = System.getProperty("context", "synthetic");
+        final int units = Integer.getInteger("units", 20);
+        final int rate = Integer.getInteger("rate", 50);
+        final int concurrency = Integer.getInteger("concurrency", 64);
+        final int warmupSeconds = Integer.getInteger("warmupSeconds", 10);
+        final int durationSeconds = Integer.getInteger("durationSeconds", 60);
+        final List<String> scenarioNames = Arrays.asList(System.getProperty("scenarios", "track,batch,summary,heatmap,latest").split(","));
+
+        final Map<String, Function<Random, String>> scenarios = new LinkedHashMap<>();
+        scenarios.put("track", random -> String.format("/locations?user=%s&context=%s",
+                SyntheticFleetGenerator.unitId(random.nextInt(units)), context));
+        scenarios.put("batch", random -> String.format("/locations/batch?users=%s,%s,%s&context=%s",
+                SyntheticFleetGenerator.unitId(random.nextInt(units)), SyntheticFleetGenerator.unitId(random.nextInt(units)),
+                SyntheticFleetGenerator.unitId(random.nextInt(units)), context));
+        scenarios.put("summary", random -> String.format("/locations/summary?context=%s", context));
+        scenarios.put("heatmap", random -> String.format("/locations/heatmap?context=%s&zoom=%d", context, 8 + random.nextInt(6)));
+        scenarios.put("latest", random -> "/locations/latest?lat1=40&lon1=-5&lat2=55&lon2=12");
+        scenarios.keySet().retainAll(scenarioNames);
+        if (scenarios.isEmpty()) {
+            throw new IllegalArgumentException("No known scenario in " + scenarioNames);
+        }
+        if (rate <= 0) {
+            throw new IllegalArgumentException("The rate must be positive, got " + rate);
+        }
+
+        System.out.printf("Warming up %s for %d s at %d req/s%n", baseUrl, warmupSeconds, rate);
+        run(baseUrl, scenarios, rate, concurrency, warmupSeconds, null);
+
+        System.out.printf("Measuring for %d s at %d req/s, %d connection(s) at most%n", durationSeconds, rate, concurrency);
+        final HeapSampler heapSampler = new HeapSampler(baseUrl);
+        final Map<String, Recorder> recorders = new LinkedHashMap<>();
+        scenarios.keySet().forEach(name -> recorders.put(name, new Recorder()));
+        final long startNanos = System.nanoTime();
+        run(baseUrl, scenarios, rate, concurrency, durationSeconds, recorders, heapSampler);
+        final double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+
+        final Recorder total = new Recorder();
+        System.out.printf("%nLatencies of the successful requests, from their intended send time%n");
+        System.out.printf("%-10s %8s %7s %9s %9s %9s %9s %9s%n", "scenario", "requests", "errors", "ok/s",
+                "p50 ms", "p99 ms", "p999 ms", "max ms");
+        recorders.forEach((name, recorder) -> {
+            print(name, recorder, elapsedSeconds);
+            total.addAll(recorder);
+        });
+        print("total", total, elapsedSeconds);
+        if (total.errorCount() > 0) {
+            System.out.printf("%nErrors%n%-10s %-30s %8s%n", "scenario", "cause", "count");
+            recorders.forEach((name, recorder) -> recorder.errors()
+                    .forEach((cause, count) -> System.out.printf("%-10s %-30s %8d%n", name, cause, count)));
+        }
+        System.out.printf("%nService heap used: %.1f MB max, %.1f MB last sample%n", heapSampler.maxBytes / 1048576.0,
+                heapSampler.lastBytes / 1048576.0);
+    }
+
+    /**
+     * Send the requests at their intended times from one thread, the connections being handled by the client pool.
+     * A request waiting for a free connection is late, and that wait is part of its latency.
+     */
+    private static void run(final String baseUrl, final Map<String, Function<Random, String>> scenarios, final int rate,
+                            final int concurrency, final int seconds, final Map<String, Recorder> recorders,
+                            final Runnable... samplers) throws InterruptedException {
+        final ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        final ExecutorService sampling = Executors.newFixedThreadPool(Math.max(1, samplers.length));
+        final long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        final long startNanos = System.nanoTime();
+        final long endNanos = startNanos + TimeUnit.SECONDS.toNanos(seconds);
+        for (final Runnable sampler : samplers) {
+            sampling.execute(() -> {
+                while (System.nanoTime() < endNanos) {
+                    sampler.run();
+                    sleep(1000);
+                }
+            });
+        }
+        final List<String> names = new ArrayList<>(scenarios.keySet());
+        final Random random = new Random(rate);
+        for (long intendedNanos = startNanos; intendedNanos < endNanos; intendedNanos += intervalNanos) {
+            for (long waitNanos = intendedNanos - System.nanoTime(); waitNanos > 0; waitNanos = intendedNanos - System.nanoTime()) {
+                LockSupport.parkNanos(waitNanos);
+            }
+            final String name = names.get(random.nextInt(names.size()));
+            final String url = baseUrl + scenarios.get(name).apply(random);
+            final long sendNanos = intendedNanos;
+            clients.execute(() -> {
+                final String error = call(url);
+                if (recorders != null) {
+                    recorders.get(name).record(System.nanoTime() - sendNanos, error);
+                }
+            });
+        }
+        clients.shutdown();
+        sampling.shutdown();
+        if (!clients.awaitTermination(seconds + 120, TimeUnit.SECONDS)) {
+            System.out.printf("Requests still pending after %d s, the service cannot keep up with %d req/s%n",
+                    seconds + 120, rate);
+            clients.shutdownNow();
+        }
+        sampling.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return null when the request succeeded, the body being read entirely, otherwise the cause of the failure
+     */
+    private static String call(final String url) {
+        try {
+            final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            connection.setRequestProperty("Accept", "application/json");
+            final int status = connection.getResponseCode();
+            try (InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                if (body != null) {
+                    final byte[] buffer = new byte[8192];
+                    while (body.read(buffer) >= 0) {
+                        // drain, so that the connection is reused
+                    }
+                }
+            }
+            return status < 400 ? null : "HTTP " + status;
+        } catch (final IOException e) {
+            return e.getClass().getSimpleName();
+        }
+    }
+
+    private static void print(final String name, final Recorder recorder, final double elapsedSeconds) {
+        final long[] latencies = recorder.sortedLatencies();
+        System.out.printf("%-10s %8d %7d %9.1f %9.1f %9.1f %9.1f %9.1f%n", name, latencies.length + recorder.errorCount(),
+                recorder.errorCount(), latencies.length / elapsedSeconds, percentile(latencies, 0.5),
+                percentile(latencies, 0.99), percentile(latencies, 0.999), percentile(latencies, 1));
+    }
+
+    private static double percentile(final long[] sortedNanos, final double percentile) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        final int index = (int) Math.min(sortedNanos.length - 1, Math.ceil(percentile * sortedNanos.length) - 1);
+        return sortedNanos[Math.max(0, index)] / 1e6;
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Latencies of the successful requests, and the failed ones counted by cause
+     */
+    private static final class Recorder {
+
+        private final Map<String, Long> errors = new TreeMap<>();
+        private long[] latencies = new long[1024];
+        private int size;
+
+        private synchronized void record(final long nanos, final String error) {
+            if (error != null) {
+                errors.merge(error, 1L, Long::sum);
+                return;
+            }
+            if (size == latencies.length) {
+                latencies = Arrays.copyOf(latencies, size * 2);
+            }
+            latencies[size++] = nanos;
+        }
+
+        private synchronized void addAll(final Recorder other) {
+            for (final long nanos : other.sortedLatencies()) {
+                record(nanos, null);
+            }
+            other.errors().forEach((cause, count) -> errors.merge(cause, count, Long::sum));
+        }
+
+        private synchronized long[] sortedLatencies() {
+            final long[] sorted = Arrays.copyOf(latencies, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        private synchronized Map<String, Long> errors() {
+            return new TreeMap<>(errors);
+        }
+
+        private synchronized long errorCount() {
+            return errors.values().stream().mapToLong(Long::longValue).sum();
+        }
+    }
+
+    /**
+     * Heap used by the service, read from its actuator metrics
+     */
+    private static final class HeapSampler implements Runnable {
+
+        private final String url;
+        private volatile long maxBytes;
+        private volatile long lastBytes;
+
+        private HeapSampler(final String baseUrl) {
+            this.url = baseUrl + "/actuator/metrics/jvm.memory.used?tag=area:heap";
+        }
+
+        @Override
+        public void run() {
+            try {
+                final JsonNode metric = OBJECT_MAPPER.readTree(new URL(url));
+                lastBytes = metric.path("measurements").path(0).path("value").asLong();
+                maxBytes = Math.max(maxBytes, lastBytes);
+            } catch (final IOException e) {
+                // the service may be too busy to answer, the next sample will do
+            }
+        }
+    }
+}
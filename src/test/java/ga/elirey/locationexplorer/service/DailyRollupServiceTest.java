@@ -0,0 +1,92 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.data.TrackSummary;
+import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static ga.elirey.locationexplorer.service.MeasurementFixtures.measurementOf;
+
+/**
+ * Daily rollups kept by the ingestion, which must count a measurement once however many times it is sent
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles({"embedded", "test"})
+public class DailyRollupServiceTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2020, 1, 1, 8, 0);
+
+    @Autowired
+    private LocationIngestService ingestService;
+
+    @Autowired
+    private DailyRollupService rollupService;
+
+    @Test
+    public void countsAFixSentAgainOnceWithItsLastValues() {
+        final String context = "rollups-sent-again";
+        ingestService.ingest(Arrays.asList(measurement(context, 0, 10, 5), measurement(context, 60, 10.01, 5)));
+
+        ingestService.ingest(Collections.singletonList(measurement(context, 0, 11, 9)));
+
+        final TrackSummary summary = summarize(context);
+        Assert.assertEquals(2, summary.getPointCount());
+        Assert.assertEquals(7, summary.getAverageSpeed(), 1e-9);
+        Assert.assertEquals("the replaced latitude is out of the bounding box", 10.01, summary.getBoundingBox()[0], 1e-9);
+        Assert.assertEquals(11, summary.getBoundingBox()[2], 1e-9);
+        Assert.assertEquals(60, summary.getDurationInSeconds());
+    }
+
+    @Test
+    public void countsAKeyRepeatedInABatchOnce() {
+        final String context = "rollups-repeated-key";
+        ingestService.ingest(Arrays.asList(measurement(context, 0, 10, 5), measurement(context, 0, 10.5, 7),
+                measurement(context, 30, 10, 5)));
+
+        final TrackSummary summary = summarize(context);
+        Assert.assertEquals(2, summary.getPointCount());
+        Assert.assertEquals(6, summary.getAverageSpeed(), 1e-9);
+        Assert.assertEquals(10.5, summary.getBoundingBox()[2], 1e-9);
+    }
+
+    @Test
+    public void addsNewFixesToTheRollupOfTheirDay() {
+        final String context = "rollups-new-fixes";
+        ingestService.ingest(Collections.singletonList(measurement(context, 0, 10, 4)));
+
+        ingestService.ingest(Collections.singletonList(measurement(context, 60, 10.01, 6)));
+
+        final TrackSummary summary = summarize(context);
+        Assert.assertEquals(2, summary.getPointCount());
+        Assert.assertEquals(5, summary.getAverageSpeed(), 1e-9);
+        Assert.assertTrue(summary.getTravelledDistanceInMeters() > 1_000);
+    }
+
+    private TrackSummary summarize(final String context) {
+        final long day = START.toLocalDate().atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+        final List<TrackSummary> summaries = rollupService.summarize("unit", context, day, day);
+        Assert.assertEquals(1, summaries.size());
+        return summaries.get(0);
+    }
+
+    private static UnitLocationMeasurement measurement(final String context, final int second, final double latitude,
+                                                       final double speed) {
+        return measurementOf("unit", context, START.plusSeconds(second))
+                .latitude(latitude)
+                .longitude(2)
+                .speed(speed)
+                .build();
+    }
+}
@@ -0,0 +1,88 @@
+package ga.elirey.locationexplorer.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ga.elirey.locationexplorer.data.ExportFormat;
+import ga.elirey.locationexplorer.data.ExportJobSpec;
+import ga.elirey.locationexplorer.data.ExportJobStatus;
+import ga.elirey.locationexplorer.data.ExportState;
+import ga.elirey.locationexplorer.data.FilterOptions;
+import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static ga.elirey.locationexplorer.service.MeasurementFixtures.measurementOf;
+
+/**
+ * Export jobs, which must write the whole tracks of the units however the requests would read them
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        // a track of 100 fixes is downsampled when read for a request
+        "location-explorer.planner.in-memory-budget-bytes=0",
+        "location-explorer.planner.point-bytes-per-point=200",
+        "location-explorer.planner.streaming-budget-bytes=2000"})
+@ActiveProfiles({"embedded", "test"})
+public class ExportJobServiceTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2020, 5, 1, 8, 0);
+    private static final String CONTEXT = "export-full-tracks";
+
+    @Autowired
+    private LocationIngestService ingestService;
+
+    @Autowired
+    private ExportJobService exportJobService;
+
+    @Autowired
+    private LocationExplorerService explorerService;
+
+    @Value("${location-explorer.exports.directory:${java.io.tmpdir}/location-explorer-exports}")
+    private String exportsDirectory;
+
+    @Test
+    public void exportsTheWholeTrackOfAUnitADownsampledRequestWouldRead() throws Exception {
+        final List<UnitLocationMeasurement> measurements = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            measurements.add(measurementOf("unit", CONTEXT, START.plusSeconds(i * 10L))
+                    .latitude(48 + (i % 2) * 0.001)
+                    .longitude(2 + i * 0.001)
+                    .build());
+        }
+        ingestService.ingest(measurements);
+        final long startDate = toMillis(START.minusMinutes(1));
+        final long endDate = toMillis(START.plusHours(1));
+        final FilterOptions options = new FilterOptions(false, 3, false, false);
+        Assert.assertTrue(explorerService.loadTrack("unit", CONTEXT, startDate, endDate, options).getTrack().size() < 100);
+
+        ExportJobStatus status = exportJobService.start(new ExportJobSpec(CONTEXT, Collections.singletonList(ExportFormat.GEOJSON),
+                false, startDate, endDate, options));
+        final long deadline = System.currentTimeMillis() + 30_000;
+        while (status.getState() == ExportState.RUNNING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            status = exportJobService.getStatus(status.getJobId());
+        }
+
+        Assert.assertEquals(ExportState.COMPLETED, status.getState());
+        final JsonNode geoJson = new ObjectMapper().readTree(Paths.get(exportsDirectory, status.getJobId(), "files",
+                "unit.geojson").toFile());
+        Assert.assertEquals(100, geoJson.get("features").get(0).get("geometry").get("coordinates").size());
+    }
+
+    private static long toMillis(final LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+}
@@ -0,0 +1,136 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+import ga.elirey.locationexplorer.format.LocationStatus;
+import ga.elirey.locationexplorer.model.Geofence;
+import ga.elirey.locationexplorer.repository.StoredGeofenceRepository;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static ga.elirey.locationexplorer.service.MeasurementFixtures.measurementOf;
+
+/**
+ * Geofencing status of the units, which have only arrived after staying in a geofence or on entering a destination
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles({"embedded", "test"})
+public class GeofenceEngineTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2020, 6, 1, 8, 0);
+    // far from the measurements of the other tests
+    private static final double LATITUDE = -60;
+    private static final double LONGITUDE = -100;
+
+    @Autowired
+    private GeofenceEngine geofenceEngine;
+
+    @Autowired
+    private StoredGeofenceRepository geofenceRepository;
+
+    @After
+    public void removeGeofences() {
+        geofenceEngine.remove("depot");
+        geofenceEngine.remove("harbour");
+    }
+
+    @Test
+    public void arrivesOnlyAfterStayingInTheGeofence() {
+        geofenceEngine.register(circle("depot", false));
+        final List<UnitLocationMeasurement> measurements = Arrays.asList(
+                measurement("passing", 0, 10.0),
+                measurement("unknown", 0, null),
+                measurement("stopping", 0, 0.1),
+                measurement("stopping", 240, 0.2),
+                measurement("stopping", 300, 3.0));
+
+        geofenceEngine.evaluate(measurements);
+
+        Assert.assertEquals(LocationStatus.STATUS_MOVING, measurements.get(0).getGeofencingStatus());
+        Assert.assertEquals(LocationStatus.STATUS_UNKNOWN, measurements.get(1).getGeofencingStatus());
+        Assert.assertEquals(LocationStatus.STATUS_BOARDING, measurements.get(2).getGeofencingStatus());
+        Assert.assertEquals(LocationStatus.STATUS_BOARDING, measurements.get(3).getGeofencingStatus());
+        Assert.assertEquals(LocationStatus.STATUS_ARRIVED, measurements.get(4).getGeofencingStatus());
+    }
+
+    @Test
+    public void keepsTheTimeTheUnitEnteredAcrossBatches() {
+        geofenceEngine.register(circle("depot", false));
+        final UnitLocationMeasurement entering = measurement("across", 0, 5.0);
+        final UnitLocationMeasurement staying = measurement("across", 600, 5.0);
+        final UnitLocationMeasurement outside = measurement("across", 660, 5.0);
+        outside.setLatitude(LATITUDE + 1);
+        final UnitLocationMeasurement back = measurement("across", 720, 5.0);
+
+        Arrays.asList(entering, staying, outside, back)
+                .forEach(measurement -> geofenceEngine.evaluate(Collections.singletonList(measurement)));
+
+        Assert.assertEquals(LocationStatus.STATUS_MOVING, entering.getGeofencingStatus());
+        Assert.assertEquals(LocationStatus.STATUS_ARRIVED, staying.getGeofencingStatus());
+        Assert.assertEquals(LocationStatus.STATUS_MOVING, outside.getGeofencingStatus());
+        Assert.assertEquals(LocationStatus.STATUS_MOVING, back.getGeofencingStatus());
+    }
+
+    @Test
+    public void arrivesOnEnteringADestination() {
+        geofenceEngine.register(circle("harbour", true));
+        final List<UnitLocationMeasurement> measurements = Arrays.asList(measurement("ship", 0, 10.0), measurement("boat", 0, null));
+
+        geofenceEngine.evaluate(measurements);
+
+        Assert.assertEquals(LocationStatus.STATUS_ARRIVED, measurements.get(0).getGeofencingStatus());
+        Assert.assertEquals(LocationStatus.STATUS_ARRIVED, measurements.get(1).getGeofencingStatus());
+    }
+
+    @Test
+    public void storesTheGeofences() {
+        geofenceEngine.register(Geofence.builder()
+                .id("harbour")
+                .shape(Geofence.Shape.POLYGON)
+                .destination(true)
+                .vertex(new double[]{LATITUDE, LONGITUDE})
+                .vertex(new double[]{LATITUDE + 0.01, LONGITUDE})
+                .vertex(new double[]{LATITUDE, LONGITUDE + 0.01})
+                .build());
+
+        final Geofence stored = geofenceRepository.findById("harbour").get().toGeofence();
+        Assert.assertTrue(stored.isDestination());
+        Assert.assertEquals(3, stored.getVertices().size());
+        Assert.assertEquals(LATITUDE + 0.01, stored.getVertices().get(1)[0], 0);
+        Assert.assertEquals(LONGITUDE + 0.01, stored.getVertices().get(2)[1], 0);
+
+        Assert.assertTrue(geofenceEngine.remove("harbour"));
+        Assert.assertFalse(geofenceRepository.existsById("harbour"));
+        Assert.assertFalse(geofenceEngine.remove("harbour"));
+    }
+
+    private static Geofence circle(final String id, final boolean destination) {
+        return Geofence.builder()
+                .id(id)
+                .shape(Geofence.Shape.CIRCLE)
+                .destination(destination)
+                .centerLatitude(LATITUDE)
+                .centerLongitude(LONGITUDE)
+                .radiusInMeters(200)
+                .build();
+    }
+
+    private static UnitLocationMeasurement measurement(final String unitId, final int second, final Double speed) {
+        return measurementOf(unitId, "geofencing", START.plusSeconds(second))
+                .latitude(LATITUDE)
+                .longitude(LONGITUDE)
+                .speed(speed)
+                .build();
+    }
+}
@@ -0,0 +1,106 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.model.GPSPoint;
+import ga.elirey.locationexplorer.utils.OffHeapTrackStore;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static ga.elirey.locationexplorer.service.MeasurementFixtures.measurementOf;
+
+/**
+ * Fixes around a time read from the store, merged across the devices of the unit, and the database read instead when
+ * the store may miss some of them
+ */
+public class HotTrackServiceTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2020, 1, 1, 0, 0);
+
+    @Test
+    public void findsTheMergedFixesAroundATime() {
+        final HotTrackService service = newService(Optional.empty());
+        // two devices recording the same positions, the second one a second late and a few seconds apart
+        for (int second = 0; second < 60; second += 10) {
+            service.store(measurementOf("unit", "context", START.plusSeconds(second), "a")
+                    .latitude(45 + second * 0.0001).longitude(5).build());
+            service.store(measurementOf("unit", "context", START.plusSeconds(second + 1), "b")
+                    .latitude(45 + second * 0.0001).longitude(5).build());
+        }
+        service.store(measurementOf("unit", "context", START.plusSeconds(25), "b").latitude(45.0025).longitude(5).build());
+
+        final List<GPSPoint> around = service.findFixesAround("unit", "context", toMillis(START.plusSeconds(24)),
+                toMillis(START), toMillis(START.plusMinutes(1))).orElseThrow(AssertionError::new);
+
+        Assert.assertEquals(2, around.size());
+        Assert.assertEquals(START.plusSeconds(20), around.get(0).getTimestamp());
+        Assert.assertEquals("a", around.get(0).getCollectorId());
+        Assert.assertEquals(START.plusSeconds(25), around.get(1).getTimestamp());
+        Assert.assertEquals("b", around.get(1).getCollectorId());
+        Assert.assertEquals("unit", around.get(1).getUnitId());
+    }
+
+    @Test
+    public void findsTheFixesThereAreOnEachSideOfTheTime() {
+        final HotTrackService service = newService(Optional.empty());
+        for (int second = 0; second <= 30; second += 10) {
+            service.store(measurementOf("unit", "context", START.plusSeconds(second)).latitude(45).longitude(5).build());
+        }
+        final long after = toMillis(START); // the first fix is excluded
+        final long before = toMillis(START.plusMinutes(1));
+
+        Assert.assertEquals(asTimes(START.plusSeconds(30)),
+                times(service.findFixesAround("unit", "context", toMillis(START.plusSeconds(40)), after, before)));
+        Assert.assertEquals(asTimes(START.plusSeconds(10)),
+                times(service.findFixesAround("unit", "context", toMillis(START.plusSeconds(5)), after, before)));
+        Assert.assertEquals(asTimes(START.plusSeconds(10), START.plusSeconds(20)),
+                times(service.findFixesAround("unit", "context", toMillis(START.plusSeconds(10)), after, before)));
+    }
+
+    @Test
+    public void readsTheDatabaseWhenTheStoreMayMissFixes() {
+        final HotTrackService service = newService(Optional.of(toMillis(START.plusSeconds(30))));
+        service.store(measurementOf("unit", "context", START.plusMinutes(1)).latitude(45).longitude(5).build());
+        service.store(measurementOf("unit", "context", START.plusMinutes(2)).latitude(45).longitude(5).build());
+        final long time = toMillis(START.plusMinutes(2));
+        final long before = toMillis(START.plusMinutes(3));
+
+        Assert.assertFalse("recorded before the watermark",
+                service.findFixesAround("unit", "context", time, toMillis(START), before).isPresent());
+        Assert.assertFalse("recorded before the first fix of the track",
+                service.findFixesAround("unit", "context", time, toMillis(START.plusSeconds(40)), before).isPresent());
+        Assert.assertTrue(service.findFixesAround("unit", "context", time, toMillis(START.plusMinutes(1)), before).isPresent());
+        Assert.assertFalse("unknown track",
+                service.findFixesAround("other", "context", time, toMillis(START.plusMinutes(1)), before).isPresent());
+    }
+
+    private static HotTrackService newService(final Optional<Long> latestTimeMillis) {
+        final LocationPollerService pollerService = Mockito.mock(LocationPollerService.class);
+        Mockito.when(pollerService.getLatestTimeMillis()).thenReturn(latestTimeMillis);
+        final HotTrackService service = new HotTrackService(new OffHeapTrackStore(1 << 16, 1 << 14, 16, 0), pollerService);
+        ReflectionTestUtils.setField(service, "isSingleWriter", true);
+        ReflectionTestUtils.setField(service, "duplicateWindowMillis", 2000L);
+        ReflectionTestUtils.setField(service, "duplicateDistanceInMeters", 10.0);
+        service.initWatermark();
+        return service;
+    }
+
+    private static List<LocalDateTime> times(final Optional<List<GPSPoint>> points) {
+        return points.orElseThrow(AssertionError::new).stream().map(GPSPoint::getTimestamp).collect(Collectors.toList());
+    }
+
+    private static List<LocalDateTime> asTimes(final LocalDateTime... times) {
+        return Arrays.asList(times);
+    }
+
+    private static long toMillis(final LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+}
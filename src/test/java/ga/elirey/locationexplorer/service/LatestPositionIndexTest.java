@@ -0,0 +1,119 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.data.UnitPosition;
+import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+import ga.elirey.locationexplorer.repository.LocationExplorerRepository;
+import ga.elirey.locationexplorer.utils.GeometryTools;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static ga.elirey.locationexplorer.service.MeasurementFixtures.measurementOf;
+
+/**
+ * Nearest units of the last positions index, which must find the same units as going through all of them
+ */
+public class LatestPositionIndexTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2020, 1, 1, 0, 0);
+
+    @Test
+    public void findsTheSameUnitsAsABruteForceSearch() {
+        final Random random = new Random(41);
+        final LatestPositionIndex index = newIndex(1.0);
+        final List<UnitLocationMeasurement> measurements = new ArrayList<>();
+        for (int unit = 0; unit < 300; unit++) {
+            // clustered units, a few far away ones, and some at the poles and along the antimeridian
+            final double latitude = unit % 10 == 0 ? (random.nextBoolean() ? 89.9 : -89.9) : random.nextGaussian() * 20;
+            final double longitude = unit % 7 == 0 ? (random.nextBoolean() ? 179.9 : -179.9) : random.nextDouble() * 360 - 180;
+            measurements.add(measurement("unit-" + unit, unit % 3 == 0 ? "other" : "context", latitude, longitude));
+        }
+        measurements.forEach(index::update);
+
+        for (int query = 0; query < 200; query++) {
+            final double latitude = random.nextDouble() * 180 - 90;
+            final double longitude = random.nextDouble() * 360 - 180;
+            final int k = 1 + random.nextInt(query % 4 == 0 ? 300 : 10);
+            final String context = query % 2 == 0 ? null : "context";
+
+            final List<UnitPosition> found = index.findNearest(latitude, longitude, k, context);
+
+            // units at the same distance may come in any order
+            final List<Double> expected = bruteForce(measurements, latitude, longitude, k, context);
+            Assert.assertEquals(expected.size(), found.size());
+            Assert.assertEquals(found.size(), found.stream().map(UnitPosition::getUnitId).distinct().count());
+            for (int i = 0; i < found.size(); i++) {
+                Assert.assertEquals(expected.get(i), found.get(i).getDistanceInMeters(), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void findsASingleFarAwayUnitOfAContext() {
+        final LatestPositionIndex index = newIndex(0.1);
+        for (int unit = 0; unit < 100; unit++) {
+            index.update(measurement("near-" + unit, "busy", 48 + unit * 0.01, 2));
+        }
+        index.update(measurement("far", "quiet", -45, -170));
+
+        final List<UnitPosition> nearest = index.findNearest(48, 2, 5, "quiet");
+
+        Assert.assertEquals(1, nearest.size());
+        Assert.assertEquals("far", nearest.get(0).getUnitId());
+    }
+
+    @Test
+    public void countsAMovedUnitOnce() {
+        final LatestPositionIndex index = newIndex(0.1);
+        index.update(measurement("unit", "context", 48, 2));
+        index.update(measurement("unit", "context", 48.5, 2.5));
+
+        final List<UnitPosition> nearest = index.findNearest(48, 2, 10, null);
+
+        Assert.assertEquals(1, nearest.size());
+        Assert.assertEquals(48.5, nearest.get(0).getLat(), 0);
+    }
+
+    @Test
+    public void findsNothingForANonPositiveCount() {
+        final LatestPositionIndex index = newIndex(0.1);
+        index.update(measurement("unit", "context", 48, 2));
+
+        Assert.assertTrue(index.findNearest(48, 2, 0, null).isEmpty());
+        Assert.assertTrue(index.findNearest(48, 2, -1, null).isEmpty());
+    }
+
+    private static List<Double> bruteForce(final List<UnitLocationMeasurement> measurements, final double latitude,
+                                           final double longitude, final int k, final String context) {
+        return measurements.stream()
+                .filter(measurement -> context == null || context.equals(measurement.getId().getContextId()))
+                .map(measurement -> GeometryTools.distanceInMeters(latitude, longitude, measurement.getLatitude(),
+                        measurement.getLongitude()))
+                .sorted()
+                .limit(k)
+                .collect(Collectors.toList());
+    }
+
+    private static LatestPositionIndex newIndex(final double cellSizeDegrees) {
+        final LocationExplorerService explorerService = Mockito.mock(LocationExplorerService.class, Mockito.CALLS_REAL_METHODS);
+        final LatestPositionIndex index = new LatestPositionIndex(explorerService, Mockito.mock(LocationExplorerRepository.class));
+        ReflectionTestUtils.setField(index, "cellSizeDegrees", cellSizeDegrees);
+        return index;
+    }
+
+    private static UnitLocationMeasurement measurement(final String unitId, final String contextId, final double latitude,
+                                                       final double longitude) {
+        return measurementOf(unitId, contextId, START)
+                .latitude(latitude)
+                .longitude(longitude)
+                .speed(0.0)
+                .build();
+    }
+}
@@ -0,0 +1,82 @@
+package ga.elirey.locationexplorer.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ga.elirey.locationexplorer.data.FilterOptions;
+import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+import ga.elirey.locationexplorer.format.BatchOutputFormat;
+import ga.elirey.locationexplorer.model.GPSTrack;
+import ga.elirey.locationexplorer.utils.BoundedExecutor;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import javax.persistence.EntityManager;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static ga.elirey.locationexplorer.service.MeasurementFixtures.measurementOf;
+import static ga.elirey.locationexplorer.utils.TrackFixtures.point;
+
+/**
+ * Tracks of several users streamed in one document, a track timing out on the pool being written as an error record
+ * of its user once the response is under way
+ */
+public class LocationBatchServiceTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2020, 1, 1, 0, 0);
+
+    private final BoundedExecutor executor = new BoundedExecutor("batch-test", 2, 8, 200, 1);
+
+    @After
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void writesAnErrorRecordForATrackTimingOut() throws Exception {
+        final List<UnitLocationMeasurement> rows = new ArrayList<>();
+        for (final String user : Arrays.asList("first", "slow", "last")) {
+            for (int second = 0; second < 3; second++) {
+                rows.add(measurementOf(user, "context", START.plusSeconds(second)).latitude(45).longitude(5).build());
+            }
+        }
+        final LocationPollerService pollerService = Mockito.mock(LocationPollerService.class);
+        Mockito.when(pollerService.streamLocations(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.anyLong(),
+                ArgumentMatchers.anyLong())).thenReturn(rows.stream());
+        final LocationExplorerService explorerService = Mockito.mock(LocationExplorerService.class);
+        Mockito.when(explorerService.buildGpsTrack(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any()))
+                .thenAnswer(invocation -> {
+                    final String user = invocation.getArgument(0);
+                    if ("slow".equals(user)) {
+                        Thread.sleep(5_000); // interrupted by the timeout
+                    }
+                    return GPSTrack.builder().trackedUser(user).point(point(0, 45, 5)).build();
+                });
+        final LocationBatchService batchService = new LocationBatchService(pollerService, explorerService,
+                Mockito.mock(EntityManager.class), executor);
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        batchService.convertBatch(Arrays.asList("first", "slow", "last"), "context", BatchOutputFormat.NDJSON, 0L, 0L,
+                FilterOptions.useDefault(), output);
+
+        final List<JsonNode> records = new ArrayList<>();
+        for (final String line : new String(output.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+            records.add(new ObjectMapper().readTree(line));
+        }
+        final JsonNode error = records.stream()
+                .filter(record -> record.get("properties").has("error"))
+                .findFirst()
+                .orElseThrow(AssertionError::new);
+        Assert.assertEquals("slow", error.get("properties").get("trackedUser").asText());
+        Assert.assertTrue(error.get("properties").get("error").asText().contains("timed out"));
+        Assert.assertEquals("the other tracks are written in order", "last",
+                records.get(records.size() - 1).get("properties").get("trackedUser").asText());
+    }
+}
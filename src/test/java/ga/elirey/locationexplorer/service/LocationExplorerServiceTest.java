@@ -0,0 +1,73 @@
+package ga.elirey.locationexplorer.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ga.elirey.locationexplorer.data.FilterOptions;
+import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static ga.elirey.locationexplorer.service.MeasurementFixtures.measurementOf;
+
+/**
+ * Tracks streamed into a buffer, filtered the same way whether they are converted on the calling thread or on the pools
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "location-explorer.planner.in-memory-budget-bytes=0") // every track is streamed
+@ActiveProfiles({"embedded", "test"})
+public class LocationExplorerServiceTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2020, 7, 1, 8, 0);
+    private static final String CONTEXT = "streamed-tracks";
+    private static final String GEOJSON = "GPX"; // the GPX output format writes GeoJSON
+
+    @Autowired
+    private LocationIngestService ingestService;
+
+    @Autowired
+    private LocationExplorerService explorerService;
+
+    @Test
+    public void filtersAStreamedTrackOnThePoolsLikeOnTheCallingThread() throws Exception {
+        final List<UnitLocationMeasurement> measurements = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            measurements.add(measurementOf("unit", CONTEXT, START.plusSeconds(i * 10L))
+                    // a straight line heading east then north
+                    .latitude(45 + Math.max(i - 100, 0) * 0.0001)
+                    .longitude(5 + Math.min(i, 100) * 0.0001)
+                    .build());
+        }
+        ingestService.ingest(measurements);
+        final long startDate = toMillis(START.minusMinutes(1));
+        final long endDate = toMillis(START.plusHours(1));
+
+        for (final FilterOptions options : new FilterOptions[]{
+                new FilterOptions(true, 3, true, false),
+                new FilterOptions(false, 3, false, false, 10, false, 0, null)}) {
+            final JsonNode coordinates = coordinates(explorerService.convert("unit", CONTEXT, GEOJSON, startDate, endDate, options));
+            final JsonNode coordinatesAsync = coordinates(explorerService.convertAsync("unit", CONTEXT, GEOJSON, startDate,
+                    endDate, options).join());
+
+            Assert.assertEquals(coordinates, coordinatesAsync);
+            Assert.assertTrue(coordinatesAsync.size() < 20);
+        }
+    }
+
+    private static JsonNode coordinates(final String geoJson) throws Exception {
+        return new ObjectMapper().readTree(geoJson).get("features").get(0).get("geometry").get("coordinates");
+    }
+
+    private static long toMillis(final LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+}
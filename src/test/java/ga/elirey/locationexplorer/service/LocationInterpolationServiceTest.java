@@ -0,0 +1,72 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.data.Interpolation;
+import ga.elirey.locationexplorer.data.UnitPosition;
+import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+
+import static ga.elirey.locationexplorer.service.MeasurementFixtures.measurementOf;
+
+/**
+ * Positions of the units of a mission at a time, which must merge the devices of each unit like the position of a
+ * single unit
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles({"embedded", "test"})
+public class LocationInterpolationServiceTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2020, 4, 1, 8, 0);
+    private static final String CONTEXT = "interpolation-devices";
+
+    @Autowired
+    private LocationIngestService ingestService;
+
+    @Autowired
+    private LocationInterpolationService interpolationService;
+
+    @Test
+    public void mergesTheDevicesOfEachUnitLikeThePositionOfOneUnit() {
+        ingestService.ingest(Arrays.asList(
+                measurement("unit", "phone", 0, 0.0, 5),
+                measurement("unit", "phone", 60, 0.01, 5),
+                // same position as seen by the less accurate tracker, dropped by the merge
+                measurement("unit", "tracker", 61, 0.01005, 50),
+                measurement("unit", "phone", 120, 0.02, 5),
+                measurement("other", "phone", 60, 1.0, 5),
+                measurement("other", "phone", 120, 1.01, 5)));
+        final long time = START.plusSeconds(90).toInstant(ZoneOffset.UTC).toEpochMilli();
+
+        final List<UnitPosition> positions = interpolationService.getPositionsAtAsync(CONTEXT, time, Interpolation.LINEAR).join();
+        final UnitPosition position = interpolationService.getPositionAtAsync("unit", CONTEXT, time, Interpolation.LINEAR)
+                .join().get();
+
+        Assert.assertEquals(2, positions.size());
+        Assert.assertEquals("other", positions.get(0).getUnitId());
+        Assert.assertEquals(1.005, positions.get(0).getLat(), 1e-9);
+        Assert.assertEquals("unit", positions.get(1).getUnitId());
+        Assert.assertEquals(0.015, positions.get(1).getLat(), 1e-9);
+        Assert.assertEquals(position.getLat(), positions.get(1).getLat(), 0);
+        Assert.assertEquals(position.getLng(), positions.get(1).getLng(), 0);
+    }
+
+    private static UnitLocationMeasurement measurement(final String unitId, final String deviceId, final int second,
+                                                       final double latitude, final double accuracy) {
+        return measurementOf(unitId, CONTEXT, START.plusSeconds(second), deviceId)
+                .latitude(latitude)
+                .longitude(2)
+                .accuracyInMeters(accuracy)
+                .build();
+    }
+}
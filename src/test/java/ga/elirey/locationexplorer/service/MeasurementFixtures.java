@@ -0,0 +1,38 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+
+import java.time.LocalDateTime;
+
+/**
+ * Measurements sent by the collectors, shared by the tests. Each test class stores its measurements over its own
+ * days or contexts, the database being shared by the tests.
+ */
+public final class MeasurementFixtures {
+
+    private MeasurementFixtures() {
+    }
+
+    /**
+     * @return a measurement of a unit recorded by a single device, to complete with its position
+     */
+    public static UnitLocationMeasurement.UnitLocationMeasurementBuilder measurementOf(final String unitId, final String contextId,
+                                                                                       final LocalDateTime time) {
+        return measurementOf(unitId, contextId, time, "device");
+    }
+
+    /**
+     * @return a measurement of a unit recorded by a device, to complete with its position. The altitude, accuracy,
+     * heading and speed the mapping to points needs are set, moving at 1 m/s.
+     */
+    public static UnitLocationMeasurement.UnitLocationMeasurementBuilder measurementOf(final String unitId, final String contextId,
+                                                                                       final LocalDateTime time,
+                                                                                       final String deviceId) {
+        return UnitLocationMeasurement.builder()
+                .id(new UnitLocationMeasurement.Id(unitId, contextId, time, deviceId))
+                .altitude(0.0)
+                .accuracyInMeters(5.0)
+                .heading(0.0)
+                .speed(1.0);
+    }
+}
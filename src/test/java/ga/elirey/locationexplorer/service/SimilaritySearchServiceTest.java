@@ -0,0 +1,120 @@
+package ga.elirey.locationexplorer.service;
+
+import ga.elirey.locationexplorer.data.SimilarTrack;
+import ga.elirey.locationexplorer.data.SimilarityMetric;
+import ga.elirey.locationexplorer.entity.UnitLocationMeasurement;
+import ga.elirey.locationexplorer.repository.LocationExplorerRepository;
+import ga.elirey.locationexplorer.repository.UnitDailyRollupRepository;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static ga.elirey.locationexplorer.service.MeasurementFixtures.measurementOf;
+
+/**
+ * Similarity search across contexts and days, on tracks recorded at other times of the day than the reference
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles({"embedded", "test"})
+public class SimilaritySearchServiceTest {
+
+    private static final LocalDateTime REFERENCE_START = LocalDateTime.of(2020, 3, 2, 8, 0);
+    // the other tests of the class store tracks over the same days
+    private static final List<String> CONTEXTS = Arrays.asList("similar-a", "similar-b", "similar-c");
+
+    @Autowired
+    private LocationIngestService ingestService;
+
+    @Autowired
+    private SimilaritySearchService searchService;
+
+    @Autowired
+    private LocationExplorerRepository measurementRepository;
+
+    @Autowired
+    private UnitDailyRollupRepository rollupRepository;
+
+    @Autowired
+    private DailyRollupService rollupService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    public void findsShiftedTracksOfOtherContextsAndArchivedOnes() {
+        ingestService.ingest(patrol("ref", "similar-a", REFERENCE_START, 10, 0));
+        ingestService.ingest(patrol("ref", "similar-a", REFERENCE_START.plusDays(2).plusHours(5), 10.001, 0));
+        ingestService.ingest(patrol("twin", "similar-b", REFERENCE_START.plusDays(3).plusHours(7), 10.0001, 0));
+        ingestService.ingest(patrol("elsewhere", "similar-b", REFERENCE_START.plusDays(3), 40, 0));
+        // stored without going through the ingestion, as the tracks archived before the rollups were maintained
+        measurementRepository.saveAll(patrol("archived", "similar-c", REFERENCE_START.plusDays(1).minusHours(6), 10.0005, 0));
+
+        Assert.assertFalse(findSimilar().stream().anyMatch(track -> track.getUnitId().equals("archived")));
+
+        new RollupBackfillService(measurementRepository, rollupRepository, rollupService, transactionTemplate).backfill();
+
+        final List<SimilarTrack> similar = findSimilar();
+        Assert.assertEquals("twin", similar.get(0).getUnitId());
+        Assert.assertEquals("2020-03-05T15:00:00", similar.get(0).getStartTime());
+        Assert.assertEquals("archived", similar.get(1).getUnitId());
+        Assert.assertEquals("ref", similar.get(2).getUnitId());
+        Assert.assertEquals("the reference itself is excluded", "2020-03-04T13:00:00", similar.get(2).getStartTime());
+        Assert.assertEquals("elsewhere", similar.get(3).getUnitId());
+        Assert.assertEquals(4, similar.size());
+    }
+
+    @Test
+    public void findsTracksOfTheCandidateContextOnly() {
+        ingestService.ingest(patrol("ref", "similar-d", REFERENCE_START, -10, 0));
+        ingestService.ingest(patrol("twin", "similar-e", REFERENCE_START.plusDays(1), -10.0001, 0));
+        ingestService.ingest(patrol("twin", "similar-f", REFERENCE_START.plusDays(1), -10.0001, 0));
+
+        final List<SimilarTrack> similar = searchService.findSimilarAsync("ref", "similar-d", toMillis(REFERENCE_START.minusMinutes(1)),
+                toMillis(REFERENCE_START.plusHours(2)), "similar-e", toMillis(REFERENCE_START.minusDays(1)),
+                toMillis(REFERENCE_START.plusDays(4)), SimilarityMetric.FRECHET, 10).join();
+
+        Assert.assertEquals(1, similar.size());
+        Assert.assertEquals("similar-e", similar.get(0).getContextId());
+    }
+
+    private List<SimilarTrack> findSimilar() {
+        return searchService.findSimilarAsync("ref", "similar-a", toMillis(REFERENCE_START.minusMinutes(1)),
+                toMillis(REFERENCE_START.plusHours(2)), null, toMillis(REFERENCE_START.minusDays(1)),
+                toMillis(REFERENCE_START.plusDays(4)), SimilarityMetric.FRECHET, 10).join().stream()
+                .filter(track -> CONTEXTS.contains(track.getContextId()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * A unit heading north then east for an hour, a fix a minute
+     */
+    private static List<UnitLocationMeasurement> patrol(final String unitId, final String contextId, final LocalDateTime start,
+                                                        final double latitude, final double longitude) {
+        final List<UnitLocationMeasurement> measurements = new ArrayList<>();
+        for (int minute = 0; minute <= 60; minute++) {
+            measurements.add(measurementOf(unitId, contextId, start.plusMinutes(minute))
+                    .latitude(latitude + Math.min(minute, 30) * 0.001)
+                    .longitude(longitude + Math.max(minute - 30, 0) * 0.001)
+                    .speed(2.0)
+                    .build());
+        }
+        return measurements;
+    }
+
+    private static long toMillis(final LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+}
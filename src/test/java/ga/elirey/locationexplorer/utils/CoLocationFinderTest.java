@@ -0,0 +1,110 @@
+package ga.elirey.locationexplorer.utils;
+
+import ga.elirey.locationexplorer.data.Encounter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Search of the units close to each other, checked against a comparison of every pair
+ */
+public class CoLocationFinderTest {
+
+    private static final long BUCKET_MILLIS = 60_000;
+    private static final double MAX_DISTANCE_IN_METERS = 300;
+    private static final double DEGREES_PER_100_METERS = 0.0009;
+
+    private final CoLocationFinder finder = new CoLocationFinder(MAX_DISTANCE_IN_METERS, BUCKET_MILLIS);
+    private final BoundedExecutor executor = new BoundedExecutor("co-location-test", 2, 16, 0, 1);
+
+    @After
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void mergesConsecutiveCloseBucketsIntoEncounters() {
+        final List<CoLocationFinder.TimeBucket> buckets = new ArrayList<>();
+        for (int index = 0; index < 8; index++) {
+            final CoLocationFinder.TimeBucket bucket = new CoLocationFinder.TimeBucket(index);
+            bucket.add("b", 0, 0);
+            // 100 meters away, then 1 km away in bucket 5, then 200 meters away
+            bucket.add("a", 0, (index < 5 ? 1 : index == 5 ? 10 : 2) * DEGREES_PER_100_METERS);
+            buckets.add(bucket);
+        }
+
+        final List<Encounter> encounters = finder.find(buckets, 0, executor);
+
+        Assert.assertEquals(2, encounters.size());
+        Assert.assertEquals("a", encounters.get(0).getFirstUnitId());
+        Assert.assertEquals("b", encounters.get(0).getSecondUnitId());
+        Assert.assertEquals(0, encounters.get(0).getStartTime());
+        Assert.assertEquals(5 * BUCKET_MILLIS, encounters.get(0).getEndTime());
+        Assert.assertEquals(101, encounters.get(0).getMinDistanceInMeters(), 0);
+        Assert.assertEquals(6 * BUCKET_MILLIS, encounters.get(1).getStartTime());
+        Assert.assertEquals(8 * BUCKET_MILLIS, encounters.get(1).getEndTime());
+    }
+
+    @Test
+    public void findsTheSameContactsAsComparingEveryPair() {
+        final Random random = new Random(7);
+        for (final double latitude : new double[]{0, 45, -70}) {
+            final List<CoLocationFinder.TimeBucket> buckets = new ArrayList<>();
+            final Set<String> expected = new HashSet<>();
+            for (int index = 0; index < 150; index++) { // more buckets than a time partition holds
+                final CoLocationFinder.TimeBucket bucket = new CoLocationFinder.TimeBucket(index);
+                final List<double[]> positions = new ArrayList<>();
+                for (int unit = 0; unit < 20; unit++) {
+                    final double[] position = {latitude + random.nextDouble() * 0.02, 10 + random.nextDouble() * 0.05};
+                    bucket.add("unit-" + unit, position[0], position[1]);
+                    positions.add(position);
+                }
+                for (int unit = 0; unit < positions.size(); unit++) {
+                    for (int other = unit + 1; other < positions.size(); other++) {
+                        if (GeometryTools.distanceInMeters(positions.get(unit)[0], positions.get(unit)[1],
+                                positions.get(other)[0], positions.get(other)[1]) <= MAX_DISTANCE_IN_METERS) {
+                            expected.add(contact("unit-" + unit, "unit-" + other, index));
+                        }
+                    }
+                }
+                buckets.add(bucket);
+            }
+
+            final List<Encounter> encounters = finder.find(buckets, latitude + 0.02, executor);
+
+            final Set<String> found = new HashSet<>();
+            for (final Encounter encounter : encounters) {
+                Assert.assertTrue(encounter.getFirstUnitId().compareTo(encounter.getSecondUnitId()) < 0);
+                Assert.assertTrue(encounter.getMinDistanceInMeters() <= MAX_DISTANCE_IN_METERS + 1);
+                for (long time = encounter.getStartTime(); time < encounter.getEndTime(); time += BUCKET_MILLIS) {
+                    Assert.assertTrue("buckets of an encounter are reported once",
+                            found.add(contact(encounter.getFirstUnitId(), encounter.getSecondUnitId(), time / BUCKET_MILLIS)));
+                }
+            }
+            Assert.assertFalse(expected.isEmpty());
+            Assert.assertEquals(expected, found);
+        }
+    }
+
+    @Test
+    public void findsNothingWithoutCloseUnits() {
+        final CoLocationFinder.TimeBucket bucket = new CoLocationFinder.TimeBucket(0);
+        bucket.add("a", 0, 0);
+        bucket.add("b", 0, 4 * DEGREES_PER_100_METERS);
+
+        Assert.assertEquals(Collections.emptyList(), finder.find(Collections.singletonList(bucket), 0, executor));
+        Assert.assertEquals(Collections.emptyList(), finder.find(Collections.emptyList(), 0, executor));
+    }
+
+    private static String contact(final String unitId, final String otherUnitId, final long bucketIndex) {
+        return unitId.compareTo(otherUnitId) < 0
+                ? unitId + '|' + otherUnitId + '|' + bucketIndex : otherUnitId + '|' + unitId + '|' + bucketIndex;
+    }
+}
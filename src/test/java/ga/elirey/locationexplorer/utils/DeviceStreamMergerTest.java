@@ -0,0 +1,103 @@
+package ga.elirey.locationexplorer.utils;
+
+import ga.elirey.locationexplorer.model.GPSPoint;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static ga.elirey.locationexplorer.utils.TrackFixtures.pointOf;
+
+/**
+ * Merge of the fixes of several devices into one time-ordered track
+ */
+public class DeviceStreamMergerTest {
+
+    private final DeviceStreamMerger merger = new DeviceStreamMerger(2000, 10);
+
+    @Test
+    public void mergesTheDevicesInTimeOrder() {
+        final List<GPSPoint> points = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            points.add(point("a", i * 10_000, 0, i * 0.01, 5));
+        }
+        for (int i = 0; i < 5; i++) {
+            points.add(point("b", 5_000 + i * 10_000, 1, i * 0.01, 5));
+        }
+
+        final List<GPSPoint> merged = merger.merge(points);
+
+        Assert.assertEquals(10, merged.size());
+        for (int i = 0; i < merged.size(); i++) {
+            Assert.assertEquals(i * 5_000, merged.get(i).getTimestampAsMilliSeconds() - points.get(0).getTimestampAsMilliSeconds());
+            Assert.assertEquals(i % 2 == 0 ? "a" : "b", merged.get(i).getCollectorId());
+        }
+    }
+
+    @Test
+    public void keepsTheMostAccurateOfNearDuplicates() {
+        final GPSPoint coarse = point("a", 0, 0, 0, 20);
+        final GPSPoint precise = point("b", 1_000, 0, 0.00001, 5);
+        final GPSPoint later = point("a", 60_000, 0, 0.01, 20);
+        final GPSPoint farAway = point("b", 60_500, 0, 0.02, 5);
+
+        final List<GPSPoint> merged = merger.merge(Arrays.asList(coarse, later, precise, farAway));
+
+        Assert.assertEquals(Arrays.asList(precise, later, farAway), merged);
+    }
+
+    @Test
+    public void keepsTheFixesOfASingleDevice() {
+        final List<GPSPoint> points = Arrays.asList(point("a", 0, 0, 0, 5), point("a", 1_000, 0, 0, 5));
+
+        Assert.assertSame(points, merger.merge(points));
+    }
+
+    @Test
+    public void keepsEveryFixInTimeOrderWithoutDuplicates() {
+        final Random random = new Random(19);
+        final DeviceStreamMerger withoutDuplicates = new DeviceStreamMerger(0, -1);
+        for (int track = 0; track < 50; track++) {
+            final List<GPSPoint> points = new ArrayList<>();
+            final int devices = 1 + random.nextInt(5);
+            for (int device = 0; device < devices; device++) {
+                long time = random.nextInt(10_000);
+                for (int i = random.nextInt(100); i > 0; i--) {
+                    time += 1 + random.nextInt(10_000);
+                    points.add(point("device-" + device, time, random.nextDouble(), random.nextDouble(), 5));
+                }
+            }
+
+            final List<GPSPoint> merged = withoutDuplicates.merge(points);
+
+            Assert.assertEquals(points.size(), merged.size());
+            Assert.assertTrue(merged.containsAll(points));
+            for (int i = 1; i < merged.size(); i++) {
+                Assert.assertTrue(merged.get(i - 1).getTimestampAsMilliSeconds() <= merged.get(i).getTimestampAsMilliSeconds());
+            }
+            final int[] selected = withoutDuplicates.select(Fixes.of(points));
+            Assert.assertEquals(merged.size(), selected.length);
+            for (int i = 0; i < selected.length; i++) {
+                Assert.assertSame(merged.get(i), points.get(selected[i]));
+            }
+            final List<GPSPoint> sorted = new ArrayList<>(points);
+            sorted.sort(Comparator.comparingLong(GPSPoint::getTimestampAsMilliSeconds));
+            for (int i = 0; i < merged.size(); i++) {
+                Assert.assertEquals(sorted.get(i).getTimestampAsMilliSeconds(), merged.get(i).getTimestampAsMilliSeconds());
+            }
+        }
+    }
+
+    private static GPSPoint point(final String device, final long millis, final double latitude, final double longitude,
+                                  final double accuracy) {
+        return pointOf(device, millis)
+                .latitude(latitude)
+                .longitude(longitude)
+                .accuracy(accuracy)
+                .build();
+    }
+}
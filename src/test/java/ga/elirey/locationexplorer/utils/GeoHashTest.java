@@ -0,0 +1,59 @@
+package ga.elirey.locationexplorer.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Geohash encoding and covering of bounding boxes by geohash ranges
+ */
+public class GeoHashTest {
+
+    @Test
+    public void encodesKnownLocations() {
+        Assert.assertEquals("u4pruydqqvj", GeoHash.encode(57.64911, 10.40744, 11));
+        Assert.assertEquals("ezs42", GeoHash.encode(42.6, -5.6, 5));
+        Assert.assertEquals(GeoHash.MAX_PRECISION, GeoHash.encode(0, 0).length());
+    }
+
+    @Test
+    public void coarserGeohashesArePrefixes() {
+        final String geohash = GeoHash.encode(48.8566, 2.3522);
+        for (int precision = 1; precision < GeoHash.MAX_PRECISION; precision++) {
+            Assert.assertTrue(geohash.startsWith(GeoHash.encode(48.8566, 2.3522, precision)));
+        }
+    }
+
+    @Test
+    public void rangesCoverEveryLocationOfTheBox() {
+        final Random random = new Random(3);
+        for (int box = 0; box < 200; box++) {
+            final double minLatitude = random.nextDouble() * 170 - 85;
+            final double minLongitude = random.nextDouble() * 350 - 175;
+            final double maxLatitude = Math.min(90, minLatitude + random.nextDouble() * Math.pow(10, -random.nextInt(4)));
+            final double maxLongitude = Math.min(180, minLongitude + random.nextDouble() * Math.pow(10, -random.nextInt(4)));
+            final int maxCells = 1 + random.nextInt(32);
+
+            final List<GeoHash.Range> ranges = GeoHash.coveringRanges(minLatitude, minLongitude, maxLatitude, maxLongitude, maxCells);
+
+            Assert.assertTrue(ranges.size() <= maxCells);
+            for (int i = 1; i < ranges.size(); i++) {
+                Assert.assertTrue("ranges are sorted and disjoint",
+                        ranges.get(i - 1).getUpperBound().compareTo(ranges.get(i).getLowerBound()) < 0);
+            }
+            for (int location = 0; location < 50; location++) {
+                final double latitude = minLatitude + random.nextDouble() * (maxLatitude - minLatitude);
+                final double longitude = minLongitude + random.nextDouble() * (maxLongitude - minLongitude);
+                Assert.assertTrue(isCovered(GeoHash.encode(latitude, longitude), ranges));
+            }
+            Assert.assertTrue(isCovered(GeoHash.encode(maxLatitude, maxLongitude), ranges));
+        }
+    }
+
+    private static boolean isCovered(final String geohash, final List<GeoHash.Range> ranges) {
+        return ranges.stream().anyMatch(range ->
+                geohash.compareTo(range.getLowerBound()) >= 0 && geohash.compareTo(range.getUpperBound()) < 0);
+    }
+}
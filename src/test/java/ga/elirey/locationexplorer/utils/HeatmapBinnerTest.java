@@ -0,0 +1,71 @@
+package ga.elirey.locationexplorer.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Web mercator tiling of the heatmaps, which must match the tiles of the slippy map
+ */
+public class HeatmapBinnerTest {
+
+    @Test
+    public void findsTheSlippyMapTiles() {
+        // Paris, New York, Sydney and Rio, with the tile numbers of the OpenStreetMap slippy map
+        assertTile(48.8566, 2.3522, 10, 518, 352);
+        assertTile(40.7128, -74.0060, 12, 1205, 1540);
+        assertTile(-33.8688, 151.2093, 8, 235, 153);
+        assertTile(-22.9068, -43.1729, 5, 12, 18);
+        assertTile(48.8566, 2.3522, 0, 0, 0);
+    }
+
+    @Test
+    public void splitsTheWorldOnTheEquatorAndTheGreenwichMeridian() {
+        assertTile(0.0001, -0.0001, 1, 0, 0);
+        assertTile(0.0001, 0, 1, 1, 0);
+        assertTile(0, 0.0001, 1, 1, 1);
+        assertTile(-0.0001, -0.0001, 1, 0, 1);
+    }
+
+    @Test
+    public void clampsTheLocationsOutsideTheMercatorProjection() {
+        final int tiles = 1 << HeatmapBinner.MAX_ZOOM;
+        assertTile(90, 180, HeatmapBinner.MAX_ZOOM, tiles - 1, 0);
+        assertTile(-90, -180, HeatmapBinner.MAX_ZOOM, 0, tiles - 1);
+        assertTile(89, 0, 3, 4, 0);
+        assertTile(-89, 0, 3, 4, 7);
+    }
+
+    @Test
+    public void countsTheFirstCoordinatesPerTile() {
+        final double[] latitudes = {48.85, 48.86, -33.87, 40.71, 40.71};
+        final double[] longitudes = {2.35, 2.34, 151.21, -74.01, -74.01};
+
+        final LongIntHashMap counts = HeatmapBinner.bin(latitudes, longitudes, 4, 2);
+
+        Assert.assertEquals(3, counts.size());
+        Assert.assertEquals(2, counts.get(HeatmapBinner.cellKey(2, 1)));
+        Assert.assertEquals(1, counts.get(HeatmapBinner.cellKey(3, 2)));
+        Assert.assertEquals("only the first coordinates are read", 1, counts.get(HeatmapBinner.cellKey(1, 1)));
+    }
+
+    @Test
+    public void packsTheTileCoordinatesInTheCellKey() {
+        final int max = (1 << HeatmapBinner.MAX_ZOOM) - 1;
+        for (final int[] tile : new int[][]{{0, 0}, {0, max}, {max, 0}, {max, max}, {12345, 678}}) {
+            final long key = HeatmapBinner.cellKey(tile[0], tile[1]);
+            Assert.assertEquals(tile[0], HeatmapBinner.cellX(key));
+            Assert.assertEquals(tile[1], HeatmapBinner.cellY(key));
+        }
+        Assert.assertNotEquals(HeatmapBinner.cellKey(1, 2), HeatmapBinner.cellKey(2, 1));
+    }
+
+    private static void assertTile(final double latitude, final double longitude, final int zoom, final int x, final int y) {
+        final LongIntHashMap counts = HeatmapBinner.bin(new double[]{latitude}, new double[]{longitude}, 1, zoom);
+        final long[] keys = new long[1];
+        counts.forEach((key, count) -> keys[0] = key);
+
+        Assert.assertEquals(1, counts.size());
+        Assert.assertEquals(String.format("tile x of %f, %f at zoom %d", latitude, longitude, zoom), x, HeatmapBinner.cellX(keys[0]));
+        Assert.assertEquals(String.format("tile y of %f, %f at zoom %d", latitude, longitude, zoom), y, HeatmapBinner.cellY(keys[0]));
+    }
+}
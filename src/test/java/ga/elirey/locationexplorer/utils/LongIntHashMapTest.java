@@ -0,0 +1,88 @@
+package ga.elirey.locationexplorer.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Counters of the open addressing map, compared to a boxed map, through the rehashes and with the key used as the
+ * empty slot marker
+ */
+public class LongIntHashMapTest {
+
+    @Test
+    public void countsLikeABoxedMapAcrossRehashes() {
+        final Random random = new Random(41);
+        final LongIntHashMap map = new LongIntHashMap(1); // 16 slots, rehashed many times
+        final Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            // few distinct keys so that most increments hit an existing counter, and the extreme keys
+            final long key = random.nextInt(10) == 0 ? pick(random, Long.MIN_VALUE, Long.MAX_VALUE, 0, -1)
+                    : random.nextInt(20_000) * 0x1_0000_0001L;
+            final int delta = random.nextInt(5) - 1;
+            map.addTo(key, delta);
+            expected.merge(key, delta, Integer::sum);
+        }
+
+        Assert.assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> Assert.assertEquals((int) value, map.get(key)));
+        final Map<Long, Integer> visited = new HashMap<>();
+        map.forEach((key, value) -> Assert.assertNull("each key is visited once", visited.put(key, value)));
+        Assert.assertEquals(expected, visited);
+        Assert.assertEquals(0, map.get(12345));
+    }
+
+    @Test
+    public void keepsTheEmptySlotKeyApart() {
+        final LongIntHashMap map = new LongIntHashMap(1);
+        Assert.assertEquals(0, map.get(Long.MIN_VALUE));
+
+        map.addTo(Long.MIN_VALUE, 3);
+        for (int key = 0; key < 100; key++) {
+            map.addTo(key, 1);
+        }
+        map.addTo(Long.MIN_VALUE, 2);
+
+        Assert.assertEquals(101, map.size());
+        Assert.assertEquals(5, map.get(Long.MIN_VALUE));
+        Assert.assertEquals(1, map.get(0));
+        final int[] sentinelVisits = new int[1];
+        map.forEach((key, value) -> {
+            if (key == Long.MIN_VALUE) {
+                sentinelVisits[0]++;
+                Assert.assertEquals(5, value);
+            }
+        });
+        Assert.assertEquals(1, sentinelVisits[0]);
+    }
+
+    @Test
+    public void mergesTheCountersOfAnotherMap() {
+        final LongIntHashMap map = new LongIntHashMap();
+        map.addTo(1, 1);
+        map.addTo(2, 2);
+        map.addTo(Long.MIN_VALUE, 3);
+        final LongIntHashMap other = new LongIntHashMap(1);
+        for (int key = 2; key < 1_000; key++) {
+            other.addTo(key, 10);
+        }
+        other.addTo(Long.MIN_VALUE, 30);
+
+        map.addAll(other);
+
+        Assert.assertEquals(1_000, map.size());
+        Assert.assertEquals(1, map.get(1));
+        Assert.assertEquals(12, map.get(2));
+        Assert.assertEquals(10, map.get(999));
+        Assert.assertEquals(33, map.get(Long.MIN_VALUE));
+        Assert.assertEquals("the merged map is left as is", 999, other.size());
+        Assert.assertEquals(10, other.get(2));
+    }
+
+    private static long pick(final Random random, final long... keys) {
+        return keys[random.nextInt(keys.length)];
+    }
+}
@@ -0,0 +1,177 @@
+package ga.elirey.locationexplorer.utils;
+
+import ga.elirey.locationexplorer.data.TrackKey;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Storage of fixes in chunks of off-heap slabs, their reuse and eviction, and the completeness the tracks report
+ */
+public class OffHeapTrackStoreTest {
+
+    private static final int CHUNK_FIXES = 4;
+    private static final int CHUNK_BYTES = 2 * Integer.BYTES + CHUNK_FIXES * 60;
+    private static final TrackKey FIRST = new TrackKey("first", "context");
+    private static final TrackKey SECOND = new TrackKey("second", "context");
+
+    @Test
+    public void reusesTheChunksReleasedByTheRetention() {
+        final OffHeapTrackStore store = new OffHeapTrackStore(16 * CHUNK_BYTES, 2 * CHUNK_BYTES, CHUNK_FIXES, 10_000);
+        for (int second = 0; second < 1_000; second++) {
+            append(store, FIRST, second * 1_000L, "a");
+        }
+
+        Assert.assertEquals("a 10 s retention holds at most 4 chunks of 4 fixes", 2 * 2 * CHUNK_BYTES, store.getAllocatedBytes());
+        Assert.assertTrue(store.getUsedBytes() <= 4 * CHUNK_BYTES);
+        Assert.assertEquals(0, store.getEvictedChunks());
+        final List<Long> times = times(store, FIRST, Long.MIN_VALUE, Long.MAX_VALUE);
+        Assert.assertEquals(999_000L, (long) times.get(times.size() - 1));
+        Assert.assertTrue(times.get(0) >= 999_000L - 10_000 - CHUNK_FIXES * 1_000);
+        Assert.assertEquals(times.get(0), store.read(FIRST, OffHeapTrackStore.TrackView::getCompleteSinceMillis).get());
+    }
+
+    @Test
+    public void evictsTheOldestChunkOfTheLeastRecentlyUpdatedTrack() {
+        final OffHeapTrackStore store = new OffHeapTrackStore(4 * CHUNK_BYTES, 2 * CHUNK_BYTES, CHUNK_FIXES, 0);
+        for (int i = 0; i < 2 * CHUNK_FIXES; i++) {
+            append(store, FIRST, i, "a");
+        }
+        for (int i = 0; i < 2 * CHUNK_FIXES; i++) {
+            append(store, SECOND, i, "a");
+        }
+        Assert.assertEquals(0, store.getEvictedChunks());
+
+        append(store, SECOND, 2 * CHUNK_FIXES, "a"); // needs a fifth chunk
+
+        Assert.assertEquals(1, store.getEvictedChunks());
+        Assert.assertEquals(4 * CHUNK_BYTES, store.getAllocatedBytes());
+        Assert.assertEquals(times(4, 8), times(store, FIRST, Long.MIN_VALUE, Long.MAX_VALUE));
+        Assert.assertEquals(times(0, 9), times(store, SECOND, Long.MIN_VALUE, Long.MAX_VALUE));
+        Assert.assertEquals(4L, (long) store.read(FIRST, OffHeapTrackStore.TrackView::getCompleteSinceMillis).get());
+        Assert.assertEquals(0L, (long) store.read(SECOND, OffHeapTrackStore.TrackView::getCompleteSinceMillis).get());
+    }
+
+    @Test
+    public void evictsWholeTracksAndForgetsWhatTheyHeld() {
+        final OffHeapTrackStore store = new OffHeapTrackStore(2 * CHUNK_BYTES, 2 * CHUNK_BYTES, CHUNK_FIXES, 0);
+        append(store, FIRST, 0, "a");
+        for (int i = 0; i < 2 * CHUNK_FIXES; i++) {
+            append(store, SECOND, i, "a");
+        }
+
+        Assert.assertEquals(1, store.getTrackCount());
+        Assert.assertFalse(store.read(FIRST, OffHeapTrackStore.TrackView::size).isPresent());
+
+        append(store, FIRST, 100, "a");
+
+        Assert.assertEquals("fixes before the first one stored again may be missing",
+                100L, (long) store.read(FIRST, OffHeapTrackStore.TrackView::getCompleteSinceMillis).get());
+    }
+
+    @Test
+    public void putsLateFixesInPlaceOrDropsThem() {
+        final OffHeapTrackStore store = new OffHeapTrackStore(16 * CHUNK_BYTES, 2 * CHUNK_BYTES, CHUNK_FIXES, 0);
+        for (int i = 0; i < 6; i++) {
+            append(store, FIRST, i * 10, "a");
+        }
+
+        Assert.assertTrue(append(store, FIRST, 45, "a")); // within the last chunk
+        Assert.assertFalse(append(store, FIRST, 5, "a")); // before the last chunk
+
+        Assert.assertEquals(1, store.getDroppedFixes());
+        final List<Long> expected = times(0, 6);
+        expected.replaceAll(time -> time * 10);
+        expected.add(5, 45L);
+        Assert.assertEquals(expected, times(store, FIRST, Long.MIN_VALUE, Long.MAX_VALUE));
+        Assert.assertEquals(40L, (long) store.read(FIRST, OffHeapTrackStore.TrackView::getCompleteSinceMillis).get());
+    }
+
+    @Test
+    public void replacesUpsertedFixes() {
+        final OffHeapTrackStore store = new OffHeapTrackStore(16 * CHUNK_BYTES, 2 * CHUNK_BYTES, CHUNK_FIXES, 0);
+        append(store, FIRST, 0, "a");
+        append(store, FIRST, 10, "a");
+        append(store, FIRST, 10, "b");
+        append(store, FIRST, 20, "a");
+
+        Assert.assertTrue(store.append(FIRST, 10, 1, 2, 3, 4, 5, 6, "a"));
+
+        Assert.assertEquals(4, (int) store.read(FIRST, OffHeapTrackStore.TrackView::size).get());
+        final List<String> upserted = new ArrayList<>();
+        store.read(FIRST, track -> {
+            track.forEachBetween(9, 11, fix -> upserted.add(fix.getCollectorId() + ':' + fix.getLatitude()));
+            return track;
+        });
+        Assert.assertEquals(2, upserted.size());
+        Assert.assertTrue(upserted.contains("a:1.0"));
+        Assert.assertTrue(upserted.contains("b:0.0"));
+    }
+
+    @Test
+    public void readsTheFixesBetweenTwoExcludedTimes() {
+        final OffHeapTrackStore store = new OffHeapTrackStore(16 * CHUNK_BYTES, 2 * CHUNK_BYTES, CHUNK_FIXES, 0);
+        for (int i = 0; i < 20; i++) {
+            append(store, FIRST, i * 10, "a");
+        }
+
+        Assert.assertEquals(times(5, 12).size(), times(store, FIRST, 49, 120).size());
+        Assert.assertEquals(50L, (long) times(store, FIRST, 40, 120).get(0));
+        Assert.assertEquals(110L, (long) times(store, FIRST, 40, 120).get(6));
+        Assert.assertTrue(times(store, FIRST, 190, Long.MAX_VALUE).isEmpty());
+        Assert.assertTrue(times(store, FIRST, 41, 49).isEmpty());
+        Assert.assertFalse(store.read(SECOND, OffHeapTrackStore.TrackView::size).isPresent());
+    }
+
+    @Test
+    public void viewsTheFixesBetweenTwoTimesOrderedByDevice() {
+        final OffHeapTrackStore store = new OffHeapTrackStore(16 * CHUNK_BYTES, 2 * CHUNK_BYTES, CHUNK_FIXES, 0);
+        for (int i = 0; i < 20; i++) {
+            store.append(FIRST, i * 10, i, -i, 0, 0, 0, 5, i % 3 == 0 ? "b" : "a");
+        }
+
+        final List<String> fixes = new ArrayList<>();
+        store.read(FIRST, track -> {
+            final OffHeapTrackStore.FixesView view = track.fixesBetween(40, 130);
+            for (int i = 0; i < view.size(); i++) {
+                fixes.add(view.deviceId(i) + ':' + view.time(i));
+                Assert.assertEquals(view.time(i) / 10.0, view.latitude(i), 0);
+                Assert.assertEquals(-view.time(i) / 10.0, view.longitude(i), 0);
+                Assert.assertEquals(5, view.accuracy(i), 0);
+            }
+            Assert.assertEquals("first", view.toPoint(0).getUnitId());
+            Assert.assertEquals(view.time(0), view.toPoint(0).getTimestampAsMilliSeconds());
+            return track;
+        });
+
+        Assert.assertEquals(Arrays.asList("a:50", "a:70", "a:80", "a:100", "a:110", "b:60", "b:90", "b:120"), fixes);
+    }
+
+    private static boolean append(final OffHeapTrackStore store, final TrackKey trackKey, final long time, final String deviceId) {
+        return store.append(trackKey, time, 0, 0, 0, 0, 0, 0, deviceId);
+    }
+
+    private static List<Long> times(final OffHeapTrackStore store, final TrackKey trackKey, final long afterMillis,
+                                    final long beforeMillis) {
+        final List<Long> times = new ArrayList<>();
+        store.read(trackKey, track -> {
+            track.forEachBetween(afterMillis, beforeMillis, fix -> times.add(fix.getTimestampAsMilliSeconds()));
+            return track;
+        });
+        return times;
+    }
+
+    /**
+     * @return the times from a first one included to a last one excluded
+     */
+    private static List<Long> times(final long first, final long last) {
+        final List<Long> times = new ArrayList<>();
+        for (long time = first; time < last; time++) {
+            times.add(time);
+        }
+        return times;
+    }
+}
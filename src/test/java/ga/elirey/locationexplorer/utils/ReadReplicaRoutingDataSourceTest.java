@@ -0,0 +1,86 @@
+package ga.elirey.locationexplorer.utils;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+
+/**
+ * Routing between two in-memory databases, each one telling its name
+ */
+public class ReadReplicaRoutingDataSourceTest {
+
+    private static final String LAG_QUERY = "SELECT lag_millis FROM replication";
+
+    private DataSource primary;
+    private DataSource replica;
+
+    @Before
+    public void createDatabases() {
+        primary = database("routing-primary");
+        replica = database("routing-replica");
+        new JdbcTemplate(replica).execute("CREATE TABLE replication (lag_millis BIGINT)");
+        new JdbcTemplate(replica).execute("INSERT INTO replication VALUES (0)");
+    }
+
+    @Test
+    public void routesReadOnlyTransactionsToTheReplica() {
+        final ReadReplicaRoutingDataSource routing = routing(replica);
+
+        Assert.assertEquals("routing-replica", nodeName(routing, true));
+        Assert.assertEquals("routing-primary", nodeName(routing, false));
+        Assert.assertEquals("routing-primary", new JdbcTemplate(new LazyConnectionDataSourceProxy(routing))
+                .queryForObject("SELECT name FROM node", String.class));
+        Assert.assertEquals(1, routing.getReplicas().get(0).getRoutedConnections());
+    }
+
+    @Test
+    public void fallsBackToThePrimaryWhileTheReplicaLags() {
+        final ReadReplicaRoutingDataSource routing = routing(replica);
+        new JdbcTemplate(replica).update("UPDATE replication SET lag_millis = 60000");
+        routing.checkReplicas();
+
+        Assert.assertFalse(routing.getReplicas().get(0).isUsable());
+        Assert.assertEquals("routing-primary", nodeName(routing, true));
+        Assert.assertEquals(1, routing.getPrimaryFallbacks());
+
+        new JdbcTemplate(replica).update("UPDATE replication SET lag_millis = 10");
+        routing.checkReplicas();
+        Assert.assertEquals("routing-replica", nodeName(routing, true));
+    }
+
+    @Test
+    public void fallsBackToThePrimaryWhenTheReplicaIsUnreachable() {
+        final ReadReplicaRoutingDataSource routing = routing(new DriverManagerDataSource("jdbc:h2:mem:routing-missing;IFEXISTS=TRUE", "sa", ""));
+        routing.checkReplicas();
+
+        Assert.assertEquals("routing-primary", nodeName(routing, true));
+    }
+
+    private ReadReplicaRoutingDataSource routing(final DataSource replica) {
+        return new ReadReplicaRoutingDataSource(primary, Collections.singletonMap("replica-0", replica), 5000, LAG_QUERY);
+    }
+
+    private static String nodeName(final ReadReplicaRoutingDataSource routing, final boolean readOnly) {
+        final DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+        final TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        transactionTemplate.setReadOnly(readOnly);
+        return transactionTemplate.execute(status -> new JdbcTemplate(dataSource).queryForObject("SELECT name FROM node", String.class));
+    }
+
+    private static DataSource database(final String name) {
+        final DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+        final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+        jdbcTemplate.execute("CREATE TABLE node (name VARCHAR(32))");
+        jdbcTemplate.update("INSERT INTO node VALUES (?)", name);
+        return dataSource;
+    }
+}
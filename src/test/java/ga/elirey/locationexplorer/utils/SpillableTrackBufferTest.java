@@ -0,0 +1,163 @@
+package ga.elirey.locationexplorer.utils;
+
+import ga.elirey.locationexplorer.model.GPSPoint;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static ga.elirey.locationexplorer.utils.TrackFixtures.START_MILLIS;
+import static ga.elirey.locationexplorer.utils.TrackFixtures.point;
+import static ga.elirey.locationexplorer.utils.TrackFixtures.pointOf;
+import static ga.elirey.locationexplorer.utils.TrackFixtures.randomWalk;
+
+/**
+ * Buffering of tracks on the heap and in spill files, and the path filters selecting the points of a buffer
+ */
+public class SpillableTrackBufferTest {
+
+    private static final int SEGMENT_RECORDS = 1 << 20;
+    private static final long RECORD_BYTES = 60;
+
+    @Rule
+    public final TemporaryFolder spillDirectory = new TemporaryFolder();
+
+    @Test
+    public void keepsSmallTracksOnTheHeap() {
+        final List<GPSPoint> points = randomTrack(new Random(23), 100);
+        try (SpillableTrackBuffer buffer = newBuffer(1_000 * RECORD_BYTES)) {
+            points.forEach(buffer::append);
+
+            Assert.assertFalse(buffer.isSpilled());
+            assertSamePoints(points, buffer);
+            Assert.assertEquals(0, spillFiles().length);
+        }
+    }
+
+    @Test
+    public void spillsAboveTheThresholdAcrossSegments() {
+        final int size = SEGMENT_RECORDS + 1_000;
+        final List<GPSPoint> points = randomTrack(new Random(29), 1_000);
+        try (SpillableTrackBuffer buffer = newBuffer(100 * RECORD_BYTES)) {
+            for (int i = 0; i < size; i++) {
+                buffer.append(points.get(i % points.size()));
+                Assert.assertEquals(i >= 100, buffer.isSpilled());
+            }
+
+            Assert.assertEquals(size, buffer.size());
+            Assert.assertEquals(1, spillFiles().length);
+            Assert.assertEquals(SpillableTrackBuffer.spilledBytes(size), spillFiles()[0].length());
+            for (final int index : new int[]{0, 99, 100, SEGMENT_RECORDS - 1, SEGMENT_RECORDS, size - 1}) {
+                Assert.assertEquals(points.get(index % points.size()), buffer.toPoint(index));
+            }
+        }
+        Assert.assertEquals("the spill file is deleted on close", 0, spillFiles().length);
+    }
+
+    @Test
+    public void copiesPointsBetweenBuffers() {
+        final List<GPSPoint> points = randomTrack(new Random(31), 500);
+        try (SpillableTrackBuffer source = newBuffer(100 * RECORD_BYTES);
+             SpillableTrackBuffer target = newBuffer(1_000 * RECORD_BYTES)) {
+            points.forEach(source::append);
+            for (int i = 0; i < source.size(); i++) {
+                target.append(source, i);
+            }
+
+            Assert.assertTrue(source.isSpilled());
+            Assert.assertFalse(target.isSpilled());
+            assertSamePoints(points, target);
+        }
+    }
+
+    @Test
+    public void filtersASpilledTrackLikeTheListAlgorithms() {
+        final Random random = new Random(37);
+        for (int track = 0; track < 20; track++) {
+            final List<GPSPoint> points = randomTrack(random, 2 + random.nextInt(3_000));
+            final int coefficient = 1 + random.nextInt(20);
+            final RamerDouglasPeuckerAlgorithm<GPSPoint> rdp = new RamerDouglasPeuckerAlgorithm<>(coefficient);
+            final GpsJumpsFilterAlgorithm<GPSPoint> gjf = new GpsJumpsFilterAlgorithm<>();
+            try (SpillableTrackBuffer buffer = newBuffer(100 * RECORD_BYTES)) {
+                points.forEach(buffer::append);
+
+                final BitSet optimized = rdp.select(buffer);
+                final BitSet all = new BitSet(buffer.size());
+                all.set(0, buffer.size());
+
+                Assert.assertEquals(rdp.apply(points), toPoints(buffer, optimized));
+                Assert.assertEquals(gjf.apply(points), toPoints(buffer, gjf.select(buffer, all)));
+                Assert.assertEquals(gjf.apply(rdp.apply(points)), toPoints(buffer, gjf.select(buffer, optimized)));
+            }
+        }
+    }
+
+    @Test
+    public void optimizesLongTracksWithoutRecursion() {
+        // a spiral keeps most of its points, split into ranges without recursing
+        final List<GPSPoint> points = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            final double angle = i * 0.01;
+            points.add(point(i, Math.sin(angle) * (1 + i * 1e-5), Math.cos(angle) * (1 + i * 1e-5)));
+        }
+        try (SpillableTrackBuffer buffer = newBuffer(1_000 * RECORD_BYTES)) {
+            points.forEach(buffer::append);
+
+            final BitSet kept = new RamerDouglasPeuckerAlgorithm<GPSPoint>(1000).select(buffer);
+
+            Assert.assertTrue(kept.get(0) && kept.get(points.size() - 1));
+            Assert.assertTrue(kept.cardinality() > points.size() / 2);
+        }
+    }
+
+    private SpillableTrackBuffer newBuffer(final long spillThresholdBytes) {
+        return new SpillableTrackBuffer("unit", spillThresholdBytes, spillDirectory.getRoot().toPath());
+    }
+
+    private File[] spillFiles() {
+        return spillDirectory.getRoot().listFiles();
+    }
+
+    private static void assertSamePoints(final List<GPSPoint> points, final SpillableTrackBuffer buffer) {
+        Assert.assertEquals(points.size(), buffer.size());
+        for (int i = 0; i < points.size(); i++) {
+            Assert.assertEquals(points.get(i), buffer.toPoint(i));
+        }
+    }
+
+    private static List<GPSPoint> toPoints(final SpillableTrackBuffer buffer, final BitSet kept) {
+        final List<GPSPoint> points = new ArrayList<>();
+        for (int i = kept.nextSetBit(0); i >= 0; i = kept.nextSetBit(i + 1)) {
+            points.add(buffer.toPoint(i));
+        }
+        return points;
+    }
+
+    /**
+     * Random walk of a unit carrying two devices, with occasional jumps
+     */
+    private static List<GPSPoint> randomTrack(final Random random, final int size) {
+        final List<GPSPoint> points = new ArrayList<>();
+        final double latitude = random.nextDouble() * 120 - 60;
+        final double longitude = random.nextDouble() * 300 - 150;
+        for (final GPSPoint position : randomWalk(random, size, latitude, longitude, 0.001)) {
+            final double jump = random.nextInt(20) == 0 ? 0.05 : 0;
+            points.add(pointOf(random.nextBoolean() ? "a" : "b", position.getTimestampAsMilliSeconds() - START_MILLIS
+                    + random.nextInt(1_000))
+                    .latitude(position.getLatitude() + jump)
+                    .longitude(position.getLongitude())
+                    .altitude(random.nextInt(100))
+                    .speed(random.nextDouble() * 10)
+                    .heading(random.nextDouble() * 360)
+                    .accuracy(random.nextDouble() * 20)
+                    .build());
+        }
+        return points;
+    }
+}
@@ -0,0 +1,114 @@
+package ga.elirey.locationexplorer.utils;
+
+import ga.elirey.locationexplorer.data.Interpolation;
+import ga.elirey.locationexplorer.model.GPSPoint;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static ga.elirey.locationexplorer.utils.TrackFixtures.START_MILLIS;
+import static ga.elirey.locationexplorer.utils.TrackFixtures.point;
+
+/**
+ * Positions of a track at a time, between its fixes, along a straight line or a great circle
+ */
+public class TimeIndexedTrackTest {
+
+    @Test
+    public void findsTheFixesAroundATimeAmongManyFixes() {
+        final Random random = new Random(7);
+        final List<GPSPoint> points = new ArrayList<>();
+        int second = 0;
+        for (int i = 0; i < 500; i++) {
+            second += 1 + random.nextInt(60);
+            points.add(point(second, random.nextDouble() * 10, random.nextDouble() * 10));
+        }
+        final TimeIndexedTrack track = new TimeIndexedTrack(points);
+
+        final long first = points.get(0).getTimestampAsMilliSeconds();
+        final long last = points.get(points.size() - 1).getTimestampAsMilliSeconds();
+        for (int i = 0; i < 1000; i++) {
+            final long time = first + (long) (random.nextDouble() * (last - first));
+            int after = 0;
+            while (points.get(after).getTimestampAsMilliSeconds() < time) {
+                after++;
+            }
+            final GPSPoint position = track.positionAt(time, Interpolation.LINEAR).get();
+
+            final GPSPoint before = points.get(Math.max(0, after - 1));
+            final GPSPoint next = points.get(after);
+            final double ratio = next == before ? 0 : (double) (time - before.getTimestampAsMilliSeconds())
+                    / (next.getTimestampAsMilliSeconds() - before.getTimestampAsMilliSeconds());
+            Assert.assertEquals(before.getLatitude() + (next.getLatitude() - before.getLatitude()) * ratio,
+                    position.getLatitude(), 1e-9);
+            Assert.assertEquals(time, position.getTimestampAsMilliSeconds());
+        }
+    }
+
+    @Test
+    public void returnsTheFixRecordedAtTheTime() {
+        final List<GPSPoint> points = Arrays.asList(point(0, 0, 0), point(60, 1, 1), point(120, 2, 2));
+        final TimeIndexedTrack track = new TimeIndexedTrack(points);
+
+        Assert.assertSame(points.get(1), track.positionAt(START_MILLIS + 60_000, Interpolation.LINEAR).get());
+        Assert.assertSame(points.get(2), track.positionAt(START_MILLIS + 120_000, Interpolation.GREAT_CIRCLE).get());
+    }
+
+    @Test
+    public void findsNothingOutsideTheTrack() {
+        final TimeIndexedTrack track = new TimeIndexedTrack(Arrays.asList(point(0, 0, 0), point(60, 1, 1)));
+
+        Assert.assertFalse(track.positionAt(START_MILLIS - 1, Interpolation.LINEAR).isPresent());
+        Assert.assertFalse(track.positionAt(START_MILLIS + 60_001, Interpolation.LINEAR).isPresent());
+        Assert.assertFalse(new TimeIndexedTrack(Collections.emptyList()).positionAt(START_MILLIS, Interpolation.LINEAR).isPresent());
+    }
+
+    @Test
+    public void interpolatesAlongTheGreatCircle() {
+        final TimeIndexedTrack track = new TimeIndexedTrack(Arrays.asList(point(0, 45, 0), point(60, 45, 90)));
+
+        final GPSPoint linear = track.positionAt(START_MILLIS + 30_000, Interpolation.LINEAR).get();
+        final GPSPoint greatCircle = track.positionAt(START_MILLIS + 30_000, Interpolation.GREAT_CIRCLE).get();
+
+        Assert.assertEquals(45, linear.getLatitude(), 1e-9);
+        Assert.assertEquals(45, linear.getLongitude(), 1e-9);
+        // the great circle between two points of a parallel bends toward the pole
+        Assert.assertEquals(Math.toDegrees(Math.atan(Math.sqrt(2))), greatCircle.getLatitude(), 1e-9);
+        Assert.assertEquals(45, greatCircle.getLongitude(), 1e-9);
+        Assert.assertEquals(GeometryTools.distanceInMeters(45, 0, greatCircle.getLatitude(), greatCircle.getLongitude()),
+                GeometryTools.distanceInMeters(greatCircle.getLatitude(), greatCircle.getLongitude(), 45, 90), 1e-3);
+    }
+
+    @Test
+    public void crossesTheAntimeridianTheShortWay() {
+        final TimeIndexedTrack eastward = new TimeIndexedTrack(Arrays.asList(point(0, 10, 179), point(60, 10, -179)));
+        final TimeIndexedTrack westward = new TimeIndexedTrack(Arrays.asList(point(0, 10, -179), point(60, 10, 179)));
+
+        for (final Interpolation interpolation : Interpolation.values()) {
+            Assert.assertEquals(179.5, eastward.positionAt(START_MILLIS + 15_000, interpolation).get().getLongitude(), 1e-2);
+            Assert.assertEquals(-179.5, eastward.positionAt(START_MILLIS + 45_000, interpolation).get().getLongitude(), 1e-2);
+            Assert.assertEquals(-179.5, westward.positionAt(START_MILLIS + 15_000, interpolation).get().getLongitude(), 1e-2);
+            Assert.assertEquals(180, Math.abs(westward.positionAt(START_MILLIS + 30_000, interpolation).get().getLongitude()), 1e-2);
+        }
+    }
+
+    @Test
+    public void resamplesAtAFixedPeriodFromTheFirstFix() {
+        final List<GPSPoint> points = Arrays.asList(point(0, 0, 0), point(60, 0, 6), point(100, 0, 10));
+
+        final List<GPSPoint> resampled = new TimeIndexedTrack(points).resample(30_000, Interpolation.LINEAR);
+
+        Assert.assertEquals(4, resampled.size());
+        Assert.assertSame(points.get(0), resampled.get(0));
+        Assert.assertEquals(3, resampled.get(1).getLongitude(), 1e-9);
+        Assert.assertSame(points.get(1), resampled.get(2));
+        Assert.assertEquals(9, resampled.get(3).getLongitude(), 1e-9);
+        Assert.assertEquals(START_MILLIS + 90_000, resampled.get(3).getTimestampAsMilliSeconds());
+        Assert.assertTrue(new TimeIndexedTrack(Collections.emptyList()).resample(30_000, Interpolation.LINEAR).isEmpty());
+    }
+}
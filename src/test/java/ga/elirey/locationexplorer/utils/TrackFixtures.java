@@ -0,0 +1,58 @@
+package ga.elirey.locationexplorer.utils;
+
+import ga.elirey.locationexplorer.model.GPSPoint;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Points of a unit recorded from the start of 2020, and random walks of it, shared by the tests
+ */
+public final class TrackFixtures {
+
+    public static final LocalDateTime START = LocalDateTime.of(2020, 1, 1, 0, 0);
+    public static final long START_MILLIS = START.toInstant(ZoneOffset.UTC).toEpochMilli();
+
+    private TrackFixtures() {
+    }
+
+    /**
+     * @return a point of the unit recorded by the device this many milliseconds after the start, to complete
+     */
+    public static GPSPoint.GPSPointBuilder pointOf(final String device, final long millis) {
+        return GPSPoint.builder()
+                .unitId("unit")
+                .collectorId(device)
+                .timestamp(START.plusNanos(millis * 1_000_000));
+    }
+
+    /**
+     * @return a point of the unit recorded by a single device this many seconds after the start
+     */
+    public static GPSPoint point(final int second, final double latitude, final double longitude) {
+        return pointOf("device", second * 1_000L)
+                .latitude(latitude)
+                .longitude(longitude)
+                .build();
+    }
+
+    /**
+     * Random walk of the unit from a position, a fix a second, moving by up to half a step in latitude and in
+     * longitude between two fixes
+     */
+    public static List<GPSPoint> randomWalk(final Random random, final int size, final double latitude,
+                                            final double longitude, final double stepDegrees) {
+        final List<GPSPoint> points = new ArrayList<>(size);
+        double walkLatitude = latitude;
+        double walkLongitude = longitude;
+        for (int i = 0; i < size; i++) {
+            walkLatitude += (random.nextDouble() - 0.5) * stepDegrees;
+            walkLongitude += (random.nextDouble() - 0.5) * stepDegrees;
+            points.add(point(i, walkLatitude, walkLongitude));
+        }
+        return points;
+    }
+}
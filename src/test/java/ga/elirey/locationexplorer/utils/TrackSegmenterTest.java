@@ -0,0 +1,156 @@
+package ga.elirey.locationexplorer.utils;
+
+import ga.elirey.locationexplorer.model.GPSPoint;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static ga.elirey.locationexplorer.utils.TrackFixtures.pointOf;
+
+/**
+ * Segmentation of tracks and sharing of a point budget between the segments
+ */
+public class TrackSegmenterTest {
+
+    private static final double DEGREES_PER_100_METERS = 0.0009;
+
+    private final TrackSegmenter segmenter = new TrackSegmenter(TimeUnit.MINUTES.toMillis(30), 100, TimeUnit.MINUTES.toMillis(15));
+
+    @Test
+    public void splitsOnTimeGaps() {
+        final List<GPSPoint> points = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            points.add(point(i * 60, "a", i));
+        }
+        for (int i = 0; i < 10; i++) {
+            points.add(point(3600 + i * 60, "a", 10 + i));
+        }
+
+        final List<List<GPSPoint>> segments = segmenter.split(points);
+
+        Assert.assertEquals(2, segments.size());
+        Assert.assertEquals(points.subList(0, 10), segments.get(0));
+        Assert.assertEquals(points.subList(10, 20), segments.get(1));
+    }
+
+    @Test
+    public void splitsOnDeviceSwitchesOnlyWhenTheNewDeviceKeepsReporting() {
+        final List<GPSPoint> alternating = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            alternating.add(point(i * 60, i % 2 == 0 ? "a" : "b", i));
+        }
+        Assert.assertEquals(1, segmenter.split(alternating).size());
+
+        final List<GPSPoint> switching = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            switching.add(point(i * 60, i < 10 ? "a" : "b", i));
+        }
+        final List<List<GPSPoint>> segments = segmenter.split(switching);
+        Assert.assertEquals(2, segments.size());
+        Assert.assertEquals("b", segments.get(1).get(0).getCollectorId());
+    }
+
+    @Test
+    public void dropsTheFixesOfAStay() {
+        final List<GPSPoint> points = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            points.add(point(i * 60, "a", i * 2));
+        }
+        for (int i = 0; i < 30; i++) {
+            points.add(point(300 + i * 60, "a", 8 + (i % 2) * 0.1)); // 30 minutes within a few meters
+        }
+        for (int i = 0; i < 5; i++) {
+            points.add(point(2100 + i * 60, "a", 10 + i * 2));
+        }
+
+        final List<List<GPSPoint>> segments = segmenter.split(points);
+
+        Assert.assertEquals(2, segments.size());
+        Assert.assertTrue(segments.get(0).size() + segments.get(1).size() < points.size());
+        Assert.assertSame(points.get(0), segments.get(0).get(0));
+        Assert.assertSame(points.get(points.size() - 1), segments.get(1).get(segments.get(1).size() - 1));
+    }
+
+    @Test
+    public void sharesTheWholeBudgetInProportion() {
+        final List<List<GPSPoint>> segments = segments(100, 300, 600);
+
+        final int[] shares = TrackSegmenter.shareBudget(segments, 100);
+
+        Assert.assertEquals(100, Arrays.stream(shares).sum());
+        Assert.assertTrue(shares[0] < shares[1] && shares[1] < shares[2]);
+        Assert.assertArrayEquals(new int[]{11, 30, 59}, shares); // 2 ends each, then 94 points shared among 994
+    }
+
+    @Test
+    public void keepsShortSegmentsWhole() {
+        final int[] shares = TrackSegmenter.shareBudget(segments(1, 2, 5), 100);
+
+        Assert.assertArrayEquals(new int[]{1, 2, 5}, shares);
+    }
+
+    @Test
+    public void neverGoesOverTheBudgetWithManyShortSegments() {
+        final Random random = new Random(5);
+        for (int track = 0; track < 100; track++) {
+            final int[] sizes = new int[1 + random.nextInt(400)];
+            for (int i = 0; i < sizes.length; i++) {
+                sizes[i] = 1 + random.nextInt(random.nextBoolean() ? 3 : 200);
+            }
+            final int budget = 2 + random.nextInt(300);
+
+            final List<List<GPSPoint>> segments = TrackSegmenter.mergeSmallest(segments(sizes), budget / 2);
+            final int[] shares = TrackSegmenter.shareBudget(segments, budget);
+
+            Assert.assertTrue(segments.size() <= Math.max(1, budget / 2));
+            Assert.assertEquals(Arrays.stream(sizes).sum(), segments.stream().mapToInt(List::size).sum());
+            Assert.assertTrue(Arrays.stream(shares).sum() <= budget);
+            for (int i = 0; i < shares.length; i++) {
+                Assert.assertTrue(shares[i] >= Math.min(2, segments.get(i).size()));
+            }
+        }
+    }
+
+    @Test
+    public void mergesTheSmallestSegmentsInTimeOrder() {
+        final List<List<GPSPoint>> segments = TrackSegmenter.mergeSmallest(segments(50, 1, 2, 40, 3, 60), 3);
+
+        Assert.assertEquals(3, segments.size());
+        Assert.assertEquals(50, segments.get(0).size());
+        Assert.assertEquals(46, segments.get(1).size());
+        Assert.assertEquals(60, segments.get(2).size());
+        for (final List<GPSPoint> segment : segments) {
+            for (int i = 1; i < segment.size(); i++) {
+                Assert.assertTrue(segment.get(i - 1).getTimestamp().isBefore(segment.get(i).getTimestamp()));
+            }
+        }
+    }
+
+    private static List<List<GPSPoint>> segments(final int... sizes) {
+        final List<List<GPSPoint>> segments = new ArrayList<>();
+        int second = 0;
+        for (final int size : sizes) {
+            final List<GPSPoint> segment = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                segment.add(point(second++, "a", second));
+            }
+            segments.add(segment);
+        }
+        return segments;
+    }
+
+    /**
+     * @param hectometers distance travelled eastwards along the equator, in hundreds of meters
+     */
+    private static GPSPoint point(final int second, final String device, final double hectometers) {
+        return pointOf(device, second * 1_000L)
+                .latitude(0)
+                .longitude(hectometers * DEGREES_PER_100_METERS)
+                .build();
+    }
+}
@@ -0,0 +1,110 @@
+package ga.elirey.locationexplorer.utils;
+
+import ga.elirey.locationexplorer.data.SimilarityMetric;
+import ga.elirey.locationexplorer.model.GPSPoint;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static ga.elirey.locationexplorer.utils.TrackFixtures.point;
+import static ga.elirey.locationexplorer.utils.TrackFixtures.randomWalk;
+
+/**
+ * Trajectory distances and the soundness of their lower bounds, which must never exceed the distances they prune
+ */
+public class TrajectoryDistancesTest {
+
+    private static final double TOLERANCE_IN_METERS = 1e-6;
+
+    @Test
+    public void boxBoundNeverExceedsTheDistanceToTheBox() {
+        final Random random = new Random(11);
+        for (int box = 0; box < 500; box++) {
+            final double minLatitude = random.nextDouble() * 170 - 85;
+            final double minLongitude = random.nextDouble() * 350 - 175;
+            final double maxLatitude = Math.min(90, minLatitude + random.nextDouble() * Math.pow(10, 1 - random.nextInt(4)));
+            final double maxLongitude = Math.min(180, minLongitude + random.nextDouble() * Math.pow(10, 1 - random.nextInt(4)));
+            // locations near the box, where the clamped point is the furthest from the closest one, and anywhere
+            final double latitude = random.nextBoolean() ? random.nextDouble() * 180 - 90
+                    : Math.max(-90, Math.min(90, minLatitude + (random.nextDouble() - 0.5) * 40));
+            final double longitude = random.nextBoolean() ? random.nextDouble() * 360 - 180
+                    : minLongitude + (random.nextDouble() - 0.5) * 60;
+
+            final double bound = TrajectoryDistances.boxDistanceLowerBound(latitude, longitude,
+                    minLatitude, minLongitude, maxLatitude, maxLongitude);
+
+            double closest = Double.POSITIVE_INFINITY;
+            for (int i = 0; i <= 100; i++) {
+                for (int j = 0; j <= 100; j++) {
+                    closest = Math.min(closest, GeometryTools.distanceInMeters(latitude, longitude,
+                            minLatitude + (maxLatitude - minLatitude) * i / 100, minLongitude + (maxLongitude - minLongitude) * j / 100));
+                }
+            }
+            Assert.assertTrue(String.format("bound %f over distance %f", bound, closest), bound <= closest + TOLERANCE_IN_METERS);
+        }
+    }
+
+    @Test
+    public void boxBoundIsExactAlongAMeridian() {
+        final double bound = TrajectoryDistances.boxDistanceLowerBound(10, 5, 11, 4, 12, 6);
+
+        Assert.assertEquals(GeometryTools.distanceInMeters(10, 5, 11, 5), bound, 1e-3);
+        Assert.assertEquals(0, TrajectoryDistances.boxDistanceLowerBound(11.5, 5, 11, 4, 12, 6), 0);
+    }
+
+    @Test
+    public void lowerBoundsNeverExceedTheDistances() {
+        final Random random = new Random(13);
+        for (int pair = 0; pair < 200; pair++) {
+            final TrackSignature first = randomTrack(random);
+            final TrackSignature second = randomTrack(random);
+            for (final SimilarityMetric metric : SimilarityMetric.values()) {
+                final double distance = TrajectoryDistances.distance(metric, first, second, Double.POSITIVE_INFINITY);
+
+                Assert.assertTrue(TrajectoryDistances.endpointsLowerBound(metric, first, second) <= distance + TOLERANCE_IN_METERS);
+                Assert.assertTrue(TrajectoryDistances.boundingBoxLowerBound(metric, first, second) <= distance + TOLERANCE_IN_METERS);
+                Assert.assertTrue(TrajectoryDistances.boundingBoxLowerBound(metric, first, second.getMinLatitude(),
+                        second.getMinLongitude(), second.getMaxLatitude(), second.getMaxLongitude()) <= distance + TOLERANCE_IN_METERS);
+            }
+        }
+    }
+
+    @Test
+    public void abandonsOnlyAboveTheThreshold() {
+        final Random random = new Random(17);
+        for (int pair = 0; pair < 50; pair++) {
+            final TrackSignature first = randomTrack(random);
+            final TrackSignature second = randomTrack(random);
+            for (final SimilarityMetric metric : SimilarityMetric.values()) {
+                final double distance = TrajectoryDistances.distance(metric, first, second, Double.POSITIVE_INFINITY);
+
+                Assert.assertEquals(distance, TrajectoryDistances.distance(metric, first, second, distance), 0);
+                Assert.assertTrue(Double.isInfinite(TrajectoryDistances.distance(metric, first, second, distance * 0.99)));
+            }
+        }
+    }
+
+    @Test
+    public void frechetDistanceOfShiftedTracksIsTheShift() {
+        final List<GPSPoint> points = new ArrayList<>();
+        final List<GPSPoint> shifted = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            points.add(point(i, 0, i * 0.01));
+            shifted.add(point(i, 0.01, i * 0.01));
+        }
+
+        final double distance = TrajectoryDistances.discreteFrechet(new TrackSignature(points, 64), new TrackSignature(shifted, 64),
+                Double.POSITIVE_INFINITY);
+
+        Assert.assertEquals(GeometryTools.distanceInMeters(0, 0, 0.01, 0), distance, 1e-6);
+    }
+
+    private static TrackSignature randomTrack(final Random random) {
+        final double latitude = random.nextDouble() * 120 - 60;
+        final double longitude = random.nextDouble() * 2;
+        return new TrackSignature(randomWalk(random, 2 + random.nextInt(40), latitude, longitude, 0.1), 64);
+    }
+}
@@ -0,0 +1,57 @@
+package ga.elirey.locationexplorer.utils;
+
+import ga.elirey.locationexplorer.model.GPSPoint;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static ga.elirey.locationexplorer.utils.TrackFixtures.point;
+import static ga.elirey.locationexplorer.utils.TrackFixtures.randomWalk;
+
+/**
+ * Point budget of the Visvalingam-Whyatt simplification
+ */
+public class VisvalingamWhyattAlgorithmTest {
+
+    @Test
+    public void keepsExactlyTheBudgetWithTheEndsInOrder() {
+        final List<GPSPoint> points = randomWalk(new Random(7), 5000, 48.85, 2.35, 0.001);
+
+        for (final int maxPoints : new int[]{2, 3, 10, 250, 4999}) {
+            final List<GPSPoint> simplified = new VisvalingamWhyattAlgorithm<GPSPoint>(maxPoints).apply(points);
+
+            Assert.assertEquals(maxPoints, simplified.size());
+            Assert.assertSame(points.get(0), simplified.get(0));
+            Assert.assertSame(points.get(points.size() - 1), simplified.get(simplified.size() - 1));
+            for (int i = 1; i < simplified.size(); i++) {
+                Assert.assertTrue(simplified.get(i - 1).getTimestamp().isBefore(simplified.get(i).getTimestamp()));
+            }
+        }
+    }
+
+    @Test
+    public void leavesTracksWithinTheBudgetUntouched() {
+        final List<GPSPoint> points = randomWalk(new Random(1), 10, 48.85, 2.35, 0.001);
+
+        Assert.assertSame(points, new VisvalingamWhyattAlgorithm<GPSPoint>(10).apply(points));
+        Assert.assertEquals(2, new VisvalingamWhyattAlgorithm<GPSPoint>(0).apply(points).size());
+    }
+
+    @Test
+    public void removesTheStraightPointsBeforeTheCorner() {
+        final List<GPSPoint> points = new ArrayList<>();
+        for (int i = 0; i <= 10; i++) {
+            points.add(point(i, 0.0, i * 0.001));
+        }
+        for (int i = 1; i <= 10; i++) {
+            points.add(point(10 + i, i * 0.001, 0.01));
+        }
+
+        final List<GPSPoint> simplified = new VisvalingamWhyattAlgorithm<GPSPoint>(3).apply(points);
+
+        Assert.assertSame(points.get(10), simplified.get(1));
+    }
+}